@@ -0,0 +1,200 @@
+package com.example;
+
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 异步分级日志
+ * 调用线程只做级别判断并把 (时间戳, 级别, 来源, 格式串, 参数) 放入有界环形队列；
+ * 后台线程批量取出后才执行 String.format、拼接时间戳并写入，每批只 flush 一次。
+ * 低于阈值的消息在调用线程直接丢弃，不会构造任何字符串。
+ * 队列满时调用线程阻塞等待，日志不会丢失；close() 之后的消息直接输出到控制台。
+ *
+ * 输出格式与原来的 PrintWriter 日志相同:
+ *   2024-01-01T12:00:00.000 - INFO: 消息
+ *   2024-01-01T12:00:00.000 - WARN (Calculator): 消息
+ */
+public class AnalysisLog implements AutoCloseable {
+
+    /** 日志级别 */
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR
+    }
+
+    private static final int DEFAULT_CAPACITY = 8192; // 环形队列容量 (条)
+    private static final Entry END = new Entry(0, Level.ERROR, null, null, null, null); // 结束标记
+
+    private final PrintWriter out;
+    private final Level threshold;
+    private final BlockingQueue<Entry> queue;
+    private final Thread writer;
+    private final ZoneId zone = ZoneId.systemDefault();
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock(); // 读锁: 入队; 写锁: 关闭
+    private boolean closed; // 受 closeLock 保护
+
+    /**
+     * 创建日志并启动后台写入线程
+     * @param out 日志输出 (由本对象负责关闭)
+     * @param threshold 最低记录级别
+     */
+    public AnalysisLog(Writer out, Level threshold) {
+        this(out, threshold, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param out 日志输出 (由本对象负责关闭)
+     * @param threshold 最低记录级别
+     * @param capacity 环形队列容量
+     */
+    public AnalysisLog(Writer out, Level threshold, int capacity) {
+        this.out = out instanceof PrintWriter ? (PrintWriter) out : new PrintWriter(out);
+        this.threshold = threshold;
+        this.queue = new ArrayBlockingQueue<>(Math.max(16, capacity));
+        this.writer = new Thread(this::drain, "analysis-log");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /** 该级别的消息是否会被记录，用于跳过代价较高的参数准备 */
+    public boolean isEnabled(Level level) {
+        return level.compareTo(threshold) >= 0;
+    }
+
+    /** 记录调试信息 */
+    public void debug(String source, String format, Object... args) {
+        log(Level.DEBUG, source, format, args, null);
+    }
+
+    /** 记录普通信息 */
+    public void info(String source, String format, Object... args) {
+        log(Level.INFO, source, format, args, null);
+    }
+
+    /** 记录警告信息 */
+    public void warn(String source, String format, Object... args) {
+        log(Level.WARN, source, format, args, null);
+    }
+
+    /** 记录错误信息及堆栈跟踪 */
+    public void error(String source, String message, Throwable t) {
+        log(Level.ERROR, source, message, null, t);
+    }
+
+    /**
+     * 放入一条日志
+     * @param level 级别
+     * @param source 来源标记 (如 "Calculator")，null 表示主程序
+     * @param format 消息；args 为空时原样输出，否则作为 String.format 的格式串
+     * @param args 格式参数 (应为不可变对象，格式化在后台线程进行)
+     * @param t 异常，可以为 null
+     */
+    public void log(Level level, String source, String format, Object[] args, Throwable t) {
+        if (!isEnabled(level)) {
+            return;
+        }
+        Entry entry = new Entry(System.currentTimeMillis(), level, source, format, args, t);
+        // 检查 closed 与入队在同一把读锁内完成，close() 放入结束标记后不会再有消息入队
+        closeLock.readLock().lock();
+        try {
+            if (!closed) {
+                queue.put(entry);
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            closeLock.readLock().unlock();
+        }
+        System.out.println(render(entry)); // 已关闭或被中断: 直接输出到控制台
+    }
+
+    /** 写出队列中剩余的日志并关闭输出 */
+    @Override
+    public void close() {
+        closeLock.writeLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+        try {
+            queue.put(END);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            out.close();
+        }
+    }
+
+    /** 后台线程: 批量取出、格式化并写入，每批 flush 一次 */
+    private void drain() {
+        List<Entry> batch = new ArrayList<>(256);
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch, 4096);
+                for (Entry entry : batch) {
+                    if (entry == END) {
+                        out.flush();
+                        return;
+                    }
+                    out.println(render(entry));
+                    if (entry.thrown != null) {
+                        entry.thrown.printStackTrace(out);
+                    }
+                }
+                out.flush();
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String render(Entry entry) {
+        String message;
+        if (entry.args == null || entry.args.length == 0) {
+            message = entry.format;
+        } else {
+            try {
+                message = String.format(entry.format, entry.args);
+            } catch (RuntimeException e) {
+                message = entry.format + " (格式化失败: " + e + ")";
+            }
+        }
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(entry.timestamp), zone);
+        return time + " - " + entry.level + (entry.source != null ? " (" + entry.source + ")" : "") + ": " + message;
+    }
+
+    /** 一条待写入的日志 */
+    private static final class Entry {
+        final long timestamp;
+        final Level level;
+        final String source;
+        final String format;
+        final Object[] args;
+        final Throwable thrown;
+
+        Entry(long timestamp, Level level, String source, String format, Object[] args, Throwable thrown) {
+            this.timestamp = timestamp;
+            this.level = level;
+            this.source = source;
+            this.format = format;
+            this.args = args;
+            this.thrown = thrown;
+        }
+    }
+}
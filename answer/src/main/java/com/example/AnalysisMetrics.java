@@ -0,0 +1,376 @@
+package com.example;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Locale;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * 系谱分析运行指标
+ * 记录各阶段耗时和处理行数、计算结果统计、递归引擎的缓存和递归深度统计以及堆使用量，
+ * 运行中通过 JMX 暴露 (见 AnalysisMetricsMBean)，结束时可写成 JSON 报告供监控比较。
+ *
+ * 阶段计时和计数由主线程写入，JMX 线程读取；字段为 volatile，读到的是某一时刻的近似值。
+ * 递归引擎和亲缘系数缓存的统计是计算线程内的普通字段，不能由 JMX 线程直接读取:
+ * 计算线程每记录 STATS_INTERVAL 个结果以及计算阶段和整个运行结束时把它们复制到这里的 volatile 快照，
+ * JMX 和 JSON 报告只读快照。
+ */
+public class AnalysisMetrics implements AnalysisMetricsMBean {
+    static final String OBJECT_NAME = "com.example:type=PedigreeAnalysis";
+    static final int STATS_INTERVAL = 4096; // 每记录多少个结果发布一次引擎统计快照
+
+    /** 分析阶段 */
+    enum Phase {
+        MAPPING_LOAD("mappingLoad"),
+        PEDIGREE_LOAD("pedigreeLoad"),
+        VALIDATION("validation"),
+        CALCULATION("calculation"),
+        WRITE_BACK("writeBack");
+
+        private final String jsonName;
+
+        Phase(String jsonName) {
+            this.jsonName = jsonName;
+        }
+    }
+
+    private final long[] phaseNanos = new long[Phase.values().length];
+    private final long[] phaseRows = new long[Phase.values().length];
+    private final long[] phaseStart = new long[Phase.values().length];
+    private final long startMillis = System.currentTimeMillis();
+    private volatile String currentPhase = "starting";
+    private volatile String engineName;
+    private volatile long animalCount;
+    private volatile long processedCount;
+    private volatile long nanCount;
+    private volatile InbreedingEngine engine; // 递归引擎时读取缓存和递归深度统计 (只在计算线程读取)
+    // 递归引擎统计的快照 (计算线程写入，JMX 线程读取)
+    private volatile long inbreedingCacheSize;
+    private volatile long inbreedingCacheHits;
+    private volatile long inbreedingCacheMisses;
+    private volatile int maxRecursionDepth;
+    private volatile long depthLimitHits;
+    private volatile long stackOverflows;
+    private volatile long coancestryCacheSize;
+    private volatile long coancestryCacheHits;
+    private volatile long coancestryCacheMisses;
+    private volatile long coancestryCacheEvictions;
+    private ObjectName registeredName;
+
+    /**
+     * 开始一个阶段
+     * @param phase 阶段
+     */
+    synchronized void begin(Phase phase) {
+        phaseStart[phase.ordinal()] = System.nanoTime();
+        currentPhase = phase.jsonName;
+    }
+
+    /**
+     * 结束一个阶段 (同一阶段多次运行时累加)
+     * @param phase 阶段
+     * @param rows 本阶段处理的行数
+     */
+    synchronized void end(Phase phase, long rows) {
+        phaseNanos[phase.ordinal()] += System.nanoTime() - phaseStart[phase.ordinal()];
+        phaseRows[phase.ordinal()] += rows;
+        phaseStart[phase.ordinal()] = 0;
+        if (phase == Phase.CALCULATION) {
+            publishEngineStats(true);
+        }
+    }
+
+    /** 运行结束 (由计算线程调用) */
+    void finish() {
+        publishEngineStats(true);
+        currentPhase = "finished";
+    }
+
+    /**
+     * 记录所用的计算引擎
+     * @param name 引擎名称
+     * @param calculator 引擎实例 (递归引擎时读取其缓存和递归深度统计)
+     */
+    void setEngine(String name, InbreedingEngine calculator) {
+        this.engineName = name;
+        this.engine = calculator;
+    }
+
+    /** 记录系谱个体数量 */
+    void setAnimalCount(long count) {
+        this.animalCount = count;
+    }
+
+    /**
+     * 记录一个个体的计算结果 (只由计算线程调用)
+     * @param f 近交系数，NaN 表示无法计算
+     */
+    void recordResult(double f) {
+        long processed = processedCount + 1;
+        processedCount = processed;
+        if (Double.isNaN(f)) {
+            nanCount++;
+        }
+        if (processed % STATS_INTERVAL == 0) {
+            publishEngineStats(false);
+        }
+    }
+
+    /**
+     * 把递归引擎的统计复制到 volatile 快照 (只由计算线程调用)
+     * @param full 是否同时统计近交系数缓存的条目数 (需要遍历缓存数组，只在阶段或运行结束时统计)
+     */
+    private void publishEngineStats(boolean full) {
+        InbreedingCalculator calculator = recursiveEngine();
+        if (calculator == null) {
+            return;
+        }
+        if (full) {
+            inbreedingCacheSize = calculator.getInbreedingCacheSize();
+        }
+        inbreedingCacheHits = calculator.getInbreedingCacheHits();
+        inbreedingCacheMisses = calculator.getInbreedingCacheMisses();
+        maxRecursionDepth = calculator.getMaxDepthReached();
+        depthLimitHits = calculator.getDepthLimitHits();
+        stackOverflows = calculator.getStackOverflowCount();
+        CoancestryCache cache = calculator.getCoancestryCache();
+        coancestryCacheSize = cache.size();
+        coancestryCacheHits = cache.hits();
+        coancestryCacheMisses = cache.misses();
+        coancestryCacheEvictions = cache.evictions();
+    }
+
+    /**
+     * 注册到平台 MBeanServer
+     * @throws JMException 名称已被占用等原因无法注册时抛出
+     */
+    synchronized void register() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        server.registerMBean(this, name);
+        registeredName = name;
+    }
+
+    /** 从平台 MBeanServer 注销 (未注册时不做任何事) */
+    synchronized void unregister() {
+        if (registeredName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+        } catch (JMException e) {
+            // 进程即将结束，注销失败不影响结果
+        }
+        registeredName = null;
+    }
+
+    /**
+     * 写出 JSON 报告 (先写临时文件再原子替换，监控程序不会读到写了一半的文件)
+     * @param file 报告文件
+     * @throws IOException 写入失败时抛出
+     */
+    void writeJson(Path file) throws IOException {
+        Path absolute = file.toAbsolutePath();
+        Path tmp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        try (Writer out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            out.write(toJson());
+        }
+        Files.move(tmp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** JSON 报告内容 */
+    synchronized String toJson() {
+        StringBuilder json = new StringBuilder(1024);
+        json.append("{\n");
+        json.append("  \"startTime\": \"").append(Instant.ofEpochMilli(startMillis)).append("\",\n");
+        json.append("  \"totalMillis\": ").append(System.currentTimeMillis() - startMillis).append(",\n");
+        json.append("  \"engine\": ").append(engineName == null ? "null" : "\"" + engineName + "\"").append(",\n");
+        json.append("  \"phases\": {\n");
+        Phase[] phases = Phase.values();
+        for (int p = 0; p < phases.length; p++) {
+            json.append("    \"").append(phases[p].jsonName).append("\": {\"millis\": ").append(millis(phases[p]))
+                    .append(", \"rows\": ").append(phaseRows[p])
+                    .append(", \"rowsPerSecond\": ").append(number(rowsPerSecond(phases[p]))).append('}')
+                    .append(p < phases.length - 1 ? ",\n" : "\n");
+        }
+        json.append("  },\n");
+        json.append("  \"animals\": {\"total\": ").append(animalCount)
+                .append(", \"processed\": ").append(processedCount)
+                .append(", \"nan\": ").append(nanCount).append("},\n");
+        json.append("  \"recursion\": {\"maxDepth\": ").append(getMaxRecursionDepth())
+                .append(", \"depthLimitHits\": ").append(getDepthLimitHits())
+                .append(", \"stackOverflows\": ").append(getStackOverflowCount()).append("},\n");
+        json.append("  \"inbreedingCache\": {\"size\": ").append(getInbreedingCacheSize())
+                .append(", \"hitRatio\": ").append(number(getInbreedingCacheHitRatio())).append("},\n");
+        json.append("  \"coancestryCache\": {\"size\": ").append(getCoancestryCacheSize())
+                .append(", \"hitRatio\": ").append(number(getCoancestryCacheHitRatio()))
+                .append(", \"evictions\": ").append(getCoancestryCacheEvictions()).append("},\n");
+        json.append("  \"heap\": {\"usedBytes\": ").append(getHeapUsedBytes())
+                .append(", \"peakUsedBytes\": ").append(getPeakHeapUsedBytes())
+                .append(", \"maxBytes\": ").append(getHeapMaxBytes()).append("}\n");
+        json.append("}\n");
+        return json.toString();
+    }
+
+    /** JSON 数值: NaN 和无穷写为 null */
+    private static String number(double value) {
+        return Double.isNaN(value) || Double.isInfinite(value) ? "null" : String.format(Locale.ROOT, "%.4f", value);
+    }
+
+    private synchronized long millis(Phase phase) {
+        long nanos = phaseNanos[phase.ordinal()];
+        long start = phaseStart[phase.ordinal()];
+        if (start != 0) {
+            nanos += System.nanoTime() - start; // 阶段进行中: 计入已经过的时间
+        }
+        return nanos / 1_000_000;
+    }
+
+    private synchronized double rowsPerSecond(Phase phase) {
+        long nanos = phaseNanos[phase.ordinal()];
+        long rows = phaseRows[phase.ordinal()];
+        if (phase == Phase.CALCULATION && phaseStart[phase.ordinal()] != 0) {
+            nanos += System.nanoTime() - phaseStart[phase.ordinal()]; // 计算进行中: 按已处理个体估算
+            rows += processedCount;
+        }
+        return nanos == 0 ? Double.NaN : rows * 1e9 / nanos;
+    }
+
+    private InbreedingCalculator recursiveEngine() {
+        InbreedingEngine current = engine;
+        return current instanceof InbreedingCalculator ? (InbreedingCalculator) current : null;
+    }
+
+    private static double ratio(long hits, long misses) {
+        return hits + misses == 0 ? Double.NaN : (double) hits / (hits + misses);
+    }
+
+    // --- AnalysisMetricsMBean ---
+
+    @Override
+    public String getCurrentPhase() {
+        return currentPhase;
+    }
+
+    @Override
+    public long getMappingLoadMillis() {
+        return millis(Phase.MAPPING_LOAD);
+    }
+
+    @Override
+    public long getPedigreeLoadMillis() {
+        return millis(Phase.PEDIGREE_LOAD);
+    }
+
+    @Override
+    public long getValidationMillis() {
+        return millis(Phase.VALIDATION);
+    }
+
+    @Override
+    public long getCalculationMillis() {
+        return millis(Phase.CALCULATION);
+    }
+
+    @Override
+    public long getWriteBackMillis() {
+        return millis(Phase.WRITE_BACK);
+    }
+
+    @Override
+    public long getAnimalCount() {
+        return animalCount;
+    }
+
+    @Override
+    public long getProcessedCount() {
+        return processedCount;
+    }
+
+    @Override
+    public long getNanCount() {
+        return nanCount;
+    }
+
+    @Override
+    public double getCalculationRowsPerSecond() {
+        return rowsPerSecond(Phase.CALCULATION);
+    }
+
+    @Override
+    public synchronized long getWriteBackRows() {
+        return phaseRows[Phase.WRITE_BACK.ordinal()];
+    }
+
+    @Override
+    public long getInbreedingCacheSize() {
+        return inbreedingCacheSize;
+    }
+
+    @Override
+    public double getInbreedingCacheHitRatio() {
+        return ratio(inbreedingCacheHits, inbreedingCacheMisses);
+    }
+
+    @Override
+    public long getCoancestryCacheSize() {
+        return coancestryCacheSize;
+    }
+
+    @Override
+    public double getCoancestryCacheHitRatio() {
+        return ratio(coancestryCacheHits, coancestryCacheMisses);
+    }
+
+    @Override
+    public long getCoancestryCacheEvictions() {
+        return coancestryCacheEvictions;
+    }
+
+    @Override
+    public int getMaxRecursionDepth() {
+        return maxRecursionDepth;
+    }
+
+    @Override
+    public long getDepthLimitHits() {
+        return depthLimitHits;
+    }
+
+    @Override
+    public long getStackOverflowCount() {
+        return stackOverflows;
+    }
+
+    @Override
+    public long getHeapUsedBytes() {
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    @Override
+    public long getPeakHeapUsedBytes() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    @Override
+    public long getHeapMaxBytes() {
+        return Runtime.getRuntime().maxMemory();
+    }
+}
@@ -0,0 +1,75 @@
+package com.example;
+
+/**
+ * 系谱分析运行指标的 JMX 接口 (标准 MBean)
+ * 注册名为 com.example:type=PedigreeAnalysis，可用 jconsole / VisualVM 或 JMX 采集器在运行中读取。
+ * 时间单位为毫秒；尚未开始的阶段为 0，无法计算的比例为 NaN。
+ */
+public interface AnalysisMetricsMBean {
+
+    /** 当前所处阶段，运行结束后为 "finished" */
+    String getCurrentPhase();
+
+    /** ID 映射加载耗时 */
+    long getMappingLoadMillis();
+
+    /** 系谱加载耗时 */
+    long getPedigreeLoadMillis();
+
+    /** 系谱校验耗时 */
+    long getValidationMillis();
+
+    /** 近交系数计算耗时 */
+    long getCalculationMillis();
+
+    /** 写回耗时 (从打开写回连接到全部提交，与计算重叠) */
+    long getWriteBackMillis();
+
+    /** 系谱个体数量 */
+    long getAnimalCount();
+
+    /** 已计算的个体数量 */
+    long getProcessedCount();
+
+    /** 近交系数为 NaN 的个体数量 */
+    long getNanCount();
+
+    /** 计算阶段每秒处理的个体数 */
+    double getCalculationRowsPerSecond();
+
+    /** 已写回的记录数 */
+    long getWriteBackRows();
+
+    /** 近交系数缓存条目数量 (仅递归引擎，其他引擎为 0) */
+    long getInbreedingCacheSize();
+
+    /** 近交系数缓存命中率 (仅递归引擎) */
+    double getInbreedingCacheHitRatio();
+
+    /** 亲缘系数缓存条目数量 (仅递归引擎) */
+    long getCoancestryCacheSize();
+
+    /** 亲缘系数缓存命中率 (仅递归引擎) */
+    double getCoancestryCacheHitRatio();
+
+    /** 亲缘系数缓存淘汰次数 (仅递归引擎) */
+    long getCoancestryCacheEvictions();
+
+    /** 达到过的最大递归深度 (仅递归引擎) */
+    int getMaxRecursionDepth();
+
+    /** 超过最大递归深度的次数 (仅递归引擎) */
+    long getDepthLimitHits();
+
+    /** 因栈溢出返回 NaN 的次数 (仅递归引擎) */
+    long getStackOverflowCount();
+
+    /** 当前堆使用量 (字节) */
+    long getHeapUsedBytes();
+
+    /** 堆使用量峰值 (各堆内存池峰值之和，字节) */
+    long getPeakHeapUsedBytes();
+
+    /** 最大堆 (字节) */
+    long getHeapMaxBytes();
+}
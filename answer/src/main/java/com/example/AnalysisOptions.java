@@ -0,0 +1,458 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * PedigreeAnalysis 的命令行参数
+ * 参数格式为 --名称=值，未指定的参数使用默认值
+ */
+class AnalysisOptions {
+
+    /** 近交系数计算引擎 */
+    enum Engine {
+        RECURSIVE, // 递归 + 备忘录 (InbreedingCalculator)
+        ITERATIVE, // 拓扑排序后迭代计算 (IterativeInbreedingCalculator)
+        PARALLEL   // 迭代计算，按世代分层多线程并行
+    }
+
+    /** 系谱加载方式 */
+    enum Loader {
+        DEFAULT,  // 两次连接，结果集整体缓存后逐行处理 (loadIdMappingFromDB + loadPedigreeFromDB)
+        STREAMING, // 单个连接，流式结果集 (StreamingPedigreeLoader)
+        CSV, // 直接并行解析 CSV 文件，不连接数据库 (CsvPedigreeLoader)
+        ANCESTORS // 只逐代查询 --targets 个体的祖先 (StreamingPedigreeLoader.loadAncestors)
+    }
+
+    /** 日志模式 */
+    enum LogMode {
+        DETAIL, // 每个个体一行日志
+        SUMMARY // 只输出汇总统计和直方图 (逐个体日志降为 DEBUG 级别)
+    }
+
+    static final String DEFAULT_STATE_FILE = "inbreeding_state.bin"; // 默认的增量计算状态文件
+    static final String DEFAULT_CHECKPOINT_FILE = "inbreeding_checkpoint.bin"; // 默认的检查点文件
+    static final int DEFAULT_SERVE_PORT = 8765; // 查询服务的默认端口
+    private static final int MAX_PORT = 65535; // TCP 端口上限
+    static final int DEFAULT_GENE_DROP_REPLICATES = 100000; // 基因下落的默认最多重复次数
+    static final String ALL_ANIMALS = "all"; // --reference-groups 中表示全部个体的群体名
+    static final int[] DEFAULT_TRUNCATED_DEPTHS = {5, 10}; // 截断近交系数的默认代数
+
+    Engine engine = Engine.RECURSIVE;
+    Loader loader = Loader.DEFAULT;
+    int fetchSize = StreamingPedigreeLoader.STREAM_ROW_BY_ROW; // streaming 加载的 fetch size
+    boolean sqlMapping = false; // streaming 加载时是否在数据库端 LEFT JOIN 映射表
+    boolean writeBack = false; // 是否将近交系数写回 cattle_info
+    int writeBatchSize = 5000; // 写回的批次 (事务) 大小
+    String incrementalState; // 增量计算状态文件，null 表示不使用增量模式
+    long coancestryCacheMb = 0; // 递归引擎亲缘系数缓存上限 (MB)，0 表示最大堆的 1/4
+    int threads = Runtime.getRuntime().availableProcessors(); // parallel 引擎的线程数
+    String snapshotIn; // 从该系谱快照加载 (不连接数据库)，null 表示从数据库加载
+    String snapshotOut; // 运行结束后把系谱和近交系数保存到该快照，null 表示不保存
+    boolean useCachedF = false; // 快照含近交系数时直接使用，不重新计算
+    AnalysisLog.Level logLevel = AnalysisLog.Level.INFO; // 日志级别阈值
+    LogMode logMode = LogMode.DETAIL;
+    String matingSires; // 候选公牛ID列表文件
+    String matingCows; // 母牛ID列表文件
+    String matingOut = "mating_matrix.tsv"; // 选配结果文件
+    int matingTopK = 0; // 每头母牛输出的最佳选配数量，0 表示输出完整矩阵
+    String ainvOut; // A 逆矩阵输出文件 (.bin 为二进制，否则为文本)，null 表示不输出
+    String aBlock; // 稠密 A 子矩阵的个体ID列表文件
+    String aBlockOut = "a_block.tsv"; // 稠密 A 子矩阵输出文件
+    String metricsOut; // 运行结束时写出的 JSON 指标报告，null 表示不写
+    String cattleCsv; // csv 加载的系谱文件 (cattle_info 格式)
+    String mappingCsv; // csv 加载的映射文件 (num_comp_tb 格式)，null 表示不做 ID 映射
+    int servePort = -1; // 查询服务端口，-1 表示不启动服务 (一次性分析)
+    int geneDropReplicates = 0; // 基因下落的最多重复次数，0 表示不运行
+    long geneDropSeed = 20240101L; // 基因下落的随机种子 (固定种子结果可重复)
+    double geneDropTolerance = 0.001; // 提前停止的 95% 置信区间半宽，0 表示跑满重复次数
+    String geneDropReference; // 基因下落参考群体的ID列表文件，null 表示没有后代的个体
+    String geneDropOut = "gene_drop.tsv"; // 基因下落结果文件
+    String herds; // 多牧场批量分析的牧场列表文件，null 表示分析单个数据源
+    String herdOutDir = "."; // 多牧场批量分析时各牧场结果文件的目录
+    String targets; // 目标个体ID列表文件: 只在其祖先闭包上计算，null 表示计算整个系谱
+    String targetsOut = "target_coancestry.tsv"; // 目标个体的近交系数和两两亲缘系数输出文件
+    String[] referenceGroups; // 参考群体的ID列表文件 (ALL_ANIMALS 表示全部个体)，null 表示不计算平均亲缘系数
+    String meanCoancestryOut = "mean_coancestry.tsv"; // 平均亲缘系数输出文件
+    String checkpoint; // 计算期间定期保存进度的检查点文件，null 表示不保存
+    int checkpointInterval = 300; // 检查点的最短间隔 (秒)
+    boolean resume = false; // 从检查点恢复已完成的个体，只计算其余个体
+    int[] truncatedDepths; // 截断近交系数的代数 (从小到大)，null 表示不计算
+    int pecGenerations = 5; // 系谱完整度 (MacCluer 指数) 的代数
+    String truncatedOut = "truncated_inbreeding.tsv"; // 截断近交系数和系谱完整度输出文件
+
+    /**
+     * 解析命令行参数
+     * @param args main 方法收到的参数
+     * @return 解析后的参数对象
+     * @throws IllegalArgumentException 参数无法识别或取值非法时抛出
+     */
+    static AnalysisOptions parse(String[] args) {
+        AnalysisOptions options = new AnalysisOptions();
+        for (String arg : args) {
+            String name = arg;
+            String value = null;
+            int eq = arg.indexOf('=');
+            if (eq >= 0) {
+                name = arg.substring(0, eq);
+                value = arg.substring(eq + 1);
+            }
+            switch (name) {
+                case "--engine":
+                    options.engine = parseEnum(Engine.class, name, value);
+                    break;
+                case "--loader":
+                    options.loader = parseEnum(Loader.class, name, value);
+                    break;
+                case "--fetch-size":
+                    options.fetchSize = parseInt(name, value, 1, Integer.MAX_VALUE);
+                    break;
+                case "--sql-mapping":
+                    options.sqlMapping = parseFlag(name, value);
+                    break;
+                case "--write-back":
+                    options.writeBack = parseFlag(name, value);
+                    break;
+                case "--write-batch":
+                    options.writeBatchSize = parseInt(name, value, 1, Integer.MAX_VALUE);
+                    break;
+                case "--incremental":
+                    options.incrementalState = value == null || value.trim().isEmpty()
+                            ? DEFAULT_STATE_FILE : value.trim();
+                    break;
+                case "--threads":
+                    options.threads = parseInt(name, value, 1, Integer.MAX_VALUE);
+                    break;
+                case "--coancestry-cache-mb":
+                    options.coancestryCacheMb = parseLong(name, value, 0);
+                    break;
+                case "--snapshot-in":
+                    options.snapshotIn = parsePath(name, value);
+                    break;
+                case "--snapshot-out":
+                    options.snapshotOut = parsePath(name, value);
+                    break;
+                case "--use-cached-f":
+                    options.useCachedF = parseFlag(name, value);
+                    break;
+                case "--log-level":
+                    options.logLevel = parseEnum(AnalysisLog.Level.class, name, value);
+                    break;
+                case "--log-mode":
+                    options.logMode = parseEnum(LogMode.class, name, value);
+                    break;
+                case "--mating-sires":
+                    options.matingSires = parsePath(name, value);
+                    break;
+                case "--mating-cows":
+                    options.matingCows = parsePath(name, value);
+                    break;
+                case "--mating-out":
+                    options.matingOut = parsePath(name, value);
+                    break;
+                case "--mating-top-k":
+                    options.matingTopK = parseInt(name, value, 0, Integer.MAX_VALUE);
+                    break;
+                case "--ainv-out":
+                    options.ainvOut = parsePath(name, value);
+                    break;
+                case "--a-block":
+                    options.aBlock = parsePath(name, value);
+                    break;
+                case "--a-block-out":
+                    options.aBlockOut = parsePath(name, value);
+                    break;
+                case "--metrics-out":
+                    options.metricsOut = parsePath(name, value);
+                    break;
+                case "--cattle-csv":
+                    options.cattleCsv = parsePath(name, value);
+                    break;
+                case "--mapping-csv":
+                    options.mappingCsv = parsePath(name, value);
+                    break;
+                case "--serve":
+                    options.servePort = value == null || value.trim().isEmpty()
+                            ? DEFAULT_SERVE_PORT : parseInt(name, value, 0, MAX_PORT);
+                    break;
+                case "--gene-drop":
+                    options.geneDropReplicates = value == null || value.trim().isEmpty()
+                            ? DEFAULT_GENE_DROP_REPLICATES : parseInt(name, value, 1, Integer.MAX_VALUE);
+                    break;
+                case "--gene-drop-seed":
+                    options.geneDropSeed = parseLong(name, value, Long.MIN_VALUE);
+                    break;
+                case "--gene-drop-tolerance":
+                    options.geneDropTolerance = parseDouble(name, value, 0.0);
+                    break;
+                case "--gene-drop-reference":
+                    options.geneDropReference = parsePath(name, value);
+                    break;
+                case "--gene-drop-out":
+                    options.geneDropOut = parsePath(name, value);
+                    break;
+                case "--herds":
+                    options.herds = parsePath(name, value);
+                    break;
+                case "--herd-out-dir":
+                    options.herdOutDir = parsePath(name, value);
+                    break;
+                case "--targets":
+                    options.targets = parsePath(name, value);
+                    break;
+                case "--targets-out":
+                    options.targetsOut = parsePath(name, value);
+                    break;
+                case "--reference-groups":
+                    options.referenceGroups = parsePath(name, value).split("\\s*,\\s*");
+                    break;
+                case "--mean-coancestry-out":
+                    options.meanCoancestryOut = parsePath(name, value);
+                    break;
+                case "--checkpoint":
+                    options.checkpoint = value == null || value.trim().isEmpty()
+                            ? DEFAULT_CHECKPOINT_FILE : value.trim();
+                    break;
+                case "--checkpoint-interval":
+                    options.checkpointInterval = parseInt(name, value, 1, Integer.MAX_VALUE);
+                    break;
+                case "--resume":
+                    options.resume = parseFlag(name, value);
+                    break;
+                case "--truncated-f":
+                    options.truncatedDepths = value == null || value.trim().isEmpty()
+                            ? DEFAULT_TRUNCATED_DEPTHS.clone() : parseGenerations(name, value);
+                    break;
+                case "--pec-generations":
+                    options.pecGenerations = parseInt(name, value, 1, Integer.MAX_VALUE);
+                    if (options.pecGenerations > TruncatedInbreeding.MAX_GENERATIONS) {
+                        throw new IllegalArgumentException("参数 " + name + " 不能大于 "
+                                + TruncatedInbreeding.MAX_GENERATIONS + ": " + value);
+                    }
+                    break;
+                case "--truncated-out":
+                    options.truncatedOut = parsePath(name, value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("无法识别的参数: " + arg);
+            }
+        }
+        if (options.loader == Loader.CSV && options.cattleCsv == null) {
+            throw new IllegalArgumentException("--loader=csv 需要指定 --cattle-csv");
+        }
+        if (options.loader == Loader.ANCESTORS && options.targets == null) {
+            throw new IllegalArgumentException("--loader=ancestors 需要指定 --targets");
+        }
+        if (options.targets != null && options.incrementalState != null) {
+            throw new IllegalArgumentException("--targets 不能与 --incremental 同时使用 (状态文件需要完整系谱)");
+        }
+        if (options.targets != null && options.snapshotOut != null) {
+            throw new IllegalArgumentException("--targets 不能与 --snapshot-out 同时使用 (快照会只包含祖先闭包，之后 --snapshot-in/--serve 会在不完整的系谱上运行)");
+        }
+        if (options.targets != null && options.matingSires != null) {
+            throw new IllegalArgumentException("--targets 不能与 --mating-sires/--mating-cows 同时使用 (不在祖先闭包中的候选个体会被丢弃)");
+        }
+        if (options.targets != null && options.referenceGroups != null) {
+            throw new IllegalArgumentException("--targets 不能与 --reference-groups 同时使用 (参考群体和平均亲缘系数需要完整系谱)");
+        }
+        if (options.targets != null && options.geneDropReplicates > 0) {
+            throw new IllegalArgumentException("--targets 不能与 --gene-drop 同时使用 (fge、遗传多样性和奠基者保留率需要完整系谱)");
+        }
+        if (options.herds != null && (options.servePort >= 0 || options.snapshotIn != null
+                || options.incrementalState != null || options.targets != null)) {
+            throw new IllegalArgumentException("--herds 不能与 --serve、--snapshot-in、--incremental 或 --targets 同时使用");
+        }
+        if (options.herds != null && !analysisOnlyFlags(options).isEmpty()) {
+            throw new IllegalArgumentException("--herds 不能与 " + String.join("、", analysisOnlyFlags(options))
+                    + " 同时使用 (多牧场批量分析只输出各牧场的近交系数)");
+        }
+        if (options.servePort >= 0) {
+            List<String> ignored = analysisOnlyFlags(options);
+            if (options.writeBack) {
+                ignored.add("--write-back");
+            }
+            if (options.incrementalState != null) {
+                ignored.add("--incremental");
+            }
+            if (options.targets != null && options.loader != Loader.ANCESTORS) {
+                ignored.add("--targets");
+            }
+            if (options.metricsOut != null) {
+                ignored.add("--metrics-out");
+            }
+            if (!ignored.isEmpty()) {
+                throw new IllegalArgumentException("--serve 不能与 " + String.join("、", ignored)
+                        + " 同时使用 (查询服务只加载系谱并回答查询，不运行一次性分析的步骤；--targets 只能配合 --loader=ancestors)");
+            }
+        }
+        if (options.resume && options.checkpoint == null) {
+            options.checkpoint = DEFAULT_CHECKPOINT_FILE;
+        }
+        if (options.checkpoint != null && (options.servePort >= 0 || options.herds != null
+                || options.incrementalState != null || options.targets != null)) {
+            throw new IllegalArgumentException("--checkpoint/--resume 不能与 --serve、--herds、--incremental 或 --targets 同时使用");
+        }
+        if ((options.matingSires == null) != (options.matingCows == null)) {
+            throw new IllegalArgumentException("--mating-sires 和 --mating-cows 需要同时指定");
+        }
+        return options;
+    }
+
+    /** 已指定的、只在单个数据源的一次性分析中运行的输出步骤 (常驻服务和多牧场批量分析不运行这些步骤) */
+    private static List<String> analysisOnlyFlags(AnalysisOptions options) {
+        List<String> flags = new ArrayList<>();
+        if (options.snapshotOut != null) {
+            flags.add("--snapshot-out");
+        }
+        if (options.matingSires != null) {
+            flags.add("--mating-sires/--mating-cows");
+        }
+        if (options.ainvOut != null) {
+            flags.add("--ainv-out");
+        }
+        if (options.aBlock != null) {
+            flags.add("--a-block");
+        }
+        if (options.referenceGroups != null) {
+            flags.add("--reference-groups");
+        }
+        if (options.geneDropReplicates > 0) {
+            flags.add("--gene-drop");
+        }
+        if (options.truncatedDepths != null) {
+            flags.add("--truncated-f");
+        }
+        return flags;
+    }
+
+    /** 用法说明，参数错误时输出到控制台 */
+    static String usage() {
+        return "用法: PedigreeAnalysis [参数]\n"
+                + "  --engine=recursive|iterative|parallel  近交系数计算引擎 (默认 recursive)\n"
+                + "  --threads=N                    parallel 引擎的线程数 (默认为 CPU 核数)\n"
+                + "  --loader=default|streaming|csv|ancestors  系谱加载方式 (默认 default；ancestors 只逐代查询 --targets 的祖先)\n"
+                + "  --cattle-csv=文件 [--mapping-csv=文件]  csv 加载的系谱文件和映射文件 (与 LOAD DATA 导入的 CSV 格式相同)\n"
+                + "  --fetch-size=N                 streaming 加载的 fetch size (默认逐行流式，正数需要 useCursorFetch=true)\n"
+                + "  --sql-mapping[=true|false]     streaming 加载时在数据库端 LEFT JOIN 映射表\n"
+                + "  --write-back[=true|false]      将近交系数批量写回 cattle_info.inbreeding_coefficient\n"
+                + "  --write-batch=N                写回的批次 (事务) 大小 (默认 5000)\n"
+                + "  --incremental[=文件]           增量计算: 只重算新增/父母变化的个体及其后代 (默认状态文件 "
+                + DEFAULT_STATE_FILE + ")\n"
+                + "  --checkpoint[=文件]            计算期间定期在后台保存已完成的近交系数 (默认文件 "
+                + DEFAULT_CHECKPOINT_FILE + ")，正常结束后删除\n"
+                + "  --checkpoint-interval=秒       检查点的最短间隔 (默认 300)\n"
+                + "  --resume[=true|false]          从检查点恢复: 跳过已完成的个体，继续计算 (系谱必须与检查点一致)\n"
+                + "  --coancestry-cache-mb=N        递归引擎亲缘系数缓存的内存上限，单位 MB (默认为最大堆的 1/4)\n"
+                + "  --snapshot-in=文件             从系谱快照加载，不连接数据库\n"
+                + "  --snapshot-out=文件            运行结束后保存系谱快照 (含近交系数)\n"
+                + "  --use-cached-f[=true|false]    快照含近交系数时直接使用，不重新计算\n"
+                + "  --log-level=debug|info|warn|error  日志级别阈值 (默认 info)\n"
+                + "  --log-mode=detail|summary      detail 逐个体记录 (默认)；summary 只输出汇总统计和直方图\n"
+                + "  --mating-sires=文件 --mating-cows=文件  计算候选公牛 × 母牛的后代期望近交系数 (每行一个ID)\n"
+                + "  --mating-out=文件              选配结果文件 (默认 mating_matrix.tsv)\n"
+                + "  --mating-top-k=N               每头母牛只输出期望近交系数最低的 N 个选配 (默认 0 = 完整矩阵)\n"
+                + "  --ainv-out=文件                导出 A 逆矩阵的稀疏上三角 (.bin 结尾为二进制 CSR，否则为 \"行 列 值\" 文本)\n"
+                + "  --a-block=文件                 导出列表中个体之间的稠密 A 子矩阵 (每行一个ID)\n"
+                + "  --a-block-out=文件             稠密 A 子矩阵输出文件 (默认 a_block.tsv)\n"
+                + "  --targets=文件                 只计算列表中的个体 (每行一个ID): 在其祖先闭包上计算近交系数和两两亲缘系数\n"
+                + "  --targets-out=文件             目标个体的近交系数和亲缘系数矩阵 (默认 target_coancestry.tsv)\n"
+                + "  --reference-groups=文件[,文件...]  计算每个个体与各参考群体 (每行一个ID；all 表示全部个体) 的平均亲缘系数\n"
+                + "  --mean-coancestry-out=文件     平均亲缘系数输出文件 (默认 mean_coancestry.tsv)\n"
+                + "  --gene-drop[=N]                基因下落模拟 (最多 N 次重复，默认 " + DEFAULT_GENE_DROP_REPLICATES
+                + "): 祖先近交系数、奠基者基因组当量、等位基因保留率\n"
+                + "  --gene-drop-seed=N             基因下落的随机种子 (默认 20240101，相同种子结果相同)\n"
+                + "  --gene-drop-tolerance=x        置信区间半宽小于 x 时提前停止 (默认 0.001，0 表示跑满)\n"
+                + "  --gene-drop-reference=文件     基因下落的参考群体 (每行一个ID，默认为没有后代的个体)\n"
+                + "  --gene-drop-out=文件           基因下落结果文件 (默认 gene_drop.tsv)\n"
+                + "  --truncated-f[=代数,...]       同时计算完整 F、只考虑最近若干代祖先的 F (默认 5,10) 和 MacCluer 系谱完整度\n"
+                + "  --pec-generations=N            系谱完整度的代数 (默认 5)\n"
+                + "  --truncated-out=文件           截断近交系数和系谱完整度输出文件 (默认 truncated_inbreeding.tsv)\n"
+                + "  --herds=文件                   多牧场批量分析: 每行 \"名称 来源 [映射文件]\"，来源为 jdbc: URL 或 CSV 文件\n"
+                + "  --herd-out-dir=目录            多牧场批量分析时各牧场结果 (名称_inbreeding.tsv) 的目录 (默认当前目录)\n"
+                + "  --serve[=端口]                 常驻查询服务: 系谱和缓存常驻内存，在本机 HTTP 端口回答查询 (默认端口 "
+                + DEFAULT_SERVE_PORT + "，线程数同 --threads)\n"
+                + "  --metrics-out=文件             运行结束时写出 JSON 指标报告 (各阶段耗时、行/秒、缓存命中率、递归深度、NaN 数、堆)\n";
+    }
+
+    private static boolean parseFlag(String name, String value) {
+        if (value == null || value.trim().equalsIgnoreCase("true")) {
+            return true;
+        }
+        if (value.trim().equalsIgnoreCase("false")) {
+            return false;
+        }
+        throw new IllegalArgumentException("参数 " + name + " 的取值应为 true 或 false: " + value);
+    }
+
+    private static String parsePath(String name, String value) {
+        if (value == null || value.trim().isEmpty()) {
+            throw new IllegalArgumentException("参数 " + name + " 需要文件路径");
+        }
+        return value.trim();
+    }
+
+    /** 逗号分隔的代数列表，去重后从小到大排列 */
+    private static int[] parseGenerations(String name, String value) {
+        String[] parts = value.trim().split("\\s*,\\s*");
+        int[] generations = new int[parts.length];
+        for (int k = 0; k < parts.length; k++) {
+            generations[k] = parseInt(name, parts[k], 1, Integer.MAX_VALUE);
+            if (generations[k] > TruncatedInbreeding.MAX_GENERATIONS) {
+                throw new IllegalArgumentException("参数 " + name + " 的代数不能大于 "
+                        + TruncatedInbreeding.MAX_GENERATIONS + ": " + parts[k]);
+            }
+        }
+        return Arrays.stream(generations).sorted().distinct().toArray();
+    }
+
+    /** 不超过 max 的整数 (parseLong 之后再检查上限，超出 int 范围的值不会被截断) */
+    private static int parseInt(String name, String value, int min, int max) {
+        long parsed = parseLong(name, value, min);
+        if (parsed > max) {
+            throw new IllegalArgumentException("参数 " + name + " 不能大于 " + max + ": " + value);
+        }
+        return (int) parsed;
+    }
+
+    private static long parseLong(String name, String value, long min) {
+        if (value == null) {
+            throw new IllegalArgumentException("参数 " + name + " 需要取值");
+        }
+        try {
+            long parsed = Long.parseLong(value.trim());
+            if (parsed < min) {
+                throw new IllegalArgumentException("参数 " + name + " 不能小于 " + min + ": " + value);
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("参数 " + name + " 需要整数: " + value);
+        }
+    }
+
+    private static double parseDouble(String name, String value, double min) {
+        if (value == null) {
+            throw new IllegalArgumentException("参数 " + name + " 需要取值");
+        }
+        try {
+            double parsed = Double.parseDouble(value.trim());
+            if (!(parsed >= min) || Double.isInfinite(parsed)) {
+                throw new IllegalArgumentException("参数 " + name + " 不能小于 " + min + ": " + value);
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("参数 " + name + " 需要数值: " + value);
+        }
+    }
+
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, String name, String value) {
+        if (value == null) {
+            throw new IllegalArgumentException("参数 " + name + " 需要取值");
+        }
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("参数 " + name + " 的取值非法: " + value);
+        }
+    }
+}
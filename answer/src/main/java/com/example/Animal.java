@@ -7,9 +7,17 @@ class Animal {
 
     public Animal(String id, String sireId, String damId) {
         this.id = id;
-        // 将数据库中的 "0" 或 null 或空字符串视为空父/母号标记，并去除前后空格
-        this.sireId = (sireId == null || sireId.equals("0") || sireId.trim().isEmpty()) ? null : sireId.trim();
-        this.damId = (damId == null || damId.equals("0") || damId.trim().isEmpty()) ? null : damId.trim();
+        this.sireId = normalizeParentId(sireId);
+        this.damId = normalizeParentId(damId);
+    }
+
+    /**
+     * 将数据库中的 "0" 或 null 或空字符串视为空父/母号标记，并去除前后空格
+     * @param parentId 原始父/母号
+     * @return 处理后的父/母号，未知时返回 null
+     */
+    static String normalizeParentId(String parentId) {
+        return (parentId == null || parentId.equals("0") || parentId.trim().isEmpty()) ? null : parentId.trim();
     }
 
     // Getter 方法
@@ -0,0 +1,204 @@
+package com.example;
+
+/**
+ * 有内存上限的亲缘系数缓存，采用 CLOCK (二次机会) 淘汰策略
+ * 键和值存放在开放寻址 (线性探测) 的 long[] / double[] 数组中，每个条目约占 17 字节。
+ * 表在达到内存上限之前按需倍增；达到上限后，每写入一个新条目，时钟指针就淘汰一个近期未被访问的条目。
+ * 该类不是线程安全的，统计计数也只能在使用缓存的线程读取。
+ */
+public class ClockCoancestryCache implements CoancestryCache {
+    static final int BYTES_PER_SLOT = 8 + 8 + 1; // 键 + 值 + 访问标记
+    private static final int INITIAL_SLOTS = 1 << 10;
+
+    private final int maxSlots; // 内存上限对应的最大槽位数 (2 的幂)
+    private long[] keys; // 0 表示空槽位
+    private double[] values;
+    private boolean[] referenced; // CLOCK 访问标记
+    private int mask;
+    private int size;
+    private int hand; // 时钟指针
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param maxBytes 缓存可使用的最大内存 (字节)，Long.MAX_VALUE 表示只受数组长度限制
+     */
+    public ClockCoancestryCache(long maxBytes) {
+        int slots = 16;
+        while (slots < (1 << 30) && (long) slots * 2 * BYTES_PER_SLOT <= maxBytes) {
+            slots <<= 1;
+        }
+        this.maxSlots = slots;
+        allocate(Math.min(INITIAL_SLOTS, maxSlots));
+    }
+
+    /**
+     * 按 JVM 最大堆的一定比例确定缓存上限
+     * @param heapFraction 占最大堆的比例 (0, 1]
+     * @return 缓存实例
+     */
+    public static ClockCoancestryCache withHeapFraction(double heapFraction) {
+        return new ClockCoancestryCache((long) (Runtime.getRuntime().maxMemory() * heapFraction));
+    }
+
+    @Override
+    public double get(long key) {
+        int slot = slotOf(key);
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                referenced[slot] = true;
+                hits++;
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        misses++;
+        return Double.NaN;
+    }
+
+    @Override
+    public void put(long key, double value) {
+        int slot = slotOf(key);
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                referenced[slot] = true;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size >= maxEntries()) {
+            if (keys.length < maxSlots) {
+                allocate(keys.length * 2);
+            } else {
+                evictOne();
+            }
+            // 扩容或删除都会移动条目，重新定位空槽位
+            slot = slotOf(key);
+            while (keys[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        referenced[slot] = false; // 新条目需要被再次访问才能获得 "二次机会"
+        size++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long hits() {
+        return hits;
+    }
+
+    @Override
+    public long misses() {
+        return misses;
+    }
+
+    @Override
+    public long evictions() {
+        return evictions;
+    }
+
+    /** 内存上限允许的最大条目数量 */
+    public int capacity() {
+        return maxSlots / 4 * 3;
+    }
+
+    @Override
+    public void clear() {
+        keys = null;
+        allocate(Math.min(INITIAL_SLOTS, maxSlots));
+    }
+
+    private int maxEntries() {
+        return keys.length / 4 * 3; // 负载因子 0.75
+    }
+
+    /** 分配新表 (容量为 slots)，并迁移已有条目 */
+    private void allocate(int slots) {
+        long[] oldKeys = keys;
+        double[] oldValues = values;
+        boolean[] oldReferenced = referenced;
+        keys = new long[slots];
+        values = new double[slots];
+        referenced = new boolean[slots];
+        mask = slots - 1;
+        hand = 0;
+        size = 0;
+        if (oldKeys == null) {
+            return;
+        }
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = slotOf(oldKeys[i]);
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+                referenced[slot] = oldReferenced[i];
+                size++;
+            }
+        }
+    }
+
+    /** 时钟指针前进，清除访问标记，直到找到一个未被访问的条目并淘汰它 */
+    private void evictOne() {
+        while (true) {
+            int slot = hand;
+            hand = (hand + 1) & mask;
+            if (keys[slot] == 0) {
+                continue;
+            }
+            if (referenced[slot]) {
+                referenced[slot] = false;
+                continue;
+            }
+            remove(slot);
+            evictions++;
+            return;
+        }
+    }
+
+    /** 删除槽位上的条目，并将后续探测链上的条目前移 (线性探测的反向移位删除) */
+    private void remove(int slot) {
+        int hole = slot;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            long key = keys[next];
+            if (key == 0) {
+                break;
+            }
+            int home = slotOf(key);
+            // home 循环地落在 (hole, next] 之间时，该条目不能移到 hole
+            boolean stays = hole <= next ? (hole < home && home <= next) : (hole < home || home <= next);
+            if (!stays) {
+                keys[hole] = key;
+                values[hole] = values[next];
+                referenced[hole] = referenced[next];
+                hole = next;
+            }
+        }
+        keys[hole] = 0;
+        referenced[hole] = false;
+        size--;
+    }
+
+    private int slotOf(long key) {
+        // MurmurHash3 fmix64，使高位 (较小编号) 与低位 (较大编号) 充分混合
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+        return (int) key & mask;
+    }
+}
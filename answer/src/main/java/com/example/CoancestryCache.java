@@ -0,0 +1,50 @@
+package com.example;
+
+/**
+ * 亲缘系数缓存
+ * 键为两个个体编号打包而成的 long (与顺序无关)，值为 double 原始类型，避免每次查询创建键对象和 Double 对象。
+ * 实现类可以限制内存并自行决定淘汰策略；被淘汰的条目只会导致重新计算，不影响结果。
+ */
+public interface CoancestryCache {
+
+    /**
+     * 将两个个体编号打包为缓存键，(a, b) 与 (b, a) 得到相同的键
+     * @param a 第一个个体编号 (非负)
+     * @param b 第二个个体编号 (非负)
+     * @return 缓存键，较小的编号在高 32 位
+     */
+    static long key(int a, int b) {
+        int lo = Math.min(a, b);
+        int hi = Math.max(a, b);
+        return ((long) lo << 32) | (hi & 0xFFFFFFFFL);
+    }
+
+    /**
+     * 查询缓存
+     * @param key 由 {@link #key(int, int)} 生成的键 (不能为 0)
+     * @return 缓存的亲缘系数，未命中时返回 Double.NaN
+     */
+    double get(long key);
+
+    /**
+     * 写入缓存，必要时淘汰旧条目
+     * @param key 由 {@link #key(int, int)} 生成的键 (不能为 0)
+     * @param value 亲缘系数
+     */
+    void put(long key, double value);
+
+    /** 当前条目数量 */
+    int size();
+
+    /** 命中次数 */
+    long hits();
+
+    /** 未命中次数 */
+    long misses();
+
+    /** 因容量限制被淘汰的条目数量 */
+    long evictions();
+
+    /** 清空缓存 (统计计数保留) */
+    void clear();
+}
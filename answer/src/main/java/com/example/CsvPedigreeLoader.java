@@ -0,0 +1,451 @@
+package com.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * 直接从 CSV 文件加载系谱 (不经过 MySQL)
+ * 文件格式与 cow_setting.session.sql 中 LOAD DATA LOCAL INFILE 的设置一致:
+ * UTF-8，逗号分隔，字段可用双引号包围 (内部 "" 表示一个双引号)，反斜杠转义，'\n' 换行，第一行为表头。
+ *   系谱文件 (cattle_info):   standard_id, birth_date, sire_id, dam_id, ...
+ *   映射文件 (num_comp_tb):   ear_num, id, standard_id
+ *
+ * 文件按行边界切成若干段，每段单独内存映射后在 ForkJoinPool 上并行解析；只为需要的列创建 String,
+ * 其他列直接跳过，空值和 "0" 不分配新对象。解析结果按文件顺序写入 PedigreeIndex.Builder。
+ * 规则与 loadPedigreeFromDB 相同 (去除前后空格、"0"/空值为未知、父/母号经 IdAliasResolver 解析为标准牛号)，另外:
+ *   - standard_id 重复时以第一条为准 (LOAD DATA LOCAL 遇到重复主键时跳过后来的行)；
+ *   - 映射表重复的内部ID以最后一条为准 (与 loadIdMappingFromDB 相同)。
+ * 切分位置假定换行符不会出现在引号内的字段中 (牛号不含换行)。
+ */
+public class CsvPedigreeLoader {
+    static final int CATTLE_ID_COLUMN = 0; // standard_id
+    static final int CATTLE_SIRE_COLUMN = 2; // sire_id
+    static final int CATTLE_DAM_COLUMN = 3; // dam_id
+    static final int MAPPING_INTERNAL_ID_COLUMN = 1; // id (母牛编号)
+    static final int MAPPING_STANDARD_ID_COLUMN = 2; // standard_id
+    private static final long TARGET_CHUNK_BYTES = 64L << 20; // 每段的目标大小
+    private static final long MIN_CHUNK_BYTES = 1L << 20; // 每段的最小大小 (小文件不切得过细)
+    private static final long MAX_CHUNK_BYTES = 1L << 30; // 单次映射的上限 (MappedByteBuffer 最大 2GB)
+
+    private final int parallelism;
+    private final long minChunkBytes;
+    private final AnalysisLog logger; // 日志
+
+    /**
+     * 构造函数
+     * @param parallelism 并行解析的线程数
+     * @param logger 日志实例
+     */
+    public CsvPedigreeLoader(int parallelism, AnalysisLog logger) {
+        this(parallelism, MIN_CHUNK_BYTES, logger);
+    }
+
+    /**
+     * @param parallelism 并行解析的线程数
+     * @param minChunkBytes 每段的最小字节数 (测试中用较小的值把小文件切成多段)
+     * @param logger 日志实例
+     */
+    CsvPedigreeLoader(int parallelism, long minChunkBytes, AnalysisLog logger) {
+        this.parallelism = Math.max(1, parallelism);
+        this.minChunkBytes = Math.max(1, minChunkBytes);
+        this.logger = logger;
+    }
+
+    /**
+     * 读取映射文件 (num_comp_tb 的 CSV)
+     * @param file 映射 CSV 文件
+     * @return Map<内部ID/母牛编号, 标准ID>
+     * @throws IOException 读取失败时抛出
+     */
+    public Map<String, String> loadIdMapping(Path file) throws IOException {
+        long start = System.nanoTime();
+        List<Rows> chunks = parse(file, new int[]{MAPPING_INTERNAL_ID_COLUMN, MAPPING_STANDARD_ID_COLUMN}, null);
+        Map<String, String> idMapping = new HashMap<>();
+        int duplicateCount = 0;
+        for (Rows rows : chunks) {
+            for (int r = 0; r < rows.count; r++) {
+                String internalId = rows.values[2 * r];
+                String standardId = rows.values[2 * r + 1];
+                if (internalId.isEmpty() || standardId.isEmpty()) {
+                    continue;
+                }
+                if (idMapping.put(internalId, standardId) != null) {
+                    duplicateCount++;
+                }
+            }
+        }
+        logInfo(String.format("从 %s 加载了 %d 条有效 ID 映射记录，耗时 %d ms。", file, idMapping.size(),
+                (System.nanoTime() - start) / 1_000_000));
+        if (duplicateCount > 0) {
+            logWarn("共发现 " + duplicateCount + " 个重复的内部 ID，已使用最后读取到的映射。");
+        }
+        return idMapping;
+    }
+
+    /**
+     * 读取系谱文件 (cattle_info 的 CSV)，父/母号在解析线程中解析为标准牛号
+     * @param file 系谱 CSV 文件
+     * @param aliases 别名解析 (只读，各解析线程共用)
+     * @return 整数编号系谱
+     * @throws IOException 读取失败时抛出
+     */
+    public PedigreeIndex loadPedigree(Path file, IdAliasResolver aliases) throws IOException {
+        return loadRecords(file, aliases).build();
+    }
+
+    /**
+     * 解析系谱文件，返回尚未构建的系谱记录 (父/母号不要求在本文件中，供多牧场合并使用)
+     * @param file cattle_info 格式的 CSV 文件
+     * @param aliases 别名解析 (只读，各解析线程共用)
+     * @return 系谱记录
+     * @throws IOException 读取失败时抛出
+     */
+    public PedigreeIndex.Builder loadRecords(Path file, IdAliasResolver aliases) throws IOException {
+        long start = System.nanoTime();
+        List<Rows> chunks = parse(file, new int[]{CATTLE_ID_COLUMN, CATTLE_SIRE_COLUMN, CATTLE_DAM_COLUMN}, aliases);
+        int recordCount = 0;
+        int expected = 0;
+        for (Rows rows : chunks) {
+            expected += rows.count;
+        }
+        PedigreeIndex.Builder builder = new PedigreeIndex.Builder(expected);
+        int skippedCount = 0;
+        int duplicateCount = 0;
+        int mappedSireCount = 0;
+        int mappedDamCount = 0;
+        for (Rows rows : chunks) {
+            recordCount += rows.count;
+            mappedSireCount += rows.mappedSires;
+            mappedDamCount += rows.mappedDams;
+            for (int r = 0; r < rows.count; r++) {
+                String id = rows.values[3 * r];
+                if (id.isEmpty()) {
+                    skippedCount++;
+                } else if (builder.contains(id)) {
+                    duplicateCount++;
+                } else {
+                    builder.add(id, rows.values[3 * r + 1], rows.values[3 * r + 2]);
+                }
+            }
+        }
+        logInfo(String.format("处理了 %d 条来自 %s 的记录。加载了 %d 个有效个体，耗时 %d ms。",
+                recordCount, file, builder.size(), (System.nanoTime() - start) / 1_000_000));
+        if (skippedCount > 0) {
+            logWarn(String.format("有 %d 条记录的个体标准ID为空或仅包含空格，已跳过。", skippedCount));
+        }
+        if (duplicateCount > 0) {
+            logWarn(String.format("有 %d 条记录的个体标准ID与前面的记录重复，已按第一条为准 (与 LOAD DATA 导入一致)。",
+                    duplicateCount));
+        }
+        logInfo(String.format("共映射了 %d 个父号和 %d 个母号。", mappedSireCount, mappedDamCount));
+        return aliases.canonicalizeRecords(builder);
+    }
+
+    /** 一段文件的解析结果: 每行按 columns 的顺序存放所需列 (已去除前后空格，NULL 记为空字符串) */
+    private static final class Rows {
+        String[] values = new String[0];
+        int count;
+        int mappedSires;
+        int mappedDams;
+    }
+
+    /**
+     * 切分文件并并行解析
+     * @param aliases 非 null 时，第 2、3 个所需列 (父号、母号) 解析为标准牛号
+     */
+    private List<Rows> parse(Path file, int[] columns, IdAliasResolver aliases) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long first = nextLineStart(channel, 0); // 跳过表头
+            int chunkCount = (int) Math.max(1, Math.min((size - first) / minChunkBytes + 1, // 小文件不切得过细
+                    Math.max(parallelism * 4L, (size - first) / TARGET_CHUNK_BYTES + 1)));
+            long[] bounds = new long[chunkCount + 1];
+            bounds[0] = first;
+            for (int c = 1; c < chunkCount; c++) {
+                long nominal = first + (size - first) * c / chunkCount;
+                bounds[c] = Math.max(bounds[c - 1], nextLineStart(channel, nominal));
+            }
+            bounds[chunkCount] = size;
+
+            List<Callable<Rows>> calls = new ArrayList<>(chunkCount);
+            for (int c = 0; c < chunkCount; c++) {
+                long from = bounds[c];
+                long to = bounds[c + 1];
+                if (to - from > MAX_CHUNK_BYTES) {
+                    throw new IOException("CSV 文件中有超过 " + MAX_CHUNK_BYTES + " 字节的单行或切分失败: " + file);
+                }
+                calls.add(() -> {
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+                    return new ChunkParser(buffer, columns, aliases).parse();
+                });
+            }
+            return runAll(calls);
+        }
+    }
+
+    private List<Rows> runAll(List<Callable<Rows>> calls) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(Math.min(parallelism, calls.size()));
+        try {
+            List<Rows> results = new ArrayList<>(calls.size());
+            for (Future<Rows> future : pool.invokeAll(calls)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("CSV 解析被中断", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("CSV 解析失败", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** position 所在行之后下一行的起点 (position 为 0 时返回第二行的起点)；没有换行时返回文件末尾 */
+    private static long nextLineStart(FileChannel channel, long position) throws IOException {
+        ByteBuffer window = ByteBuffer.allocate(8192);
+        long pos = position;
+        while (true) {
+            window.clear();
+            int read = channel.read(window, pos);
+            if (read <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                if (window.get(i) == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += read;
+        }
+    }
+
+    /** 解析一段 (从行首开始、在行尾结束) 的 CSV */
+    private static final class ChunkParser {
+        private final ByteBuffer buffer;
+        private final int[] wanted; // 所需列号 -> 在行内的位置, -1 表示跳过
+        private final int width;
+        private final IdAliasResolver aliases;
+        private final String[] current;
+        private byte[] scratch = new byte[256]; // 字段字节的复制缓冲区 (逐段复用)
+        private final Rows rows = new Rows();
+
+        ChunkParser(ByteBuffer buffer, int[] columns, IdAliasResolver aliases) {
+            this.buffer = buffer;
+            int maxColumn = 0;
+            for (int column : columns) {
+                maxColumn = Math.max(maxColumn, column);
+            }
+            this.wanted = new int[maxColumn + 1];
+            Arrays.fill(wanted, -1);
+            for (int k = 0; k < columns.length; k++) {
+                wanted[columns[k]] = k;
+            }
+            this.width = columns.length;
+            this.aliases = aliases;
+            this.current = new String[width];
+            rows.values = new String[width * Math.max(16, buffer.limit() / 64)]; // 按每行约 64 字节预估
+        }
+
+        Rows parse() {
+            int limit = buffer.limit();
+            int pos = 0;
+            while (pos < limit) {
+                Arrays.fill(current, "");
+                int column = 0;
+                while (true) {
+                    int slot = column < wanted.length ? wanted[column] : -1;
+                    pos = slot >= 0 ? readField(pos, limit, slot) : skipField(pos, limit);
+                    if (pos < limit && buffer.get(pos) == ',') {
+                        pos++;
+                        column++;
+                        continue;
+                    }
+                    pos++; // 换行符 (或文件末尾)
+                    break;
+                }
+                addRow();
+            }
+            return rows;
+        }
+
+        private void addRow() {
+            if ((rows.count + 1) * width > rows.values.length) {
+                rows.values = Arrays.copyOf(rows.values, rows.values.length * 2);
+            }
+            if (aliases != null) {
+                String sire = aliases.resolve(current[1]);
+                String dam = aliases.resolve(current[2]);
+                if (!sire.equals(current[1])) {
+                    rows.mappedSires++;
+                }
+                if (!dam.equals(current[2])) {
+                    rows.mappedDams++;
+                }
+                current[1] = sire;
+                current[2] = dam;
+            }
+            System.arraycopy(current, 0, rows.values, rows.count * width, width);
+            rows.count++;
+        }
+
+        /** 跳过一个字段，返回分隔符 (',' 或 '\n') 或末尾的位置 */
+        private int skipField(int pos, int limit) {
+            boolean quoted = pos < limit && buffer.get(pos) == '"';
+            if (quoted) {
+                pos++;
+                while (pos < limit) {
+                    byte b = buffer.get(pos);
+                    if (b == '\\') {
+                        pos += 2;
+                    } else if (b == '"') {
+                        pos++;
+                        if (pos < limit && buffer.get(pos) == '"') {
+                            pos++; // "" 为字段内的双引号
+                        } else {
+                            break;
+                        }
+                    } else {
+                        pos++;
+                    }
+                }
+            }
+            while (pos < limit) {
+                byte b = buffer.get(pos);
+                if (b == ',' || b == '\n') {
+                    break;
+                }
+                pos += b == '\\' ? 2 : 1;
+            }
+            return Math.min(pos, limit);
+        }
+
+        /** 读取一个所需字段到 current[slot]，返回分隔符或末尾的位置 */
+        private int readField(int pos, int limit, int slot) {
+            int length = 0;
+            if (pos < limit && buffer.get(pos) == '"') {
+                pos++;
+                while (pos < limit) {
+                    byte b = buffer.get(pos);
+                    if (b == '\\' && pos + 1 < limit) {
+                        length = append(length, unescape(buffer.get(pos + 1)));
+                        pos += 2;
+                    } else if (b == '"') {
+                        pos++;
+                        if (pos < limit && buffer.get(pos) == '"') {
+                            length = append(length, (byte) '"');
+                            pos++;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        length = append(length, b);
+                        pos++;
+                    }
+                }
+            }
+            while (pos < limit) {
+                byte b = buffer.get(pos);
+                if (b == ',' || b == '\n') {
+                    break;
+                }
+                if (b == '\\' && pos + 1 < limit) {
+                    if (buffer.get(pos + 1) == 'N' && length == 0) {
+                        pos += 2; // \N 表示 NULL，按空值处理
+                        continue;
+                    }
+                    length = append(length, unescape(buffer.get(pos + 1)));
+                    pos += 2;
+                    continue;
+                }
+                length = append(length, b);
+                pos++;
+            }
+            current[slot] = toTrimmedString(length);
+            return pos;
+        }
+
+        private int append(int length, byte b) {
+            if (length == scratch.length) {
+                scratch = Arrays.copyOf(scratch, length * 2);
+            }
+            scratch[length] = b;
+            return length + 1;
+        }
+
+        /** 按 String.trim() 的规则去除前后空白 (<= ' ' 的字节) 后创建字符串，空值和 "0" 不分配新对象 */
+        private String toTrimmedString(int length) {
+            int from = 0;
+            int to = length;
+            while (from < to && (scratch[from] & 0xFF) <= ' ') {
+                from++;
+            }
+            while (to > from && (scratch[to - 1] & 0xFF) <= ' ') {
+                to--;
+            }
+            if (from == to) {
+                return "";
+            }
+            if (to - from == 1 && scratch[from] == '0') {
+                return "0";
+            }
+            return new String(scratch, from, to - from, StandardCharsets.UTF_8);
+        }
+
+        /** MySQL LOAD DATA 的转义序列 */
+        private static byte unescape(byte b) {
+            switch (b) {
+                case '0':
+                    return 0;
+                case 'b':
+                    return '\b';
+                case 'n':
+                    return '\n';
+                case 'r':
+                    return '\r';
+                case 't':
+                    return '\t';
+                case 'Z':
+                    return 0x1A;
+                default:
+                    return b;
+            }
+        }
+    }
+
+    // --- 日志辅助方法 (内部使用) ---
+    /** 记录普通信息 */
+    private void logInfo(String message) {
+        if (logger != null) {
+            logger.info("CsvLoader", message);
+        } else {
+            System.out.println("INFO (CsvLoader - Logger unavailable): " + message); // 后备方案
+        }
+    }
+
+    /** 记录警告信息 */
+    private void logWarn(String message) {
+        if (logger != null) {
+            logger.warn("CsvLoader", message);
+        } else {
+            System.err.println("WARN (CsvLoader - Logger unavailable): " + message); // 后备方案
+        }
+    }
+}
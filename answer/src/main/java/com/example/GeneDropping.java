@@ -0,0 +1,399 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 基因下落 (gene dropping) 蒙特卡罗模拟
+ * 每次重复给每个未知亲本位置分配一个唯一的奠基者等位基因，按拓扑顺序让每个个体从父、母各随机继承一个，
+ * 由此估计 Wright 近交系数、Ballou (1997) 祖先近交系数、奠基者基因组当量和奠基者等位基因保留率:
+ *   F_i        = 个体 i 两个等位基因同源的重复比例；
+ *   F_a,i      = 个体 i 的等位基因在某个祖先中曾经处于纯合 (同源) 状态的比例 (每个等位基因带一个标记，
+ *                个体纯合时标记其两个等位基因，并随等位基因传给后代)；
+ *   fge        = 1 / (2 Σ p_j²)，p_j 为奠基者等位基因 j 在参考群体中的频率 (取各重复的平均 Σ p_j²)；
+ *   保留率     = 奠基者的等位基因在参考群体中仍然存在的重复比例。
+ *
+ * 重复按固定大小的块划分，每块使用从种子依次 split() 出来的 SplittableRandom，
+ * 块分配到各线程执行，结果只与种子和重复次数有关，与线程数和调度顺序无关。
+ * 每个线程只分配一次工作数组，单次重复不分配内存；每个随机数 (64 位) 供 32 个个体选择父、母等位基因。
+ * 每轮结束后用块均值 (batch means) 估计参考群体平均 F、平均 F_a 和 Σ p_j² 的 95% 置信区间，
+ * 三者的半宽都小于容差时提前停止。处于系谱循环中 (无法排序) 的个体不参与模拟，结果为 NaN。
+ */
+public class GeneDropping {
+    static final int BLOCK_SIZE = 100; // 每块的重复次数
+    static final int ROUND_BLOCKS = 16; // 每轮的块数 (每轮结束后检查是否可以停止)
+    static final int MIN_BLOCKS = 16; // 估计置信区间前至少完成的块数
+    private static final int ANCESTRAL = 0x80000000; // 等位基因的 "曾在祖先中纯合" 标记 (最高位)
+    private static final int ALLELE_MASK = 0x7FFFFFFF;
+    private static final double Z_95 = 1.959964;
+
+    /** 模拟结果 */
+    public static final class Result {
+        private final int replicates;
+        private final int[] homozygous; // 个体纯合的重复次数
+        private final int[] ancestral; // 个体带祖先纯合标记的等位基因数 (每次重复 0..2)
+        private final int[] survived; // 奠基者等位基因 (按 2i / 2i+1 编号) 在参考群体中存在的重复次数
+        private final int sortedCount;
+        private final int referenceSize;
+        private final double meanSumSquares; // 各重复 Σ p_j² 的平均
+        private final double[] halfWidths; // 参考群体平均 F、平均 F_a、Σ p_j² 的 95% 置信区间半宽
+        private final long nanos;
+
+        Result(int replicates, int[] homozygous, int[] ancestral, int[] survived, int sortedCount, int referenceSize,
+               double meanSumSquares, double[] halfWidths, long nanos) {
+            this.replicates = replicates;
+            this.homozygous = homozygous;
+            this.ancestral = ancestral;
+            this.survived = survived;
+            this.sortedCount = sortedCount;
+            this.referenceSize = referenceSize;
+            this.meanSumSquares = meanSumSquares;
+            this.halfWidths = halfWidths;
+            this.nanos = nanos;
+        }
+
+        /** 实际完成的重复次数 */
+        public int getReplicates() {
+            return replicates;
+        }
+
+        /** 参考群体个体数量 */
+        public int getReferenceSize() {
+            return referenceSize;
+        }
+
+        /** 模拟耗时 (纳秒) */
+        public long getNanos() {
+            return nanos;
+        }
+
+        /** 模拟估计的近交系数 */
+        public double getInbreeding(int animal) {
+            return animal > sortedCount ? Double.NaN : (double) homozygous[animal] / replicates;
+        }
+
+        /** Ballou 祖先近交系数 */
+        public double getAncestralInbreeding(int animal) {
+            return animal > sortedCount ? Double.NaN : ancestral[animal] / (2.0 * replicates);
+        }
+
+        /**
+         * 奠基者等位基因保留率: 个体在未知亲本位置上的奠基者等位基因在参考群体中仍然存在的概率
+         * @return 父母都已知 (不是奠基者) 或处于系谱循环中时为 NaN
+         */
+        public double getRetention(PedigreeIndex pedigree, int animal) {
+            if (animal > sortedCount) {
+                return Double.NaN;
+            }
+            int slots = 0;
+            long count = 0;
+            if (pedigree.getSire(animal) == 0) {
+                slots++;
+                count += survived[2 * animal];
+            }
+            if (pedigree.getDam(animal) == 0) {
+                slots++;
+                count += survived[2 * animal + 1];
+            }
+            return slots == 0 ? Double.NaN : (double) count / ((long) slots * replicates);
+        }
+
+        /** 奠基者基因组当量 fge = 1 / (2 Σ p_j²) */
+        public double getFounderGenomeEquivalents() {
+            return meanSumSquares > 0 ? 1.0 / (2.0 * meanSumSquares) : Double.NaN;
+        }
+
+        /** 参考群体的期望遗传多样性 1 - Σ p_j² */
+        public double getGeneDiversity() {
+            return 1.0 - meanSumSquares;
+        }
+
+        /** 参考群体中仍然存在的奠基者等位基因的期望数量 */
+        public double getExpectedAllelesRetained() {
+            long total = 0;
+            for (int count : survived) {
+                total += count;
+            }
+            return (double) total / replicates;
+        }
+
+        /** 参考群体平均 F、平均 F_a、Σ p_j² 的 95% 置信区间半宽 (块数不足时为 NaN) */
+        public double[] getHalfWidths() {
+            return halfWidths;
+        }
+    }
+
+    private final PedigreeIndex pedigree;
+    private final int parallelism;
+    private final AnalysisLog logger; // 日志
+
+    /**
+     * 构造函数
+     * @param pedigree 整数编号系谱 (只模拟拓扑有序的个体)
+     * @param parallelism 并行线程数
+     * @param logger 日志实例
+     */
+    public GeneDropping(PedigreeIndex pedigree, int parallelism, AnalysisLog logger) {
+        this.pedigree = pedigree;
+        this.parallelism = Math.max(1, parallelism);
+        this.logger = logger;
+    }
+
+    /**
+     * 运行模拟
+     * @param maxReplicates 最多重复次数 (向上取整到 BLOCK_SIZE 的倍数)
+     * @param seed 随机种子
+     * @param tolerance 95% 置信区间半宽的容差，0 表示不提前停止
+     * @param reference 参考群体成员标记 (下标为个体编号)，null 表示没有后代的个体
+     * @return 模拟结果
+     * @throws Exception 计算线程失败时抛出
+     */
+    public Result run(int maxReplicates, long seed, double tolerance, boolean[] reference) throws Exception {
+        long start = System.nanoTime();
+        int m = pedigree.sortedCount();
+        boolean[] isReference = reference != null ? reference : withoutOffspring();
+        int[] referenceAnimals = members(isReference, m);
+
+        int maxBlocks = Math.max(1, (maxReplicates + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        double[][] blockStats = new double[maxBlocks][]; // 每块: 参考群体平均 F、平均 F_a、平均 Σ p_j²
+        SplittableRandom root = new SplittableRandom(seed);
+        Workspace[] workspaces = new Workspace[parallelism];
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        int blocks = 0;
+        double[] halfWidths = {Double.NaN, Double.NaN, Double.NaN};
+        try {
+            while (blocks < maxBlocks) {
+                int roundEnd = Math.min(maxBlocks, blocks + ROUND_BLOCKS);
+                SplittableRandom[] randoms = new SplittableRandom[roundEnd - blocks];
+                for (int b = 0; b < randoms.length; b++) {
+                    randoms[b] = root.split(); // 按块的顺序依次 split，与线程调度无关
+                }
+                AtomicInteger next = new AtomicInteger(blocks);
+                int first = blocks;
+                int end = roundEnd;
+                List<Callable<Void>> calls = new ArrayList<>(parallelism);
+                for (int w = 0; w < parallelism; w++) {
+                    int worker = w;
+                    calls.add(() -> {
+                        if (workspaces[worker] == null) {
+                            workspaces[worker] = new Workspace(m, referenceAnimals.length);
+                        }
+                        int b;
+                        while ((b = next.getAndIncrement()) < end) {
+                            blockStats[b] = workspaces[worker].runBlock(randoms[b - first], isReference, referenceAnimals);
+                        }
+                        return null;
+                    });
+                }
+                for (Future<Void> future : pool.invokeAll(calls)) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        throw cause instanceof Exception ? (Exception) cause : e;
+                    }
+                }
+                blocks = roundEnd;
+                if (blocks >= MIN_BLOCKS) {
+                    for (int s = 0; s < 3; s++) {
+                        halfWidths[s] = halfWidth(blockStats, blocks, s);
+                    }
+                    logDebug(String.format("基因下落: %d 次重复，95%% 置信区间半宽 F %.5f, F_a %.5f, Σp² %.5f",
+                            blocks * BLOCK_SIZE, halfWidths[0], halfWidths[1], halfWidths[2]));
+                    if (tolerance > 0 && halfWidths[0] < tolerance && halfWidths[1] < tolerance
+                            && halfWidths[2] < tolerance) {
+                        break;
+                    }
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        // 合并各线程的计数 (整数相加，与合并顺序无关)
+        int[] homozygous = new int[m + 1];
+        int[] ancestral = new int[m + 1];
+        int[] survived = new int[2 * (m + 1)];
+        for (Workspace workspace : workspaces) {
+            if (workspace == null) {
+                continue;
+            }
+            for (int i = 1; i <= m; i++) {
+                homozygous[i] += workspace.homozygous[i];
+                ancestral[i] += workspace.ancestral[i];
+            }
+            for (int j = 0; j < survived.length; j++) {
+                survived[j] += workspace.survived[j];
+            }
+        }
+        double sumSquares = 0.0;
+        for (int b = 0; b < blocks; b++) {
+            sumSquares += blockStats[b][2];
+        }
+        int replicates = blocks * BLOCK_SIZE;
+        Result result = new Result(replicates, homozygous, ancestral, survived, m, referenceAnimals.length,
+                sumSquares / blocks, halfWidths, System.nanoTime() - start);
+        logInfo(String.format("基因下落: %d 个个体 × %d 次重复 (上限 %d)，线程数 %d，耗时 %.1f s。",
+                m, replicates, maxBlocks * BLOCK_SIZE, parallelism, result.getNanos() / 1e9));
+        return result;
+    }
+
+    /** 没有后代的个体 (默认的参考群体，通常为最近的一代) */
+    private boolean[] withoutOffspring() {
+        int m = pedigree.sortedCount();
+        int[] sire = pedigree.sires();
+        int[] dam = pedigree.dams();
+        boolean[] leaf = new boolean[pedigree.size() + 1];
+        Arrays.fill(leaf, 1, m + 1, true);
+        for (int i = 1; i <= m; i++) {
+            leaf[sire[i]] = false;
+            leaf[dam[i]] = false;
+        }
+        leaf[0] = false;
+        return leaf;
+    }
+
+    private static int[] members(boolean[] flags, int m) {
+        int count = 0;
+        for (int i = 1; i <= m && i < flags.length; i++) {
+            if (flags[i]) {
+                count++;
+            }
+        }
+        int[] members = new int[count];
+        count = 0;
+        for (int i = 1; i <= m && i < flags.length; i++) {
+            if (flags[i]) {
+                members[count++] = i;
+            }
+        }
+        return members;
+    }
+
+    /** 第 stat 项块均值的 95% 置信区间半宽 */
+    private static double halfWidth(double[][] blockStats, int blocks, int stat) {
+        double mean = 0.0;
+        for (int b = 0; b < blocks; b++) {
+            mean += blockStats[b][stat];
+        }
+        mean /= blocks;
+        double variance = 0.0;
+        for (int b = 0; b < blocks; b++) {
+            double diff = blockStats[b][stat] - mean;
+            variance += diff * diff;
+        }
+        variance /= blocks - 1;
+        return Z_95 * Math.sqrt(variance / blocks);
+    }
+
+    /** 每个线程的工作数组和累计计数 (只分配一次) */
+    private final class Workspace {
+        private final int[] allele; // 个体 i 的两个等位基因在 2i, 2i+1 (最高位为祖先纯合标记)
+        private final int[] frequency; // 本次重复中奠基者等位基因在参考群体中的拷贝数
+        private final int[] touched; // 本次重复中出现过的奠基者等位基因 (用于清零)
+        final int[] homozygous;
+        final int[] ancestral;
+        final int[] survived;
+
+        Workspace(int m, int referenceSize) {
+            allele = new int[2 * (m + 1)];
+            frequency = new int[2 * (m + 1)];
+            touched = new int[2 * referenceSize];
+            homozygous = new int[m + 1];
+            ancestral = new int[m + 1];
+            survived = new int[2 * (m + 1)];
+        }
+
+        /**
+         * 运行一块 (BLOCK_SIZE 次重复)
+         * @return 本块参考群体的平均 F、平均 F_a 和平均 Σ p_j²
+         */
+        double[] runBlock(SplittableRandom random, boolean[] isReference, int[] referenceAnimals) {
+            int m = pedigree.sortedCount();
+            int[] sire = pedigree.sires();
+            int[] dam = pedigree.dams();
+            long referenceHomozygous = 0;
+            long referenceAncestral = 0;
+            double sumSquares = 0.0;
+            for (int r = 0; r < BLOCK_SIZE; r++) {
+                long bits = 0;
+                int bitsLeft = 0;
+                for (int i = 1; i <= m; i++) {
+                    if (bitsLeft == 0) {
+                        bits = random.nextLong();
+                        bitsLeft = 32;
+                    }
+                    bitsLeft--;
+                    int s = sire[i];
+                    int d = dam[i];
+                    // 未知亲本位置: 新的奠基者等位基因，编号即该位置 (2i 或 2i+1)
+                    int a1 = s == 0 ? 2 * i : allele[2 * s + (int) (bits & 1)];
+                    int a2 = d == 0 ? 2 * i + 1 : allele[2 * d + (int) ((bits >>> 1) & 1)];
+                    bits >>>= 2;
+                    int flags = (a1 >>> 31) + (a2 >>> 31);
+                    ancestral[i] += flags;
+                    boolean ibd = ((a1 ^ a2) & ALLELE_MASK) == 0;
+                    if (ibd) {
+                        homozygous[i]++;
+                        a1 |= ANCESTRAL; // 传给后代的等位基因都曾在祖先中纯合
+                        a2 |= ANCESTRAL;
+                    }
+                    if (isReference[i]) {
+                        referenceHomozygous += ibd ? 1 : 0;
+                        referenceAncestral += flags;
+                    }
+                    allele[2 * i] = a1;
+                    allele[2 * i + 1] = a2;
+                }
+                // 参考群体中奠基者等位基因的频率
+                int distinct = 0;
+                for (int animal : referenceAnimals) {
+                    for (int k = 0; k < 2; k++) {
+                        int id = allele[2 * animal + k] & ALLELE_MASK;
+                        if (frequency[id]++ == 0) {
+                            touched[distinct++] = id;
+                        }
+                    }
+                }
+                double copies = 2.0 * referenceAnimals.length;
+                double squares = 0.0;
+                for (int t = 0; t < distinct; t++) {
+                    int id = touched[t];
+                    double p = frequency[id] / copies;
+                    squares += p * p;
+                    survived[id]++;
+                    frequency[id] = 0;
+                }
+                sumSquares += squares;
+            }
+            double samples = (double) BLOCK_SIZE * Math.max(1, referenceAnimals.length);
+            return new double[]{referenceHomozygous / samples, referenceAncestral / (2.0 * samples),
+                    sumSquares / BLOCK_SIZE};
+        }
+    }
+
+    // --- 日志辅助方法 (内部使用) ---
+    /** 记录普通信息 */
+    private void logInfo(String message) {
+        if (logger != null) {
+            logger.info("GeneDropping", message);
+        } else {
+            System.out.println("INFO (GeneDropping - Logger unavailable): " + message); // 后备方案
+        }
+    }
+
+    /** 记录调试信息 */
+    private void logDebug(String message) {
+        if (logger != null) {
+            logger.debug("GeneDropping", message);
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package com.example;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 多牧场批量分析
+ * 各牧场的系谱 (数据库或 CSV) 并发加载，各自先按本牧场的 num_comp_tb 映射把父/母号解析为标准牛号，
+ * 再按标准牛号合并为一个共同的系谱。合并使用各牧场的原始记录 (PedigreeIndex.Builder)，
+ * 父/母号不必在本牧场中: 只在其他牧场中有记录的公牛也能连接起来。所有牧场共用一个计算引擎，
+ * 人工授精公牛及其祖先的近交系数和亲缘系数只计算一次 (递归引擎的缓存在牧场之间共享)，
+ * 结果仍按牧场分别汇总和输出。
+ *
+ * 同一个体出现在多个牧场时 (例如共用的公牛)，取已知父母较多的记录，相同时取列表中靠前的牧场；
+ * 父母不一致的情况只统计并记录示例。
+ */
+public class HerdBatch {
+    private static final int CONFLICT_SAMPLES = 20; // 记录的父母不一致示例数量
+
+    /** 牧场列表中的一个牧场 */
+    static final class Herd {
+        final String name;
+        final String source; // jdbc: 开头为数据库 URL，否则为 cattle_info 格式的 CSV 文件
+        final String mappingFile; // CSV 牧场的 num_comp_tb 格式映射文件，null 表示不映射
+        PedigreeIndex.Builder records; // 本牧场的系谱记录 (父/母号已映射为标准牛号)
+        int[] animals; // 本牧场个体在合并系谱中的编号
+
+        Herd(String name, String source, String mappingFile) {
+            this.name = name;
+            this.source = source;
+            this.mappingFile = mappingFile;
+        }
+
+        /** 是否为数据库牧场 */
+        boolean isDatabase() {
+            return source.startsWith("jdbc:");
+        }
+    }
+
+    /** 加载一个牧场的系谱 */
+    interface HerdLoader {
+        PedigreeIndex.Builder load(Herd herd) throws Exception;
+    }
+
+    private final List<Herd> herds;
+    private final int parallelism;
+    private final AnalysisLog logger; // 日志
+    private int conflictCount;
+
+    /**
+     * 构造函数
+     * @param herds 牧场列表 (见 readHerdList)
+     * @param parallelism 并发加载的牧场数量上限
+     * @param logger 日志实例
+     */
+    public HerdBatch(List<Herd> herds, int parallelism, AnalysisLog logger) {
+        this.herds = herds;
+        this.parallelism = Math.max(1, parallelism);
+        this.logger = logger;
+    }
+
+    /**
+     * 读取牧场列表文件: 每行 "名称 来源 [映射文件]"，以空白分隔，忽略空行和 # 开头的行
+     * 来源以 jdbc: 开头时为数据库 URL (映射表为该库的 num_comp_tb)，否则为 cattle_info 格式的 CSV 文件。
+     * @param file 列表文件
+     * @return 牧场列表
+     * @throws IOException 读取失败或格式错误时抛出
+     */
+    static List<Herd> readHerdList(Path file) throws IOException {
+        List<Herd> herds = new ArrayList<>();
+        Map<String, Integer> names = new HashMap<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            lineNumber++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            String[] fields = trimmed.split("\\s+");
+            if (fields.length < 2 || fields.length > 3) {
+                throw new IOException(String.format("%s 第 %d 行格式错误 (应为 \"名称 来源 [映射文件]\"): %s",
+                        file, lineNumber, line));
+            }
+            if (names.put(fields[0], lineNumber) != null) {
+                throw new IOException(String.format("%s 第 %d 行的牧场名称重复: %s", file, lineNumber, fields[0]));
+            }
+            herds.add(new Herd(fields[0], fields[1], fields.length == 3 ? fields[2] : null));
+        }
+        return herds;
+    }
+
+    /** 牧场列表 */
+    List<Herd> getHerds() {
+        return herds;
+    }
+
+    /** 合并时父母不一致的个体数量 */
+    int getConflictCount() {
+        return conflictCount;
+    }
+
+    /**
+     * 并发加载全部牧场
+     * @param loader 牧场加载方法
+     * @throws Exception 任一牧场加载失败时抛出 (不使用不完整的数据继续计算)
+     */
+    void loadAll(HerdLoader loader) throws Exception {
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallelism, Math.max(1, herds.size())));
+        try {
+            List<Future<PedigreeIndex.Builder>> futures = new ArrayList<>(herds.size());
+            for (Herd herd : herds) {
+                futures.add(pool.submit((Callable<PedigreeIndex.Builder>) () -> loader.load(herd)));
+            }
+            for (int h = 0; h < herds.size(); h++) {
+                Herd herd = herds.get(h);
+                try {
+                    herd.records = futures.get(h).get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw new Exception("牧场 " + herd.name + " 加载失败: " + cause.getMessage(), cause);
+                }
+                logInfo(String.format("牧场 %s: 加载了 %d 个个体 (%s)。", herd.name, herd.records.size(), herd.source));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        logInfo(String.format("并发加载了 %d 个牧场，耗时 %d ms。", herds.size(), (System.nanoTime() - start) / 1_000_000));
+    }
+
+    /**
+     * 按标准牛号合并各牧场的系谱，并确定每个牧场的个体在合并系谱中的编号
+     * @return 合并后的系谱
+     */
+    PedigreeIndex merge() {
+        Map<String, String[]> records = new HashMap<>(); // 个体ID -> {父号, 母号, 牧场名称}
+        List<String> order = new ArrayList<>(); // 个体首次出现的顺序
+        List<String> samples = new ArrayList<>();
+        conflictCount = 0;
+        for (Herd herd : herds) {
+            herd.records.forEach((id, sireId, damId) -> {
+                String[] record = {sireId, damId, herd.name};
+                String[] existing = records.get(id);
+                if (existing == null) {
+                    records.put(id, record);
+                    order.add(id);
+                    return;
+                }
+                if (!sameParent(existing[0], record[0]) || !sameParent(existing[1], record[1])) {
+                    conflictCount++;
+                    if (samples.size() < CONFLICT_SAMPLES) {
+                        samples.add(String.format("%s: 牧场 %s 为 %s/%s，牧场 %s 为 %s/%s", id,
+                                existing[2], existing[0], existing[1], herd.name, record[0], record[1]));
+                    }
+                    if (knownParents(record) > knownParents(existing)) {
+                        records.put(id, record);
+                    }
+                }
+            });
+        }
+        PedigreeIndex.Builder builder = new PedigreeIndex.Builder(order.size());
+        for (String id : order) {
+            String[] record = records.get(id);
+            builder.put(id, record[0], record[1]);
+        }
+        PedigreeIndex merged = builder.build();
+        int total = 0;
+        for (Herd herd : herds) {
+            int[] animals = new int[herd.records.size()];
+            int[] count = {0};
+            herd.records.forEach((id, sireId, damId) -> animals[count[0]++] = merged.indexOf(id));
+            herd.animals = animals;
+            total += animals.length;
+        }
+        logInfo(String.format("合并后共 %d 个个体 (各牧场合计 %d 个，%d 个在多个牧场中出现或重复)。",
+                merged.size(), total, total - merged.size()));
+        if (conflictCount > 0) {
+            logWarn(String.format("有 %d 个个体在不同牧场中的父母不一致，已取已知父母较多的记录 (相同时取列表中靠前的牧场)。",
+                    conflictCount));
+            for (String sample : samples) {
+                logWarn("  父母不一致: " + sample);
+            }
+        }
+        return merged;
+    }
+
+    private static boolean sameParent(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static int knownParents(String[] record) {
+        return (record[0] != null ? 1 : 0) + (record[1] != null ? 1 : 0);
+    }
+
+    // --- 日志辅助方法 (内部使用) ---
+    /** 记录普通信息 */
+    private void logInfo(String message) {
+        if (logger != null) {
+            logger.info("HerdBatch", message);
+        } else {
+            System.out.println("INFO (HerdBatch - Logger unavailable): " + message); // 后备方案
+        }
+    }
+
+    /** 记录警告信息 */
+    private void logWarn(String message) {
+        if (logger != null) {
+            logger.warn("HerdBatch", message);
+        } else {
+            System.err.println("WARN (HerdBatch - Logger unavailable): " + message); // 后备方案
+        }
+    }
+}
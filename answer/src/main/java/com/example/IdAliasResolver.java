@@ -0,0 +1,319 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 牛号别名解析 (num_comp_tb 映射的传递闭包)
+ * 映射表的一条记录只把一个编号映射一步 (id -> standard_id)，而 standard_id 本身可能又是另一条记录的 id,
+ * 例如 旧耳号 -> 场内编号 -> 标准牛号。只查一次映射时，同一头牛会以多个ID出现在系谱中，互不相连，
+ * 既多占内存又漏掉经过它的近交路径。本类在加载映射表后一次性解析全部映射链:
+ *   - 用并查集 (路径压缩) 把每条映射的两端合并到同一集合，集合的根是链的终点 (不再被映射的标准牛号)；
+ *   - 映射链成环 (a -> b -> ... -> a) 时没有终点，记录警告，整个集合 (包括映射到环上的别名) 解析为环上字典序最小的ID；
+ *   - 每个集合的标准牛号只保留一个 String 实例，系谱中所有对它的引用共享该实例；
+ *   - 加载完成后个体自身的记录ID也规范化为标准牛号 (canonicalizeRecords)，不会再与父/母号引用分成两个节点。
+ * 构建完成后只读，可以被多个线程同时使用；每次解析是一次开放寻址查找，不创建对象。
+ */
+class IdAliasResolver {
+    private static final int CYCLE_SAMPLES = 20; // 记录的映射环示例数量
+    private static final int CYCLE_SAMPLE_MEMBERS = 10; // 每个示例最多列出的ID数量
+
+    private final IdDictionary nodes; // 映射表中出现过的ID -> 节点编号
+    private final String[] canonical; // 节点编号 -> 标准牛号 (同一集合共享一个实例)
+    private final AnalysisLog logger; // 日志
+    private int aliasCount; // 映射到其他ID的别名数量
+    private int chainedCount; // 需要经过多级映射才到达标准牛号的别名数量
+    private int cycleCount; // 映射环数量
+
+    /**
+     * 解析全部映射链
+     * @param idMapping 映射表 Map<内部ID/母牛编号, 标准ID> (重复的内部ID已按加载规则取舍)
+     * @param logger 日志实例
+     */
+    IdAliasResolver(Map<String, String> idMapping, AnalysisLog logger) {
+        this.logger = logger;
+        long start = System.nanoTime();
+        int capacity = 2 * idMapping.size();
+        nodes = new IdDictionary(capacity);
+        String[] names = new String[capacity];
+        int count = 0;
+        for (Map.Entry<String, String> entry : idMapping.entrySet()) {
+            if (nodes.putIfAbsent(entry.getKey(), count) < 0) {
+                names[count++] = entry.getKey();
+            }
+            if (nodes.putIfAbsent(entry.getValue(), count) < 0) {
+                names[count++] = entry.getValue();
+            }
+        }
+
+        // 1. 合并: 别名所在集合挂到目标所在集合之下，根始终是链的终点；两端已在同一集合说明映射成环
+        int[] parent = new int[count];
+        for (int i = 0; i < count; i++) {
+            parent[i] = i;
+        }
+        int[] next = new int[count]; // 别名映射到的节点，-1 表示不再被映射
+        Arrays.fill(next, -1);
+        boolean[] isAlias = new boolean[count];
+        boolean[] cyclic = new boolean[count]; // 只在根上标记
+        for (Map.Entry<String, String> entry : idMapping.entrySet()) {
+            int alias = nodes.get(entry.getKey());
+            int target = nodes.get(entry.getValue());
+            if (alias == target) {
+                continue; // 映射到自身
+            }
+            isAlias[alias] = true;
+            next[alias] = target;
+            int aliasRoot = find(parent, alias);
+            int targetRoot = find(parent, target);
+            if (aliasRoot == targetRoot) {
+                cyclic[aliasRoot] = true;
+                cycleCount++;
+            } else {
+                parent[aliasRoot] = targetRoot;
+                cyclic[targetRoot] |= cyclic[aliasRoot];
+            }
+        }
+        for (Map.Entry<String, String> entry : idMapping.entrySet()) {
+            int target = nodes.get(entry.getValue());
+            if (isAlias[target] && !entry.getKey().equals(entry.getValue())) {
+                chainedCount++;
+            }
+        }
+
+        // 2. 每个节点的标准牛号: 链的终点；成环的集合取环上字典序最小的ID
+        //    每个ID最多映射到一个ID，成环的集合中从任一节点沿映射走下去都会进入唯一的环
+        String[] cycleRepresentative = cycleCount > 0 ? new String[count] : null;
+        if (cycleCount > 0) {
+            int[] visited = new int[count]; // 访问时的起点编号 + 1
+            for (int i = 0; i < count; i++) {
+                int root = find(parent, i);
+                if (!cyclic[root] || cycleRepresentative[root] != null) {
+                    continue;
+                }
+                int v = i;
+                while (visited[v] != i + 1) {
+                    visited[v] = i + 1;
+                    v = next[v];
+                }
+                String smallest = names[v]; // v 在环上: 绕环一周
+                for (int w = next[v]; w != v; w = next[w]) {
+                    if (names[w].compareTo(smallest) < 0) {
+                        smallest = names[w];
+                    }
+                }
+                cycleRepresentative[root] = smallest;
+            }
+        }
+        canonical = new String[count];
+        for (int i = 0; i < count; i++) {
+            int root = find(parent, i);
+            canonical[i] = cyclic[root] ? cycleRepresentative[root] : names[root];
+            if (isAlias[i] && !canonical[i].equals(names[i])) {
+                aliasCount++;
+            }
+        }
+
+        if (idMapping.isEmpty()) {
+            return;
+        }
+        logInfo(String.format("别名解析: %d 个ID，%d 个别名 (其中 %d 个经过多级映射)，耗时 %d ms。",
+                count, aliasCount, chainedCount, (System.nanoTime() - start) / 1_000_000));
+        if (cycleCount > 0) {
+            logWarn(String.format("映射表中有 %d 个映射环 (例如 a -> b -> a)，环上及映射到环上的ID统一解析为环上字典序最小的ID。",
+                    cycleCount));
+            for (String sample : cycleSamples(parent, cyclic, names, count)) {
+                logWarn("  映射环: " + sample);
+            }
+        }
+    }
+
+    /** 并查集查找，路径减半 */
+    private static int find(int[] parent, int x) {
+        while (parent[x] != x) {
+            parent[x] = parent[parent[x]];
+            x = parent[x];
+        }
+        return x;
+    }
+
+    private List<String> cycleSamples(int[] parent, boolean[] cyclic, String[] names, int count) {
+        int[] sampleOf = new int[count]; // 根 -> 示例序号 + 1
+        List<List<String>> members = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int root = find(parent, i);
+            if (!cyclic[root]) {
+                continue;
+            }
+            if (sampleOf[root] == 0) {
+                if (members.size() == CYCLE_SAMPLES) {
+                    continue;
+                }
+                members.add(new ArrayList<>());
+                sampleOf[root] = members.size();
+            }
+            List<String> ids = members.get(sampleOf[root] - 1);
+            if (ids.size() < CYCLE_SAMPLE_MEMBERS) {
+                ids.add(names[i]);
+            }
+        }
+        List<String> samples = new ArrayList<>(members.size());
+        for (List<String> ids : members) {
+            String[] sorted = ids.toArray(new String[0]);
+            Arrays.sort(sorted);
+            samples.add(String.join(", ", sorted) + " -> " + canonical[nodes.get(sorted[0])]);
+        }
+        return samples;
+    }
+
+    /** 映射到其他ID的别名数量 */
+    int getAliasCount() {
+        return aliasCount;
+    }
+
+    /** 需要经过多级映射才到达标准牛号的别名数量 (只查一次映射时会被拆成多个个体) */
+    int getChainedCount() {
+        return chainedCount;
+    }
+
+    /** 映射环数量 */
+    int getCycleCount() {
+        return cycleCount;
+    }
+
+    /**
+     * 已去除前后空格的ID对应的标准牛号
+     * @param id 个体ID (非 null)
+     * @return 标准牛号 (共享实例)；不在映射表中时返回 id 本身
+     */
+    String canonicalOf(String id) {
+        int node = nodes.get(id);
+        return node < 0 ? id : canonical[node];
+    }
+
+    /**
+     * id 是否为另一个标准牛号的别名
+     * @param id 已去除前后空格的ID
+     */
+    boolean isAlias(String id) {
+        int node = nodes.get(id);
+        return node >= 0 && !canonical[node].equals(id);
+    }
+
+    /**
+     * 按映射表解析父/母号: 在映射表中则返回标准牛号，否则返回去除空格后的原始值
+     * @param originalId 原始父/母号
+     * @return 解析后的ID；原始值为 null 或空白时原样返回
+     */
+    String resolve(String originalId) {
+        if (originalId == null) {
+            return null;
+        }
+        String trimmed = originalId.trim();
+        if (trimmed.isEmpty()) {
+            return originalId;
+        }
+        return canonicalOf(trimmed);
+    }
+
+    /**
+     * 规范化已加载的系谱记录的个体ID: 个体自身的标准ID又是映射表中的别名时，把记录改挂到映射后的标准牛号下，
+     * 使它与作为父/母号的引用成为同一个节点。多条记录规范化为同一标准牛号时按 HerdBatch.merge 的规则合并:
+     * 父母一致时只保留一条；不一致时记录警告，取已知父母较多的记录，相同时取标准牛号本身的记录 (其次取先出现的)。
+     * 合并后的个体在结果和写回中都使用标准牛号，别名ID所在的行不再单独写回。
+     * @param records 已加载的系谱记录 (父/母号已解析)
+     * @return 没有别名记录时返回 records 本身，否则返回规范化后的新 Builder
+     */
+    PedigreeIndex.Builder canonicalizeRecords(PedigreeIndex.Builder records) {
+        if (nodes.size() == 0) {
+            return records;
+        }
+        int[] aliasRecords = {0};
+        records.forEach((id, sireId, damId) -> {
+            if (isAlias(id)) {
+                aliasRecords[0]++;
+            }
+        });
+        if (aliasRecords[0] == 0) {
+            return records;
+        }
+
+        Map<String, String[]> merged = new HashMap<>(); // 标准牛号 -> {父号, 母号, 原记录ID}
+        List<String> order = new ArrayList<>(); // 标准牛号首次出现的顺序
+        List<String> aliasSamples = new ArrayList<>();
+        List<String> conflictSamples = new ArrayList<>();
+        int[] conflictCount = {0};
+        records.forEach((id, sireId, damId) -> {
+            String canonicalId = canonicalOf(id);
+            if (!canonicalId.equals(id) && aliasSamples.size() < CYCLE_SAMPLES) {
+                aliasSamples.add(id + " -> " + canonicalId);
+            }
+            String[] record = {sireId, damId, id};
+            String[] existing = merged.get(canonicalId);
+            if (existing == null) {
+                merged.put(canonicalId, record);
+                order.add(canonicalId);
+                return;
+            }
+            if (!sameParent(existing[0], record[0]) || !sameParent(existing[1], record[1])) {
+                conflictCount[0]++;
+                if (conflictSamples.size() < CYCLE_SAMPLES) {
+                    conflictSamples.add(String.format("%s: 记录 %s 为 %s/%s，记录 %s 为 %s/%s", canonicalId,
+                            existing[2], existing[0], existing[1], id, record[0], record[1]));
+                }
+                int known = knownParents(record) - knownParents(existing);
+                if (known > 0 || (known == 0 && id.equals(canonicalId))) {
+                    merged.put(canonicalId, record);
+                }
+            }
+        });
+        PedigreeIndex.Builder canonical = new PedigreeIndex.Builder(order.size());
+        for (String id : order) {
+            String[] record = merged.get(id);
+            canonical.put(id, record[0], record[1]);
+        }
+
+        logWarn(String.format("有 %d 个个体的标准ID在映射表中又被映射为其他ID，已改用映射后的标准牛号 "
+                + "(合并后 %d 个个体，结果和写回使用标准牛号)。", aliasRecords[0], canonical.size()));
+        for (String sample : aliasSamples) {
+            logWarn("  标准ID又是别名: " + sample);
+        }
+        if (conflictCount[0] > 0) {
+            logWarn(String.format("有 %d 个个体的多条记录父母不一致，已取已知父母较多的记录 (相同时取标准牛号本身的记录)。",
+                    conflictCount[0]));
+            for (String sample : conflictSamples) {
+                logWarn("  父母不一致: " + sample);
+            }
+        }
+        return canonical;
+    }
+
+    private static boolean sameParent(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static int knownParents(String[] record) {
+        return (record[0] != null ? 1 : 0) + (record[1] != null ? 1 : 0);
+    }
+
+    // --- 日志辅助方法 (内部使用) ---
+    /** 记录普通信息 */
+    private void logInfo(String message) {
+        if (logger != null) {
+            logger.info("AliasResolver", message);
+        } else {
+            System.out.println("INFO (AliasResolver - Logger unavailable): " + message); // 后备方案
+        }
+    }
+
+    /** 记录警告信息 */
+    private void logWarn(String message) {
+        if (logger != null) {
+            logger.warn("AliasResolver", message);
+        } else {
+            System.err.println("WARN (AliasResolver - Logger unavailable): " + message); // 后备方案
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.example;
+
+/**
+ * 个体ID (String) 到整数编号的字典
+ * 采用开放寻址 + 线性探测，键和值分别存放在两个数组中，
+ * 不为每个条目创建 Map.Entry / Integer 对象。
+ */
+class IdDictionary {
+    private String[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    /**
+     * @param expectedSize 预计的条目数量，用于确定初始容量
+     */
+    IdDictionary(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        keys = new String[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    /** 条目数量 */
+    int size() {
+        return size;
+    }
+
+    /**
+     * 查找 ID 对应的编号
+     * @param key 个体ID
+     * @return 编号；不存在时返回 -1
+     */
+    int get(String key) {
+        if (key == null) {
+            return -1;
+        }
+        int slot = mix(key.hashCode()) & mask;
+        String existing;
+        while ((existing = keys[slot]) != null) {
+            if (existing.equals(key)) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * 若 ID 不存在则写入
+     * @param key 个体ID (非 null)
+     * @param value 新编号
+     * @return 已存在时返回原编号，否则写入 value 并返回 -1
+     */
+    int putIfAbsent(String key, int value) {
+        int slot = mix(key.hashCode()) & mask;
+        String existing;
+        while ((existing = keys[slot]) != null) {
+            if (existing.equals(key)) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size * 2 > keys.length) {
+            resize();
+        }
+        return -1;
+    }
+
+    private void resize() {
+        String[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new String[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = mix(oldKeys[i].hashCode()) & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /** 打散 String.hashCode 的低位，减少线性探测的聚集 */
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -1,138 +1,291 @@
 package com.example;
 
-import java.io.PrintWriter;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Map;
 
-public class InbreedingCalculator {
-    private final Map<String, Animal> pedigree; // 存储系谱数据的Map
-    private final Map<String, Double> inbreedingCache; // 缓存已计算的近交系数 F_X
-    private final Map<Pair<String, String>, Double> coancestryCache; // 缓存已计算的亲缘系数 f_AB
-    private final PrintWriter logger; // 日志写入器
+public class InbreedingCalculator implements InbreedingEngine {
+    private final PedigreeIndex pedigree; // 整数编号系谱
+    private final int[] sire; // 父亲编号 (0 表示未知)
+    private final int[] dam; // 母亲编号 (0 表示未知)
+    private final double[] inbreedingCache; // 按编号缓存已计算的近交系数 F_X, NaN 表示尚未计算
+    private final CoancestryCache coancestryCache; // 缓存已计算的亲缘系数 f_AB
+    private final AnalysisLog logger; // 日志
+    private InbreedingCheckpoint checkpoint; // 计算期间定期保存进度，null 表示不保存
+    // 运行统计 (普通字段，只能在计算线程读取；其他线程读 AnalysisMetrics 发布的快照)
+    private long inbreedingHits; // 近交系数缓存命中次数
+    private long inbreedingMisses; // 近交系数缓存未命中次数
+    private int maxDepthReached; // 达到过的最大递归深度
+    private long depthLimitHits; // 超过 MAX_DEPTH 的次数
+    private long stackOverflows; // 捕获的栈溢出次数
     private static final int MAX_DEPTH = 50; // 最大递归深度，防止栈溢出
+    private static final double DEFAULT_CACHE_HEAP_FRACTION = 0.25; // 默认亲缘系数缓存占最大堆的比例
 
     /**
      * 构造函数
      * @param pedigree 系谱数据
-     * @param logger 日志写入器实例
+     * @param logger 日志实例
      */
-    public InbreedingCalculator(Map<String, Animal> pedigree, PrintWriter logger) {
+    public InbreedingCalculator(Map<String, Animal> pedigree, AnalysisLog logger) {
+        this(PedigreeIndex.fromMap(pedigree), logger);
+    }
+
+    /**
+     * 构造函数
+     * @param pedigree 整数编号系谱
+     * @param logger 日志实例
+     */
+    public InbreedingCalculator(PedigreeIndex pedigree, AnalysisLog logger) {
+        this(pedigree, logger, ClockCoancestryCache.withHeapFraction(DEFAULT_CACHE_HEAP_FRACTION));
+    }
+
+    /**
+     * 构造函数
+     * @param pedigree 整数编号系谱
+     * @param logger 日志实例
+     * @param coancestryCache 亲缘系数缓存 (可限制内存并淘汰旧条目)
+     */
+    public InbreedingCalculator(PedigreeIndex pedigree, AnalysisLog logger, CoancestryCache coancestryCache) {
         this.pedigree = pedigree;
-        this.inbreedingCache = new HashMap<>();
-        this.coancestryCache = new HashMap<>();
+        this.sire = pedigree.sires();
+        this.dam = pedigree.dams();
+        this.inbreedingCache = new double[pedigree.size() + 1];
+        Arrays.fill(this.inbreedingCache, Double.NaN);
+        this.inbreedingCache[0] = 0.0; // 未知个体的近交系数为 0
+        this.coancestryCache = coancestryCache;
         this.logger = logger; // 保存日志写入器
     }
 
+    /** 亲缘系数缓存 (用于查看命中率、淘汰次数等统计) */
+    public CoancestryCache getCoancestryCache() {
+        return coancestryCache;
+    }
+
+    /**
+     * 从检查点恢复已完成个体的近交系数 (在第一次计算前调用)，这些个体不再递归计算
+     * @param restored 按编号存放的近交系数，NaN 表示尚未完成
+     * @return 恢复的个体数量
+     */
+    public int restore(double[] restored) {
+        int count = 0;
+        int limit = Math.min(restored.length - 1, pedigree.sortedCount());
+        for (int i = 1; i <= limit; i++) {
+            if (!Double.isNaN(restored[i])) {
+                inbreedingCache[i] = restored[i];
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** 计算期间每到检查点间隔就把近交系数缓存的副本交给检查点 (后台写入) */
+    public void setCheckpoint(InbreedingCheckpoint checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    /** 近交系数缓存中已计算的个体数量 (遍历缓存数组，仅在汇总时调用) */
+    public int getInbreedingCacheSize() {
+        int count = 0;
+        for (int i = 1; i < inbreedingCache.length; i++) {
+            if (!Double.isNaN(inbreedingCache[i])) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** 近交系数缓存命中次数 */
+    public long getInbreedingCacheHits() {
+        return inbreedingHits;
+    }
+
+    /** 近交系数缓存未命中次数 */
+    public long getInbreedingCacheMisses() {
+        return inbreedingMisses;
+    }
+
+    /** 达到过的最大递归深度 */
+    public int getMaxDepthReached() {
+        return maxDepthReached;
+    }
+
+    /** 超过最大递归深度 (结果按 0 处理) 的次数 */
+    public long getDepthLimitHits() {
+        return depthLimitHits;
+    }
+
+    /** 因栈溢出返回 NaN 的次数 */
+    public long getStackOverflowCount() {
+        return stackOverflows;
+    }
+
     /**
      * 公开方法：获取指定个体的近交系数
      * @param animalId 需要计算近交系数的个体ID
      * @return 近交系数值，如果发生错误则返回 Double.NaN
      */
+    @Override
     public double getInbreedingCoefficient(String animalId) {
+        return getInbreedingCoefficient(pedigree.indexOf(animalId)); // 不在系谱中的个体编号为 0
+    }
+
+    /**
+     * 公开方法：按编号获取指定个体的近交系数
+     * @param animalIndex 个体编号
+     * @return 近交系数值，如果发生错误则返回 Double.NaN
+     */
+    @Override
+    public double getInbreedingCoefficient(int animalIndex) {
+        if (animalIndex > pedigree.sortedCount()) {
+            return Double.NaN; // 处于系谱循环中或为循环个体的后代 (已由 PedigreeValidator 报告)，不进入递归
+        }
         try {
             // 调用递归计算方法
-            return calculateInbreedingRecursive(animalId, 0);
+            double f = calculateInbreedingRecursive(animalIndex, 0);
+            if (checkpoint != null && checkpoint.due()) {
+                checkpoint.submit(inbreedingCache.clone()); // 缓存中 NaN 即尚未完成
+            }
+            return f;
         } catch (StackOverflowError e) {
             // 捕获栈溢出错误，通常因为系谱循环或深度过大
+            stackOverflows++;
             logError(String.format("错误: 计算个体 %s 的近交系数时发生栈溢出，可能存在系谱循环或递归过深。",
-                    animalId), e);
+                    pedigree.getId(animalIndex)), e);
             return Double.NaN; // 返回 NaN 表示计算错误
         }
     }
 
+    /**
+     * 公开方法：获取两个个体之间的亲缘系数 (共祖系数) f_AB
+     * @param animalId1 第一个个体ID
+     * @param animalId2 第二个个体ID
+     * @return 亲缘系数值，不在系谱中的个体按未知处理 (返回 0)，发生错误则返回 Double.NaN
+     */
+    public double getCoancestry(String animalId1, String animalId2) {
+        return getCoancestry(pedigree.indexOf(animalId1), pedigree.indexOf(animalId2));
+    }
+
+    /**
+     * 公开方法：按编号获取两个个体之间的亲缘系数
+     * @param animalIndex1 第一个个体编号
+     * @param animalIndex2 第二个个体编号
+     * @return 亲缘系数值，如果发生错误则返回 Double.NaN
+     */
+    public double getCoancestry(int animalIndex1, int animalIndex2) {
+        if (animalIndex1 > pedigree.sortedCount() || animalIndex2 > pedigree.sortedCount()) {
+            return Double.NaN;
+        }
+        try {
+            return calculateCoancestryRecursive(animalIndex1, animalIndex2, 0);
+        } catch (StackOverflowError e) {
+            stackOverflows++;
+            logError(String.format("错误: 计算个体 %s 和 %s 的亲缘系数时发生栈溢出，可能存在系谱循环或递归过深。",
+                    pedigree.getId(animalIndex1), pedigree.getId(animalIndex2)), e);
+            return Double.NaN;
+        }
+    }
+
     /**
      * 递归计算近交系数 F_X
      * F_X = f_SD (个体 X 的近交系数等于其父母 S 和 D 之间的亲缘系数)
-     * @param animalId 个体ID
+     * @param animal 个体编号
      * @param depth 当前递归深度
      * @return 近交系数值
      */
-    private double calculateInbreedingRecursive(String animalId, int depth) {
+    private double calculateInbreedingRecursive(int animal, int depth) {
         // 检查递归深度是否超限
+        if (depth > maxDepthReached) {
+            maxDepthReached = depth;
+        }
         if (depth > MAX_DEPTH) {
-            logWarn(String.format("警告: 计算个体 %s 的近交系数时超过最大递归深度(%d)。假定其值为 0。", animalId, MAX_DEPTH));
+            depthLimitHits++;
+            logWarn("警告: 计算个体 %s 的近交系数时超过最大递归深度(%d)。假定其值为 0。",
+                    pedigree.getId(animal), MAX_DEPTH);
             return 0.0; // 返回 0 或抛出异常
         }
 
-        // 1. 检查近交系数缓存
-        if (inbreedingCache.containsKey(animalId)) {
-            return inbreedingCache.get(animalId);
+        // 1. 检查近交系数缓存 (编号 0 即未知个体的值固定为 0)
+        double cached = inbreedingCache[animal];
+        if (!Double.isNaN(cached)) {
+            inbreedingHits++;
+            return cached;
         }
+        inbreedingMisses++;
 
-        // 2. 获取个体信息
-        Animal animal = pedigree.get(animalId);
-
-        // 3. 基础情况: 个体不存在或父母信息不全
-        if (animal == null || animal.getSireId() == null || animal.getDamId() == null) {
-            inbreedingCache.put(animalId, 0.0); // 假定未知父母的个体近交系数为 0
+        // 2. 基础情况: 父母信息不全
+        int sireIndex = sire[animal];
+        int damIndex = dam[animal];
+        if (sireIndex == 0 || damIndex == 0) {
+            inbreedingCache[animal] = 0.0; // 假定未知父母的个体近交系数为 0
             return 0.0;
         }
 
-        String sireId = animal.getSireId();
-        String damId = animal.getDamId();
-
-        // 4. 核心计算: F_X = f_SD (调用亲缘系数计算)
-        double coancestrySD = calculateCoancestryRecursive(sireId, damId, depth + 1);
+        // 3. 核心计算: F_X = f_SD (调用亲缘系数计算)
+        double coancestrySD = calculateCoancestryRecursive(sireIndex, damIndex, depth + 1);
 
-        // 5. 存入缓存并返回
-        inbreedingCache.put(animalId, coancestrySD);
+        // 4. 存入缓存并返回
+        inbreedingCache[animal] = coancestrySD;
         return coancestrySD;
     }
 
     /**
      * 递归计算两个个体之间的亲缘系数 f_AB
-     * f_AB = 0.5 * (f_{A, Sire_B} + f_{A, Dam_B}) (假设追溯 B 的父母)
+     * f_AB = 0.5 * (f_{A, Sire_B} + f_{A, Dam_B}) (B 不能是 A 的祖先，因此总是追溯编号较大的一方)
      * f_AA = 0.5 * (1 + F_A) (个体与自身的亲缘系数)
-     * @param id1 第一个个体ID
-     * @param id2 第二个体ID
+     * @param id1 第一个个体编号
+     * @param id2 第二个体编号
      * @param depth 当前递归深度
      * @return 亲缘系数值
      */
-    private double calculateCoancestryRecursive(String id1, String id2, int depth) {
+    private double calculateCoancestryRecursive(int id1, int id2, int depth) {
         // 检查递归深度
+        if (depth > maxDepthReached) {
+            maxDepthReached = depth;
+        }
         if (depth > MAX_DEPTH) {
-            logWarn(String.format("警告: 计算个体 %s 和 %s 的亲缘系数时超过最大递归深度(%d)。假定其值为 0。", id1, id2, MAX_DEPTH));
+            depthLimitHits++;
+            logWarn("警告: 计算个体 %s 和 %s 的亲缘系数时超过最大递归深度(%d)。假定其值为 0。",
+                    pedigree.getId(id1), pedigree.getId(id2), MAX_DEPTH);
             return 0.0;
         }
 
-        // 1. 确保缓存键的顺序一致性 (id1 <= id2)
-        String keyId1 = (id1.compareTo(id2) <= 0) ? id1 : id2;
-        String keyId2 = (id1.compareTo(id2) <= 0) ? id2 : id1;
-        Pair<String, String> cacheKey = new Pair<>(keyId1, keyId2);
-
-        // 2. 检查亲缘系数缓存
-        if (coancestryCache.containsKey(cacheKey)) {
-            return coancestryCache.get(cacheKey);
+        // 1. 基础情况: 任意一个体是未知的 (编号为 0)
+        if (id1 == 0 || id2 == 0) {
+            return 0.0;
         }
 
-        // 3. 基础情况: 任意一个体是未知的 (ID 为 null 或不在系谱中)
-        if (id1 == null || id2 == null || !pedigree.containsKey(id1) || !pedigree.containsKey(id2)) {
-            coancestryCache.put(cacheKey, 0.0);
-            return 0.0;
+        // 2. 确保缓存键的顺序一致性 (older <= younger)。
+        // PedigreeIndex 按拓扑顺序编号，祖先的编号一定小于其后代，
+        // 因此追溯编号较大的一方的父母不会漏算亲子等关系
+        int older = Math.min(id1, id2);
+        int younger = Math.max(id1, id2);
+        long cacheKey = CoancestryCache.key(older, younger);
+
+        // 3. 检查亲缘系数缓存
+        double cached = coancestryCache.get(cacheKey);
+        if (!Double.isNaN(cached)) {
+            return cached;
         }
 
         double coancestry;
         // 4. 递归计算
         // 情况 1: 计算个体与自身的亲缘系数 f_AA = 0.5 * (1 + F_A)
-        if (id1.equals(id2)) {
+        if (older == younger) {
             // 需要先递归计算该个体的近交系数 F_A
-            double inbreedingA = calculateInbreedingRecursive(id1, depth + 1);
+            double inbreedingA = calculateInbreedingRecursive(older, depth + 1);
             coancestry = 0.5 * (1.0 + inbreedingA);
         }
         // 情况 2: 计算不同个体之间的亲缘系数 f_AB = 0.5 * (f_{A, Sire_B} + f_{A, Dam_B})
         else {
-            // 选择 id2 来追溯其父母 (也可以选择 id1)
-            Animal animal2 = pedigree.get(id2);
-            String sireId2 = animal2.getSireId();
-            String damId2 = animal2.getDamId();
+            int sireY = sire[younger];
+            int damY = dam[younger];
 
-            // 如果 id2 的父母都未知，则亲缘系数为 0
-            if (sireId2 == null && damId2 == null) {
+            // 如果 younger 的父母都未知，则亲缘系数为 0
+            if (sireY == 0 && damY == 0) {
                 coancestry = 0.0;
             } else {
-                // 递归计算 f_{id1, Sire_id2} 和 f_{id1, Dam_id2}
-                double coanS = (sireId2 == null) ? 0.0 : calculateCoancestryRecursive(id1, sireId2, depth + 1);
-                double coanD = (damId2 == null) ? 0.0 : calculateCoancestryRecursive(id1, damId2, depth + 1);
+                // 递归计算 f_{older, Sire_younger} 和 f_{older, Dam_younger}
+                double coanS = (sireY == 0) ? 0.0 : calculateCoancestryRecursive(older, sireY, depth + 1);
+                double coanD = (damY == 0) ? 0.0 : calculateCoancestryRecursive(older, damY, depth + 1);
                 coancestry = 0.5 * (coanS + coanD);
             }
         }
@@ -144,23 +297,18 @@ public class InbreedingCalculator {
 
     // --- 日志辅助方法 (内部使用) ---
     /** 记录警告信息 */
-    private void logWarn(String message) {
+    private void logWarn(String format, Object... args) {
         if (logger != null) {
-            logger.println(java.time.LocalDateTime.now() + " - WARN (Calculator): " + message);
-            logger.flush();
+            logger.warn("Calculator", format, args); // 格式化在日志线程进行，级别被过滤时不格式化
         } else {
-            System.err.println("WARN (Calculator - Logger unavailable): " + message); // 后备方案
+            System.err.println("WARN (Calculator - Logger unavailable): " + String.format(format, args)); // 后备方案
         }
     }
 
     /** 记录错误信息及堆栈跟踪 */
      private void logError(String message, Throwable t) {
         if (logger != null) {
-            logger.println(java.time.LocalDateTime.now() + " - ERROR (Calculator): " + message);
-            if (t != null) {
-                t.printStackTrace(logger); // 将堆栈跟踪打印到日志文件
-            }
-            logger.flush();
+            logger.error("Calculator", message, t);
         } else {
             System.err.println("ERROR (Calculator - Logger unavailable): " + message); // 后备方案
             if (t != null) {
@@ -0,0 +1,250 @@
+package com.example;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 近交系数计算的检查点
+ * 全量计算可能持续数小时。计算引擎每到 --checkpoint-interval 就把已完成的近交系数复制一份交给本类，
+ * 由后台线程压缩后写入本地文件 (先写临时文件并刷盘，再原子替换)，计算线程只做一次数组复制，不等待磁盘。
+ * 上一个检查点还没写完时跳过本次，不会积压。
+ * 进程中断后加 --resume 重新运行: 读取检查点并校验系谱未变，已完成的个体直接沿用，其余个体继续计算。
+ *
+ * 文件格式 (大端):
+ *   头部: int 魔数, int 版本, int n, int sortedCount, long 系谱指纹, int 已完成个体数
+ *   Deflate 压缩的 double[sortedCount]: 编号 1..sortedCount 的近交系数，NaN 表示尚未完成
+ * 系谱指纹由个体ID和父母编号计算；数据变化或编号顺序不同都视为不一致，不能用于恢复。
+ */
+public class InbreedingCheckpoint implements AutoCloseable {
+    private static final int MAGIC = 0x50454443; // "PEDC"
+    private static final int VERSION = 1;
+
+    private final Path file;
+    private final int size;
+    private final int sortedCount;
+    private final long fingerprint;
+    private final long intervalNanos;
+    private final AnalysisLog logger; // 日志
+    private final ExecutorService writer;
+    private final AtomicBoolean writing = new AtomicBoolean(); // 后台线程正在写入检查点
+    private long lastSubmit; // 上次提交的时间 (只由计算线程访问)
+    private volatile int writtenCount; // 已写入的检查点数量
+
+    /**
+     * 构造函数，启动后台写入线程
+     * @param file 检查点文件路径
+     * @param pedigree 本次计算的系谱
+     * @param intervalSeconds 两次检查点之间的最短间隔 (秒)
+     * @param logger 日志实例
+     */
+    public InbreedingCheckpoint(Path file, PedigreeIndex pedigree, int intervalSeconds, AnalysisLog logger) {
+        this.file = file.toAbsolutePath();
+        this.size = pedigree.size();
+        this.sortedCount = pedigree.sortedCount();
+        this.fingerprint = fingerprint(pedigree);
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(Math.max(1, intervalSeconds));
+        this.logger = logger;
+        this.writer = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "inbreeding-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.lastSubmit = System.nanoTime();
+    }
+
+    /** 已写入的检查点数量 */
+    public int getWrittenCount() {
+        return writtenCount;
+    }
+
+    /**
+     * 是否应该提交检查点: 距上次提交已超过间隔、后台没有正在写入的检查点且尚未 finish
+     * 计算线程可以频繁调用 (一次 nanoTime)
+     */
+    public boolean due() {
+        return System.nanoTime() - lastSubmit >= intervalNanos && !writing.get() && !writer.isShutdown();
+    }
+
+    /**
+     * 提交一个检查点，在后台线程写入
+     * @param inbreeding 按编号存放的近交系数 (调用方的副本，之后不能再修改)，NaN 表示尚未完成；下标 0 不保存
+     */
+    public void submit(double[] inbreeding) {
+        lastSubmit = System.nanoTime();
+        if (!writing.compareAndSet(false, true)) {
+            return; // 上一个检查点还没写完，跳过本次
+        }
+        writer.execute(() -> {
+            try {
+                write(inbreeding);
+            } catch (IOException e) {
+                logWarn("写入检查点失败 (计算继续): " + file + ": " + e.getMessage());
+            } finally {
+                writing.set(false);
+            }
+        });
+    }
+
+    /**
+     * 计算完成后写入完整的检查点 (在调用线程同步写入)，之后的阶段中断时也可以直接恢复
+     * @param engine 已完成计算的引擎
+     * @throws IOException 写入失败时抛出
+     */
+    public void finish(InbreedingEngine engine) throws IOException {
+        awaitWriter();
+        double[] inbreeding = new double[sortedCount + 1];
+        for (int i = 1; i <= sortedCount; i++) {
+            inbreeding[i] = engine.getInbreedingCoefficient(i);
+        }
+        write(inbreeding);
+    }
+
+    /** 计算正常结束后删除检查点文件 */
+    public void delete() {
+        awaitWriter();
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            logWarn("删除检查点文件失败: " + file + ": " + e.getMessage());
+        }
+    }
+
+    /** 等待正在写入的检查点完成，并停止后台线程 */
+    @Override
+    public void close() {
+        awaitWriter();
+    }
+
+    private void awaitWriter() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** 写临时文件并刷盘，再原子替换检查点文件 */
+    private void write(double[] inbreeding) throws IOException {
+        long start = System.nanoTime();
+        int completed = 0;
+        for (int i = 1; i <= sortedCount; i++) {
+            if (!Double.isNaN(inbreeding[i])) {
+                completed++;
+            }
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (FileOutputStream out = new FileOutputStream(temp.toFile())) {
+            DataOutputStream header = new DataOutputStream(out);
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            header.writeInt(size);
+            header.writeInt(sortedCount);
+            header.writeLong(fingerprint);
+            header.writeInt(completed);
+            DeflaterOutputStream deflated = new DeflaterOutputStream(out, deflater, 1 << 16);
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(deflated, 1 << 16));
+            for (int i = 1; i <= sortedCount; i++) {
+                data.writeDouble(inbreeding[i]);
+            }
+            data.flush();
+            deflated.finish();
+            out.getFD().sync(); // 替换前确保数据已落盘，断电后不会留下空的检查点
+        } finally {
+            deflater.end();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        writtenCount++;
+        logInfo(String.format("检查点已保存: 已完成 %d / %d 个个体，%d 字节，耗时 %d ms。",
+                completed, sortedCount, Files.size(file), (System.nanoTime() - start) / 1_000_000));
+    }
+
+    /**
+     * 读取检查点
+     * @param file 检查点文件路径
+     * @param pedigree 本次计算的系谱 (必须与写入检查点时的系谱一致)
+     * @return 按编号存放的近交系数 (长度 n + 1，NaN 表示尚未完成)；文件不存在时返回 null
+     * @throws IOException 读取失败、格式不正确或系谱不一致时抛出
+     */
+    public static double[] read(Path file, PedigreeIndex pedigree) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            DataInputStream header = new DataInputStream(in);
+            if (header.readInt() != MAGIC || header.readInt() != VERSION) {
+                throw new IOException("不是有效的检查点文件: " + file);
+            }
+            int n = header.readInt();
+            int sorted = header.readInt();
+            long savedFingerprint = header.readLong();
+            header.readInt(); // 已完成个体数 (只用于查看)
+            if (n != pedigree.size() || sorted != pedigree.sortedCount() || savedFingerprint != fingerprint(pedigree)) {
+                throw new IOException(String.format("检查点 %s 与当前系谱不一致 (检查点 %d 个个体，当前 %d 个)，"
+                        + "系谱数据或加载顺序已变化。", file, n, pedigree.size()));
+            }
+            double[] inbreeding = new double[n + 1];
+            Arrays.fill(inbreeding, Double.NaN);
+            inbreeding[0] = 0.0;
+            DataInputStream data = new DataInputStream(new BufferedInputStream(new InflaterInputStream(in), 1 << 16));
+            for (int i = 1; i <= sorted; i++) {
+                inbreeding[i] = data.readDouble();
+            }
+            return inbreeding;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (EOFException e) {
+            throw new IOException("检查点文件不完整: " + file, e);
+        }
+    }
+
+    /** 系谱指纹: 按编号顺序混合个体ID和父母编号 (FNV-1a 的 64 位变体) */
+    static long fingerprint(PedigreeIndex pedigree) {
+        long hash = 0xcbf29ce484222325L;
+        int n = pedigree.size();
+        int[] sire = pedigree.sires();
+        int[] dam = pedigree.dams();
+        hash = (hash ^ n) * 0x100000001b3L;
+        for (int i = 1; i <= n; i++) {
+            hash = (hash ^ pedigree.getId(i).hashCode()) * 0x100000001b3L;
+            hash = (hash ^ sire[i]) * 0x100000001b3L;
+            hash = (hash ^ dam[i]) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    // --- 日志辅助方法 (内部使用) ---
+    /** 记录普通信息 */
+    private void logInfo(String message) {
+        if (logger != null) {
+            logger.info("Checkpoint", message);
+        } else {
+            System.out.println("INFO (Checkpoint - Logger unavailable): " + message); // 后备方案
+        }
+    }
+
+    /** 记录警告信息 */
+    private void logWarn(String message) {
+        if (logger != null) {
+            logger.warn("Checkpoint", message);
+        } else {
+            System.err.println("WARN (Checkpoint - Logger unavailable): " + message); // 后备方案
+        }
+    }
+}
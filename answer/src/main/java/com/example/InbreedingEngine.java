@@ -0,0 +1,22 @@
+package com.example;
+
+/**
+ * 近交系数计算引擎的公共接口
+ * PedigreeAnalysis 通过该接口在递归实现与迭代实现之间切换
+ */
+public interface InbreedingEngine {
+
+    /**
+     * 获取指定个体的近交系数
+     * @param animalId 个体ID
+     * @return 近交系数值，如果无法计算则返回 Double.NaN
+     */
+    double getInbreedingCoefficient(String animalId);
+
+    /**
+     * 按 PedigreeIndex 编号获取个体的近交系数
+     * @param animalIndex 个体编号 (1..size)
+     * @return 近交系数值，如果无法计算则返回 Double.NaN
+     */
+    double getInbreedingCoefficient(int animalIndex);
+}
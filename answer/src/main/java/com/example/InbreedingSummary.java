@@ -0,0 +1,66 @@
+package com.example;
+
+/**
+ * 近交系数汇总统计
+ * summary 日志模式下代替逐个体日志: 统计有效/无法计算的数量、均值、最大值和近交系数分布直方图。
+ */
+public class InbreedingSummary {
+    /** 直方图区间上界: F = 0, (0, 1/64], (1/64, 1/32], ..., (1/2, 1] */
+    private static final double[] UPPER_BOUNDS = {0.0, 1.0 / 64, 1.0 / 32, 1.0 / 16, 1.0 / 8, 1.0 / 4, 1.0 / 2, 1.0};
+    private static final String[] LABELS = {
+            "F = 0", "0 < F <= 0.015625", "0.015625 < F <= 0.03125", "0.03125 < F <= 0.0625",
+            "0.0625 < F <= 0.125", "0.125 < F <= 0.25", "0.25 < F <= 0.5", "0.5 < F <= 1"};
+
+    private final long[] histogram = new long[UPPER_BOUNDS.length];
+    private long validCount;
+    private long invalidCount; // NaN
+    private double sum;
+    private double max;
+    private String maxId;
+
+    /**
+     * 加入一个个体的结果
+     * @param animalId 个体ID
+     * @param f 近交系数，NaN 表示无法计算
+     */
+    public void add(String animalId, double f) {
+        if (Double.isNaN(f)) {
+            invalidCount++;
+            return;
+        }
+        validCount++;
+        sum += f;
+        if (maxId == null || f > max) {
+            max = f;
+            maxId = animalId;
+        }
+        int bin = 0;
+        while (bin < UPPER_BOUNDS.length - 1 && f > UPPER_BOUNDS[bin]) {
+            bin++;
+        }
+        histogram[bin]++;
+    }
+
+    /** 有效 (非 NaN) 的个体数量 */
+    public long getValidCount() {
+        return validCount;
+    }
+
+    /** 无法计算 (NaN) 的个体数量 */
+    public long getInvalidCount() {
+        return invalidCount;
+    }
+
+    /**
+     * 写入汇总日志
+     * @param log 日志
+     */
+    public void logTo(AnalysisLog log) {
+        log.info(null, "近交系数汇总: 有效 %d 个，无法计算 %d 个，平均 F = %.6f，最大 F = %.6f (%s)。",
+                validCount, invalidCount, validCount == 0 ? 0.0 : sum / validCount, max, maxId);
+        for (int i = 0; i < histogram.length; i++) {
+            log.info(null, "  %-26s %10d  (%.2f%%)", LABELS[i], histogram[i],
+                    validCount == 0 ? 0.0 : 100.0 * histogram[i] / validCount);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.example;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * 将近交系数批量写回 cattle_info.inbreeding_coefficient
+ * 计算线程调用 submit() 把结果攒成批次，批次通过有界队列交给后台写入线程；
+ * 写入线程在同一个连接上用 PreparedStatement 批量执行 UPDATE，每个批次提交一次事务。
+ * 队列满时 submit() 会阻塞，从而限制未写入结果占用的内存。
+ *
+ * 写入前需要先在表中添加列 (见 cow_setting.session.sql):
+ *   ALTER TABLE cattle_info ADD COLUMN inbreeding_coefficient DECIMAL(9, 6);
+ */
+public class InbreedingWriteBack implements AutoCloseable {
+    static final String F_COL = "inbreeding_coefficient"; // 近交系数列名
+    private static final int QUEUE_CAPACITY = 4; // 等待写入的批次数量上限
+    private static final Batch END = new Batch(0); // 结束标记
+
+    private final Connection connection;
+    private final PreparedStatement statement;
+    private final int batchSize;
+    private final BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writer;
+    private final AnalysisLog logger; // 日志
+    private Batch current; // 计算线程正在填充的批次
+    private volatile SQLException failure; // 写入线程遇到的第一个错误
+    private volatile long writtenCount; // 已提交的记录数
+    private volatile long updatedRows; // 数据库报告的受影响行数
+    private long droppedCount; // 写入失败后 submit() 丢弃的记录数 (仅计算线程访问)
+    private volatile long skippedCount; // 写入失败的批次及之后队列中被跳过的记录数 (仅写入线程修改)
+
+    /**
+     * 打开连接并启动后台写入线程
+     * @param url JDBC URL (MySQL 会自动追加 rewriteBatchedStatements=true)
+     * @param user 数据库用户名
+     * @param password 数据库密码
+     * @param batchSize 每个批次 (事务) 的记录数
+     * @param logger 日志实例
+     * @throws SQLException 连接失败或表中没有 inbreeding_coefficient 列时抛出
+     */
+    public InbreedingWriteBack(String url, String user, String password, int batchSize, AnalysisLog logger)
+            throws SQLException {
+        this(DriverManager.getConnection(withBatchRewrite(url), user, password), batchSize, logger);
+    }
+
+    /**
+     * 在已打开的连接上启动后台写入线程 (连接由本对象负责关闭)
+     * @param connection 数据库连接
+     * @param batchSize 每个批次 (事务) 的记录数
+     * @param logger 日志实例
+     * @throws SQLException 表中没有 inbreeding_coefficient 列时抛出
+     */
+    InbreedingWriteBack(Connection connection, int batchSize, AnalysisLog logger) throws SQLException {
+        this.batchSize = Math.max(1, batchSize);
+        this.logger = logger;
+        this.connection = connection;
+        try {
+            checkColumnExists();
+            connection.setAutoCommit(false);
+            this.statement = connection.prepareStatement(String.format("UPDATE `%s` SET `%s` = ? WHERE `%s` = ?",
+                    PedigreeAnalysis.CATTLE_TABLE_NAME, F_COL, PedigreeAnalysis.ID_COL));
+        } catch (SQLException e) {
+            connection.close();
+            throw e;
+        }
+        this.current = new Batch(this.batchSize);
+        this.writer = new Thread(this::drain, "inbreeding-write-back");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * 提交一个个体的近交系数，批次满后交给写入线程
+     * @param animalId 个体标准ID
+     * @param f 近交系数，NaN 写为 NULL
+     * @throws InterruptedException 等待队列空位时被中断
+     */
+    public void submit(String animalId, double f) throws InterruptedException {
+        if (failure != null) {
+            droppedCount++;
+            return;
+        }
+        current.add(animalId, f);
+        if (current.size == batchSize) {
+            queue.put(current);
+            current = new Batch(batchSize);
+        }
+    }
+
+    /** 已提交到数据库的记录数 */
+    public long getWrittenCount() {
+        return writtenCount;
+    }
+
+    /** 写入出错后没有写入的记录数 (回滚的批次、被跳过的批次和之后提交的记录；在 close() 之后调用) */
+    public long getDroppedCount() {
+        return droppedCount + skippedCount;
+    }
+
+    /**
+     * 写出剩余批次，等待写入线程结束并关闭连接
+     * @throws SQLException 写入过程中出现过错误时抛出第一个错误
+     */
+    @Override
+    public void close() throws SQLException {
+        try {
+            if (failure == null && current.size > 0) {
+                queue.put(current);
+            } else {
+                droppedCount += current.size;
+            }
+            queue.put(END);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writer.interrupt();
+        } finally {
+            try {
+                statement.close();
+            } finally {
+                connection.close();
+            }
+        }
+        logInfo(String.format("写回完成: 提交 %d 条记录，数据库报告更新 %d 行。", writtenCount, updatedRows));
+        if (failure != null) {
+            long dropped = getDroppedCount();
+            if (dropped > 0) {
+                logWarn("写回出错后丢弃了 " + dropped + " 条记录。");
+            }
+            throw failure;
+        }
+    }
+
+    /** 写入线程主循环 */
+    private void drain() {
+        try {
+            while (true) {
+                Batch batch = queue.take();
+                if (batch == END) {
+                    return;
+                }
+                if (failure == null) {
+                    write(batch);
+                } else {
+                    skippedCount += batch.size;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** 以一个事务写入一个批次 */
+    private void write(Batch batch) {
+        try {
+            for (int i = 0; i < batch.size; i++) {
+                if (Double.isNaN(batch.values[i])) {
+                    statement.setNull(1, Types.DOUBLE);
+                } else {
+                    statement.setDouble(1, batch.values[i]);
+                }
+                statement.setString(2, batch.ids[i]);
+                statement.addBatch();
+            }
+            int[] counts = statement.executeBatch();
+            connection.commit();
+            long rows = 0;
+            for (int count : counts) {
+                if (count > 0) {
+                    rows += count;
+                }
+            }
+            updatedRows += rows;
+            writtenCount += batch.size;
+        } catch (SQLException e) {
+            failure = e;
+            skippedCount += batch.size; // 该批次已回滚
+            logError("数据库错误：批量写回近交系数失败，后续结果不再写入。", e);
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackError) {
+                logError("回滚写回事务时出错", rollbackError);
+            }
+        }
+    }
+
+    private void checkColumnExists() throws SQLException {
+        try (ResultSet rs = connection.getMetaData().getColumns(connection.getCatalog(), null,
+                PedigreeAnalysis.CATTLE_TABLE_NAME, F_COL)) {
+            if (!rs.next()) {
+                throw new SQLException(String.format("表 %s 中没有 %s 列，请先执行: ALTER TABLE %s ADD COLUMN %s DECIMAL(9, 6);",
+                        PedigreeAnalysis.CATTLE_TABLE_NAME, F_COL, PedigreeAnalysis.CATTLE_TABLE_NAME, F_COL));
+            }
+        }
+    }
+
+    /** 为 MySQL URL 追加 rewriteBatchedStatements=true，使一个批次在一次网络往返中发送 */
+    private static String withBatchRewrite(String url) {
+        if (!url.startsWith("jdbc:mysql:") || url.contains("rewriteBatchedStatements")) {
+            return url;
+        }
+        return url + (url.contains("?") ? "&" : "?") + "rewriteBatchedStatements=true";
+    }
+
+    /** 一个批次的数据 (并行数组，避免为每条记录创建对象) */
+    private static final class Batch {
+        final String[] ids;
+        final double[] values;
+        int size;
+
+        Batch(int capacity) {
+            ids = new String[capacity];
+            values = new double[capacity];
+        }
+
+        void add(String id, double value) {
+            ids[size] = id;
+            values[size] = value;
+            size++;
+        }
+    }
+
+    // --- 日志辅助方法 (内部使用) ---
+    /** 记录普通信息 */
+    private void logInfo(String message) {
+        if (logger != null) {
+            logger.info("WriteBack", message);
+        } else {
+            System.out.println("INFO (WriteBack - Logger unavailable): " + message); // 后备方案
+        }
+    }
+
+    /** 记录警告信息 */
+    private void logWarn(String message) {
+        if (logger != null) {
+            logger.warn("WriteBack", message);
+        } else {
+            System.err.println("WARN (WriteBack - Logger unavailable): " + message); // 后备方案
+        }
+    }
+
+    /** 记录错误信息及堆栈跟踪 */
+    private void logError(String message, Throwable t) {
+        if (logger != null) {
+            logger.error("WriteBack", message, t);
+        } else {
+            System.err.println("ERROR (WriteBack - Logger unavailable): " + message); // 后备方案
+            if (t != null) {
+                t.printStackTrace();
+            }
+        }
+    }
+}
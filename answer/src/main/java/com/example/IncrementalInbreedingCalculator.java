@@ -0,0 +1,149 @@
+package com.example;
+
+import java.util.Arrays;
+
+/**
+ * 增量近交系数计算器
+ * 与上一次运行保存的 PedigreeSnapshot (含近交系数) 比较，只重新计算:
+ *   1. 新增个体;
+ *   2. 父号或母号 (解析后) 发生变化的个体，包括原来不在系谱中的父/母号现在出现了的情况;
+ *   3. 上述个体的全部后代 (按拓扑顺序传播: 父母任一方需要重算则子代也需要重算)。
+ * 其余个体直接沿用上次的 F，D_i 由父母的 F 即时算出，因此每个需要重算的个体只遍历自己的祖先。
+ *
+ * 只有近交系数的计算是增量的: 每次运行仍然完整加载 cattle_info、逐个体与整个快照比较，
+ * 结束后重写整个状态文件，这部分代价与系谱大小成正比。
+ */
+public class IncrementalInbreedingCalculator implements InbreedingEngine {
+    private final PedigreeIndex pedigree; // 本次运行的系谱
+    private final PedigreeSnapshot previous; // 上次运行保存的快照，可以为 null (全部重算)
+    private final AnalysisLog logger; // 日志
+    private double[] inbreeding; // 按编号存放的近交系数
+    private int reusedCount; // 沿用上次结果的个体数量
+    private int recalculatedCount; // 重新计算的个体数量
+
+    /**
+     * 构造函数
+     * @param pedigree 本次运行的系谱
+     * @param previous 上次运行保存的快照 (必须含近交系数)，null 表示没有可用状态
+     * @param logger 日志实例
+     */
+    public IncrementalInbreedingCalculator(PedigreeIndex pedigree, PedigreeSnapshot previous, AnalysisLog logger) {
+        this.pedigree = pedigree;
+        this.previous = previous;
+        this.logger = logger;
+    }
+
+    @Override
+    public double getInbreedingCoefficient(String animalId) {
+        int index = pedigree.indexOf(animalId);
+        return index == 0 ? 0.0 : getInbreedingCoefficient(index); // 系谱中不存在的个体视为非近交
+    }
+
+    @Override
+    public double getInbreedingCoefficient(int animalIndex) {
+        if (inbreeding == null) {
+            calculateAll();
+        }
+        return inbreeding[animalIndex];
+    }
+
+    /** 沿用上次结果的个体数量 */
+    public int getReusedCount() {
+        if (inbreeding == null) {
+            calculateAll();
+        }
+        return reusedCount;
+    }
+
+    /** 重新计算的个体数量 */
+    public int getRecalculatedCount() {
+        if (inbreeding == null) {
+            calculateAll();
+        }
+        return recalculatedCount;
+    }
+
+    private void calculateAll() {
+        int n = pedigree.size();
+        int sorted = pedigree.sortedCount();
+        int[] sire = pedigree.sires();
+        int[] dam = pedigree.dams();
+        double[] f = new double[n + 1];
+        double[] d = new double[n + 1];
+        boolean[] dirty = new boolean[n + 1];
+        IterativeInbreedingCalculator.Workspace workspace = new IterativeInbreedingCalculator.Workspace(sorted);
+        f[0] = -1.0;
+
+        for (int i = 1; i <= sorted; i++) {
+            int si = sire[i];
+            int di = dam[i];
+            int j = previous == null ? 0 : previous.indexOf(pedigree.getId(i));
+            dirty[i] = dirty[si] || dirty[di] || !unchanged(i, j);
+            if (dirty[i]) {
+                workspace.calculate(i, sire, dam, f, d);
+                recalculatedCount++;
+            } else {
+                f[i] = previous.getInbreedingCoefficient(j);
+                d[i] = 0.5 - 0.25 * (f[si] + f[di]);
+                reusedCount++;
+            }
+        }
+        f[0] = 0.0;
+        if (sorted < n) {
+            Arrays.fill(f, sorted + 1, n + 1, Double.NaN);
+            logWarn(String.format("警告: 有 %d 个个体处于系谱循环中或为循环个体的后代，无法排序，其近交系数记为 NaN。",
+                    n - sorted));
+        }
+        inbreeding = f;
+        logInfo(String.format("增量计算: 沿用上次结果 %d 个，重新计算 %d 个 (新增、父母变化及其后代)。",
+                reusedCount, recalculatedCount));
+        if (previous != null) {
+            int removed = 0;
+            for (int j = 1; j <= previous.size(); j++) {
+                // 只统计数量；上次存在但本次已不在系谱中的个体
+                if (pedigree.indexOf(previous.getId(j)) == 0) {
+                    removed++;
+                }
+            }
+            if (removed > 0) {
+                logInfo("上次运行中的 " + removed + " 个个体本次已不在系谱中。");
+            }
+        }
+    }
+
+    /**
+     * 个体在上次运行中存在、父母相同且有有效的 F
+     * @param i 本次编号
+     * @param j 上次编号，0 表示上次不存在
+     */
+    private boolean unchanged(int i, int j) {
+        if (j == 0 || Double.isNaN(previous.getInbreedingCoefficient(j))) {
+            return false;
+        }
+        return sameId(pedigree.getId(pedigree.getSire(i)), previous.getId(previous.getSire(j)))
+                && sameId(pedigree.getId(pedigree.getDam(i)), previous.getId(previous.getDam(j)));
+    }
+
+    private static boolean sameId(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    // --- 日志辅助方法 (内部使用) ---
+    /** 记录普通信息 */
+    private void logInfo(String message) {
+        if (logger != null) {
+            logger.info("IncrementalCalculator", message);
+        } else {
+            System.out.println("INFO (IncrementalCalculator - Logger unavailable): " + message); // 后备方案
+        }
+    }
+
+    /** 记录警告信息 */
+    private void logWarn(String message) {
+        if (logger != null) {
+            logger.warn("IncrementalCalculator", message);
+        } else {
+            System.err.println("WARN (IncrementalCalculator - Logger unavailable): " + message); // 后备方案
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package com.example;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 迭代方式的近交系数计算器 (Meuwissen &amp; Luo, 1992)
+ * 个体按 PedigreeIndex 的拓扑编号 ("父母在前、后代在后") 逐个计算 F，
+ * 不使用递归，也没有深度限制。
+ *
+ * 对每个个体 i:
+ *   D_i = 0.5 - 0.25 * (F_sire + F_dam)  (未知亲本的 F 记为 -1)
+ *   F_i = sum_j (L_ij^2 * D_j) - 1       (j 为 i 及其全部祖先, L_ij 为祖先 j 对 i 的贡献)
+ * 父母任意一方未知时 F_i = 0，与 InbreedingCalculator 的约定一致。
+ */
+public class IterativeInbreedingCalculator implements InbreedingEngine {
+    private static final int CHECKPOINT_MASK = 1023; // 单线程计算每 1024 个个体检查一次是否需要提交检查点
+    private final PedigreeIndex pedigree; // 整数编号系谱 (已按拓扑顺序编号)
+    private final AnalysisLog logger; // 日志
+    private final int parallelism; // 并行线程数, 1 表示单线程
+    private double[] inbreeding; // 按编号存放的近交系数, 下标 0 表示未知个体
+    private double[] restored; // 从检查点恢复的近交系数 (NaN 表示尚未完成)，null 表示全部计算
+    private InbreedingCheckpoint checkpoint; // 计算期间定期保存进度，null 表示不保存
+
+    /**
+     * 构造函数
+     * @param pedigree 系谱数据
+     * @param logger 日志实例
+     */
+    public IterativeInbreedingCalculator(Map<String, Animal> pedigree, AnalysisLog logger) {
+        this(PedigreeIndex.fromMap(pedigree), logger);
+    }
+
+    /**
+     * 构造函数
+     * @param pedigree 整数编号系谱
+     * @param logger 日志实例
+     */
+    public IterativeInbreedingCalculator(PedigreeIndex pedigree, AnalysisLog logger) {
+        this(pedigree, logger, 1);
+    }
+
+    /**
+     * 构造函数
+     * @param pedigree 整数编号系谱
+     * @param logger 日志实例
+     * @param parallelism 并行线程数；大于 1 时按世代分层在 ForkJoinPool 上并行计算
+     */
+    public IterativeInbreedingCalculator(PedigreeIndex pedigree, AnalysisLog logger, int parallelism) {
+        this.pedigree = pedigree;
+        this.logger = logger;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * 公开方法：获取指定个体的近交系数
+     * 第一次调用时会一次性计算全部个体
+     * @param animalId 需要计算近交系数的个体ID
+     * @return 近交系数值；不在系谱中的个体返回 0，处于系谱循环中 (或其后代) 的个体返回 Double.NaN
+     */
+    @Override
+    public double getInbreedingCoefficient(String animalId) {
+        int index = pedigree.indexOf(animalId);
+        return index == 0 ? 0.0 : getInbreedingCoefficient(index); // 与递归实现一致: 系谱中不存在的个体视为非近交
+    }
+
+    @Override
+    public double getInbreedingCoefficient(int animalIndex) {
+        if (inbreeding == null) {
+            calculateAll();
+        }
+        return inbreeding[animalIndex];
+    }
+
+    /**
+     * 从检查点恢复已完成个体的近交系数 (在第一次取值前调用)，计算时只由父母的 F 算出这些个体的 D
+     * @param restored 按编号存放的近交系数，NaN 表示尚未完成
+     * @return 恢复的个体数量
+     */
+    public int restore(double[] restored) {
+        this.restored = restored;
+        int count = 0;
+        int limit = Math.min(restored.length - 1, pedigree.sortedCount());
+        for (int i = 1; i <= limit; i++) {
+            if (!Double.isNaN(restored[i])) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /** 计算期间每到检查点间隔就把已完成的近交系数复制一份交给检查点 (后台写入) */
+    public void setCheckpoint(InbreedingCheckpoint checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    /** 无法参与拓扑排序 (处于循环中或为循环个体的后代) 的个体数量 */
+    public int getUnsortedCount() {
+        return pedigree.size() - pedigree.sortedCount();
+    }
+
+    /**
+     * 按拓扑顺序计算全部个体的近交系数
+     */
+    private void calculateAll() {
+        int n = pedigree.size();
+        int sorted = pedigree.sortedCount();
+        double[] f = parallelism > 1
+                ? calculateParallel(pedigree.sires(), pedigree.dams(), sorted, parallelism, restored, checkpoint)
+                : calculate(pedigree.sires(), pedigree.dams(), sorted, restored, checkpoint);
+        restored = null;
+        inbreeding = f.length == n + 1 ? f : Arrays.copyOf(f, n + 1);
+        if (sorted < n) {
+            Arrays.fill(inbreeding, sorted + 1, n + 1, Double.NaN);
+            logWarn(String.format("警告: 有 %d 个个体处于系谱循环中或为循环个体的后代，无法排序，其近交系数记为 NaN。",
+                    n - sorted));
+        }
+    }
+
+    /**
+     * Meuwissen-Luo 算法主体 (单线程)
+     * @param sire 父亲编号 (0 表示未知)，对 i &lt;= m 要求 sire[i] &lt; i
+     * @param dam 母亲编号 (0 表示未知)，对 i &lt;= m 要求 dam[i] &lt; i
+     * @param m 参与计算的个体数量 (编号 1..m)
+     * @return 各个体的近交系数，下标与编号一致
+     */
+    static double[] calculate(int[] sire, int[] dam, int m) {
+        return calculate(sire, dam, m, null, null);
+    }
+
+    /**
+     * Meuwissen-Luo 算法主体 (单线程)，可从检查点继续并定期提交检查点
+     * @param restored 从检查点恢复的近交系数 (NaN 表示尚未完成)，null 表示全部计算
+     * @param checkpoint 检查点，null 表示不保存
+     */
+    static double[] calculate(int[] sire, int[] dam, int m, double[] restored, InbreedingCheckpoint checkpoint) {
+        double[] f = initialInbreeding(m, restored);
+        double[] d = new double[m + 1]; // 孟德尔抽样方差系数 D_i
+        Workspace workspace = new Workspace(m);
+        for (int i = 1; i <= m; i++) {
+            workspace.calculateIfMissing(i, sire, dam, f, d);
+            if (checkpoint != null && (i & CHECKPOINT_MASK) == 0 && checkpoint.due()) {
+                checkpoint.submit(f.clone());
+            }
+        }
+        f[0] = 0.0;
+        return f;
+    }
+
+    /** 计算前的近交系数数组: 尚未完成的个体为 NaN，从检查点恢复的个体直接填入 */
+    private static double[] initialInbreeding(int m, double[] restored) {
+        double[] f = new double[m + 1];
+        Arrays.fill(f, Double.NaN);
+        if (restored != null) {
+            System.arraycopy(restored, 1, f, 1, Math.min(m, restored.length - 1));
+        }
+        f[0] = -1.0;
+        return f;
+    }
+
+    /**
+     * 按世代分层并行计算
+     * 同一世代 (1 + max(父世代, 母世代)) 的个体互不为祖先，只依赖之前世代的 F 和 D，
+     * 因此每一层可以在 ForkJoinPool 上并行计算，层与层之间由 invoke() 的完成作为屏障。
+     * 每个线程使用自己的 Workspace，每个个体的计算步骤与单线程完全相同，结果逐位一致。
+     * @param sire 父亲编号
+     * @param dam 母亲编号
+     * @param m 参与计算的个体数量 (编号 1..m，拓扑有序)
+     * @param parallelism 并行线程数
+     * @return 各个体的近交系数，下标与编号一致
+     */
+    static double[] calculateParallel(int[] sire, int[] dam, int m, int parallelism) {
+        return calculateParallel(sire, dam, m, parallelism, null, null);
+    }
+
+    /**
+     * 按世代分层并行计算，可从检查点继续；检查点只在两层之间提交 (此时没有线程在写 f)
+     * @param restored 从检查点恢复的近交系数 (NaN 表示尚未完成)，null 表示全部计算
+     * @param checkpoint 检查点，null 表示不保存
+     */
+    static double[] calculateParallel(int[] sire, int[] dam, int m, int parallelism, double[] restored,
+                                      InbreedingCheckpoint checkpoint) {
+        // 1. 世代号，并按世代做计数排序得到各层的个体列表 (层内保持编号顺序)
+        int[] generation = new int[m + 1];
+        int maxGeneration = 0;
+        for (int i = 1; i <= m; i++) {
+            int gs = sire[i] == 0 ? -1 : generation[sire[i]];
+            int gd = dam[i] == 0 ? -1 : generation[dam[i]];
+            generation[i] = 1 + Math.max(gs, gd);
+            maxGeneration = Math.max(maxGeneration, generation[i]);
+        }
+        int[] layerStart = new int[maxGeneration + 2];
+        for (int i = 1; i <= m; i++) {
+            layerStart[generation[i] + 1]++;
+        }
+        for (int g = 0; g <= maxGeneration; g++) {
+            layerStart[g + 1] += layerStart[g];
+        }
+        int[] layers = new int[m];
+        int[] fill = new int[maxGeneration + 1];
+        for (int i = 1; i <= m; i++) {
+            int g = generation[i];
+            layers[layerStart[g] + fill[g]++] = i;
+        }
+        generation = null;
+        fill = null;
+
+        // 2. 逐层并行计算
+        double[] f = initialInbreeding(m, restored);
+        double[] d = new double[m + 1];
+        ThreadLocal<Workspace> workspaces = ThreadLocal.withInitial(() -> new Workspace(m));
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            for (int g = 0; g <= maxGeneration; g++) {
+                pool.invoke(new LayerTask(layers, layerStart[g], layerStart[g + 1], sire, dam, f, d, workspaces));
+                if (checkpoint != null && checkpoint.due()) {
+                    checkpoint.submit(f.clone());
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        f[0] = 0.0;
+        return f;
+    }
+
+    /** 计算一层 (或其中一段) 个体的 ForkJoin 任务 */
+    private static class LayerTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private static final int THRESHOLD = 256; // 小于该数量的区间不再拆分
+
+        private final int[] layers;
+        private final int from;
+        private final int to;
+        private final int[] sire;
+        private final int[] dam;
+        private final double[] f;
+        private final double[] d;
+        private final ThreadLocal<Workspace> workspaces;
+
+        LayerTask(int[] layers, int from, int to, int[] sire, int[] dam, double[] f, double[] d,
+                  ThreadLocal<Workspace> workspaces) {
+            this.layers = layers;
+            this.from = from;
+            this.to = to;
+            this.sire = sire;
+            this.dam = dam;
+            this.f = f;
+            this.d = d;
+            this.workspaces = workspaces;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= THRESHOLD) {
+                Workspace workspace = workspaces.get();
+                for (int k = from; k < to; k++) {
+                    workspace.calculateIfMissing(layers[k], sire, dam, f, d);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new LayerTask(layers, from, mid, sire, dam, f, d, workspaces),
+                    new LayerTask(layers, mid, to, sire, dam, f, d, workspaces));
+        }
+    }
+
+    /**
+     * 单个线程的计算工作区: 祖先贡献 L 和待处理祖先的最大堆
+     * 两个数组的长度都与系谱规模相同，每个线程只分配一次
+     */
+    static class Workspace {
+        private final double[] l; // 祖先贡献 L_ij, 0 表示不在待处理列表中
+        private final int[] heap; // 待处理祖先的最大堆 (编号大的先处理，保证后代先于祖先)
+
+        Workspace(int m) {
+            l = new double[m + 1];
+            heap = new int[m + 1];
+        }
+
+        /**
+         * 个体 i 的 F_i 已从检查点恢复时只计算 D_i，否则与 calculate 相同
+         */
+        void calculateIfMissing(int i, int[] sire, int[] dam, double[] f, double[] d) {
+            if (Double.isNaN(f[i])) {
+                calculate(i, sire, dam, f, d);
+            } else {
+                d[i] = 0.5 - 0.25 * (f[sire[i]] + f[dam[i]]);
+            }
+        }
+
+        /**
+         * 计算个体 i 的 D_i 和 F_i，要求 i 的全部祖先已计算完毕
+         * @param i 个体编号
+         * @param sire 父亲编号
+         * @param dam 母亲编号
+         * @param f 近交系数 (f[0] 必须为 -1)，写入 f[i]
+         * @param d 孟德尔抽样方差系数，写入 d[i]
+         */
+        void calculate(int i, int[] sire, int[] dam, double[] f, double[] d) {
+            int si = sire[i];
+            int di = dam[i];
+            d[i] = 0.5 - 0.25 * (f[si] + f[di]);
+            if (si == 0 || di == 0) {
+                f[i] = 0.0; // 父母任意一方未知，近交系数为 0
+                return;
+            }
+
+            double fi = -1.0;
+            int size = 0;
+            l[i] = 1.0;
+            heap[size++] = i;
+            while (size > 0) {
+                // 取出编号最大的祖先
+                int j = heap[0];
+                heap[0] = heap[--size];
+                siftDown(heap, size);
+
+                int sj = sire[j];
+                int dj = dam[j];
+                if (sj != 0) {
+                    if (l[sj] == 0.0) {
+                        size = siftUp(heap, size, sj);
+                    }
+                    l[sj] += 0.5 * l[j];
+                }
+                if (dj != 0) {
+                    if (l[dj] == 0.0) {
+                        size = siftUp(heap, size, dj);
+                    }
+                    l[dj] += 0.5 * l[j];
+                }
+                fi += l[j] * l[j] * d[j];
+                l[j] = 0.0;
+            }
+            f[i] = fi;
+        }
+    }
+
+    /** 将 value 加入最大堆，返回新的堆大小 */
+    private static int siftUp(int[] heap, int size, int value) {
+        int k = size;
+        while (k > 0) {
+            int parent = (k - 1) >>> 1;
+            if (heap[parent] >= value) {
+                break;
+            }
+            heap[k] = heap[parent];
+            k = parent;
+        }
+        heap[k] = value;
+        return size + 1;
+    }
+
+    /** 堆顶元素被替换后向下调整 */
+    private static void siftDown(int[] heap, int size) {
+        if (size == 0) {
+            return;
+        }
+        int value = heap[0];
+        int k = 0;
+        int half = size >>> 1;
+        while (k < half) {
+            int child = 2 * k + 1;
+            if (child + 1 < size && heap[child + 1] > heap[child]) {
+                child++;
+            }
+            if (value >= heap[child]) {
+                break;
+            }
+            heap[k] = heap[child];
+            k = child;
+        }
+        heap[k] = value;
+    }
+
+    // --- 日志辅助方法 (内部使用) ---
+    /** 记录警告信息 */
+    private void logWarn(String message) {
+        if (logger != null) {
+            logger.warn("IterativeCalculator", message);
+        } else {
+            System.err.println("WARN (IterativeCalculator - Logger unavailable): " + message); // 后备方案
+        }
+    }
+}
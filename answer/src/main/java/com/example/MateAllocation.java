@@ -0,0 +1,420 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * 选配: 计算候选公牛 × 母牛的亲缘系数矩阵 (即后代的期望近交系数 F = f_sire,dam)
+ *
+ * 不逐对递归，而是用 Colleau (2002) 的方法对每头公牛 s 一次性求出亲缘关系矩阵的一列 A·e_s:
+ *   A = (I - P)^-1 D (I - P)^-T  (P 每行在父、母位置为 0.5，D 为孟德尔抽样方差系数)
+ *   1. u = (I - P)^-T e_s: 从 s 向祖先回溯，u_父 += 0.5 u_i, u_母 += 0.5 u_i (只涉及 s 的祖先)
+ *   2. y = (I - P)^-1 D u: 按拓扑顺序 y_i = D_i u_i + 0.5 (y_父 + y_母)
+ * y_c = a_sc 即公牛与每头母牛的加性亲缘关系，亲缘系数 f_sc = a_sc / 2。
+ * 每头公牛的代价为 O(系谱大小)，与母牛数量无关，祖先路径在所有母牛之间共享。
+ * 同样的两步用于任意向量 x 即得 A·x，meanCoancestry 据此求每个个体与参考群体的平均亲缘系数。
+ *
+ * 公牛按块分配到 ForkJoinPool 的线程上并行计算，每个线程使用自己的工作数组；
+ * 结果逐行 (每头公牛一行) 交给 RowSink，或在线程内汇总为每头母牛风险最低的 k 个选配，不保存完整矩阵。
+ * 处于系谱循环中 (无法排序) 的个体的亲缘系数为 NaN。
+ */
+public class MateAllocation {
+
+    /** 接收一头公牛对全部母牛的亲缘系数 (调用已串行化，但不保证公牛的顺序) */
+    public interface RowSink {
+        /**
+         * @param sirePosition 公牛在 sires 数组中的位置
+         * @param coancestry 与 cows 数组中每头母牛的亲缘系数 (数组会被复用，调用结束后不得保留)
+         */
+        void accept(int sirePosition, double[] coancestry) throws Exception;
+    }
+
+    /** 一个候选选配 */
+    public static final class Mating {
+        private final int sire;
+        private final int cow;
+        private final double coancestry;
+
+        Mating(int sire, int cow, double coancestry) {
+            this.sire = sire;
+            this.cow = cow;
+            this.coancestry = coancestry;
+        }
+
+        /** 公牛编号 */
+        public int getSire() {
+            return sire;
+        }
+
+        /** 母牛编号 */
+        public int getCow() {
+            return cow;
+        }
+
+        /** 公牛与母牛的亲缘系数，即后代的期望近交系数 */
+        public double getCoancestry() {
+            return coancestry;
+        }
+    }
+
+    private final PedigreeIndex pedigree;
+    private final int parallelism;
+    private final AnalysisLog logger; // 日志
+    private final double[] d; // 孟德尔抽样方差系数 D_i (拓扑有序部分)
+
+    /**
+     * 构造函数
+     * @param pedigree 整数编号系谱
+     * @param engine 近交系数来源 (用于计算 D_i，会读取全部拓扑有序个体的 F)
+     * @param parallelism 并行线程数
+     * @param logger 日志实例
+     */
+    public MateAllocation(PedigreeIndex pedigree, InbreedingEngine engine, int parallelism, AnalysisLog logger) {
+        this.pedigree = pedigree;
+        this.parallelism = Math.max(1, parallelism);
+        this.logger = logger;
+        int m = pedigree.sortedCount();
+        int[] sire = pedigree.sires();
+        int[] dam = pedigree.dams();
+        double[] f = new double[m + 1];
+        f[0] = -1.0; // 未知亲本
+        for (int i = 1; i <= m; i++) {
+            f[i] = engine.getInbreedingCoefficient(i);
+        }
+        d = new double[m + 1];
+        for (int i = 1; i <= m; i++) {
+            d[i] = 0.5 - 0.25 * (f[sire[i]] + f[dam[i]]);
+        }
+    }
+
+    /**
+     * 计算完整的亲缘系数矩阵，按公牛逐行交给 sink
+     * @param phase 日志中的阶段名称 (如 "选配矩阵"、"A 矩阵块")
+     * @param sires 候选公牛编号 (矩阵的行)
+     * @param cows 母牛编号 (矩阵的列)
+     * @param sink 行接收者
+     * @throws Exception sink 抛出的异常
+     */
+    public void coancestryMatrix(String phase, int[] sires, int[] cows, RowSink sink) throws Exception {
+        run(phase, sires, cows, chunk -> new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                Workspace workspace = new Workspace();
+                double[] row = new double[cows.length];
+                for (int p = chunk[0]; p < chunk[1]; p++) {
+                    workspace.column(sires[p], cows, row);
+                    synchronized (sink) {
+                        sink.accept(p, row);
+                    }
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * 为每头母牛找出亲缘系数最低 (后代期望近交系数最低) 的 k 个选配
+     * 亲缘系数相同时按公牛在 sires 中的位置排序；NaN 不参与排序。
+     * @param phase 日志中的阶段名称
+     * @param sires 候选公牛编号
+     * @param cows 母牛编号
+     * @param k 每头母牛保留的选配数量
+     * @return 与 cows 对应的数组，每项按亲缘系数从低到高排列
+     * @throws Exception 计算线程失败时抛出
+     */
+    public Mating[][] lowestCoancestry(String phase, int[] sires, int[] cows, int k) throws Exception {
+        int limit = Math.max(1, Math.min(k, sires.length));
+        List<TopK> partials = new ArrayList<>();
+        run(phase, sires, cows, chunk -> new Callable<Void>() {
+            @Override
+            public Void call() {
+                Workspace workspace = new Workspace();
+                double[] row = new double[cows.length];
+                TopK top = new TopK(cows.length, limit);
+                for (int p = chunk[0]; p < chunk[1]; p++) {
+                    workspace.column(sires[p], cows, row);
+                    for (int c = 0; c < cows.length; c++) {
+                        if (!Double.isNaN(row[c])) {
+                            top.offer(c, p, row[c]);
+                        }
+                    }
+                }
+                synchronized (partials) {
+                    partials.add(top);
+                }
+                return null;
+            }
+        });
+
+        TopK merged = partials.isEmpty() ? new TopK(cows.length, limit) : partials.get(0);
+        for (int t = 1; t < partials.size(); t++) {
+            merged.mergeFrom(partials.get(t));
+        }
+        Mating[][] result = new Mating[cows.length][];
+        for (int c = 0; c < cows.length; c++) {
+            result[c] = merged.sorted(c, sires, cows[c]);
+        }
+        return result;
+    }
+
+    /**
+     * 计算每个个体与若干参考群体的平均亲缘系数 (Colleau 间接法，不构建 A)
+     * 对每个参考群体 G 令 x = 群体成员的指示向量 / |G|，求 A·x 后平均亲缘系数 c_i = (A·x)_i / 2；
+     * 个体自身属于 G 时按惯例计入其自身亲缘系数 (1 + F_i) / 2。
+     * 全部参考群体在同一次回溯和同一次前推中完成 (工作数组按 个体 × 群体 交错存放)，
+     * 总代价为 O(系谱大小 × 群体数)，与群体大小无关。
+     * @param groups 每个参考群体的成员编号 (重复的成员只计一次；处于系谱循环中的个体无法计算，不计入)
+     * @return result[g][i] 为个体 i 与第 g 个群体的平均亲缘系数；处于系谱循环中的个体和空群体为 NaN
+     */
+    public double[][] meanCoancestry(int[][] groups) {
+        long start = System.nanoTime();
+        int m = pedigree.sortedCount();
+        int n = pedigree.size();
+        int k = groups.length;
+        int[] sire = pedigree.sires();
+        int[] dam = pedigree.dams();
+        double[] u = new double[(m + 1) * k];
+        int[] size = new int[k];
+        for (int g = 0; g < k; g++) {
+            for (int animal : groups[g]) {
+                if (animal >= 1 && animal <= m && u[animal * k + g] == 0.0) {
+                    u[animal * k + g] = 1.0;
+                    size[g]++;
+                }
+            }
+        }
+        // 1. u = (I - P)^-T x: 按编号从大到小回溯到父母
+        for (int i = m; i >= 1; i--) {
+            int base = i * k;
+            int s = sire[i] * k;
+            int dd = dam[i] * k;
+            for (int g = 0; g < k; g++) {
+                double ui = u[base + g];
+                if (ui != 0.0) {
+                    u[s + g] += 0.5 * ui;
+                    u[dd + g] += 0.5 * ui;
+                }
+            }
+        }
+        // 2. y = (I - P)^-1 D u: 按拓扑顺序前推，y_i 只依赖 u_i 和已算出的 y_父、y_母，直接覆盖 u
+        Arrays.fill(u, 0, k, 0.0); // 未知亲本
+        for (int i = 1; i <= m; i++) {
+            int base = i * k;
+            int s = sire[i] * k;
+            int dd = dam[i] * k;
+            for (int g = 0; g < k; g++) {
+                u[base + g] = d[i] * u[base + g] + 0.5 * (u[s + g] + u[dd + g]);
+            }
+        }
+        double[][] result = new double[k][n + 1];
+        for (int g = 0; g < k; g++) {
+            double scale = size[g] == 0 ? Double.NaN : 0.5 / size[g];
+            double[] mean = result[g];
+            for (int i = 1; i <= m; i++) {
+                mean[i] = u[i * k + g] * scale;
+            }
+            Arrays.fill(mean, m + 1, n + 1, Double.NaN);
+        }
+        logInfo(String.format("平均亲缘系数: %d 个参考群体，%d 个个体，耗时 %.1f ms。",
+                k, m, (System.nanoTime() - start) / 1e6));
+        return result;
+    }
+
+    /** 把 sires 按 parallelism 分块并行执行，phase 用于计时日志 */
+    private void run(String phase, int[] sires, int[] cows, ChunkTask task) throws Exception {
+        int chunks = Math.min(parallelism, Math.max(1, sires.length));
+        long start = System.nanoTime();
+        List<Callable<Void>> calls = new ArrayList<>(chunks);
+        for (int t = 0; t < chunks; t++) {
+            calls.add(task.create(new int[]{(int) ((long) sires.length * t / chunks),
+                    (int) ((long) sires.length * (t + 1) / chunks)}));
+        }
+        if (chunks == 1) {
+            calls.get(0).call();
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(chunks);
+            try {
+                for (Future<Void> future : pool.invokeAll(calls)) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        throw cause instanceof Exception ? (Exception) cause : e;
+                    }
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+        logInfo(String.format("%s: %d 行 × %d 列，线程数 %d，耗时 %.1f ms。",
+                phase, sires.length, cows.length, chunks, (System.nanoTime() - start) / 1e6));
+    }
+
+    /** 为一个公牛区间 [chunk[0], chunk[1]) 创建任务 */
+    private interface ChunkTask {
+        Callable<Void> create(int[] chunk);
+    }
+
+    /**
+     * 创建一个工作区，供调用线程反复用 Workspace.column 计算亲缘系数 (如查询服务的工作区队列)
+     * 工作区不是线程安全的；不同线程的工作区之间只共享只读的系谱和 D_i。
+     */
+    Workspace newWorkspace() {
+        return new Workspace();
+    }
+
+    /** 每个线程的工作数组 */
+    final class Workspace {
+        private final double[] u; // (I - P)^-T e_s，只在 s 的祖先上非零
+        private final double[] y; // A e_s
+
+        private Workspace() {
+            int m = pedigree.sortedCount();
+            u = new double[m + 1];
+            y = new double[m + 1];
+        }
+
+        /**
+         * 计算公牛 s 与每头母牛的亲缘系数
+         * @param s 公牛编号
+         * @param cows 母牛编号
+         * @param row 输出: row[c] 为与 cows[c] 的亲缘系数
+         */
+        void column(int s, int[] cows, double[] row) {
+            int m = pedigree.sortedCount();
+            if (s == 0 || s > m) {
+                Arrays.fill(row, s == 0 ? 0.0 : Double.NaN); // 不在系谱中按未知处理；循环个体无法计算
+                return;
+            }
+            int[] sire = pedigree.sires();
+            int[] dam = pedigree.dams();
+            // 1. 向祖先回溯
+            u[s] = 1.0;
+            for (int i = s; i >= 1; i--) {
+                double ui = u[i];
+                if (ui != 0.0) {
+                    u[sire[i]] += 0.5 * ui;
+                    u[dam[i]] += 0.5 * ui;
+                }
+            }
+            // 2. 按拓扑顺序向后代传递到 s 和母牛中最大的拓扑有序编号 (u 用完即清零，供下一头公牛使用)
+            y[0] = 0.0;
+            int end = s;
+            for (int cow : cows) {
+                if (cow <= m) {
+                    end = Math.max(end, cow);
+                }
+            }
+            for (int i = 1; i <= end; i++) {
+                y[i] = d[i] * u[i] + 0.5 * (y[sire[i]] + y[dam[i]]);
+                u[i] = 0.0;
+            }
+            u[0] = 0.0;
+            for (int c = 0; c < cows.length; c++) {
+                int cow = cows[c];
+                row[c] = cow == 0 ? 0.0 : cow > m ? Double.NaN : 0.5 * y[cow];
+            }
+        }
+    }
+
+    /** 每头母牛亲缘系数最低的 k 个公牛 (每头母牛一个大小为 k 的最大堆) */
+    private static final class TopK {
+        private final int k;
+        private final int[] sire; // 公牛在 sires 中的位置
+        private final double[] value;
+        private final int[] count;
+
+        TopK(int cows, int k) {
+            this.k = k;
+            this.sire = new int[cows * k];
+            this.value = new double[cows * k];
+            this.count = new int[cows];
+        }
+
+        void offer(int cow, int sirePosition, double coancestry) {
+            int base = cow * k;
+            int size = count[cow];
+            if (size < k) {
+                // 上浮
+                int i = size;
+                while (i > 0) {
+                    int parent = (i - 1) / 2;
+                    if (!worse(coancestry, sirePosition, value[base + parent], sire[base + parent])) {
+                        break;
+                    }
+                    value[base + i] = value[base + parent];
+                    sire[base + i] = sire[base + parent];
+                    i = parent;
+                }
+                value[base + i] = coancestry;
+                sire[base + i] = sirePosition;
+                count[cow] = size + 1;
+            } else if (worse(value[base], sire[base], coancestry, sirePosition)) {
+                // 替换堆顶 (当前最差) 后下沉
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= k) {
+                        break;
+                    }
+                    if (child + 1 < k && worse(value[base + child + 1], sire[base + child + 1],
+                            value[base + child], sire[base + child])) {
+                        child++;
+                    }
+                    if (!worse(value[base + child], sire[base + child], coancestry, sirePosition)) {
+                        break;
+                    }
+                    value[base + i] = value[base + child];
+                    sire[base + i] = sire[base + child];
+                    i = child;
+                }
+                value[base + i] = coancestry;
+                sire[base + i] = sirePosition;
+            }
+        }
+
+        void mergeFrom(TopK other) {
+            for (int cow = 0; cow < count.length; cow++) {
+                int base = cow * k;
+                for (int j = 0; j < other.count[cow]; j++) {
+                    offer(cow, other.sire[base + j], other.value[base + j]);
+                }
+            }
+        }
+
+        Mating[] sorted(int cow, int[] sires, int cowIndex) {
+            int base = cow * k;
+            Integer[] order = new Integer[count[cow]];
+            for (int j = 0; j < order.length; j++) {
+                order[j] = base + j;
+            }
+            Arrays.sort(order, (a, b) -> worse(value[a], sire[a], value[b], sire[b]) ? 1
+                    : worse(value[b], sire[b], value[a], sire[a]) ? -1 : 0);
+            Mating[] matings = new Mating[order.length];
+            for (int j = 0; j < order.length; j++) {
+                matings[j] = new Mating(sires[sire[order[j]]], cowIndex, value[order[j]]);
+            }
+            return matings;
+        }
+
+        /** (v1, s1) 是否比 (v2, s2) 更差: 亲缘系数更高，相同时公牛位置更靠后 */
+        private static boolean worse(double v1, int s1, double v2, int s2) {
+            return v1 > v2 || (v1 == v2 && s1 > s2);
+        }
+    }
+
+    // --- 日志辅助方法 (内部使用) ---
+    /** 记录普通信息 */
+    private void logInfo(String message) {
+        if (logger != null) {
+            logger.info("MateAllocation", message);
+        } else {
+            System.out.println("INFO (MateAllocation - Logger unavailable): " + message); // 后备方案
+        }
+    }
+}
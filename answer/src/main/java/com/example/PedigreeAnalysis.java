@@ -1,84 +1,317 @@
 package com.example;
 
+import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.charset.StandardCharsets;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.time.LocalDateTime; // Import for timestamp 时间戳
+import java.util.concurrent.CountDownLatch;
+
+import javax.management.JMException;
 
 public class PedigreeAnalysis {
 
     // --- 数据库连接配置 ---
-    private static final String DB_URL = "jdbc:mysql://localhost:3306/cow?useSSL=false&serverTimezone=UTC"; // 数据库URL
-    private static final String DB_USER = "root"; // 数据库用户名
-    private static final String DB_PASSWORD = "root"; // 数据库密码
+    static final String DB_URL = "jdbc:mysql://localhost:3306/cow?useSSL=false&serverTimezone=UTC"; // 数据库URL
+    static final String DB_USER = "root"; // 数据库用户名
+    static final String DB_PASSWORD = "root"; // 数据库密码
 
     // --- 表和列名配置 ---
-    private static final String CATTLE_TABLE_NAME = "cattle_info"; // 母牛系谱数据表名
-    private static final String ID_COL = "standard_id"; // 个体标准ID列名
-    private static final String SIRE_COL = "sire_id"; // 父号ID列名 (可能需要映射)
-    private static final String DAM_COL = "dam_id"; // 母号ID列名 (可能需要映射)
-
-    private static final String MAPPING_TABLE_NAME = "num_comp_tb"; // 牛号对应表名
-    private static final String MAPPING_INTERNAL_ID_COL = "id"; // 对应表中的母牛编号 (需要被映射的ID)
-    private static final String MAPPING_STANDARD_ID_COL = "standard_id"; // 对应表中的标准牛号 (目标ID)
+    static final String CATTLE_TABLE_NAME = "cattle_info"; // 母牛系谱数据表名
+    static final String ID_COL = "standard_id"; // 个体标准ID列名
+    static final String SIRE_COL = "sire_id"; // 父号ID列名 (可能需要映射)
+    static final String DAM_COL = "dam_id"; // 母号ID列名 (可能需要映射)
+
+    static final String MAPPING_TABLE_NAME = "num_comp_tb"; // 牛号对应表名
+    static final String MAPPING_INTERNAL_ID_COL = "id"; // 对应表中的母牛编号 (需要被映射的ID)
+    static final String MAPPING_STANDARD_ID_COL = "standard_id"; // 对应表中的标准牛号 (目标ID)
     // private static final String MAPPING_EAR_NUM_COL = "ear_num"; // 耳号
     // (暂时不需要映射，后面3可以添加)
 
     // --- 日志文件配置 ---
     private static final String LOG_FILE = "pedigree_analysis_log.txt"; // 日志文件名
-    private static PrintWriter logWriter; // 静态日志写入器实例
+    private static AnalysisLog log; // 静态日志实例 (异步写入 LOG_FILE)
 
     public static void main(String[] args) {
+        AnalysisOptions options;
+        try {
+            options = AnalysisOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.print(AnalysisOptions.usage());
+            return;
+        }
+
+        // 运行指标: 运行中通过 JMX 读取，结束时可写成 JSON 报告
+        AnalysisMetrics metrics = new AnalysisMetrics();
+
         // 使用 try-with-resources 自动管理日志写入器的生命周期
-        try (PrintWriter writer = new PrintWriter(new FileWriter(LOG_FILE, false))) { // false = 覆盖日志文件
-            logWriter = writer; // 将实例赋给静态变量
+        try (AnalysisLog analysisLog = new AnalysisLog(new FileWriter(LOG_FILE, false), options.logLevel)) { // false = 覆盖日志文件
+            log = analysisLog; // 将实例赋给静态变量
 
             logInfo("程序启动，开始系谱分析...");
+            try {
+                metrics.register();
+            } catch (JMException e) {
+                logWarn("无法注册 JMX 指标 " + AnalysisMetrics.OBJECT_NAME + ": " + e.getMessage());
+            }
+
+            // 常驻查询服务模式: 加载后一直服务到进程结束
+            if (options.servePort >= 0) {
+                runServer(options);
+                return;
+            }
+            // 多牧场批量分析: 合并后共用一个计算引擎，按牧场分别输出
+            if (options.herds != null) {
+                runHerdBatch(options, metrics);
+                return;
+            }
 
-            // 1. 从数据库加载 ID 映射表
-            Map<String, String> idMapping = loadIdMappingFromDB();
-            logInfo("加载了 " + idMapping.size() + " 条 ID 映射记录。");
+            // 目标个体模式: 只在目标个体及其祖先组成的子系谱上计算
+            List<String> targetIds = null;
+            if (options.targets != null) {
+                try {
+                    targetIds = readIdList(options.targets);
+                } catch (IOException e) {
+                    logError("读取目标个体列表失败: " + options.targets, e);
+                    return;
+                }
+            }
+
+            PedigreeIndex pedigree;
+            PedigreeSnapshot snapshot = null;
+            if (options.snapshotIn != null) {
+                // 1-2. 从二进制快照加载系谱 (内存映射，不连接数据库)
+                metrics.begin(AnalysisMetrics.Phase.PEDIGREE_LOAD);
+                snapshot = openSnapshot(options.snapshotIn);
+                if (snapshot == null) {
+                    return;
+                }
+                pedigree = snapshot.toPedigreeIndex();
+                metrics.end(AnalysisMetrics.Phase.PEDIGREE_LOAD, pedigree.size());
+            } else if (options.loader == AnalysisOptions.Loader.ANCESTORS) {
+                // 1-2. 只逐代查询目标个体的祖先及其父/母号映射 (计时合并为系谱加载)
+                metrics.begin(AnalysisMetrics.Phase.PEDIGREE_LOAD);
+                pedigree = loadPedigreeAncestors(options, targetIds);
+                metrics.end(AnalysisMetrics.Phase.PEDIGREE_LOAD, pedigree.size());
+            } else if (options.loader == AnalysisOptions.Loader.CSV) {
+                // 1-2. 直接并行解析 CSV 文件，不连接数据库 (计时合并为系谱加载)
+                metrics.begin(AnalysisMetrics.Phase.PEDIGREE_LOAD);
+                pedigree = loadPedigreeCsv(options);
+                metrics.end(AnalysisMetrics.Phase.PEDIGREE_LOAD, pedigree.size());
+            } else if (options.loader == AnalysisOptions.Loader.STREAMING) {
+                // 1-2. 在同一个连接上流式加载 ID 映射和系谱数据 (计时合并为系谱加载)
+                metrics.begin(AnalysisMetrics.Phase.PEDIGREE_LOAD);
+                pedigree = loadPedigreeStreaming(options);
+                metrics.end(AnalysisMetrics.Phase.PEDIGREE_LOAD, pedigree.size());
+            } else {
+                // 1. 从数据库加载 ID 映射表
+                metrics.begin(AnalysisMetrics.Phase.MAPPING_LOAD);
+                Map<String, String> idMapping = loadIdMappingFromDB();
+                logInfo("加载了 " + idMapping.size() + " 条 ID 映射记录。");
+                // 一次性解析映射链 (旧耳号 -> 场内编号 -> 标准牛号)，加载系谱时每个父/母号只查一次
+                IdAliasResolver aliases = new IdAliasResolver(idMapping, log);
+                metrics.end(AnalysisMetrics.Phase.MAPPING_LOAD, idMapping.size());
 
-            // 2. 从数据库加载系谱数据，并应用 ID 映射
-            Map<String, Animal> pedigree = loadPedigreeFromDB(idMapping);
+                // 2. 从数据库加载系谱数据，并应用 ID 映射
+                metrics.begin(AnalysisMetrics.Phase.PEDIGREE_LOAD);
+                pedigree = loadPedigreeFromDB(aliases);
+                metrics.end(AnalysisMetrics.Phase.PEDIGREE_LOAD, pedigree.size());
+            }
+            int[] targets = null;
+            if (targetIds != null) {
+                // 只保留目标个体及其祖先，之后的校验和计算都在这个子系谱上进行
+                int loaded = pedigree.size();
+                targets = toAnimalIndices(options.targets, targetIds, pedigree);
+                PedigreeIndex closure = pedigree.ancestorClosure(targets);
+                for (int k = 0; k < targets.length; k++) {
+                    targets[k] = closure.indexOf(pedigree.getId(targets[k]));
+                }
+                pedigree = closure;
+                logInfo(String.format("目标个体 %d 个，祖先闭包 %d 个个体 (加载了 %d 个)。", targets.length, pedigree.size(), loaded));
+            }
+            metrics.setAnimalCount(pedigree.size());
 
             // 检查数据是否加载成功
-            if (pedigree.isEmpty()) {
+            if (pedigree.size() == 0) {
                 logInfo("未能加载系谱数据或数据为空。程序退出。");
                 return; // 退出程序
             }
 
-            logInfo("成功从数据库加载并处理了 " + pedigree.size() + " 条个体记录。");
+            logInfo("成功从" + (snapshot != null ? "快照" : options.loader == AnalysisOptions.Loader.CSV ? "CSV 文件" : "数据库")
+                    + "加载并处理了 " + pedigree.size() + " 条个体记录。");
+
+            // 校验系谱: 报告循环、性别冲突和缺失的父母引用，隔离循环个体及其后代，其余个体照常计算
+            metrics.begin(AnalysisMetrics.Phase.VALIDATION);
+            PedigreeValidator validation = PedigreeValidator.validate(pedigree);
+            metrics.end(AnalysisMetrics.Phase.VALIDATION, pedigree.size());
+            if (log != null) {
+                validation.logTo(log);
+            } else if (!validation.isClean()) {
+                logWarn(String.format("系谱校验: %d 个循环，隔离 %d 个个体；%d 个个体既作父亲又作母亲；%d 个父/母号引用的个体不在系谱中。",
+                        validation.getCycles().size(), validation.getQuarantinedCount(),
+                        validation.getDualSexParents().length, pedigree.missingParentCount()));
+            }
 
             // 3. 创建近交系数计算器实例，并传入日志写入器
-            InbreedingCalculator calculator = new InbreedingCalculator(pedigree, logWriter);
+            InbreedingEngine calculator;
+            CoancestryCache coancestryCache = null;
+            String engineName = options.incrementalState != null ? "INCREMENTAL" : options.engine.toString();
+            if (options.useCachedF && snapshot != null && snapshot.hasInbreeding() && targets == null) { // 子系谱已重新编号
+                calculator = snapshot.cachedInbreeding();
+                engineName = "SNAPSHOT";
+            } else if (options.incrementalState != null) {
+                calculator = new IncrementalInbreedingCalculator(pedigree, loadPreviousState(options.incrementalState), log);
+            } else if (options.engine == AnalysisOptions.Engine.ITERATIVE) {
+                calculator = new IterativeInbreedingCalculator(pedigree, log);
+            } else if (options.engine == AnalysisOptions.Engine.PARALLEL) {
+                calculator = new IterativeInbreedingCalculator(pedigree, log, options.threads);
+                logInfo("并行线程数: " + options.threads);
+            } else {
+                coancestryCache = options.coancestryCacheMb > 0
+                        ? new ClockCoancestryCache(options.coancestryCacheMb * 1024 * 1024)
+                        : ClockCoancestryCache.withHeapFraction(0.25);
+                calculator = new InbreedingCalculator(pedigree, log, coancestryCache);
+            }
+            if (options.useCachedF && !"SNAPSHOT".equals(engineName)) {
+                logWarn("未从含近交系数的快照加载，--use-cached-f 被忽略。");
+            }
+            logInfo("使用计算引擎: " + engineName);
+            metrics.setEngine(engineName, calculator);
+            // 可选: 检查点 (计算期间定期在后台保存已完成的近交系数；--resume 时先从检查点恢复)
+            InbreedingCheckpoint checkpoint = options.checkpoint != null
+                    ? openCheckpoint(options, pedigree, calculator) : null;
 
             // 4. 计算并记录每个个体的近交系数
+            // 可选: 打开批量写回 (后台线程写入，与计算重叠)
+            InbreedingWriteBack writeBack = null;
+            if (options.writeBack) {
+                metrics.begin(AnalysisMetrics.Phase.WRITE_BACK); // 写回与计算重叠，计时到全部提交为止
+                try {
+                    writeBack = new InbreedingWriteBack(DB_URL, DB_USER, DB_PASSWORD, options.writeBatchSize, log);
+                    logInfo("已启用近交系数写回，批次大小: " + options.writeBatchSize);
+                } catch (SQLException e) {
+                    metrics.end(AnalysisMetrics.Phase.WRITE_BACK, 0);
+                    logError("数据库错误：无法启用近交系数写回，本次只计算不写回。", e);
+                }
+            }
+
             logInfo("\n开始计算近交系数:");
-            int calculatedCount = 0; // 成功计算的数量
-            int errorCount = 0; // 计算出错的数量
-            for (String animalId : pedigree.keySet()) {
-                // 调用计算器获取近交系数
-                double f = calculator.getInbreedingCoefficient(animalId);
+            boolean perAnimal = options.logMode == AnalysisOptions.LogMode.DETAIL; // summary 模式不逐个体记录
+            InbreedingSummary summary = new InbreedingSummary();
+            int animalCount = targets != null ? targets.length : pedigree.size();
+            metrics.begin(AnalysisMetrics.Phase.CALCULATION);
+            for (int k = 0; k < animalCount; k++) {
+                // 调用计算器获取近交系数 (按拓扑编号顺序，父母先于后代；目标个体模式按列表顺序)
+                int animal = targets != null ? targets[k] : k + 1;
+                String animalId = pedigree.getId(animal);
+                double f = calculator.getInbreedingCoefficient(animal);
 
-                // 检查计算结果是否有效 (非 NaN)
+                // 检查计算结果是否有效 (非 NaN)，格式化在日志线程进行
+                summary.add(animalId, f);
+                metrics.recordResult(f);
                 if (!Double.isNaN(f)) {
-                    logInfo(String.format("个体 ID: %s, 近交系数 (F): %.6f", animalId, f));
-                    calculatedCount++;
-                    // 可选: 将计算结果更新回数据库
-                    // updateInbreedingCoefficientInDB(animalId, f);
+                    log(perAnimal ? AnalysisLog.Level.INFO : AnalysisLog.Level.DEBUG,
+                            "个体 ID: %s, 近交系数 (F): %.6f", animalId, f);
                 } else {
                     // 如果返回 NaN，则记录错误信息
-                    logWarn(String.format("个体 ID: %s, 近交系数 (F): 计算错误或无法计算 (可能由于循环或深度)", animalId));
-                    errorCount++;
+                    log(perAnimal ? AnalysisLog.Level.WARN : AnalysisLog.Level.DEBUG,
+                            validation.isQuarantined(animal)
+                                    ? "个体 ID: %s, 近交系数 (F): 处于系谱循环中或为循环个体的后代，已隔离"
+                                    : "个体 ID: %s, 近交系数 (F): 计算错误或无法计算 (可能由于递归深度)", animalId);
+                }
+                // 将计算结果交给写回线程 (NaN 写为 NULL)
+                if (writeBack != null) {
+                    submitWriteBack(writeBack, animalId, f);
+                }
+            }
+            metrics.end(AnalysisMetrics.Phase.CALCULATION, animalCount);
+            if (checkpoint != null) {
+                // 写入完整的检查点: 之后的写回或分析阶段中断时，--resume 不需要重新计算
+                try {
+                    checkpoint.finish(calculator);
+                } catch (IOException e) {
+                    logError("写入最终检查点失败: " + options.checkpoint, e);
                 }
             }
+            if (writeBack != null) {
+                try {
+                    writeBack.close();
+                } catch (SQLException e) {
+                    logError("数据库错误：近交系数写回未全部完成。", e);
+                }
+                metrics.end(AnalysisMetrics.Phase.WRITE_BACK, writeBack.getWrittenCount());
+            }
 
             // 5. 输出总结信息到日志
-            logInfo(String.format("\n计算完成。成功计算 %d 个个体，计算错误/无法计算 %d 个个体。", calculatedCount, errorCount));
+            logInfo(String.format("\n计算完成。成功计算 %d 个个体，计算错误/无法计算 %d 个个体。",
+                    summary.getValidCount(), summary.getInvalidCount()));
+            if (log != null) {
+                summary.logTo(log);
+            }
+            if (coancestryCache != null) {
+                long lookups = coancestryCache.hits() + coancestryCache.misses();
+                logInfo(String.format("亲缘系数缓存: 条目 %d, 命中 %d, 未命中 %d, 命中率 %.2f%%, 淘汰 %d。",
+                        coancestryCache.size(), coancestryCache.hits(), coancestryCache.misses(),
+                        lookups == 0 ? 0.0 : 100.0 * coancestryCache.hits() / lookups, coancestryCache.evictions()));
+            }
+            // 增量模式: 保存本次结果，供下次运行比较
+            if (options.incrementalState != null) {
+                try {
+                    PedigreeSnapshot.write(Paths.get(options.incrementalState), pedigree, calculator);
+                    logInfo("增量计算状态已保存到 " + options.incrementalState);
+                } catch (IOException e) {
+                    logError("保存增量计算状态失败: " + options.incrementalState, e);
+                }
+            }
+            // 目标个体模式: 输出目标个体之间的两两亲缘系数
+            if (targets != null) {
+                exportTargetCoancestry(options, pedigree, calculator, targets);
+            }
+            // 可选: 每个个体与参考群体的平均亲缘系数
+            if (options.referenceGroups != null) {
+                runMeanCoancestry(options, pedigree, calculator);
+            }
+            // 可选: 基因下落模拟 (祖先近交系数、奠基者基因组当量、等位基因保留率)
+            if (options.geneDropReplicates > 0) {
+                runGeneDropping(options, pedigree, calculator);
+            }
+            // 可选: 完整 F、按世代截断的 F 和系谱完整度
+            if (options.truncatedDepths != null) {
+                runTruncatedInbreeding(options, pedigree, calculator, targets);
+            }
+            // 可选: 选配矩阵 (候选公牛 × 母牛的后代期望近交系数)
+            if (options.matingSires != null && options.matingCows != null) {
+                runMateAllocation(options, pedigree, calculator);
+            }
+            // 可选: 导出 A 逆矩阵和稠密 A 子矩阵，供 BLUP 遗传评估使用
+            if (options.ainvOut != null) {
+                exportRelationshipInverse(options.ainvOut, pedigree, calculator);
+            }
+            if (options.aBlock != null) {
+                exportRelationshipBlock(options, pedigree, calculator);
+            }
+            // 保存系谱快照 (含本次近交系数)，供以后不连接数据库直接启动
+            if (options.snapshotOut != null) {
+                try {
+                    PedigreeSnapshot.write(Paths.get(options.snapshotOut), pedigree, calculator);
+                    logInfo("系谱快照已保存到 " + options.snapshotOut);
+                } catch (IOException e) {
+                    logError("保存系谱快照失败: " + options.snapshotOut, e);
+                }
+            }
+            // 正常结束，检查点不再需要
+            if (checkpoint != null) {
+                checkpoint.delete();
+            }
             logInfo("详细日志已写入文件: " + LOG_FILE);
 
         } catch (IOException e) {
@@ -87,7 +320,16 @@ public class PedigreeAnalysis {
             e.printStackTrace();
         } finally {
             // try-with-resources 会自动关闭 writer, 这里仅显式置空表明不再使用
-            logWriter = null;
+            log = null;
+            metrics.finish();
+            if (options.metricsOut != null) {
+                try {
+                    metrics.writeJson(Paths.get(options.metricsOut));
+                } catch (IOException e) {
+                    logError("写入运行指标报告失败: " + options.metricsOut, e);
+                }
+            }
+            metrics.unregister();
             System.out.println("程序执行完毕，请查看日志文件: " + LOG_FILE); // 在控制台提示用户日志文件位置
         }
     }
@@ -98,6 +340,16 @@ public class PedigreeAnalysis {
      * @return Map<内部ID/母牛编号, 标准ID>
      */
     private static Map<String, String> loadIdMappingFromDB() {
+        return loadIdMappingFromDB(null);
+    }
+
+    /**
+     * 从 num_comp_tb 加载牛号编号到标准牛号的映射
+     * 
+     * @param existing 已有的数据库连接 (由调用方关闭)，为 null 时按 DB_URL 新建连接
+     * @return Map<内部ID/母牛编号, 标准ID>
+     */
+    static Map<String, String> loadIdMappingFromDB(Connection existing) {
         Map<String, String> idMapping = new HashMap<>();
         // 构建 SQL 查询语句 - 选择需要映射的ID 和 对应的标准ID
         String query = String.format("SELECT `%s`, `%s` FROM `%s` WHERE `%s` IS NOT NULL AND `%s` IS NOT NULL",
@@ -111,7 +363,7 @@ public class PedigreeAnalysis {
         ResultSet rs = null;
 
         try {
-            conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
+            conn = existing != null ? existing : DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
             stmt = conn.createStatement();
             logInfo("数据库连接成功。执行映射查询: " + query);
             rs = stmt.executeQuery(query);
@@ -129,9 +381,9 @@ public class PedigreeAnalysis {
 
                     // 检查内部ID是否已存在映射，记录警告
                     if (idMapping.containsKey(trimmedInternalId)) {
-                        logWarn(String.format("发现重复的内部ID '%s' 在映射表中。原有映射 '%s' -> '%s', 新映射 '%s' -> '%s'. 将使用新的映射。",
+                        log(AnalysisLog.Level.WARN, "发现重复的内部ID '%s' 在映射表中。原有映射 '%s' -> '%s', 新映射 '%s' -> '%s'. 将使用新的映射。",
                                 trimmedInternalId, trimmedInternalId, idMapping.get(trimmedInternalId),
-                                trimmedInternalId, trimmedStandardId));
+                                trimmedInternalId, trimmedStandardId);
                         duplicateCount++;
                     }
                     idMapping.put(trimmedInternalId, trimmedStandardId);
@@ -161,7 +413,7 @@ public class PedigreeAnalysis {
                 logError("关闭 Statement 时出错 (ID Map)", e);
             }
             try {
-                if (conn != null)
+                if (conn != null && conn != existing)
                     conn.close();
             } catch (SQLException e) {
                 logError("关闭 Connection 时出错 (ID Map)", e);
@@ -175,11 +427,22 @@ public class PedigreeAnalysis {
     /**
      * 从数据库加载系谱数据, 并应用 ID 映射
      * 
-     * @param idMapping 从 loadIdMappingFromDB() 获取的映射 Map
-     * @return 包含系谱信息的 Map<个体标准ID, Animal对象>
+     * @param aliases 由 loadIdMappingFromDB() 的映射构建的别名解析
+     * @return 整数编号的系谱 (每个标准ID只在加载时映射一次)
+     */
+    private static PedigreeIndex loadPedigreeFromDB(IdAliasResolver aliases) {
+        return loadPedigreeFromDB(null, aliases);
+    }
+
+    /**
+     * 从数据库加载系谱数据, 并应用 ID 映射
+     * 
+     * @param existing 已有的数据库连接 (由调用方关闭)，为 null 时按 DB_URL 新建连接
+     * @param aliases 由 loadIdMappingFromDB() 的映射构建的别名解析
+     * @return 整数编号的系谱 (每个标准ID只在加载时映射一次)
      */
-    private static Map<String, Animal> loadPedigreeFromDB(Map<String, String> idMapping) {
-        Map<String, Animal> pedigree = new HashMap<>();
+    static PedigreeIndex loadPedigreeFromDB(Connection existing, IdAliasResolver aliases) {
+        PedigreeIndex.Builder builder = new PedigreeIndex.Builder();
         // 构建 SQL 查询语句
         String query = String.format("SELECT `%s`, `%s`, `%s` FROM `%s`",
                 ID_COL, SIRE_COL, DAM_COL, CATTLE_TABLE_NAME);
@@ -189,7 +452,7 @@ public class PedigreeAnalysis {
         Statement stmt = null;
         ResultSet rs = null;
         try {
-            conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD); // 建立连接
+            conn = existing != null ? existing : DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD); // 建立连接
             stmt = conn.createStatement(); // 创建 Statement
             logInfo("数据库连接成功。执行系谱查询: " + query);
             rs = stmt.executeQuery(query); // 执行查询
@@ -207,59 +470,43 @@ public class PedigreeAnalysis {
 
                 // 检查个体标准ID是否有效
                 if (id == null || id.trim().isEmpty()) {
-                    logWarn(String.format("发现记录 %d 的个体标准ID为空或仅包含空格，已跳过。", recordCount));
+                    log(AnalysisLog.Level.WARN, "发现记录 %d 的个体标准ID为空或仅包含空格，已跳过。", recordCount);
                     continue; // 跳过此记录
                 }
                 String trimmedId = id.trim();
 
                 // --- 应用 ID 映射 ---
-                String resolvedSireId = originalSireId; // 默认使用原始值
-                if (originalSireId != null && !originalSireId.trim().isEmpty()) {
-                    String trimmedOriginalSireId = originalSireId.trim();
-                    String mappedSire = idMapping.get(trimmedOriginalSireId);
-                    if (mappedSire != null) {
-                        resolvedSireId = mappedSire; // 使用映射后的标准ID
-                        if (!trimmedOriginalSireId.equals(resolvedSireId)) { // 仅当实际发生映射时计数
-                            mappedSireCount++;
-                            logInfo(String.format("个体 %s 的父号 '%s' 映射为 '%s'", trimmedId, trimmedOriginalSireId,
-                                    resolvedSireId));
-                        }
-                    } else {
-                        // 如果原始 sire ID 不在映射表中，假定它已经是标准ID
-                        resolvedSireId = trimmedOriginalSireId;
-                    }
+                // 映射链已由 IdAliasResolver 预先解析: 每个父/母号只去除一次空格、查找一次，
+                // 得到的标准牛号为共享实例; 不在映射表中的ID假定已经是标准ID
+                String trimmedSireId = originalSireId == null ? null : originalSireId.trim();
+                String resolvedSireId = trimmedSireId == null || trimmedSireId.isEmpty()
+                        ? null : aliases.canonicalOf(trimmedSireId);
+                if (resolvedSireId != null && !resolvedSireId.equals(trimmedSireId)) { // 仅当实际发生映射时计数
+                    mappedSireCount++;
+                    log(AnalysisLog.Level.DEBUG, "个体 %s 的父号 '%s' 映射为 '%s'", trimmedId, trimmedSireId,
+                            resolvedSireId);
                 }
 
-                String resolvedDamId = originalDamId; // 默认使用原始值
-                if (originalDamId != null && !originalDamId.trim().isEmpty()) {
-                    String trimmedOriginalDamId = originalDamId.trim();
-                    // **重点: 查找 dam_id 是否在映射表的 internal_id 列中**
-                    String mappedDam = idMapping.get(trimmedOriginalDamId);
-                    if (mappedDam != null) {
-                        resolvedDamId = mappedDam; // 使用映射后的标准ID
-                        if (!trimmedOriginalDamId.equals(resolvedDamId)) { // 仅当实际发生映射时计数
-                            mappedDamCount++;
-                            logInfo(String.format("个体 %s 的母号 '%s' 映射为 '%s'", trimmedId, trimmedOriginalDamId,
-                                    resolvedDamId));
-                        }
-                    } else {
-                        // 如果原始 dam ID 不在映射表中，假定它已经是标准ID (或无法映射)
-                        resolvedDamId = trimmedOriginalDamId;
-                        // 可选：如果需要，可以记录哪些母号未被映射
-                        // logInfo(String.format("个体 %s 的母号 '%s' 未在映射表中找到，使用原始值。", trimmedId,
-                        // trimmedOriginalDamId));
-                    }
+                // **重点: 母号多为场内编号，需要映射为标准牛号**
+                String trimmedDamId = originalDamId == null ? null : originalDamId.trim();
+                String resolvedDamId = trimmedDamId == null || trimmedDamId.isEmpty()
+                        ? null : aliases.canonicalOf(trimmedDamId);
+                if (resolvedDamId != null && !resolvedDamId.equals(trimmedDamId)) {
+                    mappedDamCount++;
+                    log(AnalysisLog.Level.DEBUG, "个体 %s 的母号 '%s' 映射为 '%s'", trimmedId, trimmedDamId,
+                            resolvedDamId);
                 }
                 // --- 映射结束 ---
 
-                // 创建 Animal 对象并存入 Map (使用处理过的 ID)
-                // Animal 构造函数内部会处理 "0", null, 空字符串等情况
-                pedigree.put(trimmedId, new Animal(trimmedId, resolvedSireId, resolvedDamId));
+                // 加入系谱 (使用处理过的 ID)
+                // Builder 会按 Animal 构造函数的规则处理 "0", null, 空字符串等情况
+                builder.add(trimmedId, resolvedSireId, resolvedDamId);
 
             }
             logInfo(String.format("处理了 %d 条来自 %s 的记录。加载了 %d 个有效个体。",
-                    recordCount, CATTLE_TABLE_NAME, pedigree.size()));
+                    recordCount, CATTLE_TABLE_NAME, builder.size()));
             logInfo(String.format("共映射了 %d 个父号和 %d 个母号。", mappedSireCount, mappedDamCount));
+            builder = aliases.canonicalizeRecords(builder);
 
         } catch (SQLException e) {
             // 记录数据库操作错误
@@ -280,78 +527,829 @@ public class PedigreeAnalysis {
                 logError("关闭 Statement 时出错 (Pedigree)", e);
             }
             try {
-                if (conn != null)
+                if (conn != null && conn != existing)
                     conn.close();
             } catch (SQLException e) {
                 logError("关闭 Connection 时出错 (Pedigree)", e);
             }
             logInfo("系谱数据数据库资源已关闭。");
         }
-        return pedigree;
+        return builder.build();
+    }
+
+    /**
+     * 读取上次运行保存的增量计算状态
+     * 
+     * @param stateFile 状态文件路径
+     * @return 状态；文件不存在或无法读取时返回 null (全部重新计算)
+     */
+    private static PedigreeSnapshot loadPreviousState(String stateFile) {
+        Path path = Paths.get(stateFile);
+        if (!Files.exists(path)) {
+            logInfo("未找到增量计算状态文件 " + stateFile + "，本次将全部计算。");
+            return null;
+        }
+        try {
+            PedigreeSnapshot state = PedigreeSnapshot.open(path);
+            if (!state.hasInbreeding()) {
+                logWarn("增量计算状态文件中没有近交系数，本次将全部计算: " + stateFile);
+                return null;
+            }
+            logInfo("已读取增量计算状态: " + state.size() + " 个个体。");
+            return state;
+        } catch (IOException e) {
+            logError("读取增量计算状态失败，本次将全部计算: " + stateFile, e);
+            return null;
+        }
+    }
+
+    /**
+     * 创建检查点，--resume 时先读取检查点并恢复已完成个体的近交系数
+     * 检查点不存在、无法读取或与当前系谱不一致时从头计算 (检查点随后被覆盖)。
+     *
+     * @param options 命令行参数
+     * @param pedigree 本次计算的系谱
+     * @param calculator 计算引擎
+     * @return 检查点；引擎不需要计算 (直接使用快照中的近交系数) 时返回 null
+     */
+    private static InbreedingCheckpoint openCheckpoint(AnalysisOptions options, PedigreeIndex pedigree,
+                                                       InbreedingEngine calculator) {
+        if (!(calculator instanceof InbreedingCalculator) && !(calculator instanceof IterativeInbreedingCalculator)) {
+            logWarn("当前计算引擎不需要重新计算，--checkpoint/--resume 被忽略。");
+            return null;
+        }
+        Path file = Paths.get(options.checkpoint);
+        if (options.resume) {
+            try {
+                double[] restored = InbreedingCheckpoint.read(file, pedigree);
+                if (restored == null) {
+                    logWarn("未找到检查点文件 " + options.checkpoint + "，本次从头计算。");
+                } else {
+                    int count = calculator instanceof InbreedingCalculator
+                            ? ((InbreedingCalculator) calculator).restore(restored)
+                            : ((IterativeInbreedingCalculator) calculator).restore(restored);
+                    logInfo(String.format("从检查点 %s 恢复了 %d / %d 个个体的近交系数，只计算其余个体。",
+                            options.checkpoint, count, pedigree.sortedCount()));
+                }
+            } catch (IOException e) {
+                logError("无法从检查点恢复，本次从头计算: " + options.checkpoint, e);
+            }
+        }
+        InbreedingCheckpoint checkpoint = new InbreedingCheckpoint(file, pedigree, options.checkpointInterval, log);
+        if (calculator instanceof InbreedingCalculator) {
+            ((InbreedingCalculator) calculator).setCheckpoint(checkpoint);
+        } else {
+            ((IterativeInbreedingCalculator) calculator).setCheckpoint(checkpoint);
+        }
+        logInfo(String.format("检查点: %s，间隔 %d 秒。", options.checkpoint, options.checkpointInterval));
+        return checkpoint;
+    }
+
+    /**
+     * 打开系谱快照
+     * 
+     * @param snapshotFile 快照文件路径
+     * @return 快照；无法读取时返回 null
+     */
+    private static PedigreeSnapshot openSnapshot(String snapshotFile) {
+        try {
+            long start = System.nanoTime();
+            PedigreeSnapshot snapshot = PedigreeSnapshot.open(Paths.get(snapshotFile));
+            logInfo(String.format("已打开系谱快照 %s: %d 个个体%s，耗时 %.1f ms。", snapshotFile, snapshot.size(),
+                    snapshot.hasInbreeding() ? " (含近交系数)" : "", (System.nanoTime() - start) / 1e6));
+            return snapshot;
+        } catch (IOException e) {
+            logError("读取系谱快照失败: " + snapshotFile, e);
+            return null;
+        }
+    }
+
+    /** 提交一条写回记录；等待队列时被中断则恢复中断标记 */
+    private static void submitWriteBack(InbreedingWriteBack writeBack, String animalId, double f) {
+        try {
+            writeBack.submit(animalId, f);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logWarn("写回队列等待被中断，个体 " + animalId + " 的结果未写回。");
+        }
+    }
+
+    /**
+     * 使用 CsvPedigreeLoader 直接从 CSV 文件加载系谱 (映射文件可选)
+     * 
+     * @param options 命令行参数 (文件路径、解析线程数)
+     * @return 整数编号的系谱，读取失败时返回空系谱
+     */
+    private static PedigreeIndex loadPedigreeCsv(AnalysisOptions options) {
+        return loadPedigreeCsv(options, new IdAliasResolver(loadIdMappingCsv(options), log));
+    }
+
+    /**
+     * 使用 CsvPedigreeLoader 直接从 CSV 文件加载系谱
+     * 
+     * @param options 命令行参数 (文件路径、解析线程数)
+     * @param aliases 由 loadIdMappingCsv() 的映射构建的别名解析
+     * @return 整数编号的系谱，读取失败时返回空系谱
+     */
+    private static PedigreeIndex loadPedigreeCsv(AnalysisOptions options, IdAliasResolver aliases) {
+        try {
+            return new CsvPedigreeLoader(options.threads, log).loadPedigree(Paths.get(options.cattleCsv), aliases);
+        } catch (IOException e) {
+            logError("读取 CSV 文件失败: " + options.cattleCsv, e);
+            return new PedigreeIndex.Builder().build(); // 返回空系谱，主程序会处理
+        }
+    }
+
+    /**
+     * 读取 --mapping-csv 指定的映射文件
+     * 
+     * @param options 命令行参数
+     * @return Map<内部ID/母牛编号, 标准ID>；未指定或读取失败时为空
+     */
+    private static Map<String, String> loadIdMappingCsv(AnalysisOptions options) {
+        if (options.mappingCsv == null) {
+            return new HashMap<>();
+        }
+        try {
+            return new CsvPedigreeLoader(options.threads, log).loadIdMapping(Paths.get(options.mappingCsv));
+        } catch (IOException e) {
+            logError("读取映射文件失败，不做 ID 映射: " + options.mappingCsv, e);
+            return new HashMap<>();
+        }
+    }
+
+    /**
+     * 运行常驻查询服务，直到进程收到终止信号 (Ctrl+C / kill)
+     * 每次 (重新) 加载都按命令行指定的方式读取系谱: 快照文件会重新打开，数据库会重新查询。
+     * 映射表也随之重新读取 (快照和 CSV 使用 --mapping-csv，未指定时不做映射；其余读取 num_comp_tb)，
+     * 热更新加入的记录与加载的系谱使用同一份别名解析。
+     * 
+     * @param options 命令行参数
+     */
+    private static void runServer(AnalysisOptions options) {
+        PedigreeServer server = new PedigreeServer(() -> new IdAliasResolver(
+                options.snapshotIn != null || options.loader == AnalysisOptions.Loader.CSV
+                        ? loadIdMappingCsv(options) : loadIdMappingFromDB(), log), aliases -> {
+            if (options.snapshotIn != null) {
+                PedigreeSnapshot snapshot = openSnapshot(options.snapshotIn);
+                if (snapshot == null) {
+                    throw new IOException("无法读取系谱快照: " + options.snapshotIn);
+                }
+                return snapshot.toPedigreeIndex();
+            } else if (options.loader == AnalysisOptions.Loader.ANCESTORS) {
+                return loadPedigreeAncestors(options, readIdList(options.targets));
+            } else if (options.loader == AnalysisOptions.Loader.CSV) {
+                return loadPedigreeCsv(options, aliases);
+            } else if (options.loader == AnalysisOptions.Loader.STREAMING) {
+                return loadPedigreeStreaming(options, aliases);
+            }
+            return loadPedigreeFromDB(aliases);
+        }, options.threads, log);
+        try {
+            server.start(options.servePort);
+        } catch (Exception e) {
+            logError("查询服务启动失败", e);
+            return;
+        }
+        CountDownLatch stopped = new CountDownLatch(1);
+        Thread mainThread = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(1);
+            stopped.countDown();
+            try {
+                mainThread.join(5000); // 等待主线程关闭日志后再退出
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        try {
+            stopped.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            server.stop(0);
+        }
+    }
+
+    /**
+     * 多牧场批量分析: 并发加载各牧场，合并为共同的系谱后用一个计算引擎计算，
+     * 公牛及其祖先的近交系数和亲缘系数在牧场之间共享，各牧场的结果分别汇总并写入 牧场名称_inbreeding.tsv
+     * 
+     * @param options 命令行参数
+     * @param metrics 运行指标
+     */
+    private static void runHerdBatch(AnalysisOptions options, AnalysisMetrics metrics) {
+        HerdBatch batch;
+        try {
+            batch = new HerdBatch(HerdBatch.readHerdList(Paths.get(options.herds)), options.threads, log);
+        } catch (IOException e) {
+            logError("读取牧场列表失败: " + options.herds, e);
+            return;
+        }
+        int herdCount = batch.getHerds().size();
+        metrics.begin(AnalysisMetrics.Phase.PEDIGREE_LOAD);
+        PedigreeIndex pedigree;
+        try {
+            batch.loadAll(herd -> loadHerdRecords(herd, options, Math.max(1, options.threads / Math.max(1, herdCount))));
+            pedigree = batch.merge();
+        } catch (Exception e) {
+            metrics.end(AnalysisMetrics.Phase.PEDIGREE_LOAD, 0);
+            logError("多牧场系谱加载失败，程序退出。", e);
+            return;
+        }
+        metrics.end(AnalysisMetrics.Phase.PEDIGREE_LOAD, pedigree.size());
+        metrics.setAnimalCount(pedigree.size());
+        if (pedigree.size() == 0) {
+            logInfo("未能加载系谱数据或数据为空。程序退出。");
+            return;
+        }
+
+        metrics.begin(AnalysisMetrics.Phase.VALIDATION);
+        PedigreeValidator validation = PedigreeValidator.validate(pedigree);
+        metrics.end(AnalysisMetrics.Phase.VALIDATION, pedigree.size());
+        if (log != null) {
+            validation.logTo(log);
+        }
+
+        // 所有牧场共用一个引擎 (递归引擎的近交系数和亲缘系数缓存在牧场之间共享)
+        InbreedingEngine calculator;
+        CoancestryCache coancestryCache = null;
+        if (options.engine == AnalysisOptions.Engine.ITERATIVE) {
+            calculator = new IterativeInbreedingCalculator(pedigree, log);
+        } else if (options.engine == AnalysisOptions.Engine.PARALLEL) {
+            calculator = new IterativeInbreedingCalculator(pedigree, log, options.threads);
+        } else {
+            coancestryCache = options.coancestryCacheMb > 0
+                    ? new ClockCoancestryCache(options.coancestryCacheMb * 1024 * 1024)
+                    : ClockCoancestryCache.withHeapFraction(0.25);
+            calculator = new InbreedingCalculator(pedigree, log, coancestryCache);
+        }
+        logInfo("使用计算引擎: " + options.engine);
+        metrics.setEngine(options.engine.toString(), calculator);
+
+        long processed = 0;
+        metrics.begin(AnalysisMetrics.Phase.CALCULATION);
+        for (HerdBatch.Herd herd : batch.getHerds()) {
+            long start = System.nanoTime();
+            InbreedingSummary summary = new InbreedingSummary();
+            InbreedingWriteBack writeBack = null;
+            if (options.writeBack && herd.isDatabase()) {
+                try {
+                    writeBack = new InbreedingWriteBack(herd.source, DB_USER, DB_PASSWORD, options.writeBatchSize, log);
+                } catch (SQLException e) {
+                    logError("数据库错误：牧场 " + herd.name + " 无法启用近交系数写回，只计算不写回。", e);
+                }
+            }
+            Path out = Paths.get(options.herdOutDir, herd.name + "_inbreeding.tsv");
+            try (BufferedWriter writer = Files.newBufferedWriter(out, StandardCharsets.UTF_8)) {
+                writer.write("id\tF\n");
+                for (int animal : herd.animals) {
+                    String animalId = pedigree.getId(animal);
+                    double f = calculator.getInbreedingCoefficient(animal);
+                    summary.add(animalId, f);
+                    metrics.recordResult(f);
+                    writer.write(animalId);
+                    writer.write('\t');
+                    writer.write(Double.isNaN(f) ? "NaN" : String.format("%.6f", f));
+                    writer.write('\n');
+                    if (writeBack != null) {
+                        submitWriteBack(writeBack, animalId, f);
+                    }
+                }
+            } catch (IOException e) {
+                logError("写入牧场 " + herd.name + " 的结果失败: " + out, e);
+            }
+            processed += herd.animals.length;
+            if (writeBack != null) {
+                try {
+                    writeBack.close();
+                } catch (SQLException e) {
+                    logError("数据库错误：牧场 " + herd.name + " 的近交系数写回未全部完成。", e);
+                }
+            }
+            logInfo(String.format("\n牧场 %s: 成功计算 %d 个个体，计算错误/无法计算 %d 个个体，耗时 %d ms，结果已写入 %s。",
+                    herd.name, summary.getValidCount(), summary.getInvalidCount(),
+                    (System.nanoTime() - start) / 1_000_000, out));
+            if (log != null) {
+                summary.logTo(log);
+            }
+        }
+        metrics.end(AnalysisMetrics.Phase.CALCULATION, processed);
+        if (coancestryCache != null) {
+            long lookups = coancestryCache.hits() + coancestryCache.misses();
+            logInfo(String.format("共享亲缘系数缓存: 条目 %d, 命中 %d, 未命中 %d, 命中率 %.2f%%, 淘汰 %d。",
+                    coancestryCache.size(), coancestryCache.hits(), coancestryCache.misses(),
+                    lookups == 0 ? 0.0 : 100.0 * coancestryCache.hits() / lookups, coancestryCache.evictions()));
+        }
+    }
+
+    /**
+     * 加载一个牧场的系谱记录 (父/母号按本牧场的映射表解析为标准牛号，尚未构建)
+     * 
+     * @param herd 牧场
+     * @param options 命令行参数 (fetch size)
+     * @param parallelism CSV 牧场的解析线程数
+     * @return 系谱记录
+     * @throws Exception 数据库或文件读取失败时抛出
+     */
+    private static PedigreeIndex.Builder loadHerdRecords(HerdBatch.Herd herd, AnalysisOptions options, int parallelism)
+            throws Exception {
+        if (herd.isDatabase()) {
+            try (Connection conn = DriverManager.getConnection(herd.source, DB_USER, DB_PASSWORD)) {
+                StreamingPedigreeLoader loader = new StreamingPedigreeLoader(conn, options.fetchSize, log);
+                return loader.loadRecords(new IdAliasResolver(loader.loadIdMapping(), log));
+            }
+        }
+        CsvPedigreeLoader loader = new CsvPedigreeLoader(parallelism, log);
+        Map<String, String> idMapping = herd.mappingFile != null
+                ? loader.loadIdMapping(Paths.get(herd.mappingFile))
+                : new HashMap<>();
+        return loader.loadRecords(Paths.get(herd.source), new IdAliasResolver(idMapping, log));
+    }
+
+    /**
+     * 使用 StreamingPedigreeLoader 在单个连接上流式加载系谱
+     * 
+     * @param options 命令行参数 (fetch size、是否在数据库端映射)
+     * @return 整数编号的系谱，数据库错误时返回空系谱
+     */
+    private static PedigreeIndex loadPedigreeStreaming(AnalysisOptions options) {
+        return loadPedigreeStreaming(options, null);
+    }
+
+    /**
+     * 使用 StreamingPedigreeLoader 在单个连接上流式加载系谱
+     * 
+     * @param options 命令行参数 (fetch size、是否在数据库端映射)
+     * @param aliases 已构建的别名解析，为 null 时在同一连接上流式读取映射表 (--sql-mapping 时不使用)
+     * @return 整数编号的系谱，数据库错误时返回空系谱
+     */
+    private static PedigreeIndex loadPedigreeStreaming(AnalysisOptions options, IdAliasResolver aliases) {
+        logInfo("尝试连接数据库流式加载系谱数据: " + DB_URL);
+        try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD)) {
+            StreamingPedigreeLoader loader = new StreamingPedigreeLoader(conn, options.fetchSize, log);
+            if (options.sqlMapping) {
+                return loader.loadPedigreeWithSqlMapping();
+            }
+            return loader.loadPedigree(aliases != null ? aliases : new IdAliasResolver(loader.loadIdMapping(), log));
+        } catch (SQLException e) {
+            logError("数据库错误：流式加载系谱数据失败。", e);
+            return new PedigreeIndex.Builder().build(); // 返回空系谱，主程序会处理
+        }
+    }
+
+    /**
+     * 使用 StreamingPedigreeLoader 只加载目标个体及其祖先
+     * 
+     * @param options 命令行参数
+     * @param targetIds 目标个体ID
+     * @return 目标个体及其祖先组成的系谱，数据库错误时返回空系谱
+     */
+    private static PedigreeIndex loadPedigreeAncestors(AnalysisOptions options, List<String> targetIds) {
+        logInfo("尝试连接数据库逐代加载目标个体的祖先: " + DB_URL);
+        try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD)) {
+            return new StreamingPedigreeLoader(conn, options.fetchSize, log).loadAncestors(targetIds);
+        } catch (SQLException e) {
+            logError("数据库错误：加载目标个体的祖先失败。", e);
+            return new PedigreeIndex.Builder().build(); // 返回空系谱，主程序会处理
+        }
+    }
+
+    /**
+     * 计算选配矩阵并写入结果文件 (制表符分隔)
+     * top-k 为 0 时输出完整矩阵: 公牛ID, 母牛ID, 亲缘系数；
+     * 否则输出每头母牛亲缘系数最低的 k 个选配: 母牛ID, 名次, 公牛ID, 后代期望近交系数
+     * 
+     * @param options 命令行参数
+     * @param pedigree 系谱
+     * @param calculator 已完成计算的近交系数引擎
+     */
+    private static void runMateAllocation(AnalysisOptions options, PedigreeIndex pedigree, InbreedingEngine calculator) {
+        try {
+            int[] sires = readAnimalList(options.matingSires, pedigree);
+            int[] cows = readAnimalList(options.matingCows, pedigree);
+            MateAllocation allocation = new MateAllocation(pedigree, calculator, options.threads, log);
+            try (BufferedWriter out = Files.newBufferedWriter(Paths.get(options.matingOut), StandardCharsets.UTF_8)) {
+                if (options.matingTopK > 0) {
+                    out.write("cow_id\trank\tsire_id\texpected_f\n");
+                    MateAllocation.Mating[][] best = allocation.lowestCoancestry("选配矩阵", sires, cows, options.matingTopK);
+                    for (MateAllocation.Mating[] matings : best) {
+                        for (int rank = 0; rank < matings.length; rank++) {
+                            out.write(String.format("%s\t%d\t%s\t%.6f%n", pedigree.getId(matings[rank].getCow()),
+                                    rank + 1, pedigree.getId(matings[rank].getSire()), matings[rank].getCoancestry()));
+                        }
+                    }
+                } else {
+                    out.write("sire_id\tcow_id\tcoancestry\n");
+                    String[] cowIds = new String[cows.length];
+                    for (int c = 0; c < cows.length; c++) {
+                        cowIds[c] = pedigree.getId(cows[c]);
+                    }
+                    allocation.coancestryMatrix("选配矩阵", sires, cows, (position, row) -> {
+                        String sireId = pedigree.getId(sires[position]);
+                        for (int c = 0; c < row.length; c++) {
+                            out.write(sireId);
+                            out.write('\t');
+                            out.write(cowIds[c]);
+                            out.write('\t');
+                            out.write(Double.isNaN(row[c]) ? "NaN" : String.format("%.6f", row[c]));
+                            out.write('\n');
+                        }
+                    });
+                }
+            }
+            logInfo("选配结果已写入 " + options.matingOut);
+        } catch (Exception e) {
+            logError("计算选配矩阵失败", e);
+        }
+    }
+
+    /**
+     * 计算每个个体与各参考群体的平均亲缘系数并写入结果文件 (制表符分隔: 个体ID, F, 每个群体一列)
+     * 同时记录每个群体内部的平均亲缘系数 (含自身，即群体近交的期望值)。
+     * 
+     * @param options 命令行参数
+     * @param pedigree 系谱
+     * @param calculator 已完成计算的近交系数引擎
+     */
+    private static void runMeanCoancestry(AnalysisOptions options, PedigreeIndex pedigree,
+                                          InbreedingEngine calculator) {
+        try {
+            String[] names = new String[options.referenceGroups.length];
+            int[][] groups = new int[names.length][];
+            for (int g = 0; g < names.length; g++) {
+                String group = options.referenceGroups[g];
+                if (group.equalsIgnoreCase(AnalysisOptions.ALL_ANIMALS)) {
+                    names[g] = AnalysisOptions.ALL_ANIMALS;
+                    groups[g] = new int[pedigree.size()];
+                    for (int i = 0; i < groups[g].length; i++) {
+                        groups[g][i] = i + 1;
+                    }
+                } else {
+                    names[g] = Paths.get(group).getFileName().toString();
+                    groups[g] = readAnimalList(group, pedigree);
+                }
+            }
+            MateAllocation allocation = new MateAllocation(pedigree, calculator, options.threads, log);
+            double[][] mean = allocation.meanCoancestry(groups);
+            for (int g = 0; g < names.length; g++) {
+                double sum = 0.0;
+                int count = 0;
+                for (int animal : groups[g]) {
+                    if (!Double.isNaN(mean[g][animal])) {
+                        sum += mean[g][animal];
+                        count++;
+                    }
+                }
+                logInfo(String.format("参考群体 %s: %d 个个体，群体内平均亲缘系数 %.6f。", names[g], count,
+                        count == 0 ? Double.NaN : sum / count));
+            }
+            try (BufferedWriter out = Files.newBufferedWriter(Paths.get(options.meanCoancestryOut), StandardCharsets.UTF_8)) {
+                out.write("id\tF");
+                for (String name : names) {
+                    out.write('\t');
+                    out.write(name);
+                }
+                out.write('\n');
+                for (int animal = 1; animal <= pedigree.size(); animal++) {
+                    double f = calculator.getInbreedingCoefficient(animal);
+                    out.write(pedigree.getId(animal));
+                    out.write('\t');
+                    out.write(Double.isNaN(f) ? "NaN" : String.format("%.6f", f));
+                    for (double[] values : mean) {
+                        out.write('\t');
+                        out.write(Double.isNaN(values[animal]) ? "NaN" : String.format("%.6f", values[animal]));
+                    }
+                    out.write('\n');
+                }
+            }
+            logInfo("平均亲缘系数已写入 " + options.meanCoancestryOut);
+        } catch (IOException e) {
+            logError("计算平均亲缘系数失败", e);
+        }
+    }
+
+    /**
+     * 运行基因下落模拟并写入结果文件 (制表符分隔: 个体ID, F, 模拟 F, Ballou 祖先近交系数, 奠基者等位基因保留率)
+     * 
+     * @param options 命令行参数
+     * @param pedigree 系谱
+     * @param calculator 已完成计算的近交系数引擎 (输出中与模拟结果对照)
+     */
+    private static void runGeneDropping(AnalysisOptions options, PedigreeIndex pedigree,
+                                        InbreedingEngine calculator) {
+        try {
+            boolean[] reference = null;
+            if (options.geneDropReference != null) {
+                reference = new boolean[pedigree.size() + 1];
+                for (int animal : readAnimalList(options.geneDropReference, pedigree)) {
+                    reference[animal] = true;
+                }
+            }
+            GeneDropping.Result result = new GeneDropping(pedigree, options.threads, log)
+                    .run(options.geneDropReplicates, options.geneDropSeed, options.geneDropTolerance, reference);
+            int founders = 0;
+            int founderAlleles = 0;
+            for (int i = 1; i <= pedigree.sortedCount(); i++) {
+                int unknown = (pedigree.getSire(i) == 0 ? 1 : 0) + (pedigree.getDam(i) == 0 ? 1 : 0);
+                founders += unknown > 0 ? 1 : 0;
+                founderAlleles += unknown;
+            }
+            double[] halfWidths = result.getHalfWidths();
+            logInfo(String.format("基因下落: %d 次重复 (种子 %d)，参考群体 %d 个个体；95%% 置信区间半宽 F %.5f, F_a %.5f, Σp² %.5f。",
+                    result.getReplicates(), options.geneDropSeed, result.getReferenceSize(),
+                    halfWidths[0], halfWidths[1], halfWidths[2]));
+            logInfo(String.format("奠基者基因组当量 fge = %.2f，遗传多样性 1 - Σp² = %.6f；"
+                            + "%d 个 (半) 奠基者的 %d 个等位基因中，参考群体中期望保留 %.1f 个。",
+                    result.getFounderGenomeEquivalents(), result.getGeneDiversity(), founders, founderAlleles,
+                    result.getExpectedAllelesRetained()));
+            try (BufferedWriter out = Files.newBufferedWriter(Paths.get(options.geneDropOut), StandardCharsets.UTF_8)) {
+                out.write("id\tF\tF_drop\tF_ancestral\tfounder_retention\n");
+                for (int animal = 1; animal <= pedigree.size(); animal++) {
+                    out.write(pedigree.getId(animal));
+                    for (double value : new double[]{calculator.getInbreedingCoefficient(animal),
+                            result.getInbreeding(animal), result.getAncestralInbreeding(animal),
+                            result.getRetention(pedigree, animal)}) {
+                        out.write('\t');
+                        out.write(Double.isNaN(value) ? "NaN" : String.format("%.6f", value));
+                    }
+                    out.write('\n');
+                }
+            }
+            logInfo("基因下落结果已写入 " + options.geneDropOut);
+        } catch (Exception e) {
+            logError("基因下落模拟失败", e);
+        }
+    }
+
+    /**
+     * 计算按世代截断的近交系数和 MacCluer 系谱完整度，与完整 F 写入同一个结果文件
+     * (制表符分隔: 个体ID, F, F_代数..., PEC_代数)
+     * 
+     * @param options 命令行参数
+     * @param pedigree 系谱
+     * @param calculator 已完成计算的近交系数引擎 (完整 F)
+     * @param targets 目标个体模式下只输出这些个体，null 表示输出全部个体
+     */
+    private static void runTruncatedInbreeding(AnalysisOptions options, PedigreeIndex pedigree,
+                                               InbreedingEngine calculator, int[] targets) {
+        try {
+            int[] depths = options.truncatedDepths;
+            TruncatedInbreeding.Result result = new TruncatedInbreeding(pedigree, options.threads, log)
+                    .run(depths, options.pecGenerations, calculator);
+            int m = pedigree.sortedCount();
+            double fullSum = 0.0;
+            double pecSum = 0.0;
+            double[] sums = new double[depths.length];
+            for (int i = 1; i <= m; i++) {
+                fullSum += calculator.getInbreedingCoefficient(i);
+                pecSum += result.getCompleteness(i);
+                for (int t = 0; t < depths.length; t++) {
+                    sums[t] += result.getInbreeding(t, i);
+                }
+            }
+            StringBuilder means = new StringBuilder(String.format("平均 F %.6f", m == 0 ? Double.NaN : fullSum / m));
+            for (int t = 0; t < depths.length; t++) {
+                means.append(String.format(", F_%d %.6f", depths[t], m == 0 ? Double.NaN : sums[t] / m));
+            }
+            logInfo(String.format("截断近交系数 (%d 个个体): %s；平均 %d 代系谱完整度 %.4f。", m, means,
+                    options.pecGenerations, m == 0 ? Double.NaN : pecSum / m));
+            try (BufferedWriter out = Files.newBufferedWriter(Paths.get(options.truncatedOut), StandardCharsets.UTF_8)) {
+                out.write("id\tF");
+                for (int depth : depths) {
+                    out.write("\tF_" + depth);
+                }
+                out.write("\tPEC_" + options.pecGenerations + "\n");
+                int rows = targets != null ? targets.length : pedigree.size();
+                for (int k = 0; k < rows; k++) {
+                    int animal = targets != null ? targets[k] : k + 1;
+                    out.write(pedigree.getId(animal));
+                    double[] values = new double[depths.length + 2];
+                    values[0] = calculator.getInbreedingCoefficient(animal);
+                    for (int t = 0; t < depths.length; t++) {
+                        values[t + 1] = result.getInbreeding(t, animal);
+                    }
+                    values[depths.length + 1] = result.getCompleteness(animal);
+                    for (double value : values) {
+                        out.write('\t');
+                        out.write(Double.isNaN(value) ? "NaN" : String.format("%.6f", value));
+                    }
+                    out.write('\n');
+                }
+            }
+            logInfo("截断近交系数和系谱完整度已写入 " + options.truncatedOut);
+        } catch (Exception e) {
+            logError("计算截断近交系数失败", e);
+        }
+    }
+
+    /**
+     * 导出 A 逆矩阵 (稀疏上三角)
+     * 文件名以 .bin 结尾时写二进制 CSR，否则写 "行 列 值" 文本 (从 1 开始)；
+     * 另写 文件.ids，每行 "行号\t个体ID"，把矩阵行号对应回个体。
+     * 
+     * @param file 输出文件
+     * @param pedigree 系谱
+     * @param calculator 已完成计算的近交系数引擎
+     */
+    private static void exportRelationshipInverse(String file, PedigreeIndex pedigree, InbreedingEngine calculator) {
+        try {
+            long start = System.nanoTime();
+            SparseSymmetricMatrix inverse = RelationshipMatrix.inverse(pedigree, calculator);
+            if (file.endsWith(".bin")) {
+                inverse.writeBinary(Paths.get(file));
+            } else {
+                inverse.writeText(Paths.get(file));
+            }
+            try (BufferedWriter out = Files.newBufferedWriter(Paths.get(file + ".ids"), StandardCharsets.UTF_8)) {
+                for (int i = 1; i <= inverse.size(); i++) {
+                    out.write(Integer.toString(i));
+                    out.write('\t');
+                    out.write(pedigree.getId(i));
+                    out.write('\n');
+                }
+            }
+            int excluded = pedigree.size() - pedigree.sortedCount();
+            if (excluded > 0) {
+                logWarn(String.format("%d 个处于系谱循环中的个体未包含在 A 逆矩阵中。", excluded));
+            }
+            logInfo(String.format("A 逆矩阵已写入 %s: 阶数 %d, 上三角非零元素 %d, 耗时 %d ms。", file,
+                    inverse.size(), inverse.nonZeroCount(), (System.nanoTime() - start) / 1_000_000));
+        } catch (IOException e) {
+            logError("导出 A 逆矩阵失败: " + file, e);
+        }
+    }
+
+    /**
+     * 导出列表中个体之间的稠密 A 子矩阵 (制表符分隔，首行和首列为个体ID)
+     * 
+     * @param options 命令行参数
+     * @param pedigree 系谱
+     * @param calculator 已完成计算的近交系数引擎
+     */
+    private static void exportRelationshipBlock(AnalysisOptions options, PedigreeIndex pedigree, InbreedingEngine calculator) {
+        try {
+            int[] animals = readAnimalList(options.aBlock, pedigree);
+            MateAllocation allocation = new MateAllocation(pedigree, calculator, options.threads, log);
+            double[][] block = RelationshipMatrix.denseBlock(allocation, animals);
+            try (BufferedWriter out = Files.newBufferedWriter(Paths.get(options.aBlockOut), StandardCharsets.UTF_8)) {
+                out.write("id");
+                for (int animal : animals) {
+                    out.write('\t');
+                    out.write(pedigree.getId(animal));
+                }
+                out.write('\n');
+                for (int r = 0; r < animals.length; r++) {
+                    out.write(pedigree.getId(animals[r]));
+                    for (double value : block[r]) {
+                        out.write('\t');
+                        out.write(Double.isNaN(value) ? "NaN" : String.format("%.6f", value));
+                    }
+                    out.write('\n');
+                }
+            }
+            logInfo(String.format("%d × %d 的 A 子矩阵已写入 %s", animals.length, animals.length, options.aBlockOut));
+        } catch (Exception e) {
+            logError("导出 A 子矩阵失败", e);
+        }
+    }
+
+    /**
+     * 输出目标个体的近交系数和两两亲缘系数 (制表符分隔: 个体ID, F, 与每个目标个体的亲缘系数)
+     * 
+     * @param options 命令行参数
+     * @param pedigree 目标个体的祖先闭包
+     * @param calculator 已完成计算的近交系数引擎
+     * @param targets 目标个体编号
+     */
+    private static void exportTargetCoancestry(AnalysisOptions options, PedigreeIndex pedigree,
+                                               InbreedingEngine calculator, int[] targets) {
+        try {
+            MateAllocation allocation = new MateAllocation(pedigree, calculator, options.threads, log);
+            double[][] coancestry = new double[targets.length][];
+            allocation.coancestryMatrix("目标个体亲缘系数", targets, targets, (position, row) -> coancestry[position] = row.clone());
+            try (BufferedWriter out = Files.newBufferedWriter(Paths.get(options.targetsOut), StandardCharsets.UTF_8)) {
+                out.write("id\tF");
+                for (int animal : targets) {
+                    out.write('\t');
+                    out.write(pedigree.getId(animal));
+                }
+                out.write('\n');
+                for (int r = 0; r < targets.length; r++) {
+                    double f = calculator.getInbreedingCoefficient(targets[r]);
+                    out.write(pedigree.getId(targets[r]));
+                    out.write('\t');
+                    out.write(Double.isNaN(f) ? "NaN" : String.format("%.6f", f));
+                    for (double value : coancestry[r]) {
+                        out.write('\t');
+                        out.write(Double.isNaN(value) ? "NaN" : String.format("%.6f", value));
+                    }
+                    out.write('\n');
+                }
+            }
+            logInfo(String.format("%d 个目标个体的近交系数和亲缘系数矩阵已写入 %s", targets.length, options.targetsOut));
+        } catch (Exception e) {
+            logError("输出目标个体亲缘系数失败", e);
+        }
+    }
+
+    /**
+     * 读取个体ID列表文件 (每行一个ID，忽略空行和 # 开头的行)
+     * 
+     * @param file 列表文件
+     * @param pedigree 系谱
+     * @return 个体编号；不在系谱中的ID记录警告后跳过
+     * @throws IOException 读取失败时抛出
+     */
+    private static int[] readAnimalList(String file, PedigreeIndex pedigree) throws IOException {
+        return toAnimalIndices(file, readIdList(file), pedigree);
+    }
+
+    /**
+     * 读取ID列表文件 (每行一个ID，去除前后空格，忽略空行和 # 开头的行)
+     * 
+     * @param file 列表文件
+     * @return 个体ID
+     * @throws IOException 读取失败时抛出
+     */
+    private static List<String> readIdList(String file) throws IOException {
+        List<String> ids = new ArrayList<>();
+        for (String line : Files.readAllLines(Paths.get(file), StandardCharsets.UTF_8)) {
+            String id = line.trim();
+            if (!id.isEmpty() && !id.startsWith("#")) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * 把个体ID转换为系谱编号
+     * 
+     * @param source ID的来源 (用于日志)
+     * @param ids 个体ID
+     * @param pedigree 系谱
+     * @return 个体编号；不在系谱中的ID记录警告后跳过
+     */
+    private static int[] toAnimalIndices(String source, List<String> ids, PedigreeIndex pedigree) {
+        int[] animals = new int[ids.size()];
+        int count = 0;
+        List<String> missing = new ArrayList<>();
+        for (String id : ids) {
+            int index = pedigree.indexOf(id);
+            if (index == 0) {
+                missing.add(id);
+            } else {
+                animals[count++] = index;
+            }
+        }
+        if (!missing.isEmpty()) {
+            logWarn(String.format("%s 中有 %d 个ID不在系谱中，已跳过 (例如 %s)。", source, missing.size(), missing.get(0)));
+        }
+        logInfo(String.format("从 %s 读取了 %d 个个体。", source, count));
+        return Arrays.copyOf(animals, count);
+    }
+
+    /**
+     * 指定 main 之外调用加载方法时使用的日志 (例如基准测试)
+     * 
+     * @param analysisLog 日志，null 表示输出到控制台
+     */
+    static void useLog(AnalysisLog analysisLog) {
+        log = analysisLog;
     }
 
     // --- 日志辅助方法 ---
     /** 记录普通信息 */
     private static void logInfo(String message) {
-        writeToLog("INFO", message);
+        writeToLog(AnalysisLog.Level.INFO, message, null, null);
     }
 
     /** 记录警告信息 */
     private static void logWarn(String message) {
-        writeToLog("WARN", message);
+        writeToLog(AnalysisLog.Level.WARN, message, null, null);
     }
 
     /** 记录错误信息，包含异常堆栈 */
     private static void logError(String message, Throwable t) {
-        writeToLog("ERROR", message);
-        // 如果 logWriter 有效且存在异常对象，则打印堆栈跟踪
-        if (t != null && logWriter != null) {
-            t.printStackTrace(logWriter); // 将堆栈跟踪打印到日志文件
-            logWriter.flush(); // 确保立即写入
-        } else if (t != null) {
-            t.printStackTrace(); // 如果日志写入器无效，则打印到控制台作为后备
-        }
-    }
-
-    /** 核心写入日志文件的方法，添加时间戳和级别 */
-    private static void writeToLog(String level, String message) {
-        if (logWriter != null) {
-            // 添加时间戳和消息级别
-            logWriter.println(LocalDateTime.now() + " - " + level + ": " + message);
-            logWriter.flush(); // 确保消息被立即写入文件
-        } else {
-            // 如果日志写入器未初始化，则输出到控制台
-            System.out.println(LocalDateTime.now() + " - (" + level + " - 日志记录器不可用) " + message);
-        }
-    }
-     // 可选：将计算出的近交系数更新回数据库的方法
-     // 表中添加一个名为 'inbreeding_coefficient' 的列再执行此操作
-    /* 
-    private static void updateInbreedingCoefficientInDB(String animalId, double fValue) {
-        logInfo(String.format("尝试将个体 %s 的近交系数 %.6f 更新到数据库", animalId, fValue));
-        // 再次强调，要添加列再执行
-        String sql = String.format("UPDATE `%s` SET inbreeding_coefficient = ? WHERE `%s` = ?", TABLE_NAME, ID_COL);
-        try (Connection conn = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-
-            if (Double.isNaN(fValue)) { // 处理计算错误的情况
-                 pstmt.setNull(1, Types.DOUBLE);
-                 logWarn("个体 " + animalId + " 的近交系数计算错误 (NaN)，在数据库中设置为 NULL。");
-            } else {
-                 pstmt.setDouble(1, fValue);
-            }
-            pstmt.setString(2, animalId); // 设置 WHERE 条件
-            int affectedRows = pstmt.executeUpdate(); // 执行更新
+        writeToLog(AnalysisLog.Level.ERROR, message, null, t);
+    }
 
-            if (affectedRows > 0) {
-                 logInfo("成功更新个体 " + animalId + " 的近交系数。");
-            } else {
-                 logWarn("更新个体 " + animalId + " 的近交系数时，未找到匹配记录或值未改变。");
-            }
+    /** 按格式串记录，格式化推迟到日志线程，低于级别阈值时不做任何格式化 */
+    private static void log(AnalysisLog.Level level, String format, Object... args) {
+        writeToLog(level, format, args, null);
+    }
 
-        } catch (SQLException e) {
-            logError("数据库错误：更新个体 " + animalId + " 的近交系数失败。", e);
+    /** 核心写入方法，日志不可用时输出到控制台 */
+    private static void writeToLog(AnalysisLog.Level level, String message, Object[] args, Throwable t) {
+        if (log != null) {
+            log.log(level, null, message, args, t);
+        } else if (level != AnalysisLog.Level.DEBUG) {
+            // 如果日志未初始化，则输出到控制台
+            String text = args == null || args.length == 0 ? message : String.format(message, args);
+            System.out.println(java.time.LocalDateTime.now() + " - (" + level + " - 日志记录器不可用) " + text);
+            if (t != null) {
+                t.printStackTrace(); // 打印到控制台作为后备
+            }
         }
     }
-    */
-}
\ No newline at end of file
+}
@@ -0,0 +1,374 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 紧凑的整数编号系谱
+ * 每个个体的标准ID只映射一次到 1..size() 的整数编号，父号和母号以并行 int[] 数组保存，
+ * 0 表示未知亲本 (包括不在系谱中的父/母号，与 InbreedingCalculator 的约定一致)。
+ *
+ * 编号按 "父母在前、后代在后" 的拓扑顺序分配: 对 1..sortedCount() 范围内的个体,
+ * 其父母编号一定小于自身编号。处于系谱循环中 (或为循环个体后代) 的个体无法排序,
+ * 排在 sortedCount() 之后，其父母编号不保证更小。
+ */
+public class PedigreeIndex {
+    private final String[] ids; // ids[i] 为编号 i 的个体ID, ids[0] 为 null；由快照打开时为 null
+    private final PedigreeSnapshot snapshot; // 由快照打开时个体ID从快照按需读取，否则为 null
+    private final int[] sire; // 父亲编号
+    private final int[] dam; // 母亲编号
+    private final IdDictionary dictionary; // 个体ID -> 编号；由快照打开时为 null
+    private final int sortedCount; // 拓扑有序的个体数量
+    private final int missingParentCount; // 指向系谱中不存在个体的父/母号引用数量
+    private final List<String[]> missingParentSamples; // 前若干个不存在的父/母号引用 {个体ID, 父/母号}
+
+    private PedigreeIndex(String[] ids, int[] sire, int[] dam, IdDictionary dictionary,
+                          int sortedCount, int missingParentCount, List<String[]> missingParentSamples) {
+        this.ids = ids;
+        this.snapshot = null;
+        this.sire = sire;
+        this.dam = dam;
+        this.dictionary = dictionary;
+        this.sortedCount = sortedCount;
+        this.missingParentCount = missingParentCount;
+        this.missingParentSamples = missingParentSamples;
+    }
+
+    /** 由 PedigreeSnapshot 打开: 父母编号已复制到数组，个体ID和字典仍由快照提供 */
+    PedigreeIndex(PedigreeSnapshot snapshot, int[] sire, int[] dam, int sortedCount, int missingParentCount) {
+        this.ids = null;
+        this.snapshot = snapshot;
+        this.sire = sire;
+        this.dam = dam;
+        this.dictionary = null;
+        this.sortedCount = sortedCount;
+        this.missingParentCount = missingParentCount;
+        this.missingParentSamples = new ArrayList<>(); // 快照只保存数量
+    }
+
+    /**
+     * 由 Map 形式的系谱构建
+     * @param pedigree Map<个体ID, Animal对象>
+     * @return 整数编号系谱
+     */
+    public static PedigreeIndex fromMap(Map<String, Animal> pedigree) {
+        Builder builder = new Builder(pedigree.size());
+        for (Animal animal : pedigree.values()) {
+            builder.put(animal.getId(), animal.getSireId(), animal.getDamId()); // Animal 已处理过 "0"/空值
+        }
+        return builder.build();
+    }
+
+    /** 个体数量 */
+    public int size() {
+        return sire.length - 1;
+    }
+
+    /** 编号 1..sortedCount() 的个体按拓扑顺序排列 */
+    public int sortedCount() {
+        return sortedCount;
+    }
+
+    /** 加载时指向系谱中不存在个体的父/母号引用数量 (这些引用已按未知处理) */
+    public int missingParentCount() {
+        return missingParentCount;
+    }
+
+    /** 不存在的父/母号引用示例 (最多 20 条)，每条为 {个体ID, 父/母号} */
+    public List<String[]> missingParentSamples() {
+        return missingParentSamples;
+    }
+
+    /**
+     * 查找个体编号
+     * @param animalId 个体ID
+     * @return 编号，不在系谱中时返回 0
+     */
+    public int indexOf(String animalId) {
+        if (snapshot != null) {
+            return snapshot.indexOf(animalId);
+        }
+        int index = dictionary.get(animalId);
+        return index < 0 ? 0 : index;
+    }
+
+    /** 编号对应的个体ID */
+    public String getId(int index) {
+        return snapshot != null ? snapshot.getId(index) : ids[index];
+    }
+
+    /** 父亲编号，0 表示未知 */
+    public int getSire(int index) {
+        return sire[index];
+    }
+
+    /** 母亲编号，0 表示未知 */
+    public int getDam(int index) {
+        return dam[index];
+    }
+
+    /**
+     * 提取一组个体及其全部祖先组成的子系谱 (祖先闭包)
+     * 从目标个体沿父、母回溯，每个个体只访问一次，除标记数组外代价与闭包大小成正比。
+     * 闭包中个体的近交系数和相互之间的亲缘系数与在完整系谱中计算的结果相同。
+     * @param animals 目标个体编号 (可以重复)
+     * @return 重新编号的子系谱，用 indexOf 查找目标个体的新编号
+     */
+    public PedigreeIndex ancestorClosure(int[] animals) {
+        boolean[] visited = new boolean[size() + 1];
+        visited[0] = true; // 未知亲本
+        int[] closure = new int[Math.min(size(), 16)];
+        int count = 0;
+        int[] stack = new int[16];
+        for (int target : animals) {
+            int depth = 0;
+            stack[depth++] = target;
+            while (depth > 0) {
+                int animal = stack[--depth];
+                if (visited[animal]) {
+                    continue;
+                }
+                visited[animal] = true;
+                if (count == closure.length) {
+                    closure = Arrays.copyOf(closure, count * 2);
+                }
+                closure[count++] = animal;
+                if (depth + 2 > stack.length) {
+                    stack = Arrays.copyOf(stack, stack.length * 2);
+                }
+                stack[depth++] = sire[animal];
+                stack[depth++] = dam[animal];
+            }
+        }
+        // 按原编号排序后加入: 拓扑有序部分的父母先于后代，Builder 重新排序时顺序基本不变
+        Arrays.sort(closure, 0, count);
+        Builder builder = new Builder(count);
+        for (int k = 0; k < count; k++) {
+            int animal = closure[k];
+            builder.put(getId(animal), sire[animal] == 0 ? null : getId(sire[animal]),
+                    dam[animal] == 0 ? null : getId(dam[animal]));
+        }
+        return builder.build();
+    }
+
+    // 供计算器直接读取的内部数组 (不复制，调用方不得修改)
+    int[] sires() {
+        return sire;
+    }
+
+    int[] dams() {
+        return dam;
+    }
+
+    /**
+     * 逐条接收系谱记录并构建 PedigreeIndex
+     * 同一个体出现多次时以最后一条记录为准；父/母号可以在其本身的记录之前出现。
+     */
+    public static class Builder {
+        private static final int MISSING_PARENT_SAMPLES = 20; // 保留的不存在父/母号引用示例数量
+        private final IdDictionary slots; // 出现过的全部ID (包括仅作为父母出现的) -> 槽位
+        private String[] slotIds;
+        private int[] slotSire; // 槽位的父亲槽位, -1 表示未知
+        private int[] slotDam;
+        private boolean[] present; // 槽位是否有自己的系谱记录
+        private int slotCount;
+
+        public Builder() {
+            this(1024);
+        }
+
+        /**
+         * @param expectedSize 预计的个体数量
+         */
+        public Builder(int expectedSize) {
+            int capacity = Math.max(16, expectedSize);
+            slots = new IdDictionary(capacity);
+            slotIds = new String[capacity];
+            slotSire = new int[capacity];
+            slotDam = new int[capacity];
+            present = new boolean[capacity];
+        }
+
+        /**
+         * 添加一条系谱记录，父/母号按 Animal 构造函数的规则处理 ("0"、null、空字符串视为未知，并去除前后空格)
+         * @param id 个体标准ID (已去除前后空格)
+         * @param sireId 父号
+         * @param damId 母号
+         */
+        public void add(String id, String sireId, String damId) {
+            put(id, Animal.normalizeParentId(sireId), Animal.normalizeParentId(damId));
+        }
+
+        /** 添加一条父/母号已规范化的记录 */
+        void put(String id, String sireId, String damId) {
+            int slot = slotOf(id);
+            // 先取得父母槽位再写入: slotOf 可能扩容并替换 slotSire/slotDam 数组
+            int sireSlot = sireId == null ? -1 : slotOf(sireId);
+            int damSlot = damId == null ? -1 : slotOf(damId);
+            slotSire[slot] = sireSlot;
+            slotDam[slot] = damSlot;
+            present[slot] = true;
+        }
+
+        /** 是否已有该个体自己的系谱记录 (仅作为父母出现的ID不算) */
+        boolean contains(String id) {
+            int slot = slots.get(id);
+            return slot >= 0 && present[slot];
+        }
+
+        /** 接收 Builder 中的系谱记录 */
+        interface RecordVisitor {
+            /**
+             * @param id 个体ID
+             * @param sireId 父号 (已规范化，可能不在本 Builder 中)，未知时为 null
+             * @param damId 母号，未知时为 null
+             */
+            void accept(String id, String sireId, String damId);
+        }
+
+        /** 按加入顺序逐条读取已添加的记录 (build() 之前调用，父/母号保持原样，不检查是否在系谱中) */
+        void forEach(RecordVisitor visitor) {
+            for (int i = 0; i < slotCount; i++) {
+                if (present[i]) {
+                    visitor.accept(slotIds[i], slotSire[i] < 0 ? null : slotIds[slotSire[i]],
+                            slotDam[i] < 0 ? null : slotIds[slotDam[i]]);
+                }
+            }
+        }
+
+        /** 已添加的不同个体数量 */
+        public int size() {
+            int count = 0;
+            for (int i = 0; i < slotCount; i++) {
+                if (present[i]) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        private int slotOf(String id) {
+            int existing = slots.putIfAbsent(id, slotCount);
+            if (existing >= 0) {
+                return existing;
+            }
+            if (slotCount == slotIds.length) {
+                int capacity = slotIds.length * 2;
+                slotIds = Arrays.copyOf(slotIds, capacity);
+                slotSire = Arrays.copyOf(slotSire, capacity);
+                slotDam = Arrays.copyOf(slotDam, capacity);
+                present = Arrays.copyOf(present, capacity);
+            }
+            slotIds[slotCount] = id;
+            slotSire[slotCount] = -1;
+            slotDam[slotCount] = -1;
+            return slotCount++;
+        }
+
+        /**
+         * 完成构建: 丢弃仅作为父母出现的ID，并按拓扑顺序分配编号
+         * @return 整数编号系谱
+         */
+        public PedigreeIndex build() {
+            int m = slotCount;
+            int missingParents = 0;
+            List<String[]> missingSamples = new ArrayList<>();
+
+            // 1. 不在系谱中的父母按未知处理，统计入度 (已知父母数量) 和子代数量
+            int[] inDegree = new int[m];
+            int[] childStart = new int[m + 1];
+            for (int i = 0; i < m; i++) {
+                if (!present[i]) {
+                    continue;
+                }
+                if (slotSire[i] >= 0 && !present[slotSire[i]]) {
+                    if (missingSamples.size() < MISSING_PARENT_SAMPLES) {
+                        missingSamples.add(new String[]{slotIds[i], slotIds[slotSire[i]]});
+                    }
+                    slotSire[i] = -1;
+                    missingParents++;
+                }
+                if (slotDam[i] >= 0 && !present[slotDam[i]]) {
+                    if (missingSamples.size() < MISSING_PARENT_SAMPLES) {
+                        missingSamples.add(new String[]{slotIds[i], slotIds[slotDam[i]]});
+                    }
+                    slotDam[i] = -1;
+                    missingParents++;
+                }
+                if (slotSire[i] >= 0) {
+                    inDegree[i]++;
+                    childStart[slotSire[i] + 1]++;
+                }
+                if (slotDam[i] >= 0) {
+                    inDegree[i]++;
+                    childStart[slotDam[i] + 1]++;
+                }
+            }
+
+            // 2. 以 CSR 形式存放子代列表
+            for (int i = 0; i < m; i++) {
+                childStart[i + 1] += childStart[i];
+            }
+            int[] children = new int[childStart[m]];
+            int[] fill = new int[m];
+            for (int i = 0; i < m; i++) {
+                if (!present[i]) {
+                    continue;
+                }
+                if (slotSire[i] >= 0) {
+                    children[childStart[slotSire[i]] + fill[slotSire[i]]++] = i;
+                }
+                if (slotDam[i] >= 0) {
+                    children[childStart[slotDam[i]] + fill[slotDam[i]]++] = i;
+                }
+            }
+            fill = null;
+
+            // 3. Kahn 拓扑排序，无法排序的个体按原顺序追加在末尾
+            int[] order = new int[m];
+            int tail = 0;
+            for (int i = 0; i < m; i++) {
+                if (present[i] && inDegree[i] == 0) {
+                    order[tail++] = i;
+                }
+            }
+            int head = 0;
+            while (head < tail) {
+                int p = order[head++];
+                for (int c = childStart[p]; c < childStart[p + 1]; c++) {
+                    if (--inDegree[children[c]] == 0) {
+                        order[tail++] = children[c];
+                    }
+                }
+            }
+            int sorted = tail;
+            for (int i = 0; i < m; i++) {
+                if (present[i] && inDegree[i] > 0) {
+                    order[tail++] = i;
+                }
+            }
+            int n = tail;
+
+            // 4. 按排序结果分配编号 1..n
+            int[] indexOfSlot = new int[m];
+            String[] ids = new String[n + 1];
+            IdDictionary dictionary = new IdDictionary(n);
+            for (int k = 0; k < n; k++) {
+                int slot = order[k];
+                indexOfSlot[slot] = k + 1;
+                ids[k + 1] = slotIds[slot];
+                dictionary.putIfAbsent(slotIds[slot], k + 1);
+            }
+            int[] sire = new int[n + 1];
+            int[] dam = new int[n + 1];
+            for (int k = 0; k < n; k++) {
+                int slot = order[k];
+                sire[k + 1] = slotSire[slot] >= 0 ? indexOfSlot[slotSire[slot]] : 0;
+                dam[k + 1] = slotDam[slot] >= 0 ? indexOfSlot[slotDam[slot]] : 0;
+            }
+            return new PedigreeIndex(ids, sire, dam, dictionary, sorted, missingParents, missingSamples);
+        }
+    }
+}
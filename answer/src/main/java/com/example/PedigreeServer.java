@@ -0,0 +1,468 @@
+package com.example;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * 常驻查询服务
+ * 系谱和近交系数常驻内存，通过本机 HTTP 接口回答查询 (JDK 自带的 com.sun.net.httpserver):
+ *   GET  /inbreeding?id=X              个体 X 的近交系数
+ *   GET  /coancestry?a=X&amp;b=Y           X 和 Y 的亲缘系数
+ *   POST /inbreeding/batch             请求体每行一个ID
+ *   POST /coancestry/batch             请求体每行两个ID (空白或制表符分隔)
+ *   POST /animals                      请求体每行 "个体ID 父号 母号"，加入系谱后重新计算 (热更新)，
+ *                                      各ID按加载时的映射表解析为标准牛号
+ *   POST /reload                       从数据源 (数据库或快照) 重新加载系谱 (热更新)
+ *   GET  /status                       系谱规模和加载时间
+ * 响应均为 JSON，无法计算的系数为 null。
+ *
+ * 并发: 每次加载得到一个不可变的 Model (系谱 + 已全部算好的近交系数和 D_i)，通过 volatile 引用发布。
+ * 近交系数查询只读数组，不加锁；亲缘系数查询用 Colleau 方法 (MateAllocation) 求 A 的一列，
+ * 工作数组从 Model 自己的空闲队列借出、用完归还，一次只由一个线程使用。同一请求中 a 相同的多对只求一次。
+ * 热更新先构建新的 Model 再整体替换，进行中的查询继续使用旧 Model；工作数组随 Model 一起释放，
+ * 处理线程不保留对旧系谱的引用。
+ * 请求由有界线程池处理，队列满时由接收线程直接执行，从而对客户端形成背压。
+ */
+public class PedigreeServer {
+    private static final int QUEUE_CAPACITY = 256; // 等待处理的请求数量上限
+    private static final int MAX_BATCH_LINES = 100_000; // 批量查询的行数上限
+
+    private final Callable<IdAliasResolver> aliasSource; // 映射表 (每次加载时先读取)
+    private final Source source; // 数据源 (数据库或快照)
+    private final AnalysisLog logger;
+    private final int threads;
+    private final Object reloadLock = new Object(); // 热更新串行执行
+    private volatile Model model;
+    private HttpServer server;
+    private ThreadPoolExecutor executor;
+
+    /** 一次加载的结果，发布后不再修改 (空闲工作区队列除外，工作区借出期间只由借用的线程使用) */
+    private static final class Model {
+        final PedigreeIndex pedigree;
+        final InbreedingEngine inbreeding; // 已全部算好的近交系数
+        final MateAllocation colleau; // 只读的 D_i
+        final IdAliasResolver aliases; // 加载时读取的映射表，用于解析热更新记录中的别名
+        final BlockingQueue<MateAllocation.Workspace> workspaces; // 空闲的 Colleau 工作区，最多保留处理线程数个
+        final Instant loadedAt = Instant.now();
+
+        Model(PedigreeIndex pedigree, IdAliasResolver aliases, int threads, AnalysisLog logger) {
+            this.pedigree = pedigree;
+            this.aliases = aliases;
+            this.inbreeding = new IterativeInbreedingCalculator(pedigree, logger);
+            this.inbreeding.getInbreedingCoefficient(0); // 触发计算: 发布前一次算完全部个体
+            this.colleau = new MateAllocation(pedigree, inbreeding, 1, logger);
+            this.workspaces = new ArrayBlockingQueue<>(threads);
+        }
+    }
+
+    /** 系谱数据源 */
+    interface Source {
+        /**
+         * 加载系谱
+         * @param aliases 本次加载读取的映射表构建的别名解析
+         * @return 整数编号系谱
+         * @throws Exception 加载失败时抛出
+         */
+        PedigreeIndex load(IdAliasResolver aliases) throws Exception;
+    }
+
+    /**
+     * 不使用映射表的查询服务 (系谱中已是标准牛号，热更新记录中的ID原样使用)
+     * @param source 数据源，每次 (重新) 加载时调用
+     * @param threads 处理请求的线程数
+     * @param logger 日志实例
+     */
+    public PedigreeServer(Callable<PedigreeIndex> source, int threads, AnalysisLog logger) {
+        this(() -> new IdAliasResolver(new HashMap<>(), logger), aliases -> source.call(), threads, logger);
+    }
+
+    /**
+     * @param aliasSource 映射表，每次 (重新) 加载时先于数据源调用
+     * @param source 数据源，每次 (重新) 加载时调用
+     * @param threads 处理请求的线程数
+     * @param logger 日志实例
+     */
+    PedigreeServer(Callable<IdAliasResolver> aliasSource, Source source, int threads, AnalysisLog logger) {
+        this.aliasSource = aliasSource;
+        this.source = source;
+        this.threads = Math.max(1, threads);
+        this.logger = logger;
+    }
+
+    /**
+     * 加载系谱并在本机 (回环地址) 指定端口上开始服务
+     * @param port 端口
+     * @throws Exception 加载失败或端口无法绑定时抛出
+     */
+    public void start(int port) throws Exception {
+        reload();
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY), r -> {
+                    Thread thread = new Thread(r, "pedigree-query-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(executor);
+        server.createContext("/inbreeding", handler(this::inbreeding));
+        server.createContext("/inbreeding/batch", handler(this::inbreedingBatch));
+        server.createContext("/coancestry", handler(this::coancestry));
+        server.createContext("/coancestry/batch", handler(this::coancestryBatch));
+        server.createContext("/animals", handler(this::addAnimals));
+        server.createContext("/reload", handler(exchange -> {
+            requireMethod(exchange, "POST");
+            return statusJson(reload());
+        }));
+        server.createContext("/status", handler(exchange -> statusJson(model)));
+        server.start();
+        logInfo(String.format("查询服务已启动: http://%s:%d/ (处理线程 %d)",
+                server.getAddress().getHostString(), server.getAddress().getPort(), threads));
+    }
+
+    /** 实际监听的端口 (以端口 0 启动时由系统分配) */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * 停止服务
+     * @param delaySeconds 等待进行中请求完成的最长秒数
+     */
+    public void stop(int delaySeconds) {
+        if (server != null) {
+            server.stop(delaySeconds);
+            executor.shutdown();
+            logInfo("查询服务已停止。");
+        }
+    }
+
+    /**
+     * 从数据源重新加载并替换当前 Model
+     * @return 新的 Model
+     * @throws Exception 数据源加载失败时抛出 (继续使用旧 Model)
+     */
+    private Model reload() throws Exception {
+        synchronized (reloadLock) {
+            long start = System.nanoTime();
+            IdAliasResolver aliases = aliasSource.call();
+            PedigreeIndex pedigree = source.load(aliases);
+            if (pedigree.size() == 0 && model != null) {
+                throw new IllegalStateException("数据源返回空系谱，继续使用已加载的系谱");
+            }
+            return publish(pedigree, aliases, start);
+        }
+    }
+
+    private Model publish(PedigreeIndex pedigree, IdAliasResolver aliases, long start) {
+        Model loaded = new Model(pedigree, aliases, threads, logger);
+        model = loaded;
+        logInfo(String.format("已加载系谱: %d 个个体 (拓扑有序 %d 个)，耗时 %d ms。",
+                pedigree.size(), pedigree.sortedCount(), (System.nanoTime() - start) / 1_000_000));
+        return loaded;
+    }
+
+    // --- 请求处理 ---
+
+    /** 返回 JSON 字符串的请求处理逻辑 */
+    private interface Action {
+        String handle(HttpExchange exchange) throws Exception;
+    }
+
+    /** 请求错误，按 status 返回 4xx */
+    private static final class RequestError extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        RequestError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private HttpHandler handler(Action action) {
+        return exchange -> {
+            int status = 200;
+            String body;
+            try {
+                body = action.handle(exchange);
+            } catch (RequestError e) {
+                status = e.status;
+                body = "{\"error\": " + quote(e.getMessage()) + "}";
+            } catch (Exception e) {
+                status = 500;
+                body = "{\"error\": " + quote(String.valueOf(e.getMessage())) + "}";
+                logError("处理请求失败: " + exchange.getRequestURI(), e);
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        };
+    }
+
+    private String inbreeding(HttpExchange exchange) throws Exception {
+        requireMethod(exchange, "GET");
+        Model current = model;
+        String id = requireParameter(exchange, "id");
+        return "{\"id\": " + quote(id) + ", \"f\": " + number(inbreedingOf(current, requireAnimal(current, id))) + "}";
+    }
+
+    private String coancestry(HttpExchange exchange) throws Exception {
+        requireMethod(exchange, "GET");
+        Model current = model;
+        String a = requireParameter(exchange, "a");
+        String b = requireParameter(exchange, "b");
+        double value = coancestryOf(current, requireAnimal(current, a), new int[]{requireAnimal(current, b)})[0];
+        return "{\"a\": " + quote(a) + ", \"b\": " + quote(b) + ", \"coancestry\": " + number(value) + "}";
+    }
+
+    private String inbreedingBatch(HttpExchange exchange) throws Exception {
+        requireMethod(exchange, "POST");
+        Model current = model;
+        StringBuilder json = new StringBuilder("[");
+        for (String[] fields : readLines(exchange)) {
+            int animal = current.pedigree.indexOf(fields[0]);
+            json.append(json.length() > 1 ? ",\n " : "").append("{\"id\": ").append(quote(fields[0])).append(", \"f\": ")
+                    .append(animal == 0 ? "null, \"error\": \"unknown id\"" : number(inbreedingOf(current, animal)))
+                    .append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    private String coancestryBatch(HttpExchange exchange) throws Exception {
+        requireMethod(exchange, "POST");
+        Model current = model;
+        List<String[]> rows = readLines(exchange);
+        for (String[] fields : rows) {
+            if (fields.length < 2) {
+                throw new RequestError(400, "每行需要两个ID: " + fields[0]);
+            }
+        }
+        // 按 a 分组: 每个 a 只求一列 A，同时得到与该组全部 b 的亲缘系数
+        double[] values = new double[rows.size()];
+        Map<Integer, List<Integer>> byFirst = new HashMap<>();
+        for (int r = 0; r < rows.size(); r++) {
+            int a = current.pedigree.indexOf(rows.get(r)[0]);
+            if (a != 0 && current.pedigree.indexOf(rows.get(r)[1]) != 0) {
+                byFirst.computeIfAbsent(a, key -> new ArrayList<>()).add(r);
+            }
+        }
+        for (Map.Entry<Integer, List<Integer>> group : byFirst.entrySet()) {
+            List<Integer> members = group.getValue();
+            int[] others = new int[members.size()];
+            for (int k = 0; k < others.length; k++) {
+                others[k] = current.pedigree.indexOf(rows.get(members.get(k))[1]);
+            }
+            double[] column = coancestryOf(current, group.getKey(), others);
+            for (int k = 0; k < others.length; k++) {
+                values[members.get(k)] = column[k];
+            }
+        }
+        StringBuilder json = new StringBuilder("[");
+        for (int r = 0; r < rows.size(); r++) {
+            String[] fields = rows.get(r);
+            boolean known = current.pedigree.indexOf(fields[0]) != 0 && current.pedigree.indexOf(fields[1]) != 0;
+            json.append(json.length() > 1 ? ",\n " : "").append("{\"a\": ").append(quote(fields[0]))
+                    .append(", \"b\": ").append(quote(fields[1])).append(", \"coancestry\": ")
+                    .append(known ? number(values[r]) : "null, \"error\": \"unknown id\"")
+                    .append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    /**
+     * 把请求体中的记录加入当前系谱 (同一ID以新记录为准) 并发布新的 Model
+     * 与加载时相同，父/母号和个体ID都按映射表解析为标准牛号，旧耳号或场内编号不会成为新的无亲本个体。
+     */
+    private String addAnimals(HttpExchange exchange) throws Exception {
+        requireMethod(exchange, "POST");
+        List<String[]> rows = readLines(exchange);
+        for (String[] fields : rows) {
+            if (fields.length < 3) {
+                throw new RequestError(400, "每行需要 个体ID 父号 母号 (未知写 0): " + fields[0]);
+            }
+        }
+        synchronized (reloadLock) {
+            long start = System.nanoTime();
+            PedigreeIndex current = model.pedigree;
+            IdAliasResolver aliases = model.aliases;
+            PedigreeIndex.Builder builder = new PedigreeIndex.Builder(current.size() + rows.size());
+            for (int i = 1; i <= current.size(); i++) {
+                builder.put(current.getId(i), parentId(current, current.getSire(i)), parentId(current, current.getDam(i)));
+            }
+            for (String[] fields : rows) {
+                builder.add(aliases.canonicalOf(fields[0]), aliases.resolve(fields[1]), aliases.resolve(fields[2]));
+            }
+            Model loaded = publish(builder.build(), aliases, start);
+            logInfo("热更新加入了 " + rows.size() + " 条系谱记录。");
+            return statusJson(loaded);
+        }
+    }
+
+    private static String parentId(PedigreeIndex pedigree, int parent) {
+        return parent == 0 ? null : pedigree.getId(parent);
+    }
+
+    private static double inbreedingOf(Model current, int animal) {
+        return current.inbreeding.getInbreedingCoefficient(animal);
+    }
+
+    /**
+     * 个体 a 与 others 中每个个体的亲缘系数 (处于系谱循环中的个体为 NaN)
+     * 工作区从 current 的空闲队列借出，没有空闲的 (如队列满时接收线程也在执行请求) 就新建一个；
+     * 归还时队列已满的工作区直接丢弃。
+     */
+    private static double[] coancestryOf(Model current, int a, int[] others) {
+        double[] row = new double[others.length];
+        MateAllocation.Workspace workspace = current.workspaces.poll();
+        if (workspace == null) {
+            workspace = current.colleau.newWorkspace();
+        }
+        try {
+            workspace.column(a, others, row);
+        } finally {
+            current.workspaces.offer(workspace);
+        }
+        return row;
+    }
+
+    private String statusJson(Model current) {
+        return "{\"animals\": " + current.pedigree.size()
+                + ", \"sorted\": " + current.pedigree.sortedCount()
+                + ", \"loadedAt\": " + quote(current.loadedAt.toString()) + "}";
+    }
+
+    // --- 工具方法 ---
+
+    private static void requireMethod(HttpExchange exchange, String method) throws RequestError {
+        if (!method.equals(exchange.getRequestMethod())) {
+            throw new RequestError(405, "需要 " + method + " 请求");
+        }
+    }
+
+    private static int requireAnimal(Model current, String id) throws RequestError {
+        int animal = current.pedigree.indexOf(id);
+        if (animal == 0) {
+            throw new RequestError(404, "个体不在系谱中: " + id);
+        }
+        return animal;
+    }
+
+    private static String requireParameter(HttpExchange exchange, String name) throws RequestError {
+        String value = queryParameters(exchange).get(name);
+        if (value == null || value.trim().isEmpty()) {
+            throw new RequestError(400, "缺少参数: " + name);
+        }
+        return value.trim();
+    }
+
+    private static Map<String, String> queryParameters(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            if (eq > 0) {
+                parameters.put(decode(pair.substring(0, eq)), decode(pair.substring(eq + 1)));
+            }
+        }
+        return parameters;
+    }
+
+    private static String decode(String text) {
+        try {
+            return URLDecoder.decode(text, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e); // UTF-8 总是可用
+        }
+    }
+
+    /** 读取请求体: 忽略空行和 # 开头的行，每行按空白或制表符拆分 */
+    private static List<String[]> readLines(HttpExchange exchange) throws IOException, RequestError {
+        List<String[]> rows = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                if (rows.size() == MAX_BATCH_LINES) {
+                    throw new RequestError(413, "单次请求最多 " + MAX_BATCH_LINES + " 行");
+                }
+                rows.add(line.split("[\\s,]+"));
+            }
+        }
+        return rows;
+    }
+
+    private static String number(double value) {
+        return Double.isNaN(value) ? "null" : Double.toString(value);
+    }
+
+    private static String quote(String text) {
+        StringBuilder quoted = new StringBuilder(text.length() + 2).append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    // --- 日志辅助方法 (内部使用) ---
+    /** 记录普通信息 */
+    private void logInfo(String message) {
+        if (logger != null) {
+            logger.info("Server", message);
+        } else {
+            System.out.println("INFO (Server - Logger unavailable): " + message); // 后备方案
+        }
+    }
+
+    /** 记录错误信息及堆栈跟踪 */
+    private void logError(String message, Throwable t) {
+        if (logger != null) {
+            logger.error("Server", message, t);
+        } else {
+            System.err.println("ERROR (Server - Logger unavailable): " + message);
+            if (t != null) {
+                t.printStackTrace(System.err);
+            }
+        }
+    }
+}
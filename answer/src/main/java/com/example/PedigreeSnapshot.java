@@ -0,0 +1,269 @@
+package com.example;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 二进制系谱快照
+ * 保存 PedigreeIndex (ID 字典 + 父母编号数组) 以及可选的近交系数，
+ * 之后通过 FileChannel 内存映射打开，不需要连接数据库也不需要重新解析 Animal 对象。
+ * 父母编号按拓扑顺序保存，打开时只做一次整块复制; 个体ID按需从映射区解码。
+ *
+ * 文件格式 (大端):
+ *   头部: int 魔数, int 版本, int n, int sortedCount, int missingParentCount, int flags, long idBytes
+ *   int[n + 1]  ID 在字节区中的结束偏移 (第 0 项为 0, 编号 i 的 ID 位于 [offset[i-1], offset[i]))
+ *   byte[idBytes] UTF-8 编码的全部 ID，之后补齐到 8 字节
+ *   int[n] 父亲编号, int[n] 母亲编号 (0 表示未知)
+ *   double[n] 近交系数 (flags 含 HAS_INBREEDING 时)
+ */
+public class PedigreeSnapshot {
+    private static final int MAGIC = 0x50454453; // "PEDS"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int HAS_INBREEDING = 1;
+
+    private final int size;
+    private final int sortedCount;
+    private final int missingParentCount;
+    private final IntBuffer idOffsets;
+    private final ByteBuffer idBytes;
+    private final IntBuffer sires;
+    private final IntBuffer dams;
+    private final DoubleBuffer inbreeding; // 没有保存近交系数时为 null
+    private volatile IdDictionary dictionary; // 第一次按ID查找时构建，发布后只读
+
+    private PedigreeSnapshot(int size, int sortedCount, int missingParentCount, IntBuffer idOffsets, ByteBuffer idBytes,
+                             IntBuffer sires, IntBuffer dams, DoubleBuffer inbreeding) {
+        this.size = size;
+        this.sortedCount = sortedCount;
+        this.missingParentCount = missingParentCount;
+        this.idOffsets = idOffsets;
+        this.idBytes = idBytes;
+        this.sires = sires;
+        this.dams = dams;
+        this.inbreeding = inbreeding;
+    }
+
+    /**
+     * 写入快照，先写临时文件再原子替换
+     * @param file 快照文件路径
+     * @param pedigree 系谱
+     * @param engine 已完成计算的引擎；为 null 时不保存近交系数
+     * @throws IOException 写入失败时抛出
+     */
+    public static void write(Path file, PedigreeIndex pedigree, InbreedingEngine engine) throws IOException {
+        Path absolute = file.toAbsolutePath();
+        Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        int n = pedigree.size();
+        byte[][] encoded = new byte[n + 1][];
+        long idBytes = 0;
+        for (int i = 1; i <= n; i++) {
+            encoded[i] = pedigree.getId(i).getBytes(StandardCharsets.UTF_8);
+            idBytes += encoded[i].length;
+        }
+        if (idBytes > Integer.MAX_VALUE) {
+            throw new IOException("个体ID总长度超过快照格式上限: " + idBytes);
+        }
+
+        try (OutputStream out = Files.newOutputStream(temp);
+             DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 1 << 16))) {
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            data.writeInt(n);
+            data.writeInt(pedigree.sortedCount());
+            data.writeInt(pedigree.missingParentCount());
+            data.writeInt(engine != null ? HAS_INBREEDING : 0);
+            data.writeLong(idBytes);
+            int offset = 0;
+            data.writeInt(0);
+            for (int i = 1; i <= n; i++) {
+                offset += encoded[i].length;
+                data.writeInt(offset);
+            }
+            for (int i = 1; i <= n; i++) {
+                data.write(encoded[i]);
+                encoded[i] = null;
+            }
+            for (long p = idBytes; p % 8 != 0; p++) {
+                data.writeByte(0);
+            }
+            for (int i = 1; i <= n; i++) {
+                data.writeInt(pedigree.getSire(i));
+            }
+            for (int i = 1; i <= n; i++) {
+                data.writeInt(pedigree.getDam(i));
+            }
+            if (engine != null) {
+                for (int i = 1; i <= n; i++) {
+                    data.writeDouble(engine.getInbreedingCoefficient(i));
+                }
+            }
+        }
+        Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 以内存映射方式打开快照 (只读)
+     * 各段分别映射，因此文件总大小可以超过 2GB
+     * @param file 快照文件路径
+     * @return 快照
+     * @throws IOException 读取失败或格式不正确时抛出
+     */
+    public static PedigreeSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("不是有效的系谱快照文件: " + file);
+            }
+            int n = header.getInt();
+            int sortedCount = header.getInt();
+            int missingParentCount = header.getInt();
+            int flags = header.getInt();
+            long idBytes = header.getLong();
+
+            long position = HEADER_BYTES;
+            IntBuffer idOffsets = map(channel, position, 4L * (n + 1)).asIntBuffer();
+            position += 4L * (n + 1);
+            ByteBuffer ids = map(channel, position, idBytes);
+            position += (idBytes + 7) / 8 * 8;
+            IntBuffer sires = map(channel, position, 4L * n).asIntBuffer();
+            position += 4L * n;
+            IntBuffer dams = map(channel, position, 4L * n).asIntBuffer();
+            position += 4L * n;
+            DoubleBuffer inbreeding = null;
+            if ((flags & HAS_INBREEDING) != 0) {
+                inbreeding = map(channel, position, 8L * n).asDoubleBuffer();
+                position += 8L * n;
+            }
+            if (position > channel.size()) {
+                throw new IOException("系谱快照文件不完整: " + file);
+            }
+            return new PedigreeSnapshot(n, sortedCount, missingParentCount, idOffsets, ids, sires, dams, inbreeding);
+        }
+    }
+
+    private static ByteBuffer map(FileChannel channel, long position, long length) throws IOException {
+        if (position + length > channel.size()) {
+            throw new IOException("系谱快照文件不完整");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+    }
+
+    /** 个体数量 */
+    public int size() {
+        return size;
+    }
+
+    /** 是否保存了近交系数 */
+    public boolean hasInbreeding() {
+        return inbreeding != null;
+    }
+
+    /**
+     * 从映射区解码个体ID (线程安全)
+     * @param index 编号，0 返回 null
+     * @return 个体ID
+     */
+    public String getId(int index) {
+        if (index == 0) {
+            return null;
+        }
+        int start = idOffsets.get(index - 1);
+        int end = idOffsets.get(index);
+        byte[] bytes = new byte[end - start];
+        ByteBuffer view = idBytes.duplicate();
+        view.position(start);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** 父亲编号，0 表示未知 */
+    public int getSire(int index) {
+        return index == 0 ? 0 : sires.get(index - 1);
+    }
+
+    /** 母亲编号，0 表示未知 */
+    public int getDam(int index) {
+        return index == 0 ? 0 : dams.get(index - 1);
+    }
+
+    /** 保存的近交系数，没有保存时返回 NaN */
+    public double getInbreedingCoefficient(int index) {
+        return inbreeding == null || index == 0 ? Double.NaN : inbreeding.get(index - 1);
+    }
+
+    /**
+     * 按ID查找编号，第一次调用时解码全部ID构建字典
+     * 字典构建完成后查找不加锁，服务模式下的并发查询不会互相阻塞。
+     * @param animalId 个体ID
+     * @return 编号，不存在时返回 0
+     */
+    public int indexOf(String animalId) {
+        int index = dictionary().get(animalId);
+        return index < 0 ? 0 : index;
+    }
+
+    /** 双重检查: 只有第一次构建字典时加锁 */
+    private IdDictionary dictionary() {
+        IdDictionary current = dictionary;
+        if (current == null) {
+            synchronized (this) {
+                current = dictionary;
+                if (current == null) {
+                    current = new IdDictionary(size);
+                    for (int i = 1; i <= size; i++) {
+                        current.putIfAbsent(getId(i), i);
+                    }
+                    dictionary = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 转换为 PedigreeIndex: 父母编号整块复制到 int[]，个体ID仍按需从快照解码
+     * @return 整数编号系谱
+     */
+    public PedigreeIndex toPedigreeIndex() {
+        int[] sire = new int[size + 1];
+        int[] dam = new int[size + 1];
+        sires.duplicate().get(sire, 1, size);
+        dams.duplicate().get(dam, 1, size);
+        return new PedigreeIndex(this, sire, dam, sortedCount, missingParentCount);
+    }
+
+    /**
+     * 以快照中保存的近交系数作为计算结果
+     * @return 直接读取快照的引擎
+     * @throws IllegalStateException 快照中没有保存近交系数时抛出
+     */
+    public InbreedingEngine cachedInbreeding() {
+        if (inbreeding == null) {
+            throw new IllegalStateException("系谱快照中没有保存近交系数");
+        }
+        return new InbreedingEngine() {
+            @Override
+            public double getInbreedingCoefficient(String animalId) {
+                int index = indexOf(animalId);
+                return index == 0 ? 0.0 : getInbreedingCoefficient(index);
+            }
+
+            @Override
+            public double getInbreedingCoefficient(int animalIndex) {
+                return PedigreeSnapshot.this.getInbreedingCoefficient(animalIndex);
+            }
+        };
+    }
+}
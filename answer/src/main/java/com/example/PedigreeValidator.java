@@ -0,0 +1,290 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 系谱校验 (在计算近交系数之前运行，总代价与系谱大小成线性关系)
+ *
+ * 检查内容:
+ *   1. 系谱循环: 在无法拓扑排序的个体 (编号 sortedCount()+1..size()) 上运行迭代式 Tarjan 强连通分量算法，
+ *      每个含循环的分量给出一条具体的循环路径；
+ *   2. 自为父母: 父号或母号等于自身 (长度为 1 的循环)；
+ *   3. 同一个体既作为父亲又作为母亲出现 (性别冲突)；
+ *   4. 指向系谱中不存在个体的父/母号引用 (加载时已按未知处理)。
+ *
+ * 处于循环中的个体及其后代被隔离: 近交系数记为 NaN，不参与计算；其余个体仍按拓扑顺序一次算完。
+ * 性别冲突不影响近交系数的定义，只报告不隔离。
+ */
+public class PedigreeValidator {
+    private static final int LISTED_LIMIT = 20; // WARN 级别逐条列出的问题数量，其余记为 DEBUG
+
+    private final PedigreeIndex pedigree;
+    private final List<int[]> cycles = new ArrayList<>(); // 每个循环分量的一条循环路径 (个体 -> 其父/母 -> ... -> 起点)
+    private final List<int[]> components = new ArrayList<>(); // 含循环的强连通分量成员
+    private int[] selfParented = new int[0];
+    private int[] dualSexParents = new int[0];
+    private int cycleMemberCount;
+
+    private PedigreeValidator(PedigreeIndex pedigree) {
+        this.pedigree = pedigree;
+    }
+
+    /**
+     * 校验系谱
+     * @param pedigree 整数编号系谱
+     * @return 校验结果
+     */
+    public static PedigreeValidator validate(PedigreeIndex pedigree) {
+        PedigreeValidator validator = new PedigreeValidator(pedigree);
+        validator.findParentConflicts();
+        validator.findCycles();
+        return validator;
+    }
+
+    /** 是否没有发现任何问题 */
+    public boolean isClean() {
+        return cycles.isEmpty() && dualSexParents.length == 0 && pedigree.missingParentCount() == 0;
+    }
+
+    /** 各循环分量的一条循环路径，路径中相邻个体为 "个体 -> 其父或母"，最后一个个体的父或母为第一个个体 */
+    public List<int[]> getCycles() {
+        return cycles;
+    }
+
+    /** 含循环的强连通分量 (每个分量的全部成员) */
+    public List<int[]> getCycleComponents() {
+        return components;
+    }
+
+    /** 父号或母号等于自身的个体 */
+    public int[] getSelfParented() {
+        return selfParented;
+    }
+
+    /** 既作为父亲又作为母亲出现的个体 */
+    public int[] getDualSexParents() {
+        return dualSexParents;
+    }
+
+    /** 处于循环中的个体数量 */
+    public int getCycleMemberCount() {
+        return cycleMemberCount;
+    }
+
+    /** 被隔离的个体数量 (循环中的个体及其后代) */
+    public int getQuarantinedCount() {
+        return pedigree.size() - pedigree.sortedCount();
+    }
+
+    /** 个体是否被隔离 (不参与近交系数计算) */
+    public boolean isQuarantined(int animal) {
+        return animal > pedigree.sortedCount();
+    }
+
+    /** 统计自为父母和性别冲突 */
+    private void findParentConflicts() {
+        int n = pedigree.size();
+        int[] sire = pedigree.sires();
+        int[] dam = pedigree.dams();
+        boolean[] usedAsSire = new boolean[n + 1];
+        boolean[] usedAsDam = new boolean[n + 1];
+        int[] self = new int[16];
+        int selfCount = 0;
+        for (int i = 1; i <= n; i++) {
+            usedAsSire[sire[i]] = true;
+            usedAsDam[dam[i]] = true;
+            if (sire[i] == i || dam[i] == i) {
+                if (selfCount == self.length) {
+                    self = Arrays.copyOf(self, selfCount * 2);
+                }
+                self[selfCount++] = i;
+            }
+        }
+        selfParented = Arrays.copyOf(self, selfCount);
+        int dualCount = 0;
+        for (int i = 1; i <= n; i++) {
+            if (usedAsSire[i] && usedAsDam[i]) {
+                dualCount++;
+            }
+        }
+        dualSexParents = new int[dualCount];
+        dualCount = 0;
+        for (int i = 1; i <= n; i++) {
+            if (usedAsSire[i] && usedAsDam[i]) {
+                dualSexParents[dualCount++] = i;
+            }
+        }
+    }
+
+    /**
+     * 迭代式 Tarjan 强连通分量 (边为 个体 -> 父、个体 -> 母)
+     * 拓扑有序的个体不可能处于循环中，只需在编号 sortedCount()+1..size() 的个体上运行，不会因递归过深而栈溢出。
+     */
+    private void findCycles() {
+        int n = pedigree.size();
+        int first = pedigree.sortedCount() + 1;
+        int m = n - first + 1; // 局部编号 v = 个体编号 - first
+        if (m <= 0) {
+            return;
+        }
+        int[] sire = pedigree.sires();
+        int[] dam = pedigree.dams();
+        int[] order = new int[m]; // 访问序号 (从 1 开始)，0 表示未访问
+        int[] low = new int[m];
+        int[] component = new int[m]; // 所属分量编号 (从 1 开始)，0 表示尚未确定
+        boolean[] onStack = new boolean[m];
+        int[] stack = new int[m];
+        int stackSize = 0;
+        int[] callStack = new int[m];
+        int[] nextEdge = new int[m]; // 0: 父, 1: 母, 2: 已处理完
+        int counter = 0;
+        int componentCount = 0;
+
+        for (int root = 0; root < m; root++) {
+            if (order[root] != 0) {
+                continue;
+            }
+            int depth = 0;
+            callStack[depth++] = root;
+            order[root] = low[root] = ++counter;
+            stack[stackSize++] = root;
+            onStack[root] = true;
+            while (depth > 0) {
+                int v = callStack[depth - 1];
+                if (nextEdge[v] < 2) {
+                    int parent = nextEdge[v] == 0 ? sire[v + first] : dam[v + first];
+                    nextEdge[v]++;
+                    if (parent < first) {
+                        continue; // 未知或拓扑有序的父母不在循环中
+                    }
+                    int w = parent - first;
+                    if (order[w] == 0) {
+                        order[w] = low[w] = ++counter;
+                        stack[stackSize++] = w;
+                        onStack[w] = true;
+                        callStack[depth++] = w;
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], order[w]);
+                    }
+                    continue;
+                }
+                depth--;
+                if (depth > 0) {
+                    int caller = callStack[depth - 1];
+                    low[caller] = Math.min(low[caller], low[v]);
+                }
+                if (low[v] == order[v]) {
+                    // v 为分量的根: 出栈得到整个分量
+                    componentCount++;
+                    int size = 0;
+                    int w;
+                    do {
+                        w = stack[--stackSize];
+                        onStack[w] = false;
+                        component[w] = componentCount;
+                        size++;
+                    } while (w != v);
+                    int self = v + first;
+                    if (size > 1 || sire[self] == self || dam[self] == self) {
+                        int[] members = Arrays.copyOfRange(stack, stackSize, stackSize + size);
+                        for (int k = 0; k < size; k++) {
+                            members[k] += first;
+                        }
+                        Arrays.sort(members);
+                        components.add(members);
+                        cycleMemberCount += size;
+                    }
+                }
+            }
+        }
+
+        // 每个分量给出一条具体循环: 从编号最小的成员出发，在分量内广度优先搜索回到自身
+        int[] previous = new int[m];
+        int[] queue = new int[m];
+        for (int[] members : components) {
+            int start = members[0] - first;
+            int target = component[start];
+            int head = 0;
+            int tail = 0;
+            queue[tail++] = start;
+            int last = -1; // 父或母为起点的个体
+            for (int member : members) {
+                previous[member - first] = -2; // -2 表示未访问
+            }
+            previous[start] = -1;
+            while (head < tail && last < 0) {
+                int v = queue[head++];
+                for (int edge = 0; edge < 2 && last < 0; edge++) {
+                    int parent = edge == 0 ? sire[v + first] : dam[v + first];
+                    if (parent < first || component[parent - first] != target) {
+                        continue;
+                    }
+                    int w = parent - first;
+                    if (w == start) {
+                        last = v;
+                    } else if (previous[w] == -2) {
+                        previous[w] = v;
+                        queue[tail++] = w;
+                    }
+                }
+            }
+            int length = 0;
+            for (int v = last; v >= 0; v = previous[v]) {
+                queue[length++] = v;
+            }
+            int[] path = new int[length];
+            for (int k = 0; k < length; k++) {
+                path[k] = queue[length - 1 - k] + first;
+            }
+            cycles.add(path);
+        }
+    }
+
+    /**
+     * 把循环路径格式化为 "A -父-> B -母-> C -父-> A"
+     * @param path getCycles() 中的一条路径
+     * @return 可读的循环描述
+     */
+    public String describeCycle(int[] path) {
+        StringBuilder text = new StringBuilder();
+        for (int k = 0; k < path.length; k++) {
+            int child = path[k];
+            int parent = path[(k + 1) % path.length];
+            text.append(pedigree.getId(child)).append(pedigree.getSire(child) == parent ? " -父-> " : " -母-> ");
+        }
+        return text.append(pedigree.getId(path[0])).toString();
+    }
+
+    /**
+     * 写入校验报告: 前 LISTED_LIMIT 条问题为 WARN，其余为 DEBUG
+     * @param log 日志
+     */
+    public void logTo(AnalysisLog log) {
+        if (isClean()) {
+            log.info(null, "系谱校验通过: %d 个个体，未发现循环、性别冲突或缺失的父母引用。", pedigree.size());
+            return;
+        }
+        log.warn(null, "系谱校验: %d 个循环 (涉及 %d 个个体，其中 %d 个自为父母)，隔离 %d 个个体 (含循环个体的后代)；"
+                        + "%d 个个体既作父亲又作母亲；%d 个父/母号引用的个体不在系谱中。",
+                cycles.size(), cycleMemberCount, selfParented.length, getQuarantinedCount(),
+                dualSexParents.length, pedigree.missingParentCount());
+        for (int k = 0; k < cycles.size(); k++) {
+            int[] members = components.get(k);
+            log.log(k < LISTED_LIMIT ? AnalysisLog.Level.WARN : AnalysisLog.Level.DEBUG, null,
+                    "  系谱循环 (分量共 %d 个个体): %s", new Object[]{members.length, describeCycle(cycles.get(k))}, null);
+        }
+        for (int k = 0; k < dualSexParents.length; k++) {
+            log.log(k < LISTED_LIMIT ? AnalysisLog.Level.WARN : AnalysisLog.Level.DEBUG, null,
+                    "  既作父亲又作母亲: %s", new Object[]{pedigree.getId(dualSexParents[k])}, null);
+        }
+        for (String[] sample : pedigree.missingParentSamples()) {
+            log.warn(null, "  父/母号不在系谱中: 个体 %s 引用 %s", sample[0], sample[1]);
+        }
+        int quarantinedDescendants = getQuarantinedCount() - cycleMemberCount;
+        if (quarantinedDescendants > 0) {
+            log.warn(null, "  另有 %d 个个体为循环个体的后代，一并隔离 (近交系数记为 NaN)。", quarantinedDescendants);
+        }
+    }
+}
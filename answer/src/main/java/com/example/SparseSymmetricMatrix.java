@@ -0,0 +1,196 @@
+package com.example;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * 对称稀疏矩阵，只保存上三角 (含对角线)，按行压缩 (CSR) 存储
+ * 行号和列号从 0 开始；第 r 行的非零元素为 column[rowStart[r] .. rowStart[r+1])，列号递增。
+ */
+public class SparseSymmetricMatrix {
+    private static final int MAGIC = 0x53594D43; // "SYMC"
+    private static final int VERSION = 1;
+
+    private final int size;
+    private final int[] rowStart;
+    private final int[] column;
+    private final double[] value;
+
+    SparseSymmetricMatrix(int size, int[] rowStart, int[] column, double[] value) {
+        this.size = size;
+        this.rowStart = rowStart;
+        this.column = column;
+        this.value = value;
+    }
+
+    /** 矩阵阶数 */
+    public int size() {
+        return size;
+    }
+
+    /** 上三角非零元素数量 */
+    public int nonZeroCount() {
+        return rowStart[size];
+    }
+
+    /**
+     * 读取元素 (对称位置会自动交换)
+     * @param row 行号
+     * @param col 列号
+     * @return 元素值，未保存的位置为 0
+     */
+    public double get(int row, int col) {
+        int r = Math.min(row, col);
+        int c = Math.max(row, col);
+        int k = Arrays.binarySearch(column, rowStart[r], rowStart[r + 1], c);
+        return k >= 0 ? value[k] : 0.0;
+    }
+
+    /**
+     * 以文本三元组写出: 每行 "行 列 值"，行列号从 1 开始，只写上三角
+     * @param file 输出文件
+     * @throws IOException 写入失败时抛出
+     */
+    public void writeText(Path file) throws IOException {
+        try (Writer out = new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8), 1 << 16)) {
+            StringBuilder line = new StringBuilder(64);
+            for (int r = 0; r < size; r++) {
+                for (int k = rowStart[r]; k < rowStart[r + 1]; k++) {
+                    line.setLength(0);
+                    line.append(r + 1).append(' ').append(column[k] + 1).append(' ').append(value[k]).append('\n');
+                    out.append(line);
+                }
+            }
+        }
+    }
+
+    /**
+     * 以二进制 CSR 写出 (大端):
+     *   int 魔数, int 版本, int 阶数, int 非零元素数,
+     *   int[阶数 + 1] 行起点, int[非零元素数] 列号, double[非零元素数] 值
+     * @param file 输出文件
+     * @throws IOException 写入失败时抛出
+     */
+    public void writeBinary(Path file) throws IOException {
+        try (OutputStream stream = Files.newOutputStream(file);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            out.writeInt(nonZeroCount());
+            for (int r = 0; r <= size; r++) {
+                out.writeInt(rowStart[r]);
+            }
+            for (int k = 0; k < nonZeroCount(); k++) {
+                out.writeInt(column[k]);
+            }
+            for (int k = 0; k < nonZeroCount(); k++) {
+                out.writeDouble(value[k]);
+            }
+        }
+    }
+
+    /**
+     * 由三元组构建 (同一位置的多个值相加)，按行计数排序，总代价与元素数量近似线性
+     */
+    static final class Builder {
+        private final int size;
+        private int[] rows;
+        private int[] cols;
+        private double[] values;
+        private int count;
+
+        Builder(int size, int expectedEntries) {
+            this.size = size;
+            int capacity = Math.max(16, expectedEntries);
+            rows = new int[capacity];
+            cols = new int[capacity];
+            values = new double[capacity];
+        }
+
+        /** 累加一个元素，自动放到上三角 */
+        void add(int row, int col, double v) {
+            if (count == rows.length) {
+                int capacity = rows.length * 2;
+                rows = Arrays.copyOf(rows, capacity);
+                cols = Arrays.copyOf(cols, capacity);
+                values = Arrays.copyOf(values, capacity);
+            }
+            rows[count] = Math.min(row, col);
+            cols[count] = Math.max(row, col);
+            values[count] = v;
+            count++;
+        }
+
+        SparseSymmetricMatrix build() {
+            // 1. 按行计数排序
+            int[] start = new int[size + 1];
+            for (int k = 0; k < count; k++) {
+                start[rows[k] + 1]++;
+            }
+            for (int r = 0; r < size; r++) {
+                start[r + 1] += start[r];
+            }
+            int[] fill = Arrays.copyOf(start, size);
+            int[] col = new int[count];
+            double[] val = new double[count];
+            for (int k = 0; k < count; k++) {
+                int pos = fill[rows[k]]++;
+                col[pos] = cols[k];
+                val[pos] = values[k];
+            }
+            rows = null;
+            cols = null;
+            values = null;
+
+            // 2. 每行按列号排序并合并重复位置
+            int[] rowStart = new int[size + 1];
+            int out = 0;
+            long[] packed = new long[0];
+            double[] sortedValues = new double[0];
+            for (int r = 0; r < size; r++) {
+                int from = start[r];
+                int to = start[r + 1];
+                rowStart[r] = out;
+                int length = to - from;
+                if (length == 0) {
+                    continue;
+                }
+                if (packed.length < length) {
+                    packed = new long[Math.max(length, packed.length * 2)];
+                    sortedValues = new double[packed.length];
+                }
+                for (int k = 0; k < length; k++) {
+                    packed[k] = ((long) col[from + k] << 32) | (from + k); // 按列号排序，保留原位置
+                }
+                Arrays.sort(packed, 0, length);
+                for (int k = 0; k < length; k++) {
+                    sortedValues[k] = val[(int) packed[k]]; // 先取出，下面会原地覆盖
+                }
+                int previousColumn = -1;
+                for (int k = 0; k < length; k++) {
+                    int c = (int) (packed[k] >>> 32);
+                    double v = sortedValues[k];
+                    if (c == previousColumn) {
+                        val[out - 1] += v;
+                    } else {
+                        col[out] = c;
+                        val[out] = v;
+                        out++;
+                        previousColumn = c;
+                    }
+                }
+            }
+            rowStart[size] = out;
+            return new SparseSymmetricMatrix(size, rowStart, Arrays.copyOf(col, out), Arrays.copyOf(val, out));
+        }
+    }
+}
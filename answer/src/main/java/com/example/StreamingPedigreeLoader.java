@@ -0,0 +1,373 @@
+package com.example;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 流式系谱加载器
+ * 在同一个数据库连接上依次读取 ID 映射表和系谱表。查询使用只进、只读的结果集并设置 fetch size,
+ * MySQL Connector/J 因此逐行 (Integer.MIN_VALUE) 或按游标分批 (正数，需要连接参数 useCursorFetch=true)
+ * 返回数据，而不是先把整个结果集缓存在内存中。系谱记录在读取的同时写入 PedigreeIndex.Builder。
+ */
+public class StreamingPedigreeLoader {
+    /** MySQL Connector/J 的逐行流式读取标记 */
+    public static final int STREAM_ROW_BY_ROW = Integer.MIN_VALUE;
+    /** 按ID查询祖先时每条 IN (...) 语句的ID数量 */
+    static final int IN_BATCH_SIZE = 1000;
+
+    private final Connection connection; // 调用方负责关闭
+    private final int fetchSize;
+    private final AnalysisLog logger; // 日志
+
+    /**
+     * 构造函数
+     * @param connection 数据库连接 (由调用方管理生命周期，可复用于后续操作)
+     * @param fetchSize 结果集 fetch size，STREAM_ROW_BY_ROW 表示逐行流式读取
+     * @param logger 日志实例
+     */
+    public StreamingPedigreeLoader(Connection connection, int fetchSize, AnalysisLog logger) {
+        this.connection = connection;
+        this.fetchSize = fetchSize;
+        this.logger = logger;
+    }
+
+    /**
+     * 从 num_comp_tb 加载牛号编号到标准牛号的映射
+     * 重复的内部ID以最后读取到的映射为准 (只统计数量，不逐条记录日志)
+     * @return Map<内部ID/母牛编号, 标准ID>
+     * @throws SQLException 查询失败时抛出
+     */
+    public Map<String, String> loadIdMapping() throws SQLException {
+        String query = String.format("SELECT `%s`, `%s` FROM `%s` WHERE `%s` IS NOT NULL AND `%s` IS NOT NULL",
+                PedigreeAnalysis.MAPPING_INTERNAL_ID_COL, PedigreeAnalysis.MAPPING_STANDARD_ID_COL,
+                PedigreeAnalysis.MAPPING_TABLE_NAME,
+                PedigreeAnalysis.MAPPING_INTERNAL_ID_COL, PedigreeAnalysis.MAPPING_STANDARD_ID_COL);
+        logInfo("流式读取映射表: " + query);
+
+        Map<String, String> idMapping = new HashMap<>();
+        int duplicateCount = 0;
+        try (Statement stmt = createStreamingStatement();
+             ResultSet rs = stmt.executeQuery(query)) {
+            while (rs.next()) {
+                String internalId = rs.getString(1);
+                String standardId = rs.getString(2);
+                if (internalId == null || standardId == null) {
+                    continue;
+                }
+                internalId = internalId.trim();
+                standardId = standardId.trim();
+                if (internalId.isEmpty() || standardId.isEmpty()) {
+                    continue;
+                }
+                if (idMapping.put(internalId, standardId) != null) {
+                    duplicateCount++;
+                }
+            }
+        }
+        logInfo("成功加载 " + idMapping.size() + " 条有效 ID 映射记录。");
+        if (duplicateCount > 0) {
+            logWarn("共发现 " + duplicateCount + " 个重复的内部 ID，已使用最后读取到的映射。");
+        }
+        return idMapping;
+    }
+
+    /**
+     * 流式加载系谱，并在 Java 中应用 ID 映射 (规则与 PedigreeAnalysis.loadPedigreeFromDB 相同)
+     * @param aliases 由 loadIdMapping() 返回的映射构建的别名解析
+     * @return 整数编号系谱
+     * @throws SQLException 查询失败时抛出
+     */
+    public PedigreeIndex loadPedigree(IdAliasResolver aliases) throws SQLException {
+        return loadRecords(aliases).build();
+    }
+
+    /**
+     * 流式读取系谱记录并应用 ID 映射，返回尚未构建的记录 (父/母号不要求在本库中，供多牧场合并使用)
+     * @param aliases 由 loadIdMapping() 返回的映射构建的别名解析
+     * @return 系谱记录
+     * @throws SQLException 查询失败时抛出
+     */
+    public PedigreeIndex.Builder loadRecords(IdAliasResolver aliases) throws SQLException {
+        String query = String.format("SELECT `%s`, `%s`, `%s` FROM `%s`",
+                PedigreeAnalysis.ID_COL, PedigreeAnalysis.SIRE_COL, PedigreeAnalysis.DAM_COL,
+                PedigreeAnalysis.CATTLE_TABLE_NAME);
+        logInfo("流式读取系谱: " + query);
+
+        PedigreeIndex.Builder builder = new PedigreeIndex.Builder();
+        int recordCount = 0;
+        int skippedCount = 0;
+        int mappedSireCount = 0;
+        int mappedDamCount = 0;
+        try (Statement stmt = createStreamingStatement();
+             ResultSet rs = stmt.executeQuery(query)) {
+            while (rs.next()) {
+                recordCount++;
+                String id = rs.getString(1);
+                if (id == null || (id = id.trim()).isEmpty()) {
+                    skippedCount++;
+                    continue;
+                }
+                String originalSireId = rs.getString(2);
+                String originalDamId = rs.getString(3);
+                String sireId = aliases.resolve(originalSireId);
+                String damId = aliases.resolve(originalDamId);
+                if (sireId != originalSireId && !sireId.equals(originalSireId.trim())) {
+                    mappedSireCount++;
+                }
+                if (damId != originalDamId && !damId.equals(originalDamId.trim())) {
+                    mappedDamCount++;
+                }
+                builder.add(id, sireId, damId);
+            }
+        }
+        finish(builder, recordCount, skippedCount,
+                String.format("共映射了 %d 个父号和 %d 个母号。", mappedSireCount, mappedDamCount));
+        return aliases.canonicalizeRecords(builder);
+    }
+
+    /**
+     * 流式加载系谱，ID 映射在数据库端通过 LEFT JOIN num_comp_tb 完成
+     * 映射表先按 TRIM(id) 分组去重；同一内部ID有多个标准ID时取 MAX(standard_id)，
+     * 这与 Java 端 "最后读取到的映射为准" 的规则在存在重复映射时可能不同。
+     * @return 整数编号系谱
+     * @throws SQLException 查询失败时抛出
+     */
+    public PedigreeIndex loadPedigreeWithSqlMapping() throws SQLException {
+        String mapping = String.format(
+                "SELECT TRIM(`%1$s`) AS map_id, MAX(TRIM(`%2$s`)) AS map_standard_id FROM `%3$s`"
+                        + " WHERE `%1$s` IS NOT NULL AND `%2$s` IS NOT NULL"
+                        + " AND TRIM(`%1$s`) <> '' AND TRIM(`%2$s`) <> '' GROUP BY TRIM(`%1$s`)",
+                PedigreeAnalysis.MAPPING_INTERNAL_ID_COL, PedigreeAnalysis.MAPPING_STANDARD_ID_COL,
+                PedigreeAnalysis.MAPPING_TABLE_NAME);
+        String query = String.format(
+                "SELECT c.`%1$s`, COALESCE(ms.map_standard_id, c.`%2$s`), COALESCE(md.map_standard_id, c.`%3$s`)"
+                        + " FROM `%4$s` c"
+                        + " LEFT JOIN (%5$s) ms ON ms.map_id = TRIM(c.`%2$s`)"
+                        + " LEFT JOIN (%5$s) md ON md.map_id = TRIM(c.`%3$s`)",
+                PedigreeAnalysis.ID_COL, PedigreeAnalysis.SIRE_COL, PedigreeAnalysis.DAM_COL,
+                PedigreeAnalysis.CATTLE_TABLE_NAME, mapping);
+        logInfo("流式读取系谱 (数据库端映射): " + query);
+
+        PedigreeIndex.Builder builder = new PedigreeIndex.Builder();
+        int recordCount = 0;
+        int skippedCount = 0;
+        try (Statement stmt = createStreamingStatement();
+             ResultSet rs = stmt.executeQuery(query)) {
+            while (rs.next()) {
+                recordCount++;
+                String id = rs.getString(1);
+                if (id == null || (id = id.trim()).isEmpty()) {
+                    skippedCount++;
+                    continue;
+                }
+                builder.add(id, rs.getString(2), rs.getString(3));
+            }
+        }
+        return finish(builder, recordCount, skippedCount, null).build();
+    }
+
+    /**
+     * 只加载目标个体及其全部祖先 (逐代查询，不读取整个系谱表)
+     * 每一代先沿映射表双向扩展 (WHERE id IN / WHERE standard_id IN，重复直到没有新ID)，得到这一代ID所在的
+     * 全部别名集合，再用 WHERE standard_id IN (...) 查询这些ID的系谱记录；父/母号 (原始值) 组成下一代。
+     * 全部世代读完后用收集到的映射构建 IdAliasResolver，与完整加载一样解析映射链并规范化别名记录
+     * (canonicalizeRecords)，因此结果与先加载完整系谱再取 PedigreeIndex.ancestorClosure 相同
+     * (映射表中同一内部ID有多个标准ID时，以最后读取到的映射为准，读取顺序可能与完整加载不同)。
+     * 查询次数约为 世代数 × (映射链长度 + 1) × (ID数 / IN_BATCH_SIZE)，读取的行数与祖先数量成正比，与系谱表大小无关。
+     * @param targetIds 目标个体标准ID (已去除前后空格)
+     * @return 目标个体及其祖先组成的整数编号系谱，不在系谱表中的目标个体不会出现
+     * @throws SQLException 查询失败时抛出
+     */
+    public PedigreeIndex loadAncestors(Collection<String> targetIds) throws SQLException {
+        String pedigreeQuery = String.format("SELECT `%s`, `%s`, `%s` FROM `%s` WHERE `%s` IN ",
+                PedigreeAnalysis.ID_COL, PedigreeAnalysis.SIRE_COL, PedigreeAnalysis.DAM_COL,
+                PedigreeAnalysis.CATTLE_TABLE_NAME, PedigreeAnalysis.ID_COL);
+        String forwardQuery = String.format("SELECT `%s`, `%s` FROM `%s` WHERE `%s` IS NOT NULL AND `%s` IN ",
+                PedigreeAnalysis.MAPPING_INTERNAL_ID_COL, PedigreeAnalysis.MAPPING_STANDARD_ID_COL,
+                PedigreeAnalysis.MAPPING_TABLE_NAME,
+                PedigreeAnalysis.MAPPING_STANDARD_ID_COL, PedigreeAnalysis.MAPPING_INTERNAL_ID_COL);
+        String reverseQuery = String.format("SELECT `%s`, `%s` FROM `%s` WHERE `%s` IS NOT NULL AND `%s` IN ",
+                PedigreeAnalysis.MAPPING_INTERNAL_ID_COL, PedigreeAnalysis.MAPPING_STANDARD_ID_COL,
+                PedigreeAnalysis.MAPPING_TABLE_NAME,
+                PedigreeAnalysis.MAPPING_INTERNAL_ID_COL, PedigreeAnalysis.MAPPING_STANDARD_ID_COL);
+        logInfo("按目标个体逐代查询祖先: " + pedigreeQuery + "(...)");
+
+        Map<String, String> idMapping = new HashMap<>();
+        Set<String> requested = new HashSet<>(); // 已查询过系谱记录的ID
+        Set<String> explored = new HashSet<>(); // 已沿映射表扩展过的ID
+        List<String[]> records = new ArrayList<>(); // {个体ID, 原始父号, 原始母号}
+        List<String> frontier = new ArrayList<>();
+        for (String id : targetIds) {
+            if (requested.add(id)) {
+                frontier.add(id);
+            }
+        }
+        int queryCount = 0;
+        int generation = 0;
+        while (!frontier.isEmpty()) {
+            // 1. 沿映射表双向扩展到这一代ID所在的全部别名集合，集合中的ID都可能有自己的系谱记录
+            List<String> pending = new ArrayList<>();
+            for (String id : frontier) {
+                if (explored.add(id)) {
+                    pending.add(id);
+                }
+            }
+            while (!pending.isEmpty()) {
+                List<String> found = new ArrayList<>();
+                RowHandler edge = rs -> {
+                    String internalId = rs.getString(1);
+                    String standardId = rs.getString(2);
+                    if (internalId == null || standardId == null
+                            || (internalId = internalId.trim()).isEmpty() || (standardId = standardId.trim()).isEmpty()) {
+                        return;
+                    }
+                    idMapping.put(internalId, standardId);
+                    for (String id : new String[]{internalId, standardId}) {
+                        if (explored.add(id)) {
+                            found.add(id);
+                        }
+                    }
+                };
+                queryCount += query(forwardQuery, pending, edge); // 别名 -> 标准ID
+                queryCount += query(reverseQuery, pending, edge); // 标准ID -> 别名
+                for (String id : found) {
+                    if (requested.add(id)) {
+                        frontier.add(id);
+                    }
+                }
+                pending = found;
+            }
+
+            // 2. 查询这一代的系谱记录，父/母号中尚未查询过的ID组成下一代
+            List<String> next = new ArrayList<>();
+            int before = records.size();
+            queryCount += query(pedigreeQuery, frontier, rs -> {
+                String id = rs.getString(1);
+                if (id == null || (id = id.trim()).isEmpty()) {
+                    return;
+                }
+                String[] record = {id, rs.getString(2), rs.getString(3)};
+                records.add(record);
+                for (int k = 1; k <= 2; k++) {
+                    String parent = Animal.normalizeParentId(record[k]);
+                    if (parent != null && requested.add(parent)) {
+                        next.add(parent);
+                    }
+                }
+            });
+            generation++;
+            logDebug(String.format("第 %d 代: 查询 %d 个ID，找到 %d 条记录。", generation, frontier.size(),
+                    records.size() - before));
+            frontier = next;
+        }
+        logInfo(String.format("逐代查询了 %d 代祖先，共执行 %d 次查询。", generation, queryCount));
+
+        // 3. 与完整加载相同: 一次性解析映射链，父/母号只查一次，再规范化自身是别名的记录
+        IdAliasResolver aliases = new IdAliasResolver(idMapping, logger);
+        PedigreeIndex.Builder builder = new PedigreeIndex.Builder(records.size());
+        int mappedSireCount = 0;
+        int mappedDamCount = 0;
+        for (String[] record : records) {
+            String sireId = aliases.resolve(record[1]);
+            String damId = aliases.resolve(record[2]);
+            if (sireId != record[1] && !sireId.equals(record[1].trim())) {
+                mappedSireCount++;
+            }
+            if (damId != record[2] && !damId.equals(record[2].trim())) {
+                mappedDamCount++;
+            }
+            builder.add(record[0], sireId, damId);
+        }
+        finish(builder, records.size(), 0,
+                String.format("共映射了 %d 个父号和 %d 个母号。", mappedSireCount, mappedDamCount));
+        return aliases.canonicalizeRecords(builder).build();
+    }
+
+    /** 逐行处理查询结果 */
+    private interface RowHandler {
+        void accept(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * 按 IN_BATCH_SIZE 分批执行 "前缀 (?, ?, ...)" 查询
+     * @return 执行的查询次数
+     */
+    private int query(String prefix, List<String> values, RowHandler handler) throws SQLException {
+        int queries = 0;
+        for (int from = 0; from < values.size(); from += IN_BATCH_SIZE) {
+            int to = Math.min(values.size(), from + IN_BATCH_SIZE);
+            StringBuilder sql = new StringBuilder(prefix.length() + 2 * (to - from) + 1).append(prefix).append('(');
+            for (int k = from; k < to; k++) {
+                sql.append(k == from ? "?" : ",?");
+            }
+            sql.append(')');
+            try (PreparedStatement stmt = connection.prepareStatement(sql.toString())) {
+                for (int k = from; k < to; k++) {
+                    stmt.setString(k - from + 1, values.get(k));
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        handler.accept(rs);
+                    }
+                }
+            }
+            queries++;
+        }
+        return queries;
+    }
+
+    private Statement createStreamingStatement() throws SQLException {
+        Statement stmt = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        stmt.setFetchSize(fetchSize);
+        return stmt;
+    }
+
+    private PedigreeIndex.Builder finish(PedigreeIndex.Builder builder, int recordCount, int skippedCount,
+                                         String mappingSummary) {
+        logInfo(String.format("处理了 %d 条来自 %s 的记录。加载了 %d 个有效个体。",
+                recordCount, PedigreeAnalysis.CATTLE_TABLE_NAME, builder.size()));
+        if (skippedCount > 0) {
+            logWarn(String.format("有 %d 条记录的个体标准ID为空或仅包含空格，已跳过。", skippedCount));
+        }
+        if (mappingSummary != null) {
+            logInfo(mappingSummary);
+        }
+        return builder;
+    }
+
+    // --- 日志辅助方法 (内部使用) ---
+    /** 记录普通信息 */
+    private void logInfo(String message) {
+        if (logger != null) {
+            logger.info("Loader", message);
+        } else {
+            System.out.println("INFO (Loader - Logger unavailable): " + message); // 后备方案
+        }
+    }
+
+    /** 记录调试信息 */
+    private void logDebug(String message) {
+        if (logger != null) {
+            logger.debug("Loader", message);
+        }
+    }
+
+    /** 记录警告信息 */
+    private void logWarn(String message) {
+        if (logger != null) {
+            logger.warn("Loader", message);
+        } else {
+            System.err.println("WARN (Loader - Logger unavailable): " + message); // 后备方案
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.example;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * 合成系谱生成器 (用于基准测试和离线验证，不需要生产数据库)
+ * 模拟一个使用人工授精公牛的牛群:
+ *   - 第 0 代为无父母信息的基础母牛和基础公牛；
+ *   - 之后每一代产生 herdSize 头母牛和 aiSires 头新公牛，父亲从公牛池中选，母亲从母牛池中选；
+ *   - 父母只从最近 depth 代中选择 (世代重叠)，depth 越大，近交路径越长；
+ *   - 按 halfSibRate / fullSibRate 的比例安排半同胞 / 全同胞交配；
+ *   - 最后可以故意制造 loops 个系谱循环 (把基础个体的父亲设为最后一代公牛)，用于测试循环处理。
+ * 相同参数和随机种子生成的系谱完全相同。
+ *
+ * 个体ID格式: 公牛 "S{世代}-{序号}"，母牛 "C{世代}-{序号}"。
+ */
+public class SyntheticPedigreeGenerator {
+
+    /** 接收生成的系谱记录 */
+    public interface RecordSink {
+        /**
+         * @param id 个体ID
+         * @param sireId 父号，未知时为 null
+         * @param damId 母号，未知时为 null
+         */
+        void accept(String id, String sireId, String damId);
+    }
+
+    private int herdSize = 1000; // 每代母牛数量
+    private int generations = 10; // 世代数 (不含基础群)
+    private int aiSires = 20; // 每代人工授精公牛数量
+    private int depth = 3; // 父母可以来自的最近世代数
+    private double halfSibRate = 0.0; // 半同胞交配比例
+    private double fullSibRate = 0.0; // 全同胞交配比例
+    private int loops = 0; // 故意制造的系谱循环数量
+    private long seed = 20240101L;
+
+    public SyntheticPedigreeGenerator herdSize(int herdSize) {
+        this.herdSize = requirePositive("herdSize", herdSize);
+        return this;
+    }
+
+    public SyntheticPedigreeGenerator generations(int generations) {
+        if (generations < 0) {
+            throw new IllegalArgumentException("generations 不能为负数: " + generations);
+        }
+        this.generations = generations;
+        return this;
+    }
+
+    public SyntheticPedigreeGenerator aiSires(int aiSires) {
+        this.aiSires = requirePositive("aiSires", aiSires);
+        return this;
+    }
+
+    public SyntheticPedigreeGenerator depth(int depth) {
+        this.depth = requirePositive("depth", depth);
+        return this;
+    }
+
+    public SyntheticPedigreeGenerator halfSibRate(double halfSibRate) {
+        this.halfSibRate = requireRate("halfSibRate", halfSibRate);
+        return this;
+    }
+
+    public SyntheticPedigreeGenerator fullSibRate(double fullSibRate) {
+        this.fullSibRate = requireRate("fullSibRate", fullSibRate);
+        return this;
+    }
+
+    public SyntheticPedigreeGenerator loops(int loops) {
+        if (loops < 0) {
+            throw new IllegalArgumentException("loops 不能为负数: " + loops);
+        }
+        this.loops = loops;
+        return this;
+    }
+
+    public SyntheticPedigreeGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /** 生成的个体总数 */
+    public int animalCount() {
+        return (generations + 1) * (herdSize + aiSires);
+    }
+
+    /**
+     * 生成系谱并逐条交给 sink (按世代顺序，父母先于后代；制造循环的记录除外)
+     * @param sink 记录接收者
+     */
+    public void generate(RecordSink sink) {
+        int perGeneration = herdSize + aiSires;
+        int n = animalCount();
+        int[] sire = new int[n];
+        int[] dam = new int[n];
+        Arrays.fill(sire, -1);
+        Arrays.fill(dam, -1);
+        SplittableRandom random = new SplittableRandom(seed);
+        // 每头母牛的父亲 -> 该父亲的女儿列表 / (父, 母) -> 女儿列表，用于安排同胞交配
+        Map<Integer, IntList> daughtersBySire = new HashMap<>();
+        Map<Long, IntList> daughtersByParents = new HashMap<>();
+
+        for (int g = 1; g <= generations; g++) {
+            int first = g * perGeneration;
+            int oldest = Math.max(0, g - depth); // 可选父母的最早世代
+            int windowStart = oldest * perGeneration;
+            // 新公牛: 由窗口内的公牛和母牛繁殖
+            for (int k = 0; k < aiSires; k++) {
+                int animal = first + herdSize + k;
+                sire[animal] = pickSire(random, oldest, g, perGeneration);
+                dam[animal] = pickCow(random, oldest, g, perGeneration);
+            }
+            // 新母牛
+            for (int k = 0; k < herdSize; k++) {
+                int animal = first + k;
+                int s = pickSire(random, oldest, g, perGeneration);
+                int d = -1;
+                double r = random.nextDouble();
+                if (r < fullSibRate && sire[s] >= 0) {
+                    d = pickFrom(random, daughtersByParents.get(parentsKey(sire[s], dam[s])), windowStart, first);
+                } else if (r < fullSibRate + halfSibRate && sire[s] >= 0) {
+                    d = pickFrom(random, daughtersBySire.get(sire[s]), windowStart, first);
+                }
+                if (d < 0) {
+                    d = pickCow(random, oldest, g, perGeneration);
+                }
+                sire[animal] = s;
+                dam[animal] = d;
+                daughtersBySire.computeIfAbsent(s, key -> new IntList()).add(animal);
+                daughtersByParents.computeIfAbsent(parentsKey(s, d), key -> new IntList()).add(animal);
+            }
+        }
+
+        // 故意制造循环: 从最后一代公牛沿随机父/母向上追溯到一个基础个体，把该基础个体的父亲设为这头公牛
+        if (generations > 0) {
+            int lastSires = generations * perGeneration + herdSize;
+            for (int k = 0; k < loops; k++) {
+                int bull = lastSires + random.nextInt(aiSires);
+                int founder = bull;
+                while (sire[founder] >= 0 && founder >= perGeneration) {
+                    founder = random.nextBoolean() ? sire[founder] : dam[founder];
+                }
+                sire[founder] = bull;
+            }
+        }
+
+        for (int i = 0; i < n; i++) {
+            sink.accept(idOf(i, perGeneration), sire[i] < 0 ? null : idOf(sire[i], perGeneration),
+                    dam[i] < 0 ? null : idOf(dam[i], perGeneration));
+        }
+    }
+
+    /** 生成整数编号系谱 */
+    public PedigreeIndex toPedigreeIndex() {
+        PedigreeIndex.Builder builder = new PedigreeIndex.Builder(animalCount());
+        generate(builder::put);
+        return builder.build();
+    }
+
+    /** 生成 Map 形式的系谱 (与 PedigreeAnalysis 早期版本的数据结构相同) */
+    public Map<String, Animal> toAnimalMap() {
+        Map<String, Animal> pedigree = new HashMap<>(animalCount() * 2);
+        generate((id, sireId, damId) -> pedigree.put(id, new Animal(id, sireId, damId)));
+        return pedigree;
+    }
+
+    private int pickSire(SplittableRandom random, int oldest, int g, int perGeneration) {
+        int generation = oldest + random.nextInt(g - oldest);
+        return generation * perGeneration + herdSize + random.nextInt(aiSires);
+    }
+
+    private int pickCow(SplittableRandom random, int oldest, int g, int perGeneration) {
+        int generation = oldest + random.nextInt(g - oldest);
+        return generation * perGeneration + random.nextInt(herdSize);
+    }
+
+    /** 从候选列表中随机选一个位于 [minIndex, maxIndex) 的个体 (即窗口内、早于当前世代)，没有候选时返回 -1 */
+    private static int pickFrom(SplittableRandom random, IntList candidates, int minIndex, int maxIndex) {
+        if (candidates == null || candidates.size == 0) {
+            return -1;
+        }
+        int chosen = candidates.values[random.nextInt(candidates.size)];
+        return chosen >= minIndex && chosen < maxIndex ? chosen : -1;
+    }
+
+    private static long parentsKey(int s, int d) {
+        return ((long) s << 32) | (d & 0xFFFFFFFFL);
+    }
+
+    private String idOf(int animal, int perGeneration) {
+        int generation = animal / perGeneration;
+        int k = animal % perGeneration;
+        return k < herdSize ? "C" + generation + "-" + k : "S" + generation + "-" + (k - herdSize);
+    }
+
+    private static int requirePositive(String name, int value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException(name + " 必须为正数: " + value);
+        }
+        return value;
+    }
+
+    private static double requireRate(String name, double value) {
+        if (!(value >= 0.0 && value <= 1.0)) {
+            throw new IllegalArgumentException(name + " 必须在 [0, 1] 之间: " + value);
+        }
+        return value;
+    }
+
+    /** 简单的 int 动态数组 */
+    private static final class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按世代截断的近交系数和系谱完整度 (MacCluer 指数)
+ * F_g 只考虑个体最近 g 代的祖先: 距离个体超过 g 代的祖先不计入，距离恰为 g 代的祖先的父母视为未知。
+ * 与完整系谱的 F 对照，可以区分近几代的近交和很久以前的共同祖先带来的近交。
+ * 多个代数在一次遍历中完成:
+ *   - 每个个体从自身出发按世代向上遍历一次祖先 (到最大代数为止)，记录每个祖先的最近距离，
+ *     按编号 (拓扑顺序) 排序后得到局部系谱，各代数共用；
+ *   - 对每个代数 g，取距离不超过 g 的祖先，去掉距离为 g 的祖先的父母，在局部系谱上用 Meuwissen-Luo 方法计算 F_g；
+ *   - 距离 g 及以上的祖先都没有已知父母时截断不起作用，F_g 直接取完整系谱的 F，不再计算。
+ * 系谱完整度 (MacCluer 等, 1983):
+ *   C_k = (1/d) Σ_{i=1..d} a_i，a_i 为父系 (k = 父) 或母系 (k = 母) 第 i 代已知祖先占 2^(i-1) 个位置的比例
+ *         (第 1 代为父/母本身，同一祖先经多条路径出现时按出现次数计)；
+ *   PEC = 2 C_父 C_母 / (C_父 + C_母) (两条线的调和平均，取值 0..1)，父母任意一方未知时为 0。
+ * 个体按块分配到各线程，每个线程只分配一次工作数组；处于系谱循环中 (无法排序) 的个体结果为 NaN。
+ */
+public class TruncatedInbreeding {
+    static final int MAX_GENERATIONS = 30; // 代数上限 (第 i 代有 2^(i-1) 个祖先位置)
+    private static final int CHUNK = 1024; // 每次分配给线程的个体数
+
+    /** 计算结果 */
+    public static final class Result {
+        private final int[] depths;
+        private final double[][] inbreeding; // [代数序号][个体编号]
+        private final double[] completeness;
+        private final int pecGenerations;
+        private final int sortedCount;
+        private final long truncatedCount;
+        private final long nanos;
+
+        Result(int[] depths, double[][] inbreeding, double[] completeness, int pecGenerations, int sortedCount,
+               long truncatedCount, long nanos) {
+            this.depths = depths;
+            this.inbreeding = inbreeding;
+            this.completeness = completeness;
+            this.pecGenerations = pecGenerations;
+            this.sortedCount = sortedCount;
+            this.truncatedCount = truncatedCount;
+            this.nanos = nanos;
+        }
+
+        /** 截断代数 (从小到大) */
+        public int[] getDepths() {
+            return depths;
+        }
+
+        /** 系谱完整度的代数 */
+        public int getPecGenerations() {
+            return pecGenerations;
+        }
+
+        /**
+         * 截断的近交系数
+         * @param depthIndex 代数在 getDepths() 中的下标
+         * @param animal 个体编号
+         */
+        public double getInbreeding(int depthIndex, int animal) {
+            return animal > sortedCount ? Double.NaN : inbreeding[depthIndex][animal];
+        }
+
+        /** MacCluer 系谱完整度指数 */
+        public double getCompleteness(int animal) {
+            return animal > sortedCount ? Double.NaN : completeness[animal];
+        }
+
+        /** 截断起作用、需要在局部系谱上重新计算的 (个体, 代数) 数量 */
+        public long getTruncatedCount() {
+            return truncatedCount;
+        }
+
+        /** 计算耗时 (纳秒) */
+        public long getNanos() {
+            return nanos;
+        }
+    }
+
+    private final PedigreeIndex pedigree;
+    private final int parallelism;
+    private final AnalysisLog logger; // 日志
+
+    /**
+     * 构造函数
+     * @param pedigree 整数编号系谱 (只计算拓扑有序的个体)
+     * @param parallelism 并行线程数
+     * @param logger 日志实例
+     */
+    public TruncatedInbreeding(PedigreeIndex pedigree, int parallelism, AnalysisLog logger) {
+        this.pedigree = pedigree;
+        this.parallelism = Math.max(1, parallelism);
+        this.logger = logger;
+    }
+
+    /**
+     * 计算全部个体的截断近交系数和系谱完整度
+     * @param depths 截断代数 (从小到大、不重复，1..MAX_GENERATIONS)
+     * @param pecGenerations 系谱完整度的代数 (1..MAX_GENERATIONS)
+     * @param full 已完成计算的完整系谱近交系数引擎 (截断不起作用时直接使用)
+     * @return 计算结果
+     * @throws Exception 计算线程失败时抛出
+     */
+    public Result run(int[] depths, int pecGenerations, InbreedingEngine full) throws Exception {
+        long start = System.nanoTime();
+        int m = pedigree.sortedCount();
+        double[] fullInbreeding = new double[m + 1]; // 在调用线程中读出，计算线程不访问引擎
+        for (int i = 1; i <= m; i++) {
+            fullInbreeding[i] = full.getInbreedingCoefficient(i);
+        }
+        double[][] inbreeding = new double[depths.length][m + 1];
+        double[] completeness = new double[m + 1];
+        AtomicInteger next = new AtomicInteger(1);
+        AtomicLong truncated = new AtomicLong();
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<Callable<Void>> calls = new ArrayList<>(parallelism);
+            for (int w = 0; w < parallelism; w++) {
+                calls.add(() -> {
+                    Workspace workspace = new Workspace(pedigree.size());
+                    int first;
+                    while ((first = next.getAndAdd(CHUNK)) <= m) {
+                        int last = Math.min(m, first + CHUNK - 1);
+                        for (int x = first; x <= last; x++) {
+                            workspace.calculate(x, depths, fullInbreeding, inbreeding);
+                            completeness[x] = workspace.completeness(x, pecGenerations);
+                        }
+                    }
+                    truncated.addAndGet(workspace.truncatedCount);
+                    return null;
+                });
+            }
+            for (Future<Void> future : pool.invokeAll(calls)) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof Exception ? (Exception) cause : e;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        Result result = new Result(depths, inbreeding, completeness, pecGenerations, m, truncated.get(),
+                System.nanoTime() - start);
+        logInfo(String.format("截断近交系数: %d 个个体 × %d 个代数 (其中 %d 个需要在截断系谱上计算)，线程数 %d，耗时 %.1f s。",
+                m, depths.length, result.getTruncatedCount(), parallelism, result.getNanos() / 1e9));
+        return result;
+    }
+
+    /** 每个线程的工作数组 (只分配一次，局部系谱的数组按需扩大) */
+    private final class Workspace {
+        private final int[] sire = pedigree.sires();
+        private final int[] dam = pedigree.dams();
+        private final int[] mark; // 个体编号 -> 最近一次访问的标记 (避免每个个体清零)
+        private final int[] distance; // 个体编号 -> 到当前个体的最近代数
+        private final int[] slot; // 个体编号 -> 局部编号 / 本代祖先列表中的位置
+        private int stamp;
+        private int[] nodes = new int[256]; // 当前个体及其祖先
+        private int[] localSire = new int[257];
+        private int[] localDam = new int[257];
+        private double[] localF = new double[257];
+        private double[] localD = new double[257];
+        private IterativeInbreedingCalculator.Workspace meuwissenLuo = new IterativeInbreedingCalculator.Workspace(256);
+        private int[] frontier = new int[64]; // 系谱完整度: 本代祖先
+        private long[] frontierCount = new long[64]; // 本代祖先的出现次数
+        private int[] nextFrontier = new int[64];
+        private long[] nextCount = new long[64];
+        long truncatedCount;
+
+        Workspace(int n) {
+            mark = new int[n + 1];
+            distance = new int[n + 1];
+            slot = new int[n + 1];
+        }
+
+        private int nextStamp() {
+            if (++stamp == 0) {
+                Arrays.fill(mark, 0);
+                stamp = 1;
+            }
+            return stamp;
+        }
+
+        /** 计算个体 x 在各截断代数下的近交系数 */
+        void calculate(int x, int[] depths, double[] fullInbreeding, double[][] inbreeding) {
+            // 1. 按世代向上遍历到最大代数，记录最近距离；cut 的第 k 位表示距离为 k 的祖先中有父/母已知的个体
+            int maxDepth = depths[depths.length - 1];
+            int current = nextStamp();
+            mark[x] = current;
+            distance[x] = 0;
+            nodes[0] = x;
+            int size = 1;
+            long cut = 0;
+            for (int head = 0; head < size; head++) {
+                int a = nodes[head];
+                int da = distance[a];
+                for (int p = sire[a], k = 0; k < 2; p = dam[a], k++) {
+                    if (p == 0) {
+                        continue;
+                    }
+                    cut |= 1L << da;
+                    if (da < maxDepth && mark[p] != current) {
+                        mark[p] = current;
+                        distance[p] = da + 1;
+                        if (size == nodes.length) {
+                            nodes = Arrays.copyOf(nodes, 2 * size);
+                        }
+                        nodes[size++] = p;
+                    }
+                }
+            }
+            Arrays.sort(nodes, 0, size); // 祖先编号小于后代编号，x 排在最后
+
+            // 2. 每个代数: 截断不起作用时取完整 F，否则在局部系谱上计算
+            for (int t = 0; t < depths.length; t++) {
+                int g = depths[t];
+                if ((cut >>> g) == 0) {
+                    for (int u = t; u < depths.length; u++) {
+                        inbreeding[u][x] = fullInbreeding[x];
+                    }
+                    return;
+                }
+                truncatedCount++;
+                inbreeding[t][x] = truncatedInbreeding(size, g);
+            }
+        }
+
+        /** 在距离不超过 g 的祖先构成的局部系谱上计算当前个体的近交系数 */
+        private double truncatedInbreeding(int size, int g) {
+            if (localSire.length <= size) {
+                int capacity = Math.max(size + 1, 2 * localSire.length);
+                localSire = new int[capacity];
+                localDam = new int[capacity];
+                localF = new double[capacity];
+                localD = new double[capacity];
+                meuwissenLuo = new IterativeInbreedingCalculator.Workspace(capacity);
+            }
+            int count = 0;
+            for (int k = 0; k < size; k++) {
+                int a = nodes[k];
+                if (distance[a] > g) {
+                    continue;
+                }
+                slot[a] = ++count;
+                // 距离小于 g 的祖先的父母距离不超过 g，已经在局部系谱中
+                localSire[count] = distance[a] < g && sire[a] != 0 ? slot[sire[a]] : 0;
+                localDam[count] = distance[a] < g && dam[a] != 0 ? slot[dam[a]] : 0;
+            }
+            localF[0] = -1.0;
+            localD[0] = 0.0;
+            for (int i = 1; i <= count; i++) {
+                meuwissenLuo.calculate(i, localSire, localDam, localF, localD);
+            }
+            return localF[count];
+        }
+
+        /** 个体 x 的 MacCluer 系谱完整度 */
+        double completeness(int x, int generations) {
+            double paternal = lineCompleteness(sire[x], generations);
+            double maternal = lineCompleteness(dam[x], generations);
+            return paternal + maternal == 0.0 ? 0.0 : 2.0 * paternal * maternal / (paternal + maternal);
+        }
+
+        /** 父系或母系的完整度 C_k: 各代已知祖先比例的平均，第 1 代为 parent 本身 */
+        private double lineCompleteness(int parent, int generations) {
+            if (parent == 0) {
+                return 0.0;
+            }
+            frontier[0] = parent;
+            frontierCount[0] = 1;
+            int size = 1;
+            double sum = 1.0;
+            for (int i = 2; i <= generations && size > 0; i++) {
+                int current = nextStamp();
+                int nextSize = 0;
+                long known = 0;
+                for (int k = 0; k < size; k++) {
+                    int a = frontier[k];
+                    long count = frontierCount[k];
+                    for (int p = sire[a], j = 0; j < 2; p = dam[a], j++) {
+                        if (p == 0) {
+                            continue;
+                        }
+                        known += count;
+                        if (mark[p] == current) {
+                            nextCount[slot[p]] += count; // 同一祖先经多条路径出现
+                            continue;
+                        }
+                        mark[p] = current;
+                        if (nextSize == nextFrontier.length) {
+                            nextFrontier = Arrays.copyOf(nextFrontier, 2 * nextSize);
+                            nextCount = Arrays.copyOf(nextCount, 2 * nextSize);
+                        }
+                        slot[p] = nextSize;
+                        nextFrontier[nextSize] = p;
+                        nextCount[nextSize++] = count;
+                    }
+                }
+                sum += (double) known / (1L << (i - 1));
+                int[] swapNodes = frontier;
+                frontier = nextFrontier;
+                nextFrontier = swapNodes;
+                long[] swapCounts = frontierCount;
+                frontierCount = nextCount;
+                nextCount = swapCounts;
+                size = nextSize;
+            }
+            return sum / generations;
+        }
+    }
+
+    // --- 日志辅助方法 (内部使用) ---
+    /** 记录普通信息 */
+    private void logInfo(String message) {
+        if (logger != null) {
+            logger.info("TruncatedInbreeding", message);
+        } else {
+            System.out.println("INFO (TruncatedInbreeding - Logger unavailable): " + message); // 后备方案
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * 异步日志
+ *   - 多个线程记录日志的同时另一个线程 close()，每条消息恰好输出一次 (关闭前写入日志，关闭后输出到控制台)，
+ *     关闭后不再写入日志输出；
+ *   - 递归引擎超过最大递归深度的警告由日志线程格式化，级别被过滤时不输出。
+ */
+public class AnalysisLogTest {
+    private static final int THREADS = 4;
+    private static final int MESSAGES = 2000; // 每个线程
+
+    @Test
+    public void concurrentCloseLosesNothing() throws Exception {
+        PrintStream console = System.out;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(captured, true, "UTF-8"));
+        List<RecordingWriter> writers = new ArrayList<>();
+        try {
+            for (int round = 0; round < 10; round++) {
+                int current = round + 1;
+                RecordingWriter writer = new RecordingWriter();
+                writers.add(writer);
+                AnalysisLog log = new AnalysisLog(writer, AnalysisLog.Level.INFO, 16); // 队列很小，记录线程会阻塞
+                CountDownLatch started = new CountDownLatch(THREADS);
+                List<Thread> threads = new ArrayList<>();
+                for (int t = 0; t < THREADS; t++) {
+                    int thread = t;
+                    threads.add(new Thread(() -> {
+                        started.countDown();
+                        for (int k = 0; k < MESSAGES; k++) {
+                            log.info("Test", "round %d thread %d message %d", current, thread, k);
+                        }
+                    }));
+                }
+                for (Thread thread : threads) {
+                    thread.start();
+                }
+                started.await();
+                Thread.sleep(round % 3); // 关闭时机在记录中途的不同位置
+                log.close();
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+            }
+        } finally {
+            System.setOut(console);
+        }
+
+        String[] consoleLines = new String(captured.toByteArray(), StandardCharsets.UTF_8).split("\n");
+        for (int round = 0; round < writers.size(); round++) {
+            RecordingWriter writer = writers.get(round);
+            assertFalse("关闭后仍有写入", writer.writtenAfterClose);
+            Set<String> seen = new HashSet<>();
+            int count = 0;
+            List<String> lines = new ArrayList<>();
+            for (String line : writer.toString().split("\n")) {
+                lines.add(line);
+            }
+            for (String line : consoleLines) {
+                lines.add(line);
+            }
+            String prefix = "round " + (round + 1) + " ";
+            for (String line : lines) {
+                int at = line.indexOf(prefix);
+                if (at >= 0) {
+                    assertTrue("重复输出: " + line, seen.add(line.substring(at).trim()));
+                    count++;
+                }
+            }
+            assertEquals("第 " + (round + 1) + " 轮", THREADS * MESSAGES, count);
+        }
+    }
+
+    @Test
+    public void depthLimitWarningsAreFormattedLazily() {
+        PedigreeIndex pedigree = deepPedigree(80);
+        int last = pedigree.indexOf("G80");
+
+        StringWriter warnings = new StringWriter();
+        AnalysisLog log = new AnalysisLog(warnings, AnalysisLog.Level.WARN);
+        InbreedingCalculator calculator = new InbreedingCalculator(pedigree, log);
+        double f = calculator.getInbreedingCoefficient(last); // 直接计算最后一代: 递归超过最大深度
+        log.close();
+        assertTrue(calculator.getDepthLimitHits() > 0);
+        assertFalse(Double.isNaN(f));
+        assertTrue(warnings.toString(), warnings.toString()
+                .matches("(?s).* - WARN \\(Calculator\\): 警告: 计算个体 G\\d+ 的近交系数时超过最大递归深度\\(50\\)。假定其值为 0。\n.*"));
+
+        StringWriter errorsOnly = new StringWriter();
+        log = new AnalysisLog(errorsOnly, AnalysisLog.Level.ERROR);
+        calculator = new InbreedingCalculator(pedigree, log);
+        assertEquals(f, calculator.getInbreedingCoefficient(last), 0.0);
+        log.close();
+        assertTrue(calculator.getDepthLimitHits() > 0);
+        assertEquals("", errorsOnly.toString());
+    }
+
+    /** 每一代的父亲是上一代、母亲是上两代的个体 */
+    private static PedigreeIndex deepPedigree(int generations) {
+        PedigreeIndex.Builder builder = new PedigreeIndex.Builder();
+        builder.add("G1", "0", "0");
+        builder.add("G2", "G1", "0");
+        for (int g = 3; g <= generations; g++) {
+            builder.add("G" + g, "G" + (g - 1), "G" + (g - 2));
+        }
+        return builder.build();
+    }
+
+    /** 记录内容，并记下 close() 之后是否还有写入 */
+    private static final class RecordingWriter extends StringWriter {
+        private volatile boolean closed;
+        volatile boolean writtenAfterClose;
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            check();
+            super.write(buffer, offset, length);
+        }
+
+        @Override
+        public void write(String text, int offset, int length) {
+            check();
+            super.write(text, offset, length);
+        }
+
+        @Override
+        public void write(int c) {
+            check();
+            super.write(c);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        private void check() {
+            if (closed) {
+                writtenAfterClose = true;
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * CsvPedigreeLoader 必须与逐条加入 PedigreeIndex.Builder (loadPedigreeFromDB 的做法) 得到同一个系谱:
+ * 引号、"" 和反斜杠转义、\N、"0"/空父母号、前后空格、重复的 standard_id (以第一条为准)、映射表中的别名,
+ * 以及文件被切成多段并行解析时的段边界。
+ */
+public class CsvPedigreeLoaderTest {
+    private static final String[] SPECIAL_IDS = {"Q\"1", "C,2", "B\\3"}; // 需要引号或转义的ID
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void matchesBuilderAcrossChunks() throws IOException {
+        List<String[]> records = new ArrayList<>(TestPedigrees.records());
+        // 父母为需要转义的ID的一个小家系，接在合成系谱之后
+        records.add(new String[]{SPECIAL_IDS[0], null, null});
+        records.add(new String[]{SPECIAL_IDS[1], null, null});
+        records.add(new String[]{SPECIAL_IDS[2], SPECIAL_IDS[0], SPECIAL_IDS[1]});
+        records.add(new String[]{"CALF", SPECIAL_IDS[2], SPECIAL_IDS[1]});
+
+        Map<String, String> idMapping = new HashMap<>();
+        StringBuilder cattle = new StringBuilder("standard_id,birth_date,sire_id,dam_id,breed\n");
+        PedigreeIndex.Builder expected = new PedigreeIndex.Builder();
+        for (int r = 0; r < records.size(); r++) {
+            String[] record = records.get(r);
+            String sire = record[1];
+            String dam = record[2];
+            if (dam != null && r % 5 == 0) { // 母号写成场内编号，由映射表解析
+                idMapping.put("H-" + dam, dam);
+                dam = "H-" + dam;
+            }
+            cattle.append(field(record[0], r)).append(",2020-01-01,")
+                    .append(parent(sire, r)).append(',').append(parent(dam, r + 1)).append(",HO\n");
+            expected.add(record[0], record[1], record[2]);
+            if (r % 97 == 0) { // 重复的 standard_id: 以第一条为准
+                cattle.append(field(record[0], r + 1)).append(",2021-01-01,0,0,HO\n");
+            }
+        }
+        cattle.append(",2020-01-01,0,0,HO\n"); // 空的 standard_id 被跳过
+        File cattleFile = write("cattle_info.csv", cattle);
+
+        StringBuilder mapping = new StringBuilder("ear_num,id,standard_id\n");
+        for (Map.Entry<String, String> alias : idMapping.entrySet()) {
+            mapping.append("\\N,\"").append(alias.getKey()).append("\", ").append(alias.getValue()).append('\n');
+        }
+        File mappingFile = write("num_comp_tb.csv", mapping);
+
+        CsvPedigreeLoader loader = new CsvPedigreeLoader(4, 4096, null); // 切成 4 × 4 = 16 段
+        assertTrue(cattleFile.length() > 16 * 4096);
+        Map<String, String> loadedMapping = loader.loadIdMapping(mappingFile.toPath());
+        assertEquals(idMapping, loadedMapping);
+        PedigreeIndex pedigree = loader.loadPedigree(cattleFile.toPath(), new IdAliasResolver(loadedMapping, null));
+        assertSamePedigree(expected.build(), pedigree);
+        for (String id : SPECIAL_IDS) {
+            assertTrue(id, pedigree.indexOf(id) > 0);
+        }
+    }
+
+    /** 按 variant 轮换个体ID的写法: 原样、带空格、双引号包围 */
+    private static String field(String id, int variant) {
+        switch (variant % 3) {
+            case 0:
+                return escape(id);
+            case 1:
+                return "  " + escape(id) + " ";
+            default:
+                return "\"" + id.replace("\\", "\\\\").replace("\"", "\"\"") + "\"";
+        }
+    }
+
+    /** 父/母号的写法: 已知时同 field，未知时轮换 0、空值、\N、"0"、""、带空格的 0 */
+    private static String parent(String id, int variant) {
+        if (id != null) {
+            return field(id, variant);
+        }
+        String[] unknown = {"0", "", "\\N", "\"0\"", "\"\"", " 0 "};
+        return unknown[variant % unknown.length];
+    }
+
+    /** 不加引号的字段: 逗号、双引号和反斜杠用反斜杠转义 */
+    private static String escape(String id) {
+        return id.replace("\\", "\\\\").replace(",", "\\,").replace("\"", "\\\"");
+    }
+
+    private File write(String name, CharSequence content) throws IOException {
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), content.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static void assertSamePedigree(PedigreeIndex expected, PedigreeIndex actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.sortedCount(), actual.sortedCount());
+        assertEquals(expected.missingParentCount(), actual.missingParentCount());
+        for (int i = 1; i <= expected.size(); i++) {
+            assertEquals(expected.getId(i), actual.getId(i));
+            assertEquals(expected.getId(i), expected.getSire(i), actual.getSire(i));
+            assertEquals(expected.getId(i), expected.getDam(i), actual.getDam(i));
+        }
+    }
+}
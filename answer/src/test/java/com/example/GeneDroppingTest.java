@@ -0,0 +1,73 @@
+package com.example;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * 基因下落模拟
+ *   - 同一种子和重复次数下，1 个线程与 4 个线程得到逐个体相同的计数和相同的 fge；
+ *   - 容差大于 0 时置信区间足够窄就提前停止，少于最多重复次数。
+ */
+public class GeneDroppingTest {
+    private static final long SEED = 20240601L;
+
+    private static PedigreeIndex pedigree;
+
+    @BeforeClass
+    public static void setUp() {
+        pedigree = TestPedigrees.pedigree();
+    }
+
+    @Test
+    public void resultIndependentOfThreadCount() throws Exception {
+        int replicates = 20 * GeneDropping.BLOCK_SIZE; // 两轮，第二轮不满 ROUND_BLOCKS 块
+        GeneDropping.Result single = new GeneDropping(pedigree, 1, null).run(replicates, SEED, 0.0, null);
+        GeneDropping.Result parallel = new GeneDropping(pedigree, 4, null).run(replicates, SEED, 0.0, null);
+
+        assertEquals(replicates, single.getReplicates());
+        assertEquals(replicates, parallel.getReplicates());
+        assertEquals(single.getReferenceSize(), parallel.getReferenceSize());
+        for (int i = 1; i <= pedigree.size(); i++) {
+            String id = pedigree.getId(i);
+            assertEquals(id, single.getInbreeding(i), parallel.getInbreeding(i), 0.0);
+            assertEquals(id, single.getAncestralInbreeding(i), parallel.getAncestralInbreeding(i), 0.0);
+            assertSameBits(id, single.getRetention(pedigree, i), parallel.getRetention(pedigree, i));
+        }
+        assertSameBits("fge", single.getFounderGenomeEquivalents(), parallel.getFounderGenomeEquivalents());
+        assertSameBits("alleles", single.getExpectedAllelesRetained(), parallel.getExpectedAllelesRetained());
+        assertArrayEquals(single.getHalfWidths(), parallel.getHalfWidths(), 0.0);
+    }
+
+    @Test
+    public void stopsEarlyWithinTolerance() throws Exception {
+        int maxReplicates = 100 * 1000;
+        double tolerance = 0.01;
+        GeneDropping.Result result = new GeneDropping(pedigree, 4, null).run(maxReplicates, SEED, tolerance, null);
+
+        assertTrue("没有提前停止: " + result.getReplicates(), result.getReplicates() < maxReplicates);
+        assertEquals(0, result.getReplicates() % (GeneDropping.ROUND_BLOCKS * GeneDropping.BLOCK_SIZE)); // 只在每轮结束时停止
+        for (double halfWidth : result.getHalfWidths()) {
+            assertTrue(String.valueOf(halfWidth), halfWidth < tolerance);
+        }
+
+        // 提前停止的估计仍接近系谱近交系数: 全群平均 F 的误差在容差以内
+        InbreedingEngine exact = new IterativeInbreedingCalculator(pedigree, null);
+        double simulated = 0.0;
+        double expected = 0.0;
+        int count = 0;
+        for (int i = 1; i <= pedigree.size(); i++) {
+            simulated += result.getInbreeding(i);
+            expected += exact.getInbreedingCoefficient(i);
+            count++;
+        }
+        assertEquals(expected / count, simulated / count, tolerance);
+    }
+
+    private static void assertSameBits(String message, double expected, double actual) {
+        assertEquals(message, Double.doubleToLongBits(expected), Double.doubleToLongBits(actual));
+    }
+}
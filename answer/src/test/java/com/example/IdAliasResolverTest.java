@@ -0,0 +1,118 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * 映射链的传递闭包: 多级映射解析到链的终点，映射环解析到环上字典序最小的ID，
+ * 自身是别名的系谱记录并入标准牛号。
+ */
+public class IdAliasResolverTest {
+
+    @Test
+    public void resolvesChainsToTheirEnd() {
+        Map<String, String> idMapping = new HashMap<>();
+        idMapping.put("EAR-1", "HERD-1"); // 旧耳号 -> 场内编号 -> 标准牛号
+        idMapping.put("HERD-1", "STD-1");
+        idMapping.put("HERD-2", "STD-2");
+        idMapping.put("STD-3", "STD-3"); // 映射到自身
+        IdAliasResolver aliases = new IdAliasResolver(idMapping, null);
+
+        assertEquals("STD-1", aliases.resolve("EAR-1"));
+        assertEquals("STD-1", aliases.resolve(" HERD-1 "));
+        assertSame(aliases.resolve("EAR-1"), aliases.resolve("HERD-1")); // 共享实例
+        assertEquals("STD-2", aliases.canonicalOf("HERD-2"));
+        assertEquals("STD-3", aliases.canonicalOf("STD-3"));
+        assertEquals("OTHER", aliases.resolve("OTHER"));
+        assertNull(aliases.resolve(null));
+        assertEquals("  ", aliases.resolve("  "));
+
+        assertTrue(aliases.isAlias("EAR-1"));
+        assertFalse(aliases.isAlias("STD-1"));
+        assertFalse(aliases.isAlias("STD-3"));
+        assertEquals(3, aliases.getAliasCount());
+        assertEquals(1, aliases.getChainedCount());
+        assertEquals(0, aliases.getCycleCount());
+    }
+
+    @Test
+    public void resolvesCyclesToSmallestIdOnTheCycle() {
+        Map<String, String> idMapping = new HashMap<>();
+        idMapping.put("q", "x"); // q 只映射到环上，不在环上
+        idMapping.put("x", "y");
+        idMapping.put("y", "x");
+        idMapping.put("a", "p"); // 另一个环 p -> r -> s -> p，a 经过两级才到环上
+        idMapping.put("p", "r");
+        idMapping.put("r", "s");
+        idMapping.put("s", "p");
+        IdAliasResolver aliases = new IdAliasResolver(idMapping, null);
+
+        assertEquals(2, aliases.getCycleCount());
+        for (String id : new String[]{"q", "x", "y"}) {
+            assertEquals(id, "x", aliases.resolve(id));
+        }
+        for (String id : new String[]{"a", "p", "r", "s"}) {
+            assertEquals(id, "p", aliases.resolve(id));
+        }
+        assertFalse(aliases.isAlias("x"));
+        assertTrue(aliases.isAlias("q"));
+        assertTrue(aliases.isAlias("y"));
+    }
+
+    @Test
+    public void returnsRecordsUnchangedWithoutAliasRecords() {
+        Map<String, String> idMapping = new HashMap<>();
+        idMapping.put("HERD-1", "STD-1");
+        PedigreeIndex.Builder records = new PedigreeIndex.Builder();
+        records.add("STD-1", "0", "0");
+        records.add("CALF", "STD-1", "0");
+        assertSame(records, new IdAliasResolver(idMapping, null).canonicalizeRecords(records));
+    }
+
+    @Test
+    public void mergesAliasRecordsIntoStandardIds() {
+        Map<String, String> idMapping = new LinkedHashMap<>();
+        idMapping.put("EAR-B", "HERD-B"); // B 的三个ID
+        idMapping.put("HERD-B", "B");
+        idMapping.put("HERD-C", "C");
+        idMapping.put("HERD-D", "D");
+        IdAliasResolver aliases = new IdAliasResolver(idMapping, null);
+
+        PedigreeIndex.Builder records = new PedigreeIndex.Builder();
+        records.add("S", "0", "0");
+        records.add("M", "0", "0");
+        records.add("EAR-B", "S", "0"); // 只有别名的记录: 改挂到 B
+        records.add("HERD-C", "S", "0"); // 父母不一致: 已知父母较多的 C 本身的记录
+        records.add("C", "S", "M");
+        records.add("HERD-D", "S", "0"); // 父母不一致且已知数量相同: 取标准牛号本身的记录
+        records.add("D", "0", "M");
+        records.add("CALF", "B", "C");
+        PedigreeIndex pedigree = aliases.canonicalizeRecords(records).build();
+
+        assertEquals(6, pedigree.size());
+        for (String id : new String[]{"EAR-B", "HERD-B", "HERD-C", "HERD-D"}) {
+            assertEquals(id, 0, pedigree.indexOf(id));
+        }
+        assertParents(pedigree, "B", "S", null);
+        assertParents(pedigree, "C", "S", "M");
+        assertParents(pedigree, "D", null, "M");
+        assertParents(pedigree, "CALF", "B", "C");
+        assertEquals(0, pedigree.missingParentCount());
+    }
+
+    private static void assertParents(PedigreeIndex pedigree, String id, String sireId, String damId) {
+        int animal = pedigree.indexOf(id);
+        assertTrue(id, animal > 0);
+        assertEquals(id, sireId, pedigree.getSire(animal) == 0 ? null : pedigree.getId(pedigree.getSire(animal)));
+        assertEquals(id, damId, pedigree.getDam(animal) == 0 ? null : pedigree.getId(pedigree.getDam(animal)));
+    }
+}
@@ -0,0 +1,126 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * 检查点的写入、读取和恢复
+ *   - 读回的近交系数与写入的相同 (包括表示尚未完成的 NaN)；
+ *   - 系谱变化或文件不完整时拒绝恢复；
+ *   - 三种计算引擎从部分完成的检查点恢复后，结果与从头计算逐位相同。
+ */
+public class InbreedingCheckpointTest {
+    private static PedigreeIndex pedigree;
+    private static double[] partial; // 部分完成的检查点内容
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void setUp() {
+        pedigree = TestPedigrees.pedigree();
+        InbreedingEngine cold = new IterativeInbreedingCalculator(pedigree, null);
+        int m = pedigree.sortedCount();
+        partial = new double[m + 1];
+        for (int i = 1; i <= m; i++) {
+            // 前 2/3 大部分已完成，其中零散地夹着未完成的个体；最后 1/3 全部未完成
+            partial[i] = i <= 2 * m / 3 && i % 7 != 3 ? cold.getInbreedingCoefficient(i) : Double.NaN;
+        }
+    }
+
+    @Test
+    public void readReturnsWrittenValues() throws IOException {
+        Path file = writeCheckpoint();
+        double[] restored = InbreedingCheckpoint.read(file, pedigree);
+        assertEquals(pedigree.size() + 1, restored.length);
+        for (int i = 1; i <= pedigree.sortedCount(); i++) {
+            assertEquals(pedigree.getId(i), Double.doubleToLongBits(partial[i]), Double.doubleToLongBits(restored[i]));
+        }
+        assertNull(InbreedingCheckpoint.read(folder.getRoot().toPath().resolve("missing.ckpt"), pedigree));
+    }
+
+    @Test
+    public void rejectsChangedPedigree() throws IOException {
+        Path file = writeCheckpoint();
+        List<String[]> records = TestPedigrees.records();
+        PedigreeIndex.Builder builder = new PedigreeIndex.Builder(records.size());
+        for (String[] record : records) {
+            builder.add(record[0], record[1], record[2]);
+        }
+        String[] last = records.get(records.size() - 1);
+        builder.add(last[0], last[1], null); // 最后一头牛的母亲改为未知，个体数量不变
+        PedigreeIndex changed = builder.build();
+        assertEquals(pedigree.size(), changed.size());
+
+        IOException e = assertThrows(IOException.class, () -> InbreedingCheckpoint.read(file, changed));
+        assertTrue(e.getMessage(), e.getMessage().contains("不一致"));
+    }
+
+    @Test
+    public void rejectsTruncatedFile() throws IOException {
+        byte[] bytes = Files.readAllBytes(writeCheckpoint());
+        for (int length : new int[]{bytes.length / 2, 20}) { // 截断在压缩数据中、头部中
+            Path truncated = folder.newFile("truncated-" + length + ".ckpt").toPath();
+            Files.write(truncated, Arrays.copyOf(bytes, length));
+            IOException e = assertThrows(IOException.class, () -> InbreedingCheckpoint.read(truncated, pedigree));
+            assertTrue(e.getMessage(), e.getMessage().contains("不完整"));
+        }
+    }
+
+    @Test
+    public void recursiveResumeMatchesColdRun() throws IOException {
+        InbreedingCalculator cold = new InbreedingCalculator(pedigree, null);
+        InbreedingCalculator resumed = new InbreedingCalculator(pedigree, null);
+        assertTrue(resumed.restore(InbreedingCheckpoint.read(writeCheckpoint(), pedigree)) > 0);
+        for (int i = 1; i <= pedigree.size(); i++) { // 按拓扑顺序计算，递归深度不超过世代数
+            assertSameBits(i, cold.getInbreedingCoefficient(i), resumed.getInbreedingCoefficient(i));
+        }
+    }
+
+    @Test
+    public void iterativeResumeMatchesColdRun() throws IOException {
+        assertResumeMatchesColdRun(1);
+    }
+
+    @Test
+    public void parallelResumeMatchesColdRun() throws IOException {
+        assertResumeMatchesColdRun(4);
+    }
+
+    private void assertResumeMatchesColdRun(int parallelism) throws IOException {
+        IterativeInbreedingCalculator cold = new IterativeInbreedingCalculator(pedigree, null, parallelism);
+        IterativeInbreedingCalculator resumed = new IterativeInbreedingCalculator(pedigree, null, parallelism);
+        assertTrue(resumed.restore(InbreedingCheckpoint.read(writeCheckpoint(), pedigree)) > 0);
+        for (int i = 1; i <= pedigree.size(); i++) {
+            assertSameBits(i, cold.getInbreedingCoefficient(i), resumed.getInbreedingCoefficient(i));
+        }
+    }
+
+    /** 在后台线程写入 partial 并等待写完 */
+    private Path writeCheckpoint() throws IOException {
+        File file = new File(folder.getRoot(), "inbreeding.ckpt");
+        try (InbreedingCheckpoint checkpoint = new InbreedingCheckpoint(file.toPath(), pedigree, 1, null)) {
+            checkpoint.submit(partial.clone());
+        }
+        assertTrue(file.isFile());
+        return file.toPath();
+    }
+
+    private static void assertSameBits(int animal, double expected, double actual) {
+        assertEquals(pedigree.getId(animal), Double.doubleToLongBits(expected), Double.doubleToLongBits(actual));
+    }
+}
@@ -0,0 +1,69 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * 递归引擎、迭代 (Meuwissen-Luo) 引擎及其并行分层模式在同一系谱上的近交系数必须一致；
+ * 亲缘系数缓存小到不断淘汰时 (覆盖 CLOCK 淘汰和删除时的后移) 递归引擎的结果也不变。
+ */
+public class InbreedingEngineTest {
+    private static final double EPS = 1e-12;
+
+    private static PedigreeIndex pedigree;
+    private static double[] expected; // 递归引擎的结果
+
+    @BeforeClass
+    public static void calculateRecursive() {
+        pedigree = TestPedigrees.pedigree();
+        InbreedingCalculator recursive = new InbreedingCalculator(pedigree, null);
+        expected = new double[pedigree.size() + 1];
+        for (int i = 1; i <= pedigree.size(); i++) { // 按拓扑顺序计算，递归深度不超过世代数
+            expected[i] = recursive.getInbreedingCoefficient(i);
+        }
+    }
+
+    @Test
+    public void pedigreeIsLargeAndInbred() {
+        assertTrue(pedigree.size() > 4 * 1024);
+        assertEquals(pedigree.size(), pedigree.sortedCount());
+        int inbred = 0;
+        for (int i = 1; i <= pedigree.size(); i++) {
+            if (expected[i] > 0.0) {
+                inbred++;
+            }
+        }
+        assertTrue("近交个体太少: " + inbred, inbred > pedigree.size() / 4);
+    }
+
+    @Test
+    public void iterativeMatchesRecursive() {
+        assertSameInbreeding(new IterativeInbreedingCalculator(pedigree, null));
+    }
+
+    @Test
+    public void parallelMatchesRecursive() {
+        assertSameInbreeding(new IterativeInbreedingCalculator(pedigree, null, 4));
+    }
+
+    @Test
+    public void recursiveWithEvictingCacheMatchesIterative() {
+        ClockCoancestryCache cache = new ClockCoancestryCache(4096); // 最多 96 个条目
+        InbreedingCalculator recursive = new InbreedingCalculator(pedigree, null, cache);
+        InbreedingEngine iterative = new IterativeInbreedingCalculator(pedigree, null);
+        for (int i = 1; i <= pedigree.size(); i++) {
+            assertEquals(pedigree.getId(i), iterative.getInbreedingCoefficient(i), recursive.getInbreedingCoefficient(i), EPS);
+        }
+        assertTrue("淘汰次数太少: " + cache.evictions(), cache.evictions() > 100 * 1000);
+        assertTrue(cache.size() <= 96);
+    }
+
+    static void assertSameInbreeding(InbreedingEngine engine) {
+        for (int i = 1; i <= pedigree.size(); i++) {
+            assertEquals(pedigree.getId(i), expected[i], engine.getInbreedingCoefficient(i), EPS);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * 批量写回 (用 java.lang.reflect.Proxy 模拟的连接，不需要数据库)
+ *   - 每个批次一个事务，不足一个批次的剩余记录在 close() 时写出，NaN 写为 NULL；
+ *   - 某个批次执行失败时该批次回滚，之前的批次保持提交，之后的记录都不再写入，
+ *     已提交数与丢弃数之和等于提交给写回的记录数。
+ */
+public class InbreedingWriteBackTest {
+    private static final int BATCH_SIZE = 100;
+    private static final int RECORDS = 1050;
+
+    @Test
+    public void commitsEveryBatch() throws Exception {
+        FakeDatabase database = new FakeDatabase(0);
+        InbreedingWriteBack writeBack = new InbreedingWriteBack(database.connection(), BATCH_SIZE, null);
+        for (int k = 0; k < RECORDS; k++) {
+            writeBack.submit("A" + k, value(k));
+        }
+        writeBack.close();
+
+        assertEquals(RECORDS, writeBack.getWrittenCount());
+        assertEquals(0, writeBack.getDroppedCount());
+        assertEquals(11, database.commits); // 10 个满批次 + close() 时的 50 条
+        assertEquals(RECORDS, database.committed.size());
+        for (int k = 0; k < RECORDS; k++) {
+            assertEquals("A" + k, expected(k), database.committed.get("A" + k));
+        }
+        assertTrue(database.closed);
+    }
+
+    @Test
+    public void failedBatchRollsBackAndDropsTheRest() throws Exception {
+        FakeDatabase database = new FakeDatabase(3); // 第 3 个批次执行失败
+        InbreedingWriteBack writeBack = new InbreedingWriteBack(database.connection(), BATCH_SIZE, null);
+        for (int k = 0; k < RECORDS; k++) {
+            writeBack.submit("A" + k, value(k));
+        }
+        SQLException e = assertThrows(SQLException.class, writeBack::close);
+        assertEquals("batch 3 failed", e.getMessage());
+
+        assertEquals(2 * BATCH_SIZE, writeBack.getWrittenCount());
+        assertEquals(RECORDS - 2 * BATCH_SIZE, writeBack.getDroppedCount());
+        assertEquals(2, database.commits);
+        assertEquals(1, database.rollbacks);
+        assertEquals(2 * BATCH_SIZE, database.committed.size());
+        for (int k = 0; k < 2 * BATCH_SIZE; k++) {
+            assertEquals("A" + k, expected(k), database.committed.get("A" + k));
+        }
+        assertFalse(database.committed.containsKey("A" + 2 * BATCH_SIZE));
+        assertTrue(database.closed);
+    }
+
+    @Test
+    public void missingColumnClosesConnection() {
+        FakeDatabase database = new FakeDatabase(0);
+        database.hasColumn = false;
+        SQLException e = assertThrows(SQLException.class,
+                () -> new InbreedingWriteBack(database.connection(), BATCH_SIZE, null));
+        assertTrue(e.getMessage(), e.getMessage().contains(InbreedingWriteBack.F_COL));
+        assertTrue(database.closed);
+    }
+
+    /** 每 7 条记录中有一条 NaN */
+    private static double value(int k) {
+        return k % 7 == 3 ? Double.NaN : k / 10000.0;
+    }
+
+    /** 数据库中应有的值: NaN 为 NULL (null)，其余为 Double */
+    private static Double expected(int k) {
+        return Double.isNaN(value(k)) ? null : value(k);
+    }
+
+    /** 只实现写回用到的 JDBC 方法的内存数据库: 执行的批次先放在事务中，commit 时才生效 */
+    private static final class FakeDatabase {
+        private final int failingBatch; // 第几个 executeBatch 失败 (从 1 开始)，0 表示不失败
+        final Map<String, Object> committed = new LinkedHashMap<>(); // 已提交的 个体ID -> 近交系数 (NULL 为 null)
+        private final Map<String, Object> transaction = new HashMap<>();
+        private final List<Object[]> pending = new ArrayList<>(); // addBatch 之后等待执行的参数
+        private final Object[] parameters = new Object[2];
+        private int executedBatches;
+        volatile boolean hasColumn = true;
+        volatile int commits;
+        volatile int rollbacks;
+        volatile boolean closed;
+
+        FakeDatabase(int failingBatch) {
+            this.failingBatch = failingBatch;
+        }
+
+        Connection connection() {
+            return proxy(Connection.class, (method, args) -> {
+                switch (method) {
+                    case "getMetaData":
+                        return proxy(DatabaseMetaData.class, (name, ignored) ->
+                                "getColumns".equals(name) ? columns() : null);
+                    case "prepareStatement":
+                        assertTrue((String) args[0], ((String) args[0]).startsWith("UPDATE "));
+                        return statement();
+                    case "commit":
+                        committed.putAll(transaction);
+                        transaction.clear();
+                        commits++;
+                        return null;
+                    case "rollback":
+                        transaction.clear();
+                        rollbacks++;
+                        return null;
+                    case "close":
+                        closed = true;
+                        return null;
+                    default:
+                        return null; // setAutoCommit、getCatalog 等
+                }
+            });
+        }
+
+        private ResultSet columns() {
+            boolean[] read = {false};
+            return proxy(ResultSet.class, (method, args) -> {
+                if ("next".equals(method)) {
+                    boolean next = hasColumn && !read[0];
+                    read[0] = true;
+                    return next;
+                }
+                return null;
+            });
+        }
+
+        private PreparedStatement statement() {
+            return proxy(PreparedStatement.class, (method, args) -> {
+                switch (method) {
+                    case "setDouble":
+                    case "setString":
+                        parameters[(Integer) args[0] - 1] = args[1];
+                        return null;
+                    case "setNull":
+                        parameters[(Integer) args[0] - 1] = null;
+                        return null;
+                    case "addBatch":
+                        pending.add(parameters.clone());
+                        return null;
+                    case "executeBatch":
+                        List<Object[]> rows = new ArrayList<>(pending);
+                        pending.clear();
+                        if (++executedBatches == failingBatch) {
+                            transaction.put("partial", rows.get(0)[0]); // 失败前已执行的部分也要回滚
+                            throw new SQLException("batch " + executedBatches + " failed");
+                        }
+                        for (Object[] row : rows) {
+                            transaction.put((String) row[1], row[0]);
+                        }
+                        int[] counts = new int[rows.size()];
+                        Arrays.fill(counts, 1);
+                        return counts;
+                    default:
+                        return null; // close
+                }
+            });
+        }
+
+        /** 按方法名处理调用的 JDBC 接口代理，返回基本类型的方法未处理时返回默认值 */
+        private static <T> T proxy(Class<T> type, Handler handler) {
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (self, method, args) -> {
+                Object result = handler.handle(method.getName(), args);
+                if (result == null && method.getReturnType() == boolean.class) {
+                    return false;
+                }
+                if (result == null && method.getReturnType() == int.class) {
+                    return 0;
+                }
+                return result;
+            }));
+        }
+
+        private interface Handler {
+            Object handle(String method, Object[] args) throws SQLException;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * 增量计算: 保存快照 → 修改系谱 → 增量计算，结果必须与对修改后的系谱从头计算相同，
+ * 并且只重新计算新增、父母变化的个体及其后代。
+ */
+public class IncrementalInbreedingCalculatorTest {
+    private static final double EPS = 1e-12;
+    private static final int NEW_CALVES = 300;
+
+    @ClassRule
+    public static TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<String[]> records;
+    private static PedigreeSnapshot snapshot; // 原系谱及其近交系数
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        records = TestPedigrees.records();
+        PedigreeIndex pedigree = build(records);
+        Path file = folder.getRoot().toPath().resolve("pedigree.snap");
+        PedigreeSnapshot.write(file, pedigree, new IterativeInbreedingCalculator(pedigree, null));
+        snapshot = PedigreeSnapshot.open(file);
+    }
+
+    @Test
+    public void unchangedPedigreeReusesEverything() {
+        PedigreeIndex pedigree = build(records);
+        IncrementalInbreedingCalculator incremental = new IncrementalInbreedingCalculator(pedigree, snapshot, null);
+        assertMatchesFullRecompute(pedigree, incremental);
+        assertEquals(0, incremental.getRecalculatedCount());
+        assertEquals(pedigree.size(), incremental.getReusedCount());
+    }
+
+    @Test
+    public void newCalvesAreTheOnlyRecalculated() {
+        List<String[]> changed = new ArrayList<>(records);
+        List<String[]> lastGeneration = records.subList(records.size() - TestPedigrees.GENERATION_SIZE, records.size());
+        for (int k = 0; k < NEW_CALVES; k++) {
+            String sire = lastGeneration.get((7 * k) % lastGeneration.size())[1]; // 最后一代的父亲，与母牛多有亲缘
+            String dam = lastGeneration.get(k % lastGeneration.size())[0];
+            changed.add(new String[]{"NEW-" + k, sire, dam});
+        }
+        PedigreeIndex pedigree = build(changed);
+        IncrementalInbreedingCalculator incremental = new IncrementalInbreedingCalculator(pedigree, snapshot, null);
+        assertMatchesFullRecompute(pedigree, incremental);
+        assertEquals(NEW_CALVES, incremental.getRecalculatedCount());
+        assertEquals(records.size(), incremental.getReusedCount());
+    }
+
+    @Test
+    public void changedDamRecalculatesBullAndDescendants() {
+        // 后代最多的、母亲已知的公牛
+        PedigreeIndex original = build(records);
+        int[] descendants = descendantCounts(original);
+        boolean[] isSire = new boolean[original.size() + 1];
+        for (int i = 1; i <= original.size(); i++) {
+            isSire[original.getSire(i)] = true;
+        }
+        int bull = 0;
+        for (int i = 1; i <= original.size(); i++) {
+            if (isSire[i] && original.getDam(i) != 0 && (bull == 0 || descendants[i] > descendants[bull])) {
+                bull = i;
+            }
+        }
+        assertTrue("后代太少: " + descendants[bull], descendants[bull] > 100);
+
+        String founderCow = records.get(0)[0]; // 基础群母牛，不可能是公牛的后代
+        List<String[]> changed = new ArrayList<>();
+        for (String[] record : records) {
+            changed.add(record[0].equals(original.getId(bull)) ? new String[]{record[0], record[1], founderCow} : record);
+        }
+        PedigreeIndex pedigree = build(changed);
+        IncrementalInbreedingCalculator incremental = new IncrementalInbreedingCalculator(pedigree, snapshot, null);
+        assertMatchesFullRecompute(pedigree, incremental);
+        assertEquals(descendants[bull] + 1, incremental.getRecalculatedCount());
+        assertEquals(records.size() - descendants[bull] - 1, incremental.getReusedCount());
+    }
+
+    private static void assertMatchesFullRecompute(PedigreeIndex pedigree, InbreedingEngine incremental) {
+        InbreedingEngine full = new IterativeInbreedingCalculator(pedigree, null);
+        for (int i = 1; i <= pedigree.size(); i++) {
+            assertEquals(pedigree.getId(i), full.getInbreedingCoefficient(i), incremental.getInbreedingCoefficient(i), EPS);
+        }
+    }
+
+    /** 每个个体的后代数量 (按拓扑逆序合并子代的后代集合) */
+    private static int[] descendantCounts(PedigreeIndex pedigree) {
+        int n = pedigree.size();
+        BitSet[] below = new BitSet[n + 1];
+        for (int i = n; i >= 1; i--) {
+            below[i] = new BitSet(n + 1);
+        }
+        for (int i = n; i >= 1; i--) { // 子代编号大于父母，处理父母时子代的集合已完整
+            for (int parent : new int[]{pedigree.getSire(i), pedigree.getDam(i)}) {
+                if (parent != 0) {
+                    below[parent].set(i);
+                    below[parent].or(below[i]);
+                }
+            }
+        }
+        int[] counts = new int[n + 1];
+        for (int i = 1; i <= n; i++) {
+            counts[i] = below[i].cardinality();
+        }
+        return counts;
+    }
+
+    private static PedigreeIndex build(List<String[]> records) {
+        PedigreeIndex.Builder builder = new PedigreeIndex.Builder(records.size());
+        for (String[] record : records) {
+            builder.add(record[0], record[1], record[2]);
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,112 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Colleau 方法 (A·x) 得到的亲缘系数和平均亲缘系数必须与递归引擎逐对计算的结果一致
+ */
+public class MateAllocationTest {
+    private static final double EPS = 1e-12;
+
+    private static PedigreeIndex pedigree;
+    private static InbreedingCalculator recursive;
+    private static MateAllocation allocation;
+    private static int[] sires; // 最近几代用过的公牛
+    private static int[] cows; // 编号靠后的一批个体
+
+    @BeforeClass
+    public static void setUp() {
+        pedigree = TestPedigrees.pedigree();
+        recursive = new InbreedingCalculator(pedigree, null);
+        allocation = new MateAllocation(pedigree, new IterativeInbreedingCalculator(pedigree, null), 4, null);
+        int n = pedigree.sortedCount();
+        boolean[] used = new boolean[n + 1];
+        int[] sire = pedigree.sires();
+        for (int i = n / 2; i <= n; i++) {
+            used[sire[i]] = true;
+        }
+        used[0] = false;
+        sires = new int[0];
+        for (int i = 1; i <= n; i++) {
+            if (used[i]) {
+                sires = Arrays.copyOf(sires, sires.length + 1);
+                sires[sires.length - 1] = i;
+            }
+        }
+        cows = new int[200];
+        for (int c = 0; c < cows.length; c++) {
+            cows[c] = n - 7 * c;
+        }
+    }
+
+    @Test
+    public void matrixMatchesRecursiveCoancestry() throws Exception {
+        assertTrue(sires.length > 10);
+        double[][] matrix = matrix();
+        for (int p = 0; p < sires.length; p++) {
+            for (int c = 0; c < cows.length; c++) {
+                assertEquals(pedigree.getId(sires[p]) + " x " + pedigree.getId(cows[c]),
+                        recursive.getCoancestry(sires[p], cows[c]), matrix[p][c], EPS);
+            }
+        }
+    }
+
+    @Test
+    public void lowestCoancestryMatchesMatrix() throws Exception {
+        int k = 3;
+        double[][] matrix = matrix();
+        MateAllocation.Mating[][] best = allocation.lowestCoancestry("选配矩阵", sires, cows, k);
+        assertEquals(cows.length, best.length);
+        for (int c = 0; c < cows.length; c++) {
+            double[] column = new double[sires.length];
+            for (int p = 0; p < sires.length; p++) {
+                column[p] = matrix[p][c];
+            }
+            Arrays.sort(column);
+            assertEquals(k, best[c].length);
+            for (int t = 0; t < k; t++) {
+                MateAllocation.Mating mating = best[c][t];
+                assertEquals(cows[c], mating.getCow());
+                assertEquals(column[t], mating.getCoancestry(), EPS);
+                assertEquals(recursive.getCoancestry(mating.getSire(), cows[c]), mating.getCoancestry(), EPS);
+            }
+        }
+    }
+
+    @Test
+    public void meanCoancestryMatchesRecursiveAverage() {
+        int[] withDuplicate = Arrays.copyOf(sires, sires.length + 1);
+        withDuplicate[sires.length] = sires[0]; // 重复的成员只计一次
+        int[][] groups = {cows, withDuplicate, new int[0]};
+        double[][] mean = allocation.meanCoancestry(groups);
+        int n = pedigree.sortedCount();
+        for (int t = 0; t < 40; t++) {
+            int animal = 1 + (int) ((long) (n - 1) * t / 39);
+            assertEquals(pedigree.getId(animal), average(animal, cows), mean[0][animal], EPS);
+            assertEquals(pedigree.getId(animal), average(animal, sires), mean[1][animal], EPS);
+            assertTrue(Double.isNaN(mean[2][animal]));
+        }
+        // 个体自身属于群体时计入 (1 + F) / 2
+        assertEquals(average(cows[0], cows), mean[0][cows[0]], EPS);
+    }
+
+    private static double average(int animal, int[] group) {
+        double sum = 0.0;
+        for (int member : group) {
+            sum += recursive.getCoancestry(animal, member);
+        }
+        return sum / group.length;
+    }
+
+    private static double[][] matrix() throws Exception {
+        double[][] matrix = new double[sires.length][];
+        allocation.coancestryMatrix("选配矩阵", sires, cows, (position, row) -> matrix[position] = row.clone());
+        return matrix;
+    }
+}
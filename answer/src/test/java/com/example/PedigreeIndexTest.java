@@ -0,0 +1,40 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * PedigreeIndex.Builder 必须保留每条记录的父母，包括构建过程中扩容的情况
+ */
+public class PedigreeIndexTest {
+
+    @Test
+    public void keepsParentLinksWhenBuilderGrows() {
+        List<String[]> records = TestPedigrees.records();
+        PedigreeIndex pedigree = TestPedigrees.pedigree();
+        assertEquals(records.size(), pedigree.size());
+        assertEquals(0, pedigree.missingParentCount());
+        int[] sire = pedigree.sires();
+        int[] dam = pedigree.dams();
+        for (String[] record : records) {
+            int index = pedigree.indexOf(record[0]);
+            assertTrue(record[0], index > 0);
+            assertEquals(record[0], record[1], sire[index] == 0 ? null : pedigree.getId(sire[index]));
+            assertEquals(record[0], record[2], dam[index] == 0 ? null : pedigree.getId(dam[index]));
+        }
+    }
+
+    @Test
+    public void numbersParentsBeforeOffspring() {
+        PedigreeIndex pedigree = TestPedigrees.pedigree();
+        int[] sire = pedigree.sires();
+        int[] dam = pedigree.dams();
+        for (int i = 1; i <= pedigree.sortedCount(); i++) {
+            assertTrue(pedigree.getId(i), sire[i] < i && dam[i] < i);
+        }
+    }
+}
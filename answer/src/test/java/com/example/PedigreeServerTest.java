@@ -0,0 +1,139 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * 常驻查询服务的热更新
+ *   - 重新加载后旧 Model 的系谱不再被处理线程引用，可以被回收；
+ *   - POST /animals 加入的记录与加载时一样按映射链解析别名。
+ */
+public class PedigreeServerTest {
+    private static final List<String[]> RECORDS = TestPedigrees.records();
+
+    private PedigreeServer server;
+
+    @After
+    public void stopServer() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void reloadReleasesPreviousPedigree() throws Exception {
+        List<WeakReference<PedigreeIndex>> loaded = new ArrayList<>();
+        server = new PedigreeServer(() -> {
+            PedigreeIndex.Builder builder = new PedigreeIndex.Builder(RECORDS.size());
+            for (String[] record : RECORDS) {
+                builder.add(record[0], record[1], record[2]);
+            }
+            PedigreeIndex pedigree = builder.build();
+            loaded.add(new WeakReference<>(pedigree));
+            return pedigree;
+        }, 4, null);
+        server.start(0);
+        String last = RECORDS.get(RECORDS.size() - 1)[0];
+        String first = RECORDS.get(RECORDS.size() - TestPedigrees.GENERATION_SIZE)[0];
+        for (int reload = 0; reload < 4; reload++) {
+            for (int query = 0; query < 8; query++) { // 多于处理线程数，让每个线程都用到工作区
+                assertTrue(get("/coancestry?a=" + last + "&b=" + first).contains("\"coancestry\": "));
+            }
+            post("/reload", "");
+        }
+
+        assertEquals(5, loaded.size());
+        for (int attempt = 0; attempt < 20 && anyReachable(loaded.subList(0, 4)); attempt++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        for (int k = 0; k < 4; k++) {
+            assertNull("第 " + (k + 1) + " 次加载的系谱仍被引用", loaded.get(k).get());
+        }
+        assertTrue(loaded.get(4).get() != null);
+    }
+
+    @Test
+    public void addedAnimalsResolveAliasChains() throws Exception {
+        Map<String, String> idMapping = new HashMap<>();
+        idMapping.put("OLD-S", "HERD-S"); // 旧耳号 -> 场内编号 -> 标准牛号
+        idMapping.put("HERD-S", "S");
+        idMapping.put("HERD-D", "D");
+        server = new PedigreeServer(() -> new IdAliasResolver(idMapping, null), aliases -> {
+            PedigreeIndex.Builder builder = new PedigreeIndex.Builder();
+            builder.add("S", "0", "0");
+            builder.add("D", "0", "0");
+            builder.add("C", aliases.resolve("HERD-S"), aliases.resolve("HERD-D"));
+            return builder.build();
+        }, 2, null);
+        server.start(0);
+
+        // 父号为旧耳号 (两级映射)，与 S 的女儿交配: F = 1/4
+        post("/animals", "CALF\tOLD-S\tC\nHERD-D 0 0\n");
+        assertEquals("{\"id\": \"CALF\", \"f\": 0.25}", get("/inbreeding?id=CALF"));
+        assertTrue(get("/status").startsWith("{\"animals\": 4,")); // HERD-D 的记录并入 D，没有新增个体
+        assertEquals(404, status("/inbreeding?id=OLD-S"));
+    }
+
+    private static boolean anyReachable(List<WeakReference<PedigreeIndex>> references) {
+        for (WeakReference<PedigreeIndex> reference : references) {
+            if (reference.get() != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String get(String path) throws IOException {
+        return request("GET", path, null);
+    }
+
+    private String post(String path, String body) throws IOException {
+        return request("POST", path, body);
+    }
+
+    private int status(String path) throws IOException {
+        return open(path).getResponseCode();
+    }
+
+    private HttpURLConnection open(String path) throws IOException {
+        return (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + path).openConnection();
+    }
+
+    private String request(String method, String path, String body) throws IOException {
+        HttpURLConnection connection = open(path);
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        assertEquals(method + " " + path, 200, connection.getResponseCode());
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        try (InputStream in = connection.getInputStream()) {
+            byte[] buffer = new byte[8192];
+            for (int n; (n = in.read(buffer)) > 0; ) {
+                response.write(buffer, 0, n);
+            }
+        }
+        return new String(response.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,94 @@
+package com.example;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * 系谱校验: 在合成系谱上加入一个 3 个体的循环、一个自为父母的个体、一个循环个体的后代和一个既作父亲又作母亲的个体，
+ * 循环和隔离数量必须准确，其余个体的近交系数与没有这些记录时相同。
+ */
+public class PedigreeValidatorTest {
+    private static final double EPS = 1e-12;
+
+    private static PedigreeIndex clean; // 合成系谱
+    private static PedigreeIndex pedigree; // 加入问题记录后的系谱
+    private static PedigreeValidator validator;
+
+    @BeforeClass
+    public static void setUp() {
+        List<String[]> records = TestPedigrees.records();
+        String cow = records.get(0)[0]; // 基础群个体
+        String bull = records.get(TestPedigrees.HERD_SIZE)[0];
+        PedigreeIndex.Builder builder = new PedigreeIndex.Builder();
+        PedigreeIndex.Builder cleanBuilder = new PedigreeIndex.Builder();
+        for (String[] record : records) {
+            builder.add(record[0], record[1], record[2]);
+            cleanBuilder.add(record[0], record[1], record[2]);
+        }
+        builder.add("X", "Y", cow); // X -父-> Y -母-> Z -父-> X
+        builder.add("Y", bull, "Z");
+        builder.add("Z", "X", "0");
+        builder.add("SELF", "SELF", cow);
+        builder.add("DESC", "X", cow); // 循环个体的后代
+        builder.add("P", "0", "0"); // 既作父亲又作母亲
+        builder.add("K1", "P", cow);
+        builder.add("K2", bull, "P");
+        pedigree = builder.build();
+        clean = cleanBuilder.build();
+        validator = PedigreeValidator.validate(pedigree);
+    }
+
+    @Test
+    public void findsCyclesAndSelfParent() {
+        assertFalse(validator.isClean());
+        assertEquals(2, validator.getCycles().size());
+        assertEquals(4, validator.getCycleMemberCount());
+        Set<String> described = new HashSet<>();
+        for (int[] path : validator.getCycles()) {
+            described.add(validator.describeCycle(path));
+        }
+        Set<String> expected = new HashSet<>();
+        expected.add("X -父-> Y -母-> Z -父-> X");
+        expected.add("SELF -父-> SELF");
+        assertEquals(expected, described);
+        assertArrayEquals(new int[]{pedigree.indexOf("SELF")}, validator.getSelfParented());
+    }
+
+    @Test
+    public void quarantinesCyclesAndDescendants() {
+        assertEquals(5, validator.getQuarantinedCount());
+        for (String id : new String[]{"X", "Y", "Z", "SELF", "DESC"}) {
+            assertTrue(id, validator.isQuarantined(pedigree.indexOf(id)));
+        }
+        for (String id : new String[]{"P", "K1", "K2"}) {
+            assertFalse(id, validator.isQuarantined(pedigree.indexOf(id)));
+        }
+    }
+
+    @Test
+    public void reportsDualSexParent() {
+        assertArrayEquals(new int[]{pedigree.indexOf("P")}, validator.getDualSexParents());
+    }
+
+    @Test
+    public void otherAnimalsKeepTheirInbreeding() {
+        InbreedingEngine expected = new IterativeInbreedingCalculator(clean, null);
+        InbreedingEngine actual = new IterativeInbreedingCalculator(pedigree, null);
+        for (int i = 1; i <= clean.size(); i++) {
+            int animal = pedigree.indexOf(clean.getId(i));
+            assertFalse(clean.getId(i), validator.isQuarantined(animal));
+            assertEquals(clean.getId(i), expected.getInbreedingCoefficient(i), actual.getInbreedingCoefficient(animal), EPS);
+        }
+        assertEquals(0.0, actual.getInbreedingCoefficient(pedigree.indexOf("K2")), 0.0);
+        assertTrue(Double.isNaN(actual.getInbreedingCoefficient(pedigree.indexOf("DESC"))));
+    }
+}
@@ -0,0 +1,118 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Henderson/Quaas 规则构建的 A^-1 必须是 Colleau 方法得到的 A 的逆: A^-1 · A[:, j] = e_j
+ */
+public class RelationshipMatrixTest {
+    private static final double EPS = 1e-9;
+
+    private static PedigreeIndex pedigree;
+    private static InbreedingEngine engine;
+    private static MateAllocation allocation;
+    private static SparseSymmetricMatrix inverse;
+
+    @BeforeClass
+    public static void setUp() {
+        pedigree = TestPedigrees.pedigree();
+        engine = new IterativeInbreedingCalculator(pedigree, null);
+        allocation = new MateAllocation(pedigree, engine, 4, null);
+        inverse = RelationshipMatrix.inverse(pedigree, engine);
+    }
+
+    @Test
+    public void inverseTimesColumnsIsIdentity() throws Exception {
+        int m = pedigree.sortedCount();
+        assertEquals(m, inverse.size());
+        int[] all = new int[m];
+        for (int i = 0; i < m; i++) {
+            all[i] = i + 1;
+        }
+        int[] columns = new int[40];
+        for (int t = 0; t < columns.length; t++) {
+            columns[t] = 1 + (int) ((long) (m - 1) * t / (columns.length - 1)); // 从基础群到最后一代
+        }
+        double[][] coancestry = new double[columns.length][];
+        allocation.coancestryMatrix("A 矩阵列", columns, all, (position, row) -> coancestry[position] = row.clone());
+
+        long[] pairs = nonZeroPairs();
+        for (int t = 0; t < columns.length; t++) {
+            double[] a = new double[m];
+            for (int i = 0; i < m; i++) {
+                a[i] = 2.0 * coancestry[t][i];
+            }
+            double[] product = new double[m];
+            for (long pair : pairs) {
+                int row = (int) (pair >>> 32);
+                int col = (int) pair;
+                double value = inverse.get(row, col);
+                product[row] += value * a[col];
+                if (row != col) {
+                    product[col] += value * a[row];
+                }
+            }
+            for (int i = 0; i < m; i++) {
+                assertEquals(pedigree.getId(columns[t]) + " / " + pedigree.getId(i + 1),
+                        i == columns[t] - 1 ? 1.0 : 0.0, product[i], EPS);
+            }
+        }
+    }
+
+    @Test
+    public void denseBlockMatchesRecursiveRelationship() throws Exception {
+        InbreedingCalculator recursive = new InbreedingCalculator(pedigree, null);
+        int m = pedigree.sortedCount();
+        int[] animals = new int[60];
+        for (int t = 0; t < animals.length; t++) {
+            animals[t] = m - 11 * t;
+        }
+        double[][] block = RelationshipMatrix.denseBlock(allocation, animals);
+        for (int a = 0; a < animals.length; a++) {
+            assertEquals(1.0 + engine.getInbreedingCoefficient(animals[a]), block[a][a], EPS);
+            for (int b = 0; b < animals.length; b++) {
+                assertEquals(2.0 * recursive.getCoancestry(animals[a], animals[b]), block[a][b], EPS);
+            }
+        }
+    }
+
+    /** A^-1 中可能非零的上三角位置 (个体与其父母之间、父母之间)，打包为 行 << 32 | 列 */
+    private static long[] nonZeroPairs() {
+        int[] sire = pedigree.sires();
+        int[] dam = pedigree.dams();
+        Set<Long> pairs = new HashSet<>();
+        for (int i = 1; i <= pedigree.sortedCount(); i++) {
+            int[] family = {i, sire[i], dam[i]};
+            for (int x : family) {
+                for (int y : family) {
+                    if (x != 0 && y != 0 && x <= y) {
+                        pairs.add((long) (x - 1) << 32 | (y - 1));
+                    }
+                }
+            }
+        }
+        long[] result = new long[pairs.size()];
+        int k = 0;
+        for (long pair : pairs) {
+            result[k++] = pair;
+        }
+        assertEquals("A^-1 的非零元素超出个体与父母构成的位置", inverse.nonZeroCount(), countStored(result));
+        return result;
+    }
+
+    private static int countStored(long[] pairs) {
+        int count = 0;
+        for (long pair : pairs) {
+            if (inverse.get((int) (pair >>> 32), (int) pair) != 0.0) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,50 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 测试用的合成系谱
+ * 个体数量超过 PedigreeIndex.Builder 的默认容量 (1024)，并包含半同胞和全同胞交配，保证有足够多的近交个体。
+ */
+final class TestPedigrees {
+    static final int HERD_SIZE = 400; // 每代母牛数量
+    static final int AI_SIRES = 20; // 每代公牛数量
+    static final int GENERATION_SIZE = HERD_SIZE + AI_SIRES; // 每代个体数量 (最后一代是最后这么多条记录)
+
+    private TestPedigrees() {
+    }
+
+    /** 约 4600 个个体、11 个世代的系谱 */
+    static SyntheticPedigreeGenerator generator() {
+        return new SyntheticPedigreeGenerator()
+                .herdSize(HERD_SIZE)
+                .aiSires(AI_SIRES)
+                .generations(10)
+                .depth(3)
+                .halfSibRate(0.2)
+                .fullSibRate(0.05)
+                .seed(20240101L);
+    }
+
+    /** 生成的记录 {个体ID, 父号, 母号}，父母先于后代 */
+    static List<String[]> records() {
+        List<String[]> records = new ArrayList<>();
+        generator().generate((id, sireId, damId) -> records.add(new String[]{id, sireId, damId}));
+        return records;
+    }
+
+    /**
+     * 按后代先于父母的顺序 (数据库表中记录没有固定顺序) 通过默认容量的 Builder 构建，
+     * 父/母号多在其本身的记录之前出现，Builder 需要在查找父母槽位时扩容
+     */
+    static PedigreeIndex pedigree() {
+        List<String[]> records = records();
+        PedigreeIndex.Builder builder = new PedigreeIndex.Builder();
+        for (int r = records.size() - 1; r >= 0; r--) {
+            String[] record = records.get(r);
+            builder.add(record[0], record[1], record[2]);
+        }
+        return builder.build();
+    }
+}
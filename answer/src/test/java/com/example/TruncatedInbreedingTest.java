@@ -0,0 +1,108 @@
+package com.example;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * 按世代截断的近交系数和系谱完整度
+ *   - 代数足够大时截断不起作用，结果等于完整系谱的 F；
+ *   - 较小代数的结果等于在手工截断的子系谱 (距离超过 g 代的祖先去掉，距离恰为 g 代的祖先父母未知) 上递归计算的 F。
+ */
+public class TruncatedInbreedingTest {
+    private static final double EPS = 1e-12;
+    private static final int[] DEPTHS = {1, 2, 4, 6, TruncatedInbreeding.MAX_GENERATIONS};
+    private static final int PEC_GENERATIONS = 3;
+
+    private static PedigreeIndex pedigree;
+    private static InbreedingCalculator full;
+    private static TruncatedInbreeding.Result result;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        pedigree = TestPedigrees.pedigree();
+        full = new InbreedingCalculator(pedigree, null);
+        result = new TruncatedInbreeding(pedigree, 4, null).run(DEPTHS, PEC_GENERATIONS,
+                new IterativeInbreedingCalculator(pedigree, null));
+    }
+
+    @Test
+    public void largeDepthEqualsFullInbreeding() {
+        int last = DEPTHS.length - 1;
+        for (int i = 1; i <= pedigree.sortedCount(); i++) {
+            assertEquals(pedigree.getId(i), full.getInbreedingCoefficient(i), result.getInbreeding(last, i), EPS);
+        }
+    }
+
+    @Test
+    public void smallDepthsMatchTruncatedSubPedigree() {
+        assertTrue(result.getTruncatedCount() > 0);
+        int n = pedigree.sortedCount();
+        int inbred = 0;
+        for (int t = 0; t < 60; t++) {
+            int animal = n - 13 * t;
+            for (int d = 0; d < DEPTHS.length - 1; d++) {
+                double expected = truncatedByHand(animal, DEPTHS[d]);
+                assertEquals(pedigree.getId(animal) + " g=" + DEPTHS[d], expected, result.getInbreeding(d, animal), EPS);
+                if (expected > 0.0) {
+                    inbred++;
+                }
+            }
+            assertEquals(0.0, result.getInbreeding(0, animal), 0.0); // 只看父母时不可能近交
+        }
+        assertTrue("截断后仍近交的个体太少: " + inbred, inbred > 20);
+    }
+
+    @Test
+    public void completenessIsZeroForFoundersAndOneForCompletePedigrees() {
+        int[] sire = pedigree.sires();
+        int[] dam = pedigree.dams();
+        for (int i = 1; i <= pedigree.sortedCount(); i++) {
+            double pec = result.getCompleteness(i);
+            assertTrue(pedigree.getId(i), pec >= 0.0 && pec <= 1.0);
+            if (sire[i] == 0 || dam[i] == 0) {
+                assertEquals(pedigree.getId(i), 0.0, pec, 0.0);
+            }
+        }
+        // 最后一代个体往上 PEC_GENERATIONS 代的祖先全部已知
+        List<String[]> records = TestPedigrees.records();
+        for (int r = records.size() - TestPedigrees.GENERATION_SIZE; r < records.size(); r++) {
+            assertEquals(records.get(r)[0], 1.0, result.getCompleteness(pedigree.indexOf(records.get(r)[0])), EPS);
+        }
+    }
+
+    /** 构建个体 x 距离不超过 g 代的祖先构成的子系谱，用递归引擎计算 x 的近交系数 */
+    private static double truncatedByHand(int x, int g) {
+        int[] sire = pedigree.sires();
+        int[] dam = pedigree.dams();
+        int[] distance = new int[pedigree.size() + 1];
+        Arrays.fill(distance, -1);
+        Deque<Integer> queue = new ArrayDeque<>();
+        distance[x] = 0;
+        queue.add(x);
+        PedigreeIndex.Builder builder = new PedigreeIndex.Builder();
+        while (!queue.isEmpty()) {
+            int a = queue.poll();
+            boolean cut = distance[a] == g;
+            builder.put(pedigree.getId(a), cut || sire[a] == 0 ? null : pedigree.getId(sire[a]),
+                    cut || dam[a] == 0 ? null : pedigree.getId(dam[a]));
+            if (cut) {
+                continue;
+            }
+            for (int p : new int[]{sire[a], dam[a]}) {
+                if (p != 0 && distance[p] < 0) {
+                    distance[p] = distance[a] + 1;
+                    queue.add(p);
+                }
+            }
+        }
+        return new InbreedingCalculator(builder.build(), null).getInbreedingCoefficient(pedigree.getId(x));
+    }
+}
@@ -0,0 +1,118 @@
+package com.example;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 近交系数和亲缘系数计算的基准测试
+ * 每次调用都新建计算器 (冷缓存)，因此测得的是一次完整分析的代价，而不是缓存命中的代价。
+ *
+ * 运行示例: java -jar target/benchmarks.jar InbreedingBenchmark -p herdSize=5000
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InbreedingBenchmark {
+    private static final int PAIR_COUNT = 1000; // 每次调用查询的亲缘系数对数
+
+    @Param({"2000"})
+    public int herdSize;
+
+    @Param({"10"})
+    public int generations;
+
+    @Param({"50"})
+    public int aiSires;
+
+    @Param({"3"})
+    public int depth;
+
+    @Param({"0.05"})
+    public double halfSibRate;
+
+    @Param({"0.01"})
+    public double fullSibRate;
+
+    private PedigreeIndex pedigree;
+    private int youngest; // 最后一个拓扑有序的个体 (祖先最多)
+    private int[] pairs; // 最后一代个体之间的随机配对
+
+    @Setup
+    public void setUp() {
+        pedigree = new SyntheticPedigreeGenerator()
+                .herdSize(herdSize)
+                .generations(generations)
+                .aiSires(aiSires)
+                .depth(depth)
+                .halfSibRate(halfSibRate)
+                .fullSibRate(fullSibRate)
+                .toPedigreeIndex();
+        youngest = pedigree.sortedCount();
+        int lastGeneration = Math.max(1, youngest - herdSize - aiSires + 1);
+        SplittableRandom random = new SplittableRandom(42);
+        pairs = new int[2 * PAIR_COUNT];
+        for (int i = 0; i < pairs.length; i++) {
+            pairs[i] = random.nextInt(lastGeneration, youngest + 1);
+        }
+    }
+
+    /** 递归引擎: 单个个体 */
+    @Benchmark
+    public double singleAnimalRecursive() {
+        return new InbreedingCalculator(pedigree, null).getInbreedingCoefficient(youngest);
+    }
+
+    /** 递归引擎: 整个牛群 */
+    @Benchmark
+    public double wholeHerdRecursive() {
+        return sumAll(new InbreedingCalculator(pedigree, null));
+    }
+
+    /** 迭代引擎 (Meuwissen-Luo): 整个牛群 */
+    @Benchmark
+    public double wholeHerdIterative() {
+        return sumAll(new IterativeInbreedingCalculator(pedigree, null));
+    }
+
+    /** 按世代并行的迭代引擎: 整个牛群 */
+    @Benchmark
+    public double wholeHerdParallel() {
+        return sumAll(new IterativeInbreedingCalculator(pedigree, null, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /** 递归引擎: 最后一代个体之间的亲缘系数查询 (结果为每对的平均时间) */
+    @Benchmark
+    @OperationsPerInvocation(PAIR_COUNT)
+    public double coancestryQueries() {
+        InbreedingCalculator calculator = new InbreedingCalculator(pedigree, null);
+        double sum = 0.0;
+        for (int i = 0; i < pairs.length; i += 2) {
+            sum += calculator.getCoancestry(pairs[i], pairs[i + 1]);
+        }
+        return sum;
+    }
+
+    private double sumAll(InbreedingEngine engine) {
+        double sum = 0.0;
+        for (int animal = 1; animal <= pedigree.size(); animal++) {
+            sum += engine.getInbreedingCoefficient(animal);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,141 @@
+package com.example;
+
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 系谱加载的基准测试
+ * 用 H2 内存数据库 (MySQL 兼容模式) 代替生产 MySQL，按 cow_setting.session.sql 的表结构写入合成系谱；
+ * 一部分母号以 num_comp_tb 中的母牛编号出现，需要经过 ID 映射。
+ * 结果反映 JDBC 和解析的代价，不包括真实网络往返。
+ *
+ * 运行示例: java -jar target/benchmarks.jar LoaderBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoaderBenchmark {
+    private static final String URL = "jdbc:h2:mem:pedigree_bench;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1";
+    private static final int FETCH_SIZE = 1000; // H2 不支持 MySQL 的 Integer.MIN_VALUE 逐行标记
+
+    @Param({"5000"})
+    public int herdSize;
+
+    @Param({"10"})
+    public int generations;
+
+    @Param({"0.5"})
+    public double mappedDamRate; // 以母牛编号 (需要映射) 记录的母号比例
+
+    private Connection connection;
+    private AnalysisLog quietLog;
+
+    @Setup
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection(URL, "sa", "");
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE IF EXISTS cattle_info");
+            stmt.execute("DROP TABLE IF EXISTS num_comp_tb");
+            stmt.execute("CREATE TABLE cattle_info (standard_id VARCHAR(50) PRIMARY KEY, birth_date DATE,"
+                    + " sire_id VARCHAR(50), dam_id VARCHAR(50))");
+            stmt.execute("CREATE TABLE num_comp_tb (ear_num VARCHAR(50), id VARCHAR(50), standard_id VARCHAR(50))");
+        }
+        connection.setAutoCommit(false);
+        try (PreparedStatement cattle = connection.prepareStatement(
+                "INSERT INTO cattle_info (standard_id, sire_id, dam_id) VALUES (?, ?, ?)");
+             PreparedStatement mapping = connection.prepareStatement(
+                     "INSERT INTO num_comp_tb (ear_num, id, standard_id) VALUES (?, ?, ?)")) {
+            long[] row = {0};
+            SplittableRandom random = new SplittableRandom(7);
+            new SyntheticPedigreeGenerator().herdSize(herdSize).generations(generations).generate((id, sireId, damId) -> {
+                try {
+                    if (id.startsWith("C")) {
+                        mapping.setString(1, "E" + id);
+                        mapping.setString(2, "N" + id); // 母牛编号
+                        mapping.setString(3, id);
+                        mapping.addBatch();
+                    }
+                    cattle.setString(1, id);
+                    cattle.setString(2, sireId == null ? "0" : sireId);
+                    cattle.setString(3, damId == null ? "0" : random.nextDouble() < mappedDamRate ? "N" + damId : damId);
+                    cattle.addBatch();
+                    if (++row[0] % 5000 == 0) {
+                        cattle.executeBatch();
+                        mapping.executeBatch();
+                    }
+                } catch (SQLException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            cattle.executeBatch();
+            mapping.executeBatch();
+        }
+        connection.commit();
+        connection.setAutoCommit(true);
+
+        quietLog = new AnalysisLog(new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) {
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        }, AnalysisLog.Level.ERROR);
+        PedigreeAnalysis.useLog(quietLog);
+    }
+
+    @TearDown
+    public void tearDown() throws SQLException {
+        PedigreeAnalysis.useLog(null);
+        quietLog.close();
+        connection.close();
+    }
+
+    /** PedigreeAnalysis 默认加载方式: 映射表 + 系谱表，结果集整体缓存后在 Java 中映射 */
+    @Benchmark
+    public PedigreeIndex defaultLoader() {
+        Map<String, String> idMapping = PedigreeAnalysis.loadIdMappingFromDB(connection);
+        return PedigreeAnalysis.loadPedigreeFromDB(connection, new IdAliasResolver(idMapping, quietLog));
+    }
+
+    /** 流式加载，在 Java 中映射 */
+    @Benchmark
+    public PedigreeIndex streamingLoader() throws SQLException {
+        StreamingPedigreeLoader loader = new StreamingPedigreeLoader(connection, FETCH_SIZE, quietLog);
+        return loader.loadPedigree(new IdAliasResolver(loader.loadIdMapping(), quietLog));
+    }
+
+    /** 流式加载，在数据库端 LEFT JOIN 映射表 */
+    @Benchmark
+    public PedigreeIndex streamingSqlMapping() throws SQLException {
+        return new StreamingPedigreeLoader(connection, FETCH_SIZE, quietLog).loadPedigreeWithSqlMapping();
+    }
+}